@@ -0,0 +1,94 @@
+package com.seatbooking;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock that only moves when told to, for tests, the simulation and benchmarks.
+ * A stepping clock also moves forward a fixed step every time it is read, so each
+ * reading is distinct. Clocks made by withZone share the time of the clock they came
+ * from: moving one moves them all.
+ */
+final class MutableClock extends Clock {
+    private final Time time;
+    private final ZoneId zone;
+    
+    /**
+     * Creates a clock standing at the given instant, in UTC.
+     */
+    MutableClock(Instant instant) {
+        this(new Time(instant, Duration.ZERO), ZoneOffset.UTC);
+    }
+    
+    private MutableClock(Time time, ZoneId zone) {
+        this.time = time;
+        this.zone = zone;
+    }
+    
+    /**
+     * Creates a clock, in UTC, that moves forward by step after every reading.
+     */
+    static MutableClock stepping(Instant start, Duration step) {
+        return new MutableClock(new Time(start, step), ZoneOffset.UTC);
+    }
+    
+    void advance(Duration duration) {
+        time.advance(duration);
+    }
+    
+    /**
+     * Moves the clock forward to a local time in its zone.
+     */
+    void set(LocalDateTime localTime) {
+        time.set(localTime.atZone(zone).toInstant());
+    }
+    
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+    
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new MutableClock(time, zone);
+    }
+    
+    @Override
+    public Instant instant() {
+        return time.read();
+    }
+    
+    /**
+     * The time shared by a clock and its copies in other zones.
+     */
+    private static final class Time {
+        private final Duration step;
+        private Instant instant;
+        
+        Time(Instant instant, Duration step) {
+            this.instant = instant;
+            this.step = step;
+        }
+        
+        synchronized Instant read() {
+            Instant now = instant;
+            instant = now.plus(step);
+            return now;
+        }
+        
+        synchronized void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+        
+        synchronized void set(Instant next) {
+            if (next.isBefore(instant)) {
+                throw new IllegalStateException("Time cannot go backwards");
+            }
+            instant = next;
+        }
+    }
+}
@@ -1,8 +1,25 @@
 package com.seatbooking;
 
+import com.seatbooking.service.BookingPersistence;
 import com.seatbooking.service.BookingService;
+import com.seatbooking.service.FileNotificationSink;
+import com.seatbooking.service.HolidayCalendar;
+import com.seatbooking.service.JdbcBookingRepository;
+import com.seatbooking.service.NotificationOutbox;
+import com.seatbooking.ui.TerminalServer;
 import com.seatbooking.ui.TerminalUI;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.management.JMException;
+
 /**
  * Main application class for the Seat Booking System.
  * 
@@ -35,6 +52,16 @@ import com.seatbooking.ui.TerminalUI;
  * - Follow the interactive menu prompts
  * - Use sample user IDs: U01-U08 (representing different squads)
  * - Use seat IDs: S01-S50 (S01-S40 are FIXED, S41-S50 are FLOATER)
+ * - Optionally load holidays with -Dseatbooking.holidays=file.csv|file.ics
+ *   and -Dseatbooking.office=NAME
+ * - Optionally keep bookings in an embedded SQL database with -Dseatbooking.jdbcUrl=URL,
+ *   e.g. jdbc:h2:./bookings with the H2 driver on the class path
+ * - Optionally append booking notifications to an NDJSON file with -Dseatbooking.notifications=FILE
+ * - Optionally serve the UI to many users with -Dseatbooking.terminalPort=PORT,
+ *   then connect with telnet or nc to localhost on that port
+ * - Run commands without the menu, printing NDJSON results (see SeatBookingCommands):
+ *   --commands FILE (or - for standard input), or a command as arguments,
+ *   e.g. book U01 S01 2026-03-02 ";" avail 2026-03-02
  * 
  * @author Seat Booking System
  * @version 1.0
@@ -46,14 +73,96 @@ public class SeatBookingApplication {
             // Initialize the booking service
             BookingService bookingService = new BookingService();
             
+            // Load office holidays and closures, if configured
+            String holidays = System.getProperty("seatbooking.holidays");
+            if (holidays != null) {
+                String office = System.getProperty("seatbooking.office", "");
+                bookingService.setHolidayCalendar(HolidayCalendar.load(Path.of(holidays), office));
+            }
+            
+            // Restore bookings from a database and keep it up to date, if configured
+            String jdbcUrl = System.getProperty("seatbooking.jdbcUrl");
+            if (jdbcUrl != null) {
+                BookingPersistence persistence = new BookingPersistence(bookingService, 
+                                                                        new JdbcBookingRepository(jdbcUrl));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        persistence.close();
+                    } catch (IOException e) {
+                        System.err.println("Bookings not saved: " + e.getMessage());
+                    }
+                }));
+            }
+            
+            // Send booking notifications to a file, if configured
+            String notifications = System.getProperty("seatbooking.notifications");
+            if (notifications != null) {
+                NotificationOutbox outbox = new NotificationOutbox(bookingService, 
+                                                                   new FileNotificationSink(Path.of(notifications)));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        outbox.close();
+                    } catch (IOException e) {
+                        System.err.println("Notifications not sent: " + e.getMessage());
+                    }
+                }));
+            }
+            
+            // Run commands instead of the menu, if given
+            if (args.length > 0) {
+                runCommands(bookingService, args);
+                return;
+            }
+            
+            // Expose operational metrics over JMX
+            try {
+                bookingService.getMetrics().register("default");
+            } catch (JMException e) {
+                System.err.println("Metrics not available over JMX: " + e.getMessage());
+            }
+            
+            // Serve the terminal UI over TCP, if configured
+            String terminalPort = System.getProperty("seatbooking.terminalPort");
+            if (terminalPort != null) {
+                TerminalServer server = new TerminalServer(bookingService, Integer.parseInt(terminalPort));
+                System.out.println("Terminal server listening on localhost:" + server.getPort());
+                server.awaitClose();
+                return;
+            }
+            
             // Create and start the terminal UI
             TerminalUI terminalUI = new TerminalUI(bookingService);
             terminalUI.start();
-            
+        
         } catch (Exception e) {
             System.err.println("Failed to start the Seat Booking System: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
     }
+    
+    /**
+     * Runs commands from a file, standard input or the arguments themselves, where a
+     * lone ";" separates commands.
+     */
+    private static void runCommands(BookingService bookingService, String[] args) throws IOException {
+        Reader input;
+        if (args[0].equals("--commands") && args.length == 2) {
+            input = args[1].equals("-") 
+                    ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                    : new InputStreamReader(Files.newInputStream(Path.of(args[1])), StandardCharsets.UTF_8);
+        } else {
+            StringBuilder commands = new StringBuilder();
+            for (String arg : args) {
+                commands.append(arg.equals(";") ? "\n" : arg + " ");
+            }
+            input = new StringReader(commands.toString());
+        }
+        try (input) {
+            Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            // Progress of imports and exports goes to standard error, apart from the results
+            new SeatBookingCommands(bookingService, output, (records, bytes) -> 
+                    System.err.printf("%,d records, %,d bytes%n", records, bytes)).run(input);
+        }
+    }
 }
\ No newline at end of file
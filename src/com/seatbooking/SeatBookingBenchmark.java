@@ -0,0 +1,1244 @@
+package com.seatbooking;
+
+import com.seatbooking.model.Batch;
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import com.seatbooking.model.SeatType;
+import com.seatbooking.model.Squad;
+import com.seatbooking.model.User;
+import com.seatbooking.service.AdmissionController;
+import com.seatbooking.service.AuditLog;
+import com.seatbooking.service.AvailabilityMatrix;
+import com.seatbooking.service.BookingClient;
+import com.seatbooking.service.BookingException;
+import com.seatbooking.service.BookingListener;
+import com.seatbooking.service.BookingPersistence;
+import com.seatbooking.service.BookingPipeline;
+import com.seatbooking.service.BookingPolicy;
+import com.seatbooking.service.BookingRepository;
+import com.seatbooking.service.BookingRequest;
+import com.seatbooking.service.BookingResult;
+import com.seatbooking.service.BookingServer;
+import com.seatbooking.service.BookingService;
+import com.seatbooking.service.BookingTransfer;
+import com.seatbooking.service.LatencyHistogram;
+import com.seatbooking.service.Notification;
+import com.seatbooking.service.NotificationOutbox;
+import com.seatbooking.service.NotificationSink;
+import com.seatbooking.service.OffHeapBookingStore;
+import com.seatbooking.service.RejectionReason;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Micro-benchmarks for the hot paths of the Seat Booking System.
+ * Runs without user interaction and prints one result line per measurement.
+ * Numbers are indicative only; run on an idle machine with warmed-up JIT.
+ */
+public class SeatBookingBenchmark {
+    
+    private static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+    private static final int WARMUP_ROUNDS = 3;
+    
+    // Sink for benchmark results so the JIT cannot drop the measured work
+    private static long blackhole;
+    
+    public static void main(String[] args) {
+        System.out.println("⏱️  Starting Seat Booking System Benchmarks...\n");
+        
+        benchmarkMetricsOverhead();
+        benchmarkRejectionPath();
+        benchmarkPolicyChain();
+        benchmarkAuditLog();
+        benchmarkOffHeapStore();
+        benchmarkBookingFootprint();
+        benchmarkAvailabilityRange();
+        benchmarkSeatSearch();
+        benchmarkMove();
+        benchmarkPipeline();
+        benchmarkBookingServer();
+        benchmarkCommandMode();
+        benchmarkAdmission();
+        benchmarkPersistence();
+        benchmarkBulkTransfer();
+        benchmarkIdempotency();
+        benchmarkNotifications();
+        
+        System.out.println("\n🏁 Benchmarks completed (sink " + (blackhole & 1) + ")");
+    }
+    
+    /**
+     * Compares metered getAvailableSeats with the same read taken straight from the
+     * snapshot; the difference is the cost of latency recording.
+     */
+    private static void benchmarkMetricsOverhead() {
+        System.out.println("🔍 Metrics overhead");
+        
+        BookingService service = new BookingService(fixedClock());
+        int iterations = 5_000_000;
+        
+        long unmetered = 0;
+        long metered = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.getAvailabilitySnapshot(MONDAY).getAvailableSeats().size();
+            }
+            unmetered = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.getAvailableSeats(MONDAY).size();
+            }
+            metered = System.nanoTime() - start;
+        }
+        
+        LatencyHistogram histogram = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            histogram.record(i & 1023);
+        }
+        long recordOnly = System.nanoTime() - start;
+        
+        System.out.printf("  unmetered read:      %6.1f ns/op%n", (double) unmetered / iterations);
+        System.out.printf("  metered read:        %6.1f ns/op%n", (double) metered / iterations);
+        System.out.printf("  metering overhead:   %6.1f ns/op%n", (double) (metered - unmetered) / iterations);
+        System.out.printf("  histogram record:    %6.1f ns/op%n%n", (double) recordOnly / iterations);
+    }
+    
+    /**
+     * Compares rejecting an already-taken seat through the exception-based bookSeat
+     * with the result-based tryBookSeat.
+     */
+    private static void benchmarkRejectionPath() {
+        System.out.println("🔍 Rejection path (seat already taken)");
+        
+        BookingService service = new BookingService(fixedClock());
+        String[] users = firstUsersOfAllowedBatch(service, 2);
+        try {
+            service.bookSeat(users[0], "S01", MONDAY);
+        } catch (BookingException e) {
+            throw new IllegalStateException(e);
+        }
+        int iterations = 1_000_000;
+        
+        long exceptions = 0;
+        long results = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                try {
+                    service.bookSeat(users[1], "S01", MONDAY);
+                } catch (BookingException e) {
+                    blackhole += e.getMessage().length();
+                }
+            }
+            exceptions = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.tryBookSeat(users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            results = System.nanoTime() - start;
+        }
+        
+        System.out.printf("  bookSeat (exception): %6.1f ns/op%n", (double) exceptions / iterations);
+        System.out.printf("  tryBookSeat (result): %6.1f ns/op%n%n", (double) results / iterations);
+    }
+    
+    /**
+     * Compares the compiled default policy with the same rules written as straight-line code,
+     * over a mix of accepted and rejected requests.
+     */
+    private static void benchmarkPolicyChain() {
+        System.out.println("🔍 Policy chain (default rules)");
+        
+        BookingService service = new BookingService(fixedClock());
+        BookingPolicy policy = BookingPolicy.defaultPolicy();
+        List<Seat> seats = List.copyOf(service.getAllSeats());
+        List<User> users = List.copyOf(service.getAllUsers().values());
+        
+        BookingRequest[] requests = new BookingRequest[1024];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new BookingRequest(users.get(i % users.size()), seats.get(i % seats.size()),
+                                             MONDAY.plusDays(i % 21 - 2), MONDAY, LocalTime.of(8, 0));
+        }
+        int iterations = 10_000_000;
+        
+        long hardcoded = 0;
+        long compiled = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                RejectionReason rejection = hardcodedRules(requests[i & 1023]);
+                blackhole += rejection == null ? 0 : rejection.ordinal();
+            }
+            hardcoded = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                RejectionReason rejection = policy.check(requests[i & 1023]);
+                blackhole += rejection == null ? 0 : rejection.ordinal();
+            }
+            compiled = System.nanoTime() - start;
+        }
+        
+        System.out.printf("  hardcoded rules:      %6.1f ns/op%n", (double) hardcoded / iterations);
+        System.out.printf("  compiled policy:      %6.1f ns/op%n%n", (double) compiled / iterations);
+    }
+    
+    /**
+     * The default booking rules as they were written before policies were configurable.
+     */
+    private static RejectionReason hardcodedRules(BookingRequest request) {
+        LocalDate date = request.date();
+        LocalDate today = request.today();
+        DayOfWeek day = date.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            return RejectionReason.WEEKEND;
+        }
+        if (date.isBefore(today)) {
+            return RejectionReason.PAST_DATE;
+        }
+        long weekNumber = ChronoUnit.WEEKS.between(LocalDate.of(1970, 1, 5), date.with(DayOfWeek.MONDAY)) + 1;
+        boolean isMonToWed = day.getValue() <= 3;
+        Batch allowed = weekNumber % 2 == 0 == isMonToWed ? Batch.BATCH_1 : Batch.BATCH_2;
+        if (request.user().getBatch() != allowed) {
+            return RejectionReason.WRONG_BATCH;
+        }
+        if (request.seat().getType() == SeatType.FIXED) {
+            return ChronoUnit.DAYS.between(today, date) > 14 ? RejectionReason.BEYOND_ADVANCE_LIMIT : null;
+        }
+        if (date.equals(today) && request.now().isBefore(LocalTime.of(15, 0))) {
+            return RejectionReason.FLOATER_BEFORE_RELEASE;
+        }
+        return date.equals(today.plusDays(1)) ? null : RejectionReason.FLOATER_NOT_TOMORROW;
+    }
+    
+    /**
+     * Appends millions of audit events spread over 60 dates, then rebuilds one date
+     * as of a point in the middle of the history, before and after reopening the log.
+     */
+    private static void benchmarkAuditLog() {
+        System.out.println("🔍 Audit log (2M events, 60 dates)");
+        
+        Clock clock = MutableClock.stepping(MONDAY.atTime(8, 0).toInstant(ZoneOffset.UTC), Duration.ofMillis(1));
+        BookingService service = new BookingService(clock);
+        List<Seat> seats = List.copyOf(service.getAllSeats());
+        List<User> users = List.copyOf(service.getAllUsers().values());
+        int events = 2_000_000;
+        
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("audit-bench");
+            long appendNanos;
+            Instant middle;
+            try (AuditLog audit = new AuditLog(service, directory)) {
+                long start = System.nanoTime();
+                for (int i = 0; i < events; i++) {
+                    Booking booking = new Booking("BK" + (i >>> 1), users.get(i % users.size()),
+                                                  seats.get(i % seats.size()), MONDAY.plusDays((i >>> 1) % 60),
+                                                  MONDAY.atStartOfDay());
+                    if ((i & 1) == 0) {
+                        audit.onBooked(booking);
+                    } else if ((i & 3) == 3) {
+                        audit.onCancelled(booking);
+                    } else {
+                        audit.onCheckedIn(booking);
+                    }
+                }
+                audit.flush();
+                appendNanos = System.nanoTime() - start;
+                middle = clock.instant().minusMillis(events / 2);
+                
+                printAuditQuery("as-of query:", audit, middle);
+            }
+            
+            long start = System.nanoTime();
+            try (AuditLog reopened = new AuditLog(service, directory)) {
+                long reopenNanos = System.nanoTime() - start;
+                printAuditQuery("as-of after reopen:", reopened, middle);
+                System.out.printf("  append:               %6.1f ns/event%n", (double) appendNanos / events);
+                System.out.printf("  reopen and index:     %6.1f ms%n%n", reopenNanos / 1e6);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    /**
+     * Compares the heap held by 1M bookings in a HashMap with the same bookings in the
+     * off-heap store, and the time to scan each.
+     */
+    private static void benchmarkOffHeapStore() {
+        System.out.println("🔍 Off-heap store (1M bookings)");
+        
+        BookingService service = new BookingService(fixedClock());
+        List<Seat> seats = List.copyOf(service.getAllSeats());
+        List<User> users = List.copyOf(service.getAllUsers().values());
+        int count = 1_000_000;
+        
+        long before = usedHeap();
+        Map<String, Booking> onHeap = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String bookingId = "BK" + (1_700_000_000_000L + i);
+            onHeap.put(bookingId, new Booking(bookingId, users.get(i % users.size()), seats.get(i % seats.size()),
+                                              MONDAY.plusDays(i % 365), MONDAY.atTime(8, 0).plusNanos(i)));
+        }
+        long heapBytes = usedHeap() - before;
+        
+        before = usedHeap();
+        OffHeapBookingStore store = new OffHeapBookingStore(seats, users);
+        onHeap.values().forEach(store::append);
+        long storeHeapBytes = usedHeap() - before;
+        
+        long heapScan = Long.MAX_VALUE;
+        long storeScan = Long.MAX_VALUE;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Booking booking : onHeap.values()) {
+                blackhole += booking.getEpochDay();
+            }
+            heapScan = Math.min(heapScan, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            store.forEach(view -> blackhole += view.getEpochDay());
+            storeScan = Math.min(storeScan, System.nanoTime() - start);
+        }
+        
+        System.out.printf("  HashMap heap:         %6.1f bytes/booking%n", (double) heapBytes / count);
+        System.out.printf("  store heap:           %6.1f bytes/booking%n", (double) storeHeapBytes / count);
+        System.out.printf("  store off-heap:       %6.1f bytes/booking%n", (double) store.getOffHeapBytes() / count);
+        System.out.printf("  HashMap scan:         %6.1f ns/booking%n", (double) heapScan / count);
+        System.out.printf("  store scan:           %6.1f ns/booking%n%n", (double) storeScan / count);
+        blackhole += onHeap.size();
+    }
+    
+    /**
+     * Measures the heap per booking of the compact Booking against the previous layout,
+     * which held LocalDate and LocalDateTime objects. Seats, users and the ID string are
+     * shared, so only what each layout adds per booking is counted.
+     */
+    private static void benchmarkBookingFootprint() {
+        System.out.println("🔍 Booking footprint (1M bookings)");
+        
+        BookingService service = new BookingService(fixedClock());
+        Seat seat = service.getAllSeats().get(0);
+        User user = service.getAllUsers().get("U01");
+        String bookingId = "BK1700000000000";
+        int count = 1_000_000;
+        
+        Object[] bookings = new Object[count];
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = MONDAY.plusDays(i % 365);
+            bookings[i] = new LegacyBooking(bookingId, user, seat, date,
+                                            date.atTime(8, 0).plusNanos(i));
+        }
+        long legacyBytes = usedHeap() - before;
+        
+        bookings = new Object[count];
+        before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = MONDAY.plusDays(i % 365);
+            bookings[i] = new Booking(bookingId, user, seat, date,
+                                      date.atTime(8, 0).plusNanos(i));
+        }
+        long compactBytes = usedHeap() - before;
+        blackhole += bookings.length;
+        
+        System.out.printf("  java.time fields:     %6.1f bytes/booking%n", (double) legacyBytes / count);
+        System.out.printf("  primitive dates:      %6.1f bytes/booking%n%n", (double) compactBytes / count);
+    }
+    
+    /**
+     * Times a two-week availability query over 10k seats, half of them booked each
+     * weekday, against filtering each date's available seat list one by one.
+     */
+    private static void benchmarkAvailabilityRange() {
+        System.out.println("🔍 Availability range (14 days x 10k seats)");
+        
+        LocalDate to = MONDAY.plusDays(13);
+        BookingService service = largeOffice(10_000, to);
+        
+        long perDate = Long.MAX_VALUE;
+        long matrix = Long.MAX_VALUE;
+        long filtered = Long.MAX_VALUE;
+        for (int round = 0; round <= WARMUP_ROUNDS * 10; round++) {
+            long start = System.nanoTime();
+            for (LocalDate date = MONDAY; !date.isAfter(to); date = date.plusDays(1)) {
+                blackhole += service.getAvailableSeats(date).stream()
+                    .filter(seat -> seat.getType() == SeatType.FLOATER).count();
+            }
+            perDate = Math.min(perDate, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            AvailabilityMatrix result = service.getAvailability(MONDAY, to);
+            blackhole += result.getFreeCount(to.minusDays(2));
+            matrix = Math.min(matrix, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            result = service.getAvailability(MONDAY, to, seat -> seat.getType() == SeatType.FLOATER);
+            blackhole += result.getFreeCount(to.minusDays(2));
+            filtered = Math.min(filtered, System.nanoTime() - start);
+        }
+        
+        System.out.printf("  per-date, floaters:   %6.2f ms%n", perDate / 1e6);
+        System.out.printf("  matrix, all seats:    %6.2f ms%n", matrix / 1e6);
+        System.out.printf("  matrix, floaters:     %6.2f ms%n%n", filtered / 1e6);
+    }
+    
+    /**
+     * Creates a service with seatCount seats in rows of 100, one in four FIXED,
+     * with every other seat booked on each weekday from MONDAY to the given date.
+     */
+    private static BookingService largeOffice(int seatCount, LocalDate to) {
+        return largeOffice(seatCount, to, BookingPolicy.defaultPolicy());
+    }
+    
+    private static BookingService largeOffice(int seatCount, LocalDate to, BookingPolicy policy) {
+        List<Seat> seats = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < seatCount; i++) {
+            seats.add(new Seat(String.format("S%05d", i), i % 4 == 0 ? SeatType.FIXED : SeatType.FLOATER,
+                               i / 100, i % 100));
+            users.add(new User(String.format("U%05d", i), "User " + i, Squad.values()[i % Squad.values().length]));
+        }
+        BookingService service = new BookingService(fixedClock(), seats, users, policy);
+        long number = 1_700_000_000_000L;
+        try {
+            for (LocalDate date = MONDAY; !date.isAfter(to); date = date.plusDays(1)) {
+                if (date.getDayOfWeek().getValue() >= 6) {
+                    continue;
+                }
+                for (int i = 0; i < seatCount; i += 2) {
+                    service.restoreBooking("BK" + number++, users.get(i).getUserId(), seats.get(i).getSeatId(),
+                                           date, MONDAY.atStartOfDay());
+                }
+            }
+        } catch (BookingException e) {
+            throw new IllegalStateException(e);
+        }
+        return service;
+    }
+    
+    /**
+     * Times the free-seat search primitives on 10k seats against filtering the
+     * date's full available seat list, which is what clients did before.
+     */
+    private static void benchmarkSeatSearch() {
+        System.out.println("🔍 Free-seat search (10k seats)");
+        
+        BookingService service = largeOffice(10_000, MONDAY);
+        int iterations = 20_000;
+        long listFirst = Long.MAX_VALUE;
+        long scanFirst = Long.MAX_VALUE;
+        long listNearest = Long.MAX_VALUE;
+        long gridNearest = Long.MAX_VALUE;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.getAvailableSeats(MONDAY).stream()
+                    .filter(seat -> seat.getType() == SeatType.FLOATER).limit(5).count();
+            }
+            listFirst = Math.min(listFirst, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.firstNFree(SeatType.FLOATER, 5, MONDAY).size();
+            }
+            scanFirst = Math.min(scanFirst, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                int row = i % 100, column = (i * 7) % 100;
+                blackhole += service.getAvailableSeats(MONDAY).stream()
+                    .min(Comparator.comparingInt(seat -> Math.abs(seat.getRow() - row) 
+                                                        + Math.abs(seat.getColumn() - column)))
+                    .get().getRow();
+            }
+            listNearest = Math.min(listNearest, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.nearestFree(i % 100, (i * 7) % 100, MONDAY).getRow();
+            }
+            gridNearest = Math.min(gridNearest, System.nanoTime() - start);
+        }
+        
+        System.out.printf("  first 5 floaters, list: %8.1f ns/op%n", (double) listFirst / iterations);
+        System.out.printf("  first 5 floaters, scan: %8.1f ns/op%n", (double) scanFirst / iterations);
+        System.out.printf("  nearest, list:          %8.1f ns/op%n", (double) listNearest / iterations);
+        System.out.printf("  nearest, grid:          %8.1f ns/op%n%n", (double) gridNearest / iterations);
+    }
+    
+    /**
+     * Compares moving a booking between two seats with the cancel-and-rebook it replaces,
+     * which validates twice and publishes two snapshots.
+     */
+    private static void benchmarkMove() {
+        System.out.println("🔍 Seat move (one booking, two seats)");
+        
+        BookingService service = new BookingService(fixedClock());
+        String user = firstUsersOfAllowedBatch(service, 1)[0];
+        int iterations = 200_000;
+        
+        long rebook = Long.MAX_VALUE;
+        long move = Long.MAX_VALUE;
+        try {
+            String bookingId = service.bookSeat(user, "S01", MONDAY);
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    service.cancelBooking(bookingId);
+                    bookingId = service.bookSeat(user, (i & 1) == 0 ? "S02" : "S01", MONDAY);
+                }
+                rebook = Math.min(rebook, System.nanoTime() - start);
+                
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    blackhole += service.move(bookingId, (i & 1) == 0 ? "S02" : "S01").hashCode();
+                }
+                move = Math.min(move, System.nanoTime() - start);
+            }
+        } catch (BookingException e) {
+            throw new IllegalStateException(e);
+        }
+        
+        System.out.printf("  cancel + bookSeat:    %6.1f ns/op%n", (double) rebook / iterations);
+        System.out.printf("  move:                 %6.1f ns/op%n%n", (double) move / iterations);
+    }
+    
+    /**
+     * Compares booking and cancelling through the locked service with the single-writer
+     * pipeline, at 1 to 64 producer threads. Each producer books and cancels its own seats,
+     * so every booking succeeds and only the cost of coordination differs. Pipeline producers keep a window of
+     * requests in flight, as an asynchronous client would.
+     */
+    private static void benchmarkPipeline() {
+        System.out.println("🔍 Booking pipeline (book + cancel, 10k seats)");
+        
+        int seatCount = 10_000;
+        int operations = 100_000;
+        LocalDate tuesday = MONDAY.plusDays(1);
+        BookingService service = largeOffice(seatCount, MONDAY, BookingPolicy.of(List.of()));
+        List<Seat> seats = service.getAllSeats();
+        List<String> userIds = new ArrayList<>(service.getAllUsers().keySet());
+        Collections.sort(userIds);
+        
+        for (int producers : new int[] {1, 4, 16, 64}) {
+            // Each producer cycles through its own block of users and seats
+            int block = seatCount / producers;
+            long locked = Long.MAX_VALUE;
+            long pipelined = Long.MAX_VALUE;
+            double batchSize = 0;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                locked = Math.min(locked, runProducers(producers, (producer, perProducer) -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        int index = producer * block + i % block;
+                        BookingResult result = service.tryBookSeat(userIds.get(index), 
+                                                                   seats.get(index).getSeatId(), tuesday);
+                        service.cancelBooking(result.getBookingId());
+                    }
+                }, operations));
+                
+                BookingPipeline pipeline = new BookingPipeline(service);
+                pipelined = Math.min(pipelined, runProducers(producers, (producer, perProducer) -> {
+                    int window = 32;
+                    List<CompletableFuture<BookingResult>> booked = new ArrayList<>(window);
+                    List<CompletableFuture<Boolean>> cancelled = new ArrayList<>(window);
+                    for (int i = 0; i < perProducer; i += window) {
+                        booked.clear();
+                        cancelled.clear();
+                        for (int j = i; j < Math.min(i + window, perProducer); j++) {
+                            int index = producer * block + j % block;
+                            booked.add(pipeline.bookSeat(userIds.get(index), seats.get(index).getSeatId(), tuesday));
+                        }
+                        for (CompletableFuture<BookingResult> result : booked) {
+                            cancelled.add(pipeline.cancelBooking(result.join().getBookingId()));
+                        }
+                        cancelled.forEach(CompletableFuture::join);
+                    }
+                }, operations));
+                batchSize = (double) pipeline.getAppliedCount() / pipeline.getBatchCount();
+                pipeline.close();
+            }
+            System.out.printf("  %2d producers, locked:   %8.0f ops/s%n", producers, operations * 2 / (locked / 1e9));
+            System.out.printf("  %2d producers, pipeline: %8.0f ops/s (%.0f per batch)%n", 
+                              producers, operations * 2 / (pipelined / 1e9), batchSize);
+        }
+        System.out.println();
+    }
+    
+    private static void benchmarkBookingServer() {
+        System.out.println("🔍 Binary protocol over loopback (10k seats, one connection)");
+        
+        int seatCount = 10_000;
+        int operations = 50_000;
+        int window = 256;
+        LocalDate tuesday = MONDAY.plusDays(1);
+        BookingService service = largeOffice(seatCount, MONDAY, BookingPolicy.of(List.of()));
+        List<Seat> seats = service.getAllSeats();
+        List<String> userIds = new ArrayList<>(service.getAllUsers().keySet());
+        Collections.sort(userIds);
+        
+        try (BookingServer server = new BookingServer(service, 0);
+             BookingClient client = new BookingClient(server.getPort())) {
+            long oneAtATime = Long.MAX_VALUE;
+            long pipelined = Long.MAX_VALUE;
+            long bookAndCancel = Long.MAX_VALUE;
+            long availability = Long.MAX_VALUE;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                // Each check waits for its answer before the next is sent
+                long start = System.nanoTime();
+                for (int i = 0; i < operations; i++) {
+                    blackhole += client.isSeatBooked(seats.get(i % seatCount).getSeatId(), MONDAY).join() ? 1 : 0;
+                }
+                oneAtATime = Math.min(oneAtATime, System.nanoTime() - start);
+                
+                // Up to a window of checks in flight at once
+                List<CompletableFuture<Boolean>> checks = new ArrayList<>(window);
+                start = System.nanoTime();
+                for (int i = 0; i < operations; i += window) {
+                    checks.clear();
+                    for (int j = i; j < Math.min(i + window, operations); j++) {
+                        checks.add(client.isSeatBooked(seats.get(j % seatCount).getSeatId(), MONDAY));
+                    }
+                    for (CompletableFuture<Boolean> check : checks) {
+                        blackhole += check.join() ? 1 : 0;
+                    }
+                }
+                pipelined = Math.min(pipelined, System.nanoTime() - start);
+                
+                List<CompletableFuture<BookingResult>> booked = new ArrayList<>(window);
+                List<CompletableFuture<Boolean>> cancelled = new ArrayList<>(window);
+                start = System.nanoTime();
+                for (int i = 0; i < operations; i += window) {
+                    booked.clear();
+                    cancelled.clear();
+                    for (int j = i; j < Math.min(i + window, operations); j++) {
+                        int index = j % seatCount;
+                        booked.add(client.bookSeat(userIds.get(index), seats.get(index).getSeatId(), tuesday));
+                    }
+                    for (CompletableFuture<BookingResult> result : booked) {
+                        cancelled.add(client.cancelBooking(result.join().getBookingId()));
+                    }
+                    cancelled.forEach(CompletableFuture::join);
+                }
+                bookAndCancel = Math.min(bookAndCancel, System.nanoTime() - start);
+                
+                List<CompletableFuture<BitSet>> bitSets = new ArrayList<>(window);
+                start = System.nanoTime();
+                for (int i = 0; i < operations / 10; i += window) {
+                    bitSets.clear();
+                    for (int j = i; j < Math.min(i + window, operations / 10); j++) {
+                        bitSets.add(client.getAvailability(MONDAY));
+                    }
+                    for (CompletableFuture<BitSet> bits : bitSets) {
+                        blackhole += bits.join().cardinality();
+                    }
+                }
+                availability = Math.min(availability, System.nanoTime() - start);
+            }
+            System.out.printf("  isSeatBooked, one at a time: %8.0f ops/s%n", operations / (oneAtATime / 1e9));
+            System.out.printf("  isSeatBooked, pipelined:     %8.0f ops/s (%d in flight)%n", 
+                              operations / (pipelined / 1e9), window);
+            System.out.printf("  book + cancel, pipelined:    %8.0f ops/s%n", operations * 2 / (bookAndCancel / 1e9));
+            System.out.printf("  availability bits, pipelined:%8.0f ops/s%n", operations / 10 / (availability / 1e9));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println();
+    }
+    
+    private static void benchmarkCommandMode() {
+        System.out.println("🔍 Command mode (1M-line command file, 10k seats)");
+        
+        int seatCount = 10_000;
+        Path file = null;
+        try {
+            // 200k bookings over 20 weekdays, then 800k that are rejected
+            file = Files.createTempFile("seatbooking-commands", ".txt");
+            List<LocalDate> dates = new ArrayList<>();
+            for (LocalDate date = MONDAY.plusDays(7); dates.size() < 20; date = date.plusDays(1)) {
+                if (date.getDayOfWeek().getValue() < 6) {
+                    dates.add(date);
+                }
+            }
+            try (var writer = Files.newBufferedWriter(file)) {
+                for (int round = 0; round < 5; round++) {
+                    for (LocalDate date : dates) {
+                        for (int i = 0; i < seatCount; i++) {
+                            writer.write(String.format("book U%05d S%05d %s%n", i, (i + round) % seatCount, date));
+                        }
+                    }
+                }
+            }
+            
+            long streamed = Long.MAX_VALUE;
+            long lineByLine = Long.MAX_VALUE;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                BookingService service = largeOffice(seatCount, MONDAY, BookingPolicy.of(List.of()));
+                long start = System.nanoTime();
+                try (var input = new InputStreamReader(Files.newInputStream(file), 
+                                                      StandardCharsets.UTF_8)) {
+                    blackhole += new SeatBookingCommands(service, Writer.nullWriter()).run(input);
+                }
+                streamed = Math.min(streamed, System.nanoTime() - start);
+                if (round < WARMUP_ROUNDS) {
+                    continue;
+                }
+                
+                // The obvious version: a string per line and token, a parsed date and a formatted result,
+                // with every booking published on its own. Slow enough to run only once.
+                service = largeOffice(seatCount, MONDAY, BookingPolicy.of(List.of()));
+                Writer output = Writer.nullWriter();
+                start = System.nanoTime();
+                try (var input = Files.newBufferedReader(file)) {
+                    String line;
+                    long number = 0;
+                    while ((line = input.readLine()) != null) {
+                        String[] tokens = line.trim().split("\\s+");
+                        BookingResult result = service.tryBookSeat(tokens[1], tokens[2], LocalDate.parse(tokens[3]));
+                        output.write(result.isBooked()
+                                     ? String.format("{\"line\":%d,\"cmd\":\"book\",\"ok\":true,\"bookingId\":\"%s\"}%n", 
+                                                     ++number, result.getBookingId())
+                                     : String.format("{\"line\":%d,\"cmd\":\"book\",\"ok\":false,\"reason\":\"%s\"}%n", 
+                                                     ++number, result.getRejection()));
+                    }
+                }
+                lineByLine = Math.min(lineByLine, System.nanoTime() - start);
+            }
+            System.out.printf("  streamed + batched: %6.0f ms (%.0f commands/s)%n", streamed / 1e6, 1e6 / (streamed / 1e9));
+            System.out.printf("  line by line:       %6.0f ms (%.0f commands/s)%n", lineByLine / 1e6, 
+                              1e6 / (lineByLine / 1e9));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+        System.out.println();
+    }
+    
+    /**
+     * Measures what admission control adds to a request that reaches the service, and what
+     * a shed request costs compared with letting it fail inside the service.
+     */
+    private static void benchmarkAdmission() {
+        System.out.println("🔍 Admission control (seat already taken)");
+        
+        // Every read of the clock moves it on a millisecond, so 1000 bookings a second always
+        // has a token ready, and one a second sheds all but one request in a thousand
+        Clock clock = MutableClock.stepping(MONDAY.atStartOfDay().toInstant(ZoneOffset.UTC), Duration.ofMillis(1));
+        BookingService service = new BookingService(clock);
+        String[] users = firstUsersOfAllowedBatch(service, 2);
+        try {
+            service.bookSeat(users[0], "S01", MONDAY);
+        } catch (BookingException e) {
+            throw new IllegalStateException(e);
+        }
+        AdmissionController open = new AdmissionController(service, 1_000, 1, 1, 64);
+        AdmissionController limited = new AdmissionController(service, 1, 1, 1, 64);
+        int iterations = 1_000_000;
+        
+        long direct = 0;
+        long admitted = 0;
+        long shed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.tryBookSeat(users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            direct = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += open.tryBookSeat(users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            admitted = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += limited.tryBookSeat(users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            shed = System.nanoTime() - start;
+        }
+        
+        System.out.printf("  service directly:  %6.1f ns/op%n", (double) direct / iterations);
+        System.out.printf("  admitted:          %6.1f ns/op (limit %d)%n", (double) admitted / iterations, 
+                          open.getConcurrencyLimit());
+        System.out.printf("  shed (rate limit): %6.1f ns/op%n%n", (double) shed / iterations);
+    }
+    
+    /**
+     * Compares booking throughput in memory only, with write-behind to a repository, and
+     * with every change written before the booking returns. The repository simulates an
+     * embedded database: a fixed cost per transaction plus a small cost per row.
+     */
+    private static void benchmarkPersistence() {
+        System.out.println("🔍 Persistence (100k bookings, 1000 seats x 100 days, simulated database)");
+        
+        int seatCount = 1000;
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = MONDAY.plusDays(7); dates.size() < 100; date = date.plusDays(1)) {
+            if (date.getDayOfWeek().getValue() < 6) {
+                dates.add(date);
+            }
+        }
+        int bookings = seatCount * dates.size();
+        // Write-through does one transaction per booking, so it only gets a tenth of the work
+        int writeThroughBookings = bookings / 10;
+        
+        long inMemory = Long.MAX_VALUE;
+        long writeBehind = Long.MAX_VALUE;
+        long writeThrough = Long.MAX_VALUE;
+        long batches = 0;
+        try {
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                BookingService service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                inMemory = Math.min(inMemory, bookAll(service, dates, seatCount, bookings));
+                
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                BookingPersistence persistence = new BookingPersistence(service, new SimulatedDatabase());
+                long start = System.nanoTime();
+                bookAll(service, dates, seatCount, bookings);
+                persistence.flush();
+                writeBehind = Math.min(writeBehind, System.nanoTime() - start);
+                batches = persistence.getBatchCount();
+                persistence.close();
+                
+                if (round < WARMUP_ROUNDS) {
+                    continue;
+                }
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                SimulatedDatabase database = new SimulatedDatabase();
+                service.subscribe(new BookingListener() {
+                    @Override
+                    public void onBooked(Booking booking) {
+                        database.write(List.of(), List.of(), List.of(booking));
+                    }
+                    
+                    @Override
+                    public void onCancelled(Booking booking) {
+                        database.write(List.of(booking.getBookingId()), List.of(), List.of());
+                    }
+                });
+                writeThrough = bookAll(service, dates, seatCount, writeThroughBookings);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.printf("  in memory:                  %9.0f bookings/s%n", bookings / (inMemory / 1e9));
+        System.out.printf("  write-behind (incl. flush): %9.0f bookings/s (%d transactions)%n", 
+                          bookings / (writeBehind / 1e9), batches);
+        System.out.printf("  write-through:              %9.0f bookings/s%n%n", 
+                          writeThroughBookings / (writeThrough / 1e9));
+    }
+    
+    /**
+     * Books user i onto seat i on each date in turn, and returns the elapsed nanoseconds.
+     */
+    private static long bookAll(BookingService service, List<LocalDate> dates, int seatCount, int bookings) {
+        List<Seat> seats = service.getAllSeats();
+        List<String> userIds = new ArrayList<>(service.getAllUsers().keySet());
+        Collections.sort(userIds);
+        long start = System.nanoTime();
+        for (int i = 0; i < bookings; i++) {
+            int index = i % seatCount;
+            blackhole += service.tryBookSeat(userIds.get(index), seats.get(index).getSeatId(), 
+                                             dates.get(i / seatCount)).getRejection() == null ? 1 : 0;
+        }
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Imports a 1M-line CSV of past bookings and exports it again, against reading the same
+     * file line by line and restoring each booking on its own.
+     */
+    private static void benchmarkBulkTransfer() {
+        System.out.println("🔍 Bulk transfer (1M bookings, 10k seats x 100 days)");
+        
+        int seatCount = 10_000;
+        int days = 100;
+        LocalDate firstDay = MONDAY.minusYears(1);
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("seatbooking-transfer");
+            Path file = directory.resolve("history.csv");
+            try (var writer = Files.newBufferedWriter(file)) {
+                writer.write("bookingId,userId,seatId,date,bookedAt\n");
+                long number = 1_600_000_000_000L;
+                for (int day = 0; day < days; day++) {
+                    LocalDate date = firstDay.plusDays(day);
+                    for (int i = 0; i < seatCount; i++) {
+                        writer.write(String.format("BK%d,U%05d,S%05d,%s,%sT%02d:%02d:00%n", number++, i, 
+                                                   (i + day) % seatCount, date, date.minusDays(1), i / 60 % 24, i % 60));
+                    }
+                }
+            }
+            long fileBytes = Files.size(file);
+            
+            long imported = Long.MAX_VALUE;
+            long exportedCsv = Long.MAX_VALUE;
+            long exportedJson = Long.MAX_VALUE;
+            long lineByLine = Long.MAX_VALUE;
+            BookingTransfer.ImportResult result = null;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                BookingService service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                BookingTransfer transfer = new BookingTransfer(service);
+                long start = System.nanoTime();
+                result = transfer.importBookings(file);
+                imported = Math.min(imported, System.nanoTime() - start);
+                
+                start = System.nanoTime();
+                blackhole += transfer.exportBookings(firstDay, firstDay.plusDays(days), directory.resolve("out.csv"));
+                exportedCsv = Math.min(exportedCsv, System.nanoTime() - start);
+                start = System.nanoTime();
+                blackhole += transfer.exportBookings(firstDay, firstDay.plusDays(days), directory.resolve("out.ndjson"));
+                exportedJson = Math.min(exportedJson, System.nanoTime() - start);
+                service = null;
+                transfer = null;
+                
+                if (round < WARMUP_ROUNDS) {
+                    continue;
+                }
+                // The obvious version, on the first tenth of the file: each booking restored and published
+                // on its own, which copies its date's snapshot every time. Slow enough to run only once.
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                start = System.nanoTime();
+                try (var reader = Files.newBufferedReader(file)) {
+                    reader.readLine();
+                    for (int i = 0; i < seatCount * days / 10; i++) {
+                        String[] fields = reader.readLine().split(",");
+                        try {
+                            service.restoreBooking(fields[0], fields[1], fields[2], LocalDate.parse(fields[3]), 
+                                                   java.time.LocalDateTime.parse(fields[4]));
+                        } catch (BookingException e) {
+                            blackhole++;
+                        }
+                    }
+                }
+                lineByLine = System.nanoTime() - start;
+            }
+            
+            System.out.printf("  import:        %6.0f ms (%.0f records/s, %.0f MB/s, %d rejected)%n", imported / 1e6, 
+                              result.records() / (imported / 1e9), fileBytes / 1e6 / (imported / 1e9), result.rejected());
+            System.out.printf("  export CSV:    %6.0f ms%n", exportedCsv / 1e6);
+            System.out.printf("  export NDJSON: %6.0f ms%n", exportedJson / 1e6);
+            System.out.printf("  line by line:  %6.0f ms for a tenth (%.0f records/s)%n%n", lineByLine / 1e6,
+                              seatCount * days / 10 / (lineByLine / 1e9));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    /**
+     * Compares a retried request answered from the idempotency cache with the same request
+     * sent without a key, and measures fresh keys churning through a full cache.
+     */
+    private static void benchmarkIdempotency() {
+        System.out.println("🔍 Idempotency keys (100k-key cache)");
+        
+        BookingService service = new BookingService(fixedClock());
+        service.setIdempotencyRetention(100_000, Duration.ofHours(24));
+        String[] users = firstUsersOfAllowedBatch(service, 2);
+        try {
+            service.bookSeat(users[0], "S01", MONDAY);
+        } catch (BookingException e) {
+            throw new IllegalStateException(e);
+        }
+        service.tryBookSeatIdempotent("retried", users[1], "S01", MONDAY);
+        int iterations = 1_000_000;
+        String[] keys = new String[iterations];
+        for (int i = 0; i < iterations; i++) {
+            keys[i] = "key-" + i;
+        }
+        
+        long unkeyed = 0;
+        long replayed = 0;
+        long fresh = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.tryBookSeat(users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            unkeyed = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.tryBookSeatIdempotent("retried", users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            replayed = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                blackhole += service.tryBookSeatIdempotent(keys[i], users[1], "S01", MONDAY).getRejection().ordinal();
+            }
+            fresh = System.nanoTime() - start;
+        }
+        
+        service.setIdempotencyRetention(100_000, Duration.ofHours(24));
+        long before = usedHeap();
+        for (int i = 0; i < 100_000; i++) {
+            service.tryBookSeatIdempotent(keys[i], users[1], "S01", MONDAY);
+        }
+        long perKey = (usedHeap() - before) / service.getIdempotencyKeyCount();
+        // Keeps the keys reachable until after the measurement, so they are not counted as freed
+        blackhole += keys[iterations - 1].length();
+        
+        System.out.printf("  without a key:      %6.1f ns/op%n", (double) unkeyed / iterations);
+        System.out.printf("  retry (replayed):   %6.1f ns/op%n", (double) replayed / iterations);
+        System.out.printf("  new key (evicting): %6.1f ns/op%n", (double) fresh / iterations);
+        System.out.printf("  memory:             %6d bytes per key, besides the key itself%n%n", perKey);
+    }
+    
+    /**
+     * Compares booking throughput without notifications, with the outbox in front of a slow
+     * mail gateway, with the gateway down, and with every notice sent inline before the
+     * booking returns.
+     */
+    private static void benchmarkNotifications() {
+        System.out.println("🔍 Notifications (100k bookings, 1000 seats x 100 days, simulated gateway)");
+        
+        int seatCount = 1000;
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = MONDAY.plusDays(7); dates.size() < 100; date = date.plusDays(1)) {
+            if (date.getDayOfWeek().getValue() < 6) {
+                dates.add(date);
+            }
+        }
+        int bookings = seatCount * dates.size();
+        // Inline delivery costs a gateway call per booking, so it only gets a tenth of the work
+        int inlineBookings = bookings / 10;
+        
+        long without = Long.MAX_VALUE;
+        long outboxed = Long.MAX_VALUE;
+        long delivered = Long.MAX_VALUE;
+        long gatewayDown = Long.MAX_VALUE;
+        long inline = Long.MAX_VALUE;
+        long batches = 0;
+        try {
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                BookingService service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                without = Math.min(without, bookAll(service, dates, seatCount, bookings));
+                
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                NotificationOutbox outbox = new NotificationOutbox(service, new SimulatedGateway(false), Duration.ZERO);
+                long start = System.nanoTime();
+                outboxed = Math.min(outboxed, bookAll(service, dates, seatCount, bookings));
+                outbox.flush();
+                delivered = Math.min(delivered, System.nanoTime() - start);
+                batches = outbox.getBatchCount();
+                outbox.close();
+                
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                outbox = new NotificationOutbox(service, new SimulatedGateway(true), Duration.ZERO);
+                gatewayDown = Math.min(gatewayDown, bookAll(service, dates, seatCount, bookings));
+                try {
+                    outbox.close();
+                } catch (IOException e) {
+                    // Expected: the gateway never came back
+                    blackhole++;
+                }
+                
+                if (round < WARMUP_ROUNDS) {
+                    continue;
+                }
+                service = largeOffice(seatCount, MONDAY.minusDays(1), BookingPolicy.of(List.of()));
+                SimulatedGateway gateway = new SimulatedGateway(false);
+                service.subscribe(new BookingListener() {
+                    @Override
+                    public void onBooked(Booking booking) {
+                        gateway.deliver(List.of(new Notification(Notification.Type.CONFIRMED, Instant.EPOCH, 
+                                booking.getBookingId(), booking.getUser().getUserId(), 
+                                booking.getSeat().getSeatId(), booking.getDate())));
+                    }
+                    
+                    @Override
+                    public void onCancelled(Booking booking) {
+                    }
+                });
+                inline = bookAll(service, dates, seatCount, inlineBookings);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.printf("  no notifications:        %9.0f bookings/s%n", bookings / (without / 1e9));
+        System.out.printf("  outbox:                  %9.0f bookings/s (all delivered after %.0f ms, %d batches)%n", 
+                          bookings / (outboxed / 1e9), delivered / 1e6, batches);
+        System.out.printf("  outbox, gateway down:    %9.0f bookings/s%n", bookings / (gatewayDown / 1e9));
+        System.out.printf("  inline:                  %9.0f bookings/s%n%n", inlineBookings / (inline / 1e9));
+    }
+    
+    /**
+     * Runs a workload on the given number of threads, splitting the operations evenly,
+     * and returns the elapsed nanoseconds.
+     */
+    private static long runProducers(int producers, ProducerWork work, int operations) {
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> work.run(producer, operations / producers)));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * One producer's share of a benchmark workload.
+     */
+    private interface ProducerWork {
+        void run(int producer, int operations);
+    }
+    
+    /**
+     * Stands in for an embedded database: 100 microseconds per transaction, for the commit
+     * and its round trip, plus half a microsecond per row.
+     */
+    private static class SimulatedDatabase implements BookingRepository {
+        private static final long TRANSACTION_NANOS = 100_000;
+        private static final long ROW_NANOS = 500;
+        
+        @Override
+        public void loadAll(StoredBookingHandler handler) {
+        }
+        
+        @Override
+        public void write(Collection<String> deleted, Collection<Booking> updated, Collection<Booking> inserted) {
+            long rows = deleted.size() + updated.size() + inserted.size();
+            LockSupport.parkNanos(TRANSACTION_NANOS + rows * ROW_NANOS);
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /**
+     * Stands in for a mail gateway: 200 microseconds per call plus one per message,
+     * or a gateway that is down and fails every call.
+     */
+    private static class SimulatedGateway implements NotificationSink {
+        private static final long CALL_NANOS = 200_000;
+        private static final long MESSAGE_NANOS = 1_000;
+        
+        private final boolean down;
+        
+        SimulatedGateway(boolean down) {
+            this.down = down;
+        }
+        
+        @Override
+        public void deliver(List<Notification> batch) {
+            LockSupport.parkNanos(CALL_NANOS + batch.size() * MESSAGE_NANOS);
+            if (down) {
+                throw new IllegalStateException("gateway down");
+            }
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /**
+     * The booking layout before dates were stored as primitives, kept for comparison.
+     */
+    private record LegacyBooking(String bookingId, User user, Seat seat, LocalDate date, 
+                                 java.time.LocalDateTime bookingTime) {
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static void printAuditQuery(String label, AuditLog audit, Instant asOf) throws IOException {
+        LocalDate date = MONDAY.plusDays(30);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            blackhole += audit.getBookingsAsOf(date, asOf).size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-21s %6.2f ms%n", label, best / 1e6);
+    }
+    
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Returns IDs of users who may book on MONDAY.
+     */
+    private static String[] firstUsersOfAllowedBatch(BookingService service, int count) {
+        Batch allowedBatch = service.getAllowedBatchForDate(MONDAY);
+        return service.getAllUsers().values().stream()
+                .filter(user -> user.getBatch() == allowedBatch)
+                .map(User::getUserId)
+                .sorted()
+                .limit(count)
+                .toArray(String[]::new);
+    }
+    
+    private static Clock fixedClock() {
+        return Clock.fixed(MONDAY.atTime(8, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    }
+}
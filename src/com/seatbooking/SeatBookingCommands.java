@@ -0,0 +1,584 @@
+package com.seatbooking;
+
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import com.seatbooking.service.BookingResult;
+import com.seatbooking.service.BookingService;
+import com.seatbooking.service.BookingTransfer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-interactive command mode: reads booking commands, one per line, and writes one
+ * NDJSON result per command, in the same order.
+ * 
+ * Commands (IDs are case-sensitive, dates are yyyy-MM-dd):
+ *   book USER SEAT DATE    books a seat
+ *   cancel BOOKING         cancels a booking
+ *   avail DATE             lists the free seats of a date
+ *   list USER|DATE         lists a user's bookings, or the bookings of a date
+ *   import FILE            imports bookings from a .csv or .ndjson file (see BookingTransfer)
+ *   export FROM TO FILE    exports the bookings of a date range to a .csv or .ndjson file
+ * Blank lines and lines starting with # are skipped. Every result carries the line number
+ * of its command and "ok"; failures carry a rejection "reason" or an "error" message.
+ * 
+ * Input is scanned in a reused character buffer and results are built in a reused buffer,
+ * and known user and seat IDs resolve to the service's own strings, so a command allocates
+ * little beyond what the service itself does. Consecutive bookings and cancellations are
+ * applied in batches under one acquisition of the write lock; a batch always ends before
+ * a read, so every result reflects all earlier commands.
+ */
+public class SeatBookingCommands {
+    
+    private static final int BATCH_SIZE = 256;
+    private static final int INPUT_BUFFER_CHARS = 64 * 1024;
+    private static final int OUTPUT_FLUSH_CHARS = 32 * 1024;
+    private static final int MAX_TOKENS = 5;
+    
+    private final BookingService service;
+    private final Writer output;
+    private final IdTable knownIds;
+    private final BookingTransfer transfer;
+    
+    private final Command[] batch;
+    private final Runnable applyBatch;
+    private int batchSize;
+    
+    private char[] chars;
+    private final int[] tokenStarts;
+    private final int[] tokenEnds;
+    private int tokenCount;
+    private final StringBuilder json;
+    private char[] outputChars;
+    
+    private long lineNumber;
+    private long commandCount;
+    private final char[] lastDateChars;
+    private LocalDate lastDate;
+    
+    /**
+     * Creates a command runner for the service that writes its results to output.
+     */
+    public SeatBookingCommands(BookingService service, Writer output) {
+        this(service, output, (records, bytes) -> { });
+    }
+    
+    /**
+     * Creates a command runner that also reports the progress of imports and exports.
+     */
+    public SeatBookingCommands(BookingService service, Writer output, BookingTransfer.Progress progress) {
+        this.service = service;
+        this.output = output;
+        this.transfer = new BookingTransfer(service, progress);
+        
+        List<String> ids = new ArrayList<>(service.getAllUsers().keySet());
+        for (Seat seat : service.getAllSeats()) {
+            ids.add(seat.getSeatId());
+        }
+        this.knownIds = new IdTable(ids);
+        
+        this.batch = new Command[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch[i] = new Command();
+        }
+        this.applyBatch = this::applyBatch;
+        
+        this.chars = new char[INPUT_BUFFER_CHARS];
+        this.tokenStarts = new int[MAX_TOKENS];
+        this.tokenEnds = new int[MAX_TOKENS];
+        this.json = new StringBuilder(OUTPUT_FLUSH_CHARS + 1024);
+        this.outputChars = new char[OUTPUT_FLUSH_CHARS + 1024];
+        this.lastDateChars = new char[10];
+    }
+    
+    /**
+     * Runs every command from input and flushes the results. Returns the number of commands run.
+     */
+    public long run(Reader input) throws IOException {
+        int start = 0;
+        int end = 0;
+        int scan = 0;
+        boolean endOfInput = false;
+        while (true) {
+            int newline = scan;
+            while (newline < end && chars[newline] != '\n') {
+                newline++;
+            }
+            if (newline < end) {
+                runLine(start, newline);
+                start = newline + 1;
+                scan = start;
+                continue;
+            }
+            if (endOfInput) {
+                if (start < end) {
+                    runLine(start, end);
+                }
+                break;
+            }
+            
+            // Keep the partial line and read more after it
+            if (start > 0) {
+                System.arraycopy(chars, start, chars, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            scan = end;
+            int read = input.read(chars, end, chars.length - end);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                end += read;
+            }
+        }
+        
+        endBatch();
+        drainOutput();
+        output.flush();
+        return commandCount;
+    }
+    
+    private void runLine(int from, int to) throws IOException {
+        lineNumber++;
+        if (to > from && chars[to - 1] == '\r') {
+            to--;
+        }
+        boolean complete = tokenize(from, to);
+        if (tokenCount == 0 || chars[tokenStarts[0]] == '#') {
+            return;
+        }
+        commandCount++;
+        if (!complete) {
+            error("Too many arguments");
+            return;
+        }
+        
+        if (tokenIs(0, "book")) {
+            if (tokenCount != 4) {
+                error("Usage: book USER SEAT DATE");
+                return;
+            }
+            LocalDate date = dateToken(3);
+            if (date == null) {
+                return;
+            }
+            Command command = batch[batchSize++];
+            command.line = lineNumber;
+            command.userId = idToken(1);
+            command.seatId = idToken(2);
+            command.date = date;
+        } else if (tokenIs(0, "cancel")) {
+            if (tokenCount != 2) {
+                error("Usage: cancel BOOKING");
+                return;
+            }
+            Command command = batch[batchSize++];
+            command.line = lineNumber;
+            command.bookingId = stringToken(1);
+        } else if (tokenIs(0, "avail")) {
+            if (tokenCount != 2) {
+                error("Usage: avail DATE");
+                return;
+            }
+            LocalDate date = dateToken(1);
+            if (date != null) {
+                endBatch();
+                writeAvailability(date);
+            }
+        } else if (tokenIs(0, "list")) {
+            if (tokenCount != 2) {
+                error("Usage: list USER|DATE");
+                return;
+            }
+            boolean byDate = tokenEnds[1] - tokenStarts[1] == 10 && chars[tokenStarts[1] + 4] == '-';
+            LocalDate date = byDate ? dateToken(1) : null;
+            if (byDate && date == null) {
+                return;
+            }
+            endBatch();
+            writeBookings(byDate ? service.getBookingsForDate(date) : service.getUserBookings(idToken(1)));
+        } else if (tokenIs(0, "import")) {
+            if (tokenCount != 2) {
+                error("Usage: import FILE");
+                return;
+            }
+            endBatch();
+            runImport(Path.of(stringToken(1)));
+        } else if (tokenIs(0, "export")) {
+            if (tokenCount != 4) {
+                error("Usage: export FROM TO FILE");
+                return;
+            }
+            LocalDate first = dateToken(1);
+            LocalDate last = first == null ? null : dateToken(2);
+            if (last == null) {
+                return;
+            }
+            endBatch();
+            runExport(first, last, Path.of(stringToken(3)));
+        } else {
+            error("Unknown command: " + stringToken(0));
+        }
+        
+        if (batchSize == BATCH_SIZE) {
+            endBatch();
+        }
+    }
+    
+    /**
+     * Applies the queued bookings and cancellations as one batch and writes their results.
+     */
+    private void endBatch() throws IOException {
+        if (batchSize == 0) {
+            return;
+        }
+        service.applyExclusively(applyBatch);
+        for (int i = 0; i < batchSize; i++) {
+            Command command = batch[i];
+            if (command.failure != null) {
+                startResult(command.line, null, false);
+                json.append(",\"error\":");
+                appendString(command.failure);
+            } else if (command.bookingId != null) {
+                startResult(command.line, "cancel", command.cancelled);
+            } else {
+                BookingResult result = command.result;
+                startResult(command.line, "book", result.isBooked());
+                if (result.isBooked()) {
+                    json.append(",\"bookingId\":");
+                    appendString(result.getBookingId());
+                } else {
+                    json.append(",\"reason\":\"").append(result.getRejection().name()).append('"');
+                }
+            }
+            endResult();
+            command.clear();
+        }
+        batchSize = 0;
+    }
+    
+    private void applyBatch() {
+        for (int i = 0; i < batchSize; i++) {
+            batch[i].apply(service);
+        }
+    }
+    
+    private void writeAvailability(LocalDate date) throws IOException {
+        List<Seat> free = service.getAvailabilitySnapshot(date).getAvailableSeats();
+        startResult(lineNumber, "avail", true);
+        json.append(",\"date\":\"");
+        appendDate(date);
+        json.append("\",\"free\":").append(free.size()).append(",\"seats\":[");
+        for (int i = 0; i < free.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(free.get(i).getSeatId());
+        }
+        json.append(']');
+        endResult();
+    }
+    
+    private void writeBookings(List<Booking> bookings) throws IOException {
+        startResult(lineNumber, "list", true);
+        json.append(",\"bookings\":[");
+        for (int i = 0; i < bookings.size(); i++) {
+            Booking booking = bookings.get(i);
+            json.append(i > 0 ? ",{\"bookingId\":" : "{\"bookingId\":");
+            appendString(booking.getBookingId());
+            json.append(",\"userId\":");
+            appendString(booking.getUser().getUserId());
+            json.append(",\"seatId\":");
+            appendString(booking.getSeat().getSeatId());
+            json.append(",\"date\":\"");
+            appendDate(booking.getDate());
+            json.append("\"}");
+        }
+        json.append(']');
+        endResult();
+    }
+    
+    private void runImport(Path file) throws IOException {
+        BookingTransfer.ImportResult result;
+        try {
+            result = transfer.importBookings(file);
+        } catch (IOException | IllegalArgumentException e) {
+            error("Import failed: " + e.getMessage());
+            return;
+        }
+        startResult(lineNumber, "import", true);
+        json.append(",\"records\":").append(result.records())
+            .append(",\"imported\":").append(result.imported())
+            .append(",\"rejected\":").append(result.rejected())
+            .append(",\"errors\":[");
+        for (int i = 0; i < result.errors().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(result.errors().get(i));
+        }
+        json.append(']');
+        endResult();
+    }
+    
+    private void runExport(LocalDate from, LocalDate to, Path file) throws IOException {
+        long exported;
+        try {
+            exported = transfer.exportBookings(from, to, file);
+        } catch (IOException | IllegalArgumentException e) {
+            error("Export failed: " + e.getMessage());
+            return;
+        }
+        startResult(lineNumber, "export", true);
+        json.append(",\"exported\":").append(exported);
+        endResult();
+    }
+    
+    private void error(String message) throws IOException {
+        // Results stay in command order
+        endBatch();
+        startResult(lineNumber, null, false);
+        json.append(",\"error\":");
+        appendString(message);
+        endResult();
+    }
+    
+    private void startResult(long line, String command, boolean ok) {
+        json.append("{\"line\":").append(line);
+        if (command != null) {
+            json.append(",\"cmd\":\"").append(command).append('"');
+        }
+        json.append(",\"ok\":").append(ok);
+    }
+    
+    private void endResult() throws IOException {
+        json.append("}\n");
+        if (json.length() >= OUTPUT_FLUSH_CHARS) {
+            drainOutput();
+        }
+    }
+    
+    private void drainOutput() throws IOException {
+        int length = json.length();
+        if (length > outputChars.length) {
+            outputChars = new char[length];
+        }
+        json.getChars(0, length, outputChars, 0);
+        output.write(outputChars, 0, length);
+        json.setLength(0);
+    }
+    
+    private void appendString(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    private void appendDate(LocalDate date) {
+        json.append(date.getYear()).append('-');
+        if (date.getMonthValue() < 10) {
+            json.append('0');
+        }
+        json.append(date.getMonthValue()).append('-');
+        if (date.getDayOfMonth() < 10) {
+            json.append('0');
+        }
+        json.append(date.getDayOfMonth());
+    }
+    
+    /**
+     * Splits the line into tokens separated by spaces or tabs; false if there are too many,
+     * in which case only the first ones are kept.
+     */
+    private boolean tokenize(int from, int to) {
+        tokenCount = 0;
+        int i = from;
+        while (true) {
+            while (i < to && (chars[i] == ' ' || chars[i] == '\t')) {
+                i++;
+            }
+            if (i == to) {
+                return true;
+            }
+            if (tokenCount == MAX_TOKENS) {
+                return false;
+            }
+            tokenStarts[tokenCount] = i;
+            while (i < to && chars[i] != ' ' && chars[i] != '\t') {
+                i++;
+            }
+            tokenEnds[tokenCount++] = i;
+        }
+    }
+    
+    private boolean tokenIs(int token, String word) {
+        int start = tokenStarts[token];
+        if (tokenEnds[token] - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (chars[start + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private String stringToken(int token) {
+        return new String(chars, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+    
+    /**
+     * Returns the service's own string for a known user or seat ID, without allocating.
+     */
+    private String idToken(int token) {
+        String id = knownIds.find(chars, tokenStarts[token], tokenEnds[token]);
+        return id != null ? id : stringToken(token);
+    }
+    
+    /**
+     * Parses a yyyy-MM-dd token, reusing the last date when it repeats. Writes an error
+     * result and returns null if the token is not a valid date.
+     */
+    private LocalDate dateToken(int token) throws IOException {
+        int start = tokenStarts[token];
+        if (tokenEnds[token] - start != 10 || chars[start + 4] != '-' || chars[start + 7] != '-') {
+            error("Invalid date, expected yyyy-MM-dd: " + stringToken(token));
+            return null;
+        }
+        if (lastDate != null && Arrays.equals(chars, start, start + 10, lastDateChars, 0, 10)) {
+            return lastDate;
+        }
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        try {
+            if (year < 0 || month < 0 || day < 0) {
+                throw new DateTimeException("not a number");
+            }
+            lastDate = LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            error("Invalid date, expected yyyy-MM-dd: " + stringToken(token));
+            return null;
+        }
+        System.arraycopy(chars, start, lastDateChars, 0, 10);
+        return lastDate;
+    }
+    
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    /**
+     * A queued booking or cancellation, reused from batch to batch.
+     */
+    private static final class Command {
+        long line;
+        String userId;
+        String seatId;
+        LocalDate date;
+        String bookingId;
+        BookingResult result;
+        boolean cancelled;
+        String failure;
+        
+        void apply(BookingService service) {
+            try {
+                if (bookingId != null) {
+                    cancelled = service.cancelBooking(bookingId);
+                } else {
+                    result = service.tryBookSeat(userId, seatId, date);
+                }
+            } catch (RuntimeException e) {
+                failure = String.valueOf(e.getMessage());
+            }
+        }
+        
+        void clear() {
+            userId = null;
+            seatId = null;
+            date = null;
+            bookingId = null;
+            result = null;
+            cancelled = false;
+            failure = null;
+        }
+    }
+    
+    /**
+     * Open-addressing set of known IDs that can be looked up by a range of characters,
+     * so tokens naming a known user or seat need no string of their own.
+     */
+    private static final class IdTable {
+        private final String[] slots;
+        private final int mask;
+        
+        IdTable(List<String> ids) {
+            int capacity = Integer.highestOneBit(Math.max(ids.size(), 1) * 2) << 1;
+            this.slots = new String[capacity];
+            this.mask = capacity - 1;
+            for (String id : ids) {
+                int slot = spread(id.hashCode()) & mask;
+                while (slots[slot] != null && !slots[slot].equals(id)) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id;
+            }
+        }
+        
+        String find(char[] chars, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            for (int slot = spread(hash) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+                String id = slots[slot];
+                if (id.length() == to - from && matches(id, chars, from)) {
+                    return id;
+                }
+            }
+            return null;
+        }
+        
+        private static boolean matches(String id, char[] chars, int from) {
+            for (int i = 0; i < id.length(); i++) {
+                if (id.charAt(i) != chars[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.seatbooking;
+
+import com.seatbooking.model.*;
+import com.seatbooking.service.BookingResult;
+import com.seatbooking.service.BookingService;
+import com.seatbooking.service.LatencyHistogram;
+import com.seatbooking.service.RejectionReason;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Replays seedable, realistic booking traffic against a BookingService on a virtual clock,
+ * and reports throughput, latency percentiles, rejections and invariant violations.
+ *
+ * Each simulated working day has a morning rush of fixed-seat bookings, check-ins and
+ * no-show sweeps around 9 AM, availability reads and cancellations through the day, and
+ * a burst of floater bookings for the next day at 3 PM. Weekends are skipped, so runs
+ * span rotation weeks. The same seed and sizes always produce the same bookings; the
+ * printed checksum makes that easy to compare. Only the latency figures vary.
+ *
+ * Usage: java com.seatbooking.SeatBookingSimulation [--seed=N] [--users=N] [--seats=N] [--weeks=N]
+ */
+public class SeatBookingSimulation {
+    
+    private static final LocalDate START = LocalDate.of(2026, 3, 2); // a Monday
+    private static final int ADVANCE_DAYS = 14;
+    
+    /**
+     * Simulation parameters.
+     */
+    public record Config(long seed, int users, int seats, int weeks) {
+        public Config {
+            if (users < 1 || seats < 10 || weeks < 1) {
+                throw new IllegalArgumentException("Need at least 1 user, 10 seats and 1 week");
+            }
+        }
+    }
+    
+    private enum Kind { BOOK_FIXED, BOOK_FLOATER, CANCEL, CHECK_IN, RECLAIM, READ }
+    
+    private record Action(LocalTime time, int sequence, Kind kind, int user, int dayOffset, int seat) {
+    }
+    
+    private final Config config;
+    private final Random random;
+    private final MutableClock clock;
+    private final BookingService service;
+    private final List<Seat> fixedSeats;
+    private final List<Seat> floaterSeats;
+    private final List<User> users;
+    
+    private final Map<Kind, LatencyHistogram> latencies = new EnumMap<>(Kind.class);
+    private final Map<RejectionReason, Long> rejections = new EnumMap<>(RejectionReason.class);
+    private final List<String> violations = new ArrayList<>();
+    private long operations;
+    private long booked;
+    private long cancelled;
+    private long checkedIn;
+    private long reclaimed;
+    private long checksum = 17;
+    
+    public SeatBookingSimulation(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed());
+        this.clock = new MutableClock(START.atTime(7, 0).toInstant(ZoneOffset.UTC));
+        
+        List<Seat> seats = createSeats(config.seats());
+        this.fixedSeats = seats.stream().filter(seat -> seat.getType() == SeatType.FIXED).toList();
+        this.floaterSeats = seats.stream().filter(seat -> seat.getType() == SeatType.FLOATER).toList();
+        this.users = createUsers(config.users());
+        this.service = new BookingService(clock, seats, users);
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new LatencyHistogram());
+        }
+    }
+    
+    public static void main(String[] args) {
+        long seed = 42;
+        int users = 400;
+        int seats = 200;
+        int weeks = 4;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            switch (option[0]) {
+                case "--seed" -> seed = Long.parseLong(option[1]);
+                case "--users" -> users = Integer.parseInt(option[1]);
+                case "--seats" -> seats = Integer.parseInt(option[1]);
+                case "--weeks" -> weeks = Integer.parseInt(option[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        
+        System.out.println("🎲 Simulating " + users + " users, " + seats + " seats, " + weeks
+                           + " weeks (seed " + seed + ")...\n");
+        Report report = new SeatBookingSimulation(new Config(seed, users, seats, weeks)).run();
+        report.print();
+        if (!report.violations().isEmpty()) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Runs the whole simulation and returns its report.
+     */
+    public Report run() {
+        long start = System.nanoTime();
+        LocalDate lastDay = START.plusWeeks(config.weeks()).minusDays(1);
+        for (LocalDate day = START; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            if (!service.getPolicy().allowsDate(day)) {
+                continue;
+            }
+            PriorityQueue<Action> actions = planDay();
+            while (!actions.isEmpty()) {
+                Action action = actions.poll();
+                clock.set(day.atTime(action.time()));
+                perform(action, day);
+            }
+            checkInvariants(day);
+        }
+        long wallNanos = System.nanoTime() - start;
+        
+        return new Report(config, operations, wallNanos, booked, cancelled, checkedIn, reclaimed,
+                          Collections.unmodifiableMap(rejections), latencyByOperation(),
+                          List.copyOf(violations), checksum);
+    }
+    
+    private Map<String, LatencyHistogram> latencyByOperation() {
+        Map<String, LatencyHistogram> byName = new LinkedHashMap<>();
+        latencies.forEach((kind, histogram) -> byName.put(kind.name().toLowerCase(Locale.ROOT), histogram));
+        return Collections.unmodifiableMap(byName);
+    }
+    
+    /**
+     * Draws one day's traffic, ordered by time of day.
+     */
+    private PriorityQueue<Action> planDay() {
+        PriorityQueue<Action> actions = new PriorityQueue<>(
+                Comparator.comparing(Action::time).thenComparingInt(Action::sequence));
+        int sequence = 0;
+        
+        for (int user = 0; user < users.size(); user++) {
+            // Morning rush: most bookings between 8 and 10, favourite seats cause contention
+            if (random.nextDouble() < 0.6) {
+                int seat = random.nextDouble() < 0.7 ? user % fixedSeats.size() : random.nextInt(fixedSeats.size());
+                actions.add(new Action(rushTime(), sequence++, Kind.BOOK_FIXED, user,
+                                       random.nextInt(ADVANCE_DAYS + 2), seat));
+            }
+            // Check-in window around 9 AM
+            if (random.nextDouble() < 0.85) {
+                actions.add(new Action(LocalTime.of(8, 45).plusSeconds(random.nextInt(55 * 60)), sequence++,
+                                       Kind.CHECK_IN, user, 0, 0));
+            }
+            // Availability reads through the day
+            if (random.nextDouble() < 0.5) {
+                actions.add(new Action(LocalTime.of(8, 0).plusSeconds(random.nextInt(9 * 3600)), sequence++,
+                                       Kind.READ, user, random.nextInt(ADVANCE_DAYS + 1), 0));
+            }
+            // Occasional cancellations
+            if (random.nextDouble() < 0.05) {
+                actions.add(new Action(LocalTime.of(10, 0).plusSeconds(random.nextInt(7 * 3600)), sequence++,
+                                       Kind.CANCEL, user, 0, 0));
+            }
+            // Floater burst for tomorrow right after 3 PM; a few try today's floaters too early
+            if (random.nextDouble() < 0.3) {
+                long delay = (long) (-20 * Math.log(1 - random.nextDouble()));
+                actions.add(new Action(LocalTime.of(15, 0).plusSeconds(Math.min(delay, 3599)), sequence++,
+                                       Kind.BOOK_FLOATER, user, 1, random.nextInt(floaterSeats.size())));
+            } else if (random.nextDouble() < 0.05) {
+                actions.add(new Action(LocalTime.of(14, 55).plusSeconds(random.nextInt(300)), sequence++,
+                                       Kind.BOOK_FLOATER, user, 0, random.nextInt(floaterSeats.size())));
+            }
+        }
+        
+        for (LocalTime sweep : List.of(LocalTime.of(9, 30), LocalTime.of(10, 0), LocalTime.of(12, 0))) {
+            actions.add(new Action(sweep, sequence++, Kind.RECLAIM, -1, 0, 0));
+        }
+        return actions;
+    }
+    
+    /**
+     * Returns a time between 8 and 10 AM, peaking around 9.
+     */
+    private LocalTime rushTime() {
+        double position = (random.nextDouble() + random.nextDouble()) / 2;
+        return LocalTime.of(8, 0).plusSeconds((long) (position * 2 * 3600));
+    }
+    
+    private void perform(Action action, LocalDate today) {
+        operations++;
+        long start = System.nanoTime();
+        switch (action.kind()) {
+            case BOOK_FIXED -> book(action, fixedSeats.get(action.seat()), today);
+            case BOOK_FLOATER -> book(action, floaterSeats.get(action.seat()), today);
+            case CANCEL -> {
+                String userId = users.get(action.user()).getUserId();
+                List<Booking> future = service.getUserBookings(userId).stream()
+                        .filter(booking -> booking.getDate().isAfter(today))
+                        .toList();
+                if (!future.isEmpty()
+                        && service.cancelBooking(future.get(random.nextInt(future.size())).getBookingId())) {
+                    cancelled++;
+                    mix(1);
+                }
+            }
+            case CHECK_IN -> {
+                String userId = users.get(action.user()).getUserId();
+                for (Booking booking : service.getBookingsForDate(today)) {
+                    if (booking.getUser().getUserId().equals(userId)) {
+                        try {
+                            service.checkIn(booking.getBookingId());
+                            checkedIn++;
+                            mix(2);
+                        } catch (Exception e) {
+                            mix(3);
+                        }
+                    }
+                }
+            }
+            case RECLAIM -> {
+                int count = service.reclaimNoShows().size();
+                reclaimed += count;
+                mix(count);
+            }
+            case READ -> mix(service.getAvailableSeats(today.plusDays(action.dayOffset())).size());
+        }
+        latencies.get(action.kind()).record(System.nanoTime() - start);
+    }
+    
+    private void book(Action action, Seat seat, LocalDate today) {
+        BookingResult result = service.tryBookSeat(users.get(action.user()).getUserId(), seat.getSeatId(),
+                                                   today.plusDays(action.dayOffset()));
+        if (result.isBooked()) {
+            booked++;
+            mix(result.getBookingId().hashCode());
+        } else {
+            rejections.merge(result.getRejection(), 1L, Long::sum);
+            mix(100 + result.getRejection().ordinal());
+        }
+    }
+    
+    private void mix(long value) {
+        checksum = checksum * 31 + value;
+    }
+    
+    /**
+     * Checks the booking invariants for every date that can hold bookings as of today.
+     */
+    private void checkInvariants(LocalDate today) {
+        for (LocalDate date = today; !date.isAfter(today.plusDays(ADVANCE_DAYS + 1)); date = date.plusDays(1)) {
+            List<Booking> bookings = service.getBookingsForDate(date);
+            Set<String> seatIds = new HashSet<>();
+            Set<String> userIds = new HashSet<>();
+            boolean closed = !service.getPolicy().allowsDate(date);
+            for (Booking booking : bookings) {
+                if (!seatIds.add(booking.getSeat().getSeatId())) {
+                    violations.add("Seat " + booking.getSeat().getSeatId() + " double booked on " + date);
+                }
+                if (!userIds.add(booking.getUser().getUserId())) {
+                    violations.add("User " + booking.getUser().getUserId() + " has two seats on " + date);
+                }
+                if (closed) {
+                    violations.add("Booking " + booking.getBookingId() + " on a day the office is closed");
+                } else if (booking.getUser().getBatch() != service.getAllowedBatchForDate(date)) {
+                    violations.add("Booking " + booking.getBookingId() + " outside the batch rotation");
+                }
+            }
+            if (service.getAvailableSeats(date).size() + bookings.size() != config.seats()) {
+                violations.add("Available and booked seats do not add up on " + date);
+            }
+        }
+    }
+    
+    /**
+     * Lays seats out in rows of 10; the first 80% are FIXED, the rest FLOATER.
+     */
+    private static List<Seat> createSeats(int count) {
+        int fixed = count * 4 / 5;
+        String format = count > 99 ? "S%03d" : "S%02d";
+        List<Seat> seats = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            seats.add(new Seat(String.format(format, i + 1), i < fixed ? SeatType.FIXED : SeatType.FLOATER,
+                               i / 10 + 1, i % 10 + 1, i));
+        }
+        return seats;
+    }
+    
+    /**
+     * Spreads users evenly over the squads, and so over both batches.
+     */
+    private static List<User> createUsers(int count) {
+        Squad[] squads = Squad.values();
+        String format = count > 99 ? "U%04d" : "U%02d";
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String userId = String.format(format, i + 1);
+            users.add(new User(userId, "User " + (i + 1), squads[i % squads.length], i));
+        }
+        return users;
+    }
+    
+    /**
+     * Outcome of a simulation run.
+     */
+    public record Report(Config config, long operations, long wallNanos, long booked, long cancelled,
+                         long checkedIn, long reclaimed, Map<RejectionReason, Long> rejections,
+                         Map<String, LatencyHistogram> latencies, List<String> violations, long checksum) {
+        
+        public void print() {
+            System.out.printf("  operations:           %,d in %.0f ms (%,.0f ops/s)%n", operations,
+                              wallNanos / 1e6, operations / (wallNanos / 1e9));
+            System.out.printf("  booked:               %,d%n", booked);
+            System.out.printf("  cancelled:            %,d%n", cancelled);
+            System.out.printf("  checked in:           %,d%n", checkedIn);
+            System.out.printf("  reclaimed no-shows:   %,d%n", reclaimed);
+            
+            System.out.println("\n  rejections:");
+            rejections.forEach((reason, count) -> System.out.printf("    %-22s %,d%n", reason, count));
+            
+            System.out.println("\n  latency (µs)          p50      p99    p99.9      max");
+            latencies.forEach((kind, histogram) -> {
+                if (histogram.getCount() > 0) {
+                    System.out.printf("    %-16s %8.1f %8.1f %8.1f %8.1f%n", kind,
+                                      histogram.getValueAtPercentile(50) / 1e3,
+                                      histogram.getValueAtPercentile(99) / 1e3,
+                                      histogram.getValueAtPercentile(99.9) / 1e3,
+                                      histogram.getMax() / 1e3);
+                }
+            });
+            
+            System.out.println();
+            if (violations.isEmpty()) {
+                System.out.println("  ✅ Invariants held: no double bookings, one seat per user per day");
+            } else {
+                System.out.println("  ❌ " + violations.size() + " invariant violations, first: " + violations.get(0));
+            }
+            System.out.printf("  checksum:             %016x%n", checksum);
+        }
+    }
+}
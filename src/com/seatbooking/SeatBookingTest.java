@@ -1,12 +1,76 @@
 package com.seatbooking;
 
 import com.seatbooking.model.*;
+import com.seatbooking.service.AdmissionController;
+import com.seatbooking.service.AuditEvent;
+import com.seatbooking.service.AuditLog;
+import com.seatbooking.service.AvailabilityMatrix;
+import com.seatbooking.service.AvailabilitySnapshot;
 import com.seatbooking.service.BookingException;
+import com.seatbooking.service.BookingClient;
+import com.seatbooking.service.BookingListener;
+import com.seatbooking.service.BookingMetrics;
+import com.seatbooking.service.BookingPersistence;
+import com.seatbooking.service.BookingPipeline;
+import com.seatbooking.service.BookingPolicy;
+import com.seatbooking.service.BookingRepository;
+import com.seatbooking.service.BookingResult;
+import com.seatbooking.service.BookingServer;
 import com.seatbooking.service.BookingService;
+import com.seatbooking.service.BookingTransfer;
+import com.seatbooking.service.FileNotificationSink;
+import com.seatbooking.service.HolidayCalendar;
+import com.seatbooking.service.Notification;
+import com.seatbooking.service.NotificationOutbox;
+import com.seatbooking.service.NotificationSink;
+import com.seatbooking.service.OffHeapBookingStore;
+import com.seatbooking.service.RejectionReason;
+import com.seatbooking.service.ReplicaFollower;
+import com.seatbooking.service.ReplicationLeader;
+import com.seatbooking.service.ShardedBookingService;
+import com.seatbooking.ui.TerminalServer;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.DayOfWeek;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
 
 /**
  * Simple test class to verify core functionality of the Seat Booking System.
@@ -14,10 +78,21 @@ import java.util.List;
  */
 public class SeatBookingTest {
     
+    // Tests 1-7 share a service whose clock is pinned to this Monday morning
+    private static final LocalDate TODAY = LocalDate.of(2026, 3, 2);
+    
     public static void main(String[] args) {
+        boolean assertionsEnabled = false;
+        assert assertionsEnabled = true;
+        if (!assertionsEnabled) {
+            System.err.println("❌ Assertions are disabled; run with: java -ea com.seatbooking.SeatBookingTest");
+            System.exit(1);
+        }
+        
         System.out.println("🧪 Starting Seat Booking System Tests...\n");
         
-        BookingService bookingService = new BookingService();
+        BookingService bookingService = new BookingService(
+                new MutableClock(TODAY.atTime(8, 0).toInstant(ZoneOffset.UTC)));
         
         // Test 1: Basic seat initialization
         testSeatInitialization(bookingService);
@@ -40,6 +115,81 @@ public class SeatBookingTest {
         // Test 7: Booking cancellation
         testBookingCancellation(bookingService);
         
+        // Test 8: No-show reclamation
+        testNoShowReclamation();
+        
+        // Test 9: Cached availability snapshots
+        testAvailabilitySnapshots();
+        
+        // Test 10: Lock-free reads under concurrent writes
+        testConcurrentReadConsistency();
+        
+        // Test 11: Sharded booking service
+        testShardedBooking();
+        
+        // Test 12: Leader/follower replication
+        testReplication();
+        
+        // Test 13: Operation metrics
+        testMetrics();
+        
+        // Test 14: Result-based booking API
+        testBookingResults();
+        
+        // Test 15: Configurable booking policy
+        testBookingPolicy();
+        
+        // Test 16: Holidays and office closures
+        testHolidayCalendar();
+        
+        // Test 17: Audit trail
+        testAuditLog();
+        
+        // Test 18: Off-heap booking archive
+        testOffHeapStore();
+        
+        // Test 19: Compact model objects
+        testCompactModel();
+        
+        // Test 20: Deterministic traffic simulation
+        testSimulation();
+        
+        // Test 21: Availability across a date range
+        testAvailabilityMatrix();
+        
+        // Test 22: Free-seat search
+        testSeatSearch();
+        
+        // Test 23: Atomic seat moves and swaps
+        testMoveAndSwap();
+        
+        // Test 24: Single-writer booking pipeline
+        testBookingPipeline();
+        
+        // Test 25: Binary protocol over NIO
+        testBookingServer();
+        
+        // Test 26: Terminal sessions over TCP
+        testTerminalServer();
+        
+        // Test 27: Batch command mode
+        testCommandMode();
+        
+        // Test 28: Rate limiting and admission control
+        testAdmissionControl();
+        
+        // Test 29: Write-behind persistence to a repository
+        testPersistence();
+        
+        // Test 30: Bulk import and export
+        testBulkTransfer();
+        
+        // Test 31: Idempotency keys
+        testIdempotencyKeys();
+        
+        // Test 32: Notification outbox
+        testNotificationOutbox();
+        
         System.out.println("\n🎉 All tests completed successfully!");
         System.out.println("✅ The Seat Booking System is ready to use!");
     }
@@ -116,7 +266,7 @@ public class SeatBookingTest {
             
             System.out.println("  ✅ Dynamic week calculation working");
             System.out.println("  ✅ Mon-Wed vs Thu-Fri batch rotation validated\n");
-            
+        
         } catch (Exception e) {
             System.err.println("  ❌ Batch rotation test failed: " + e.getMessage());
         }
@@ -127,7 +277,7 @@ public class SeatBookingTest {
         
         try {
             // Find a valid working day
-            LocalDate tomorrow = LocalDate.now().plusDays(1);
+            LocalDate tomorrow = TODAY.plusDays(1);
             while (tomorrow.getDayOfWeek() == DayOfWeek.SATURDAY || 
                    tomorrow.getDayOfWeek() == DayOfWeek.SUNDAY) {
                 tomorrow = tomorrow.plusDays(1);
@@ -146,7 +296,7 @@ public class SeatBookingTest {
             
             System.out.println("  ✅ Successfully booked seat S01 for " + userId);
             System.out.println("  ✅ Generated booking ID: " + bookingId + "\n");
-            
+        
         } catch (Exception e) {
             System.err.println("  ❌ Successful booking test failed: " + e.getMessage());
         }
@@ -156,7 +306,7 @@ public class SeatBookingTest {
         System.out.println("🔍 Test 5: Validation Rules");
         
         // Test weekend booking prevention
-        LocalDate saturday = LocalDate.now();
+        LocalDate saturday = TODAY;
         while (saturday.getDayOfWeek() != DayOfWeek.SATURDAY) {
             saturday = saturday.plusDays(1);
         }
@@ -171,7 +321,11 @@ public class SeatBookingTest {
         
         // Test past date booking prevention
         try {
-            LocalDate yesterday = LocalDate.now().minusDays(1);
+            LocalDate yesterday = TODAY.minusDays(1);
+            while (yesterday.getDayOfWeek() == DayOfWeek.SATURDAY || 
+                   yesterday.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                yesterday = yesterday.minusDays(1);
+            }
             bookingService.bookSeat("U01", "S03", yesterday);
             assert false : "Should not allow past date booking";
         } catch (BookingException e) {
@@ -185,7 +339,7 @@ public class SeatBookingTest {
     private static void testSeatAvailability(BookingService bookingService) {
         System.out.println("🔍 Test 6: Seat Availability");
         
-        LocalDate testDate = LocalDate.now().plusDays(2);
+        LocalDate testDate = TODAY.plusDays(2);
         while (testDate.getDayOfWeek() == DayOfWeek.SATURDAY || 
                testDate.getDayOfWeek() == DayOfWeek.SUNDAY) {
             testDate = testDate.plusDays(1);
@@ -205,7 +359,7 @@ public class SeatBookingTest {
         
         try {
             // Create a booking first
-            LocalDate futureDate = LocalDate.now().plusDays(3);
+            LocalDate futureDate = TODAY.plusDays(3);
             while (futureDate.getDayOfWeek() == DayOfWeek.SATURDAY || 
                    futureDate.getDayOfWeek() == DayOfWeek.SUNDAY) {
                 futureDate = futureDate.plusDays(1);
@@ -227,9 +381,2226 @@ public class SeatBookingTest {
             
             System.out.println("  ✅ Booking cancellation working");
             System.out.println("  ✅ Seat availability updated after cancellation\n");
-            
+        
         } catch (Exception e) {
             System.err.println("  ❌ Booking cancellation test failed: " + e.getMessage());
         }
     }
+    
+    private static void testNoShowReclamation() {
+        System.out.println("🔍 Test 8: No-show Reclamation");
+        
+        try {
+            // Monday morning before check-in opens
+            LocalDate monday = LocalDate.of(2026, 3, 2);
+            MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+            BookingService service = new BookingService(clock);
+            
+            Batch allowedBatch = service.getAllowedBatchForDate(monday);
+            String firstUser = allowedBatch == Batch.BATCH_1 ? "U01" : "U05";
+            String secondUser = allowedBatch == Batch.BATCH_1 ? "U02" : "U06";
+            
+            String checkedIn = service.bookSeat(firstUser, "S10", monday);
+            String noShow = service.bookSeat(secondUser, "S11", monday);
+            assert !checkedIn.equals(noShow) : "Back-to-back bookings must get distinct IDs";
+            
+            // Nothing is reclaimed before the grace period expires
+            clock.advance(Duration.ofMinutes(80));
+            service.checkIn(checkedIn);
+            assert service.reclaimNoShows().isEmpty() : "No booking should be reclaimed at 09:20";
+            
+            clock.advance(Duration.ofMinutes(11));
+            List<String> reclaimed = service.reclaimNoShows();
+            
+            assert reclaimed.equals(List.of(noShow)) : "Expected only the no-show to be reclaimed";
+            assert service.isSeatBooked("S10", monday) : "Checked-in seat should stay booked";
+            assert !service.isSeatBooked("S11", monday) : "No-show seat should be released";
+            assert service.reclaimNoShows().isEmpty() : "A reclaimed booking is only processed once";
+            
+            // The clock in another zone keeps the same time
+            Clock paris = clock.withZone(ZoneId.of("Europe/Paris"));
+            clock.advance(Duration.ofMinutes(5));
+            assert paris.instant().equals(clock.instant()) : "Zoned clock should move with the original";
+            assert LocalDateTime.now(paris).equals(monday.atTime(10, 36)) : "Zoned clock should read Paris time";
+            
+            System.out.println("  ✅ Unchecked booking released after the grace period");
+            System.out.println("  ✅ Checked-in booking kept\n");
+        
+        } catch (Exception e) {
+            System.err.println("  ❌ No-show reclamation test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testAvailabilitySnapshots() {
+        System.out.println("🔍 Test 9: Availability Snapshots");
+        
+        try {
+            LocalDate monday = LocalDate.of(2026, 3, 2);
+            BookingService service = new BookingService(
+                    new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+            String userId = service.getAllowedBatchForDate(monday) == Batch.BATCH_1 ? "U01" : "U05";
+            
+            AvailabilitySnapshot before = service.getAvailabilitySnapshot(monday);
+            assert before == service.getAvailabilitySnapshot(monday) : "Repeated reads should share a snapshot";
+            assert before.getAvailableSeats() == service.getAvailableSeats(monday) 
+                : "getAvailableSeats should serve the cached snapshot";
+            
+            String bookingId = service.bookSeat(userId, "S20", monday);
+            AvailabilitySnapshot afterBooking = service.getAvailabilitySnapshot(monday);
+            
+            assert afterBooking.getVersion() > before.getVersion() : "Booking should bump the version";
+            assert before.getAvailableSeats().size() == 50 : "Old snapshot must not change";
+            assert afterBooking.getAvailableSeats().size() == 49 : "Expected 49 available seats";
+            assert afterBooking.getBookings().size() == 1 : "Expected 1 booking in snapshot";
+            
+            try {
+                afterBooking.getBookings().clear();
+                assert false : "Snapshot bookings should be immutable";
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            
+            service.cancelBooking(bookingId);
+            AvailabilitySnapshot afterCancel = service.getAvailabilitySnapshot(monday);
+            assert afterCancel.getVersion() > afterBooking.getVersion() : "Cancel should bump the version";
+            assert afterCancel.getAvailableSeats().size() == 50 : "Seat should be free after cancel";
+            
+            System.out.println("  ✅ Repeated reads served from the same immutable snapshot");
+            System.out.println("  ✅ Versions bumped on booking and cancellation\n");
+        
+        } catch (Exception e) {
+            System.err.println("  ❌ Availability snapshot test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testConcurrentReadConsistency() {
+        System.out.println("🔍 Test 10: Concurrent Read Consistency");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        List<String> writerUsers = usersAllowedOn(service, monday);
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        
+        // Writers: each user repeatedly books a random seat and cancels it again
+        for (String userId : writerUsers) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000 && failure.get() == null; i++) {
+                    String seatId = String.format("S%02d", 1 + random.nextInt(40));
+                    try {
+                        String bookingId = service.bookSeat(userId, seatId, monday);
+                        if (!service.cancelBooking(bookingId)) {
+                            failure.compareAndSet(null, "Cancel of own booking failed: " + bookingId);
+                        }
+                    } catch (BookingException e) {
+                        // Seat taken by another writer; expected under contention
+                    }
+                }
+            }));
+        }
+        
+        // Readers: every snapshot must be internally consistent and versions never go back
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                long lastVersion = -1;
+                while (running.get() && failure.get() == null) {
+                    AvailabilitySnapshot first = service.getAvailabilitySnapshot(monday);
+                    String probe = String.format("S%02d", 1 + ThreadLocalRandom.current().nextInt(40));
+                    boolean probeBooked = service.isSeatBooked(probe, monday);
+                    AvailabilitySnapshot second = service.getAvailabilitySnapshot(monday);
+                    
+                    String problem = checkSnapshot(first, 50);
+                    if (problem == null && first.getVersion() < lastVersion) {
+                        problem = "Version went backwards: " + first.getVersion() + " < " + lastVersion;
+                    }
+                    // With no write in between, isSeatBooked must agree with the snapshot
+                    if (problem == null && first.getVersion() == second.getVersion()
+                            && probeBooked == first.getAvailableSeats().stream()
+                                    .anyMatch(seat -> seat.getSeatId().equals(probe))) {
+                        problem = "isSeatBooked disagrees with snapshot for " + probe;
+                    }
+                    if (problem != null) {
+                        failure.compareAndSet(null, problem);
+                    }
+                    lastVersion = second.getVersion();
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+        
+        threads.forEach(Thread::start);
+        try {
+            for (int i = 0; i < writerUsers.size(); i++) {
+                threads.get(i).join();
+            }
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        AvailabilitySnapshot last = service.getAvailabilitySnapshot(monday);
+        assert failure.get() == null : failure.get();
+        assert last.getBookings().isEmpty() : "All bookings were cancelled";
+        assert last.getAvailableSeats().size() == 50 : "All seats should be free at the end";
+        
+        System.out.println("  ✅ " + reads.get() + " lock-free reads saw only consistent snapshots");
+        System.out.println("  ✅ No half-applied bookings or cancellations observed\n");
+    }
+    
+    private static void testShardedBooking() {
+        System.out.println("🔍 Test 11: Sharded Booking Service");
+        
+        try {
+            LocalDate monday = LocalDate.of(2026, 3, 2);
+            ShardedBookingService sharded = new ShardedBookingService(
+                    3, new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+            String userId = sharded.getAllowedBatchForDate(monday) == Batch.BATCH_1 ? "U01" : "U05";
+            
+            // S01 (row 1) and S35 (row 4) live on different floors
+            String bookingId = sharded.bookSeat(userId, "S01", monday);
+            try {
+                sharded.bookSeat(userId, "S35", monday);
+                assert false : "Second booking on another shard should be rejected";
+            } catch (BookingException e) {
+                assert e.getMessage().contains("already has a booking") : "Expected per-user rule message";
+            }
+            
+            assert sharded.getAvailableSeats(monday).size() == 49 : "Expected 49 available seats";
+            assert sharded.getUserBookings(userId).size() == 1 : "Expected 1 booking for user";
+            assert sharded.cancelBooking(bookingId) : "Cancel should be routed to the owning shard";
+            
+            // Once cancelled, the user may book on another floor
+            String moved = sharded.bookSeat(userId, "S35", monday);
+            assert sharded.isSeatBooked("S35", monday) : "S35 should be booked";
+            assert sharded.getUserBookings(userId).get(0).getBookingId().equals(moved) 
+                : "Scatter-gather should find the new booking";
+            
+            System.out.println("  ✅ Operations routed to " + sharded.getShardCount() + " floor shards");
+            System.out.println("  ✅ One booking per user per day enforced across shards\n");
+        
+        } catch (Exception e) {
+            System.err.println("  ❌ Sharded booking test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testReplication() {
+        System.out.println("🔍 Test 12: Leader/Follower Replication");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService leaderService = new BookingService(clock);
+        List<String> writerUsers = usersAllowedOn(leaderService, monday);
+        // Mon-Wed share a batch
+        List<LocalDate> dates = List.of(monday, monday.plusDays(1), monday.plusDays(2));
+        
+        try (ReplicationLeader leader = new ReplicationLeader(leaderService, 0);
+             ReplicaFollower early = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+            
+            List<Thread> writers = new ArrayList<>();
+            for (String userId : writerUsers) {
+                writers.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<String> mine = new ArrayList<>();
+                    for (int i = 0; i < 2_000; i++) {
+                        LocalDate date = dates.get(random.nextInt(dates.size()));
+                        String seatId = String.format("S%02d", 1 + random.nextInt(40));
+                        try {
+                            mine.add(leaderService.bookSeat(userId, seatId, date));
+                        } catch (BookingException e) {
+                            // Seat or day taken; expected under contention
+                        }
+                        if (!mine.isEmpty() && random.nextBoolean()) {
+                            leaderService.cancelBooking(mine.remove(random.nextInt(mine.size())));
+                        }
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            
+            // The late follower joins mid-stream and catches up from a snapshot
+            Thread.sleep(20);
+            try (ReplicaFollower late = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+                
+                long head = leader.getSequence();
+                assert early.awaitSequence(head, 10_000) : "Early follower did not catch up: " + early.getFailure();
+                assert late.awaitSequence(head, 10_000) : "Late follower did not catch up: " + late.getFailure();
+                
+                for (LocalDate date : dates) {
+                    Set<String> expected = bookingKeys(leaderService, date);
+                    assert expected.equals(bookingKeys(early.getService(), date)) : "Early follower diverged on " + date;
+                    assert expected.equals(bookingKeys(late.getService(), date)) : "Late follower diverged on " + date;
+                }
+                assert early.getLagEvents() == 0 && late.getLagEvents() == 0 : "Followers should report no lag";
+                
+                System.out.println("  ✅ Two followers converged on " + head + " leader events");
+                System.out.println("  ✅ Late follower caught up from snapshot (last event delay " 
+                                   + late.getLagMillis() + " ms)");
+            }
+        
+        } catch (Exception e) {
+            System.err.println("  ❌ Replication test failed: " + e.getMessage());
+        }
+        
+        // A follower whose queue overflows is disconnected, and resyncs by connecting again
+        try (ReplicationLeader leader = new ReplicationLeader(leaderService, 0, 8);
+             ReplicaFollower stalled = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+            assert stalled.awaitSequence(0, 10_000) : "Follower should apply the snapshot: " + stalled.getFailure();
+            // Thursday belongs to the other batch, which the writers above left alone
+            LocalDate thursday = monday.plusDays(3);
+            String userId = usersAllowedOn(leaderService, thursday).get(0);
+            synchronized (leader) {
+                // The sender blocks on the leader for its next heartbeat, so nothing is drained meanwhile
+                Thread.sleep(250);
+                for (int i = 0; i < 10; i++) {
+                    leaderService.cancelBooking(leaderService.bookSeat(userId, "S01", thursday));
+                }
+            }
+            assert !stalled.awaitSequence(leader.getSequence(), 10_000) && stalled.getFailure() != null 
+                : "Overflowing follower should be disconnected";
+            assert leader.getFollowerCount() == 0 : "Overflowing follower should be dropped";
+            
+            try (ReplicaFollower resynced = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+                assert resynced.awaitSequence(leader.getSequence(), 10_000) : "Resync failed: " + resynced.getFailure();
+                assert bookingKeys(leaderService, monday).equals(bookingKeys(resynced.getService(), monday)) 
+                    : "Resynced follower diverged";
+            }
+            System.out.println("  ✅ Follower that fell too far behind was disconnected and resynced\n");
+        } catch (Exception e) {
+            System.err.println("  ❌ Replication overflow test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testMetrics() {
+        System.out.println("🔍 Test 13: Operation Metrics");
+        
+        try {
+            LocalDate monday = LocalDate.of(2026, 3, 2);
+            BookingService service = new BookingService(
+                    new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+            service.getMetrics().setSampleInterval(1);
+            boolean batch1 = service.getAllowedBatchForDate(monday) == Batch.BATCH_1;
+            String userId = batch1 ? "U01" : "U05";
+            String otherBatchUser = batch1 ? "U05" : "U01";
+            
+            String bookingId = service.bookSeat(userId, "S07", monday);
+            expectRejection(() -> service.bookSeat(batch1 ? "U02" : "U06", "S07", monday), RejectionReason.SEAT_TAKEN);
+            expectRejection(() -> service.bookSeat(otherBatchUser, "S08", monday), RejectionReason.WRONG_BATCH);
+            expectRejection(() -> service.bookSeat(userId, "S09", monday.minusDays(3)), RejectionReason.PAST_DATE);
+            expectRejection(() -> service.bookSeat(userId, "S09", monday.plusDays(5)), RejectionReason.WEEKEND);
+            service.getAvailableSeats(monday);
+            service.cancelBooking(bookingId);
+            
+            BookingMetrics metrics = service.getMetrics();
+            assert metrics.getBookings() == 1 : "Expected 1 successful booking";
+            assert metrics.getCancellations() == 1 : "Expected 1 cancellation";
+            assert metrics.getRejections() == 4 : "Expected 4 rejections";
+            assert metrics.getRejectionCount(RejectionReason.SEAT_TAKEN) == 1 : "Expected 1 seat-taken rejection";
+            assert metrics.getRejectionCount(RejectionReason.WEEKEND) == 1 : "Expected 1 weekend rejection";
+            assert metrics.getBookLatency().getCount() == 5 : "Every bookSeat call should be timed";
+            assert metrics.getAvailabilityLatency().getCount() == 1 : "Availability query should be timed";
+            assert metrics.dump().contains("rejections_total{reason=\"WRONG_BATCH\"} 1") 
+                : "Dump should list rejections by reason";
+            
+            var objectName = metrics.register("test-" + System.nanoTime());
+            Object viaJmx = ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Bookings");
+            assert Long.valueOf(1).equals(viaJmx) : "Bookings attribute should be readable over JMX";
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            
+            System.out.println("  ✅ Rejections counted by typed reason");
+            System.out.println("  ✅ Latency histograms and JMX attributes available\n");
+        
+        } catch (Exception e) {
+            System.err.println("  ❌ Metrics test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testBookingResults() {
+        System.out.println("🔍 Test 14: Result-based Booking API");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        boolean batch1 = service.getAllowedBatchForDate(monday) == Batch.BATCH_1;
+        String userId = batch1 ? "U01" : "U05";
+        String colleague = batch1 ? "U02" : "U06";
+        
+        BookingResult booked = service.tryBookSeat(userId, "S12", monday);
+        assert booked.isBooked() && booked.getBookingId().startsWith("BK") : "Expected a successful result";
+        
+        BookingResult taken = service.tryBookSeat(colleague, "S12", monday);
+        assert taken.getRejection() == RejectionReason.SEAT_TAKEN : "Expected SEAT_TAKEN";
+        assert taken == service.tryBookSeat(colleague, "S12", monday) : "Rejections should be shared constants";
+        assert service.tryBookSeat(userId, "S13", monday).getRejection() == RejectionReason.USER_ALREADY_BOOKED
+            : "Expected USER_ALREADY_BOOKED";
+        assert service.tryBookSeat("U99", "S13", monday).getRejection() == RejectionReason.USER_NOT_FOUND
+            : "Expected USER_NOT_FOUND";
+        assert service.tryBookSeat(colleague, "S45", monday.plusDays(2)).getRejection() 
+            == RejectionReason.FLOATER_NOT_TOMORROW : "Expected FLOATER_NOT_TOMORROW";
+        
+        // The exception-based API keeps its messages
+        try {
+            service.bookSeat(colleague, "S12", monday);
+            assert false : "Expected a rejection";
+        } catch (BookingException e) {
+            assert e.getReason() == RejectionReason.SEAT_TAKEN : "Exception should carry the typed reason";
+            assert e.getMessage().equals("Seat S12 is already booked for " + monday) : "Unexpected message";
+        }
+        
+        System.out.println("  ✅ Outcomes reported as typed results without exceptions");
+        System.out.println("  ✅ bookSeat still throws with descriptive messages\n");
+    }
+    
+    private static void testBookingPolicy() {
+        System.out.println("🔍 Test 15: Configurable Booking Policy");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(13, 0).toInstant(ZoneOffset.UTC));
+        
+        // An office with a one-week horizon and a noon floater release
+        Properties properties = new Properties();
+        properties.setProperty("rules", "past-date, weekend, advance-limit, release-time, batch-rotation");
+        properties.setProperty("advance-limit.days", "7");
+        properties.setProperty("release-time.time", "12:00");
+        properties.setProperty("release-time.seat-types", "FLOATER");
+        BookingPolicy policy = BookingPolicy.fromProperties(properties);
+        assert policy.getChainLength(SeatType.FIXED) == 4 : "Release time should not apply to fixed seats";
+        assert policy.getChainLength(SeatType.FLOATER) == 5 : "Floater chain should hold every rule";
+        
+        BookingService service = new BookingService(clock, policy);
+        boolean batch1 = service.getAllowedBatchForDate(monday) == Batch.BATCH_1;
+        String userId = batch1 ? "U01" : "U05";
+        
+        try {
+            // Same-day floater after the office's noon release; the default policy would refuse it
+            service.bookSeat(userId, "S41", monday);
+            
+            // Ten days ahead is inside the default limit but beyond this office's
+            LocalDate inTenDays = monday.plusDays(10);
+            String allowed = service.getAllowedBatchForDate(inTenDays) == Batch.BATCH_1 ? "U01" : "U05";
+            try {
+                service.bookSeat(allowed, "S01", inTenDays);
+                assert false : "Expected the 7-day advance limit";
+            } catch (BookingException e) {
+                assert e.getReason() == RejectionReason.BEYOND_ADVANCE_LIMIT : "Expected BEYOND_ADVANCE_LIMIT";
+                assert e.getMessage().contains("up to 7 days") : "Message should reflect the configured limit";
+            }
+            
+            // Custom rules slot into the same chain
+            BookingService closedFridays = new BookingService(clock, BookingPolicy.of(List.of(
+                    request -> request.date().getDayOfWeek() == DayOfWeek.FRIDAY ? RejectionReason.WEEKEND : null)));
+            LocalDate friday = monday.plusDays(4);
+            String fridayUser = closedFridays.getAllowedBatchForDate(friday) == Batch.BATCH_1 ? "U01" : "U05";
+            assert closedFridays.tryBookSeat(fridayUser, "S02", friday).getRejection() 
+                == RejectionReason.WEEKEND : "Custom rule should reject Fridays";
+            assert closedFridays.tryBookSeat(fridayUser, "S02", monday.plusDays(30)).isBooked()
+                : "Rules left out of a policy should not apply";
+            
+            // Without the weekend rule the office is open on Saturdays, for reads as well as bookings
+            LocalDate saturday = monday.plusDays(5);
+            assert !policy.allowsDate(saturday) && closedFridays.getPolicy().allowsDate(saturday)
+                : "Only the weekend rule should close Saturdays";
+            String saturdayUser = closedFridays.getAllowedBatchForDate(saturday) == Batch.BATCH_1 ? "U01" : "U05";
+            assert closedFridays.tryBookSeat(saturdayUser, "S03", saturday).isBooked() : "Saturday should be bookable";
+            assert closedFridays.getAvailability(saturday, saturday).getFreeCount(saturday)
+                == closedFridays.getAllSeats().size() - 1 : "Saturday availability should count the free seats";
+            assert closedFridays.nearestFree(0, 0, saturday) != null : "Saturday should have free seats";
+            assert service.getAvailability(saturday, saturday).getFreeCount(saturday) == 0
+                && service.nearestFree(0, 0, saturday) == null : "Closed Saturdays should have no free seats";
+            try {
+                service.getAllowedBatchForDate(saturday);
+                assert false : "No batch books on a closed Saturday";
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+            
+            try {
+                properties.setProperty("rules", "weekend, no-such-rule");
+                BookingPolicy.fromProperties(properties);
+                assert false : "Unknown rules should be refused";
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+            
+            System.out.println("  ✅ Policy loaded from properties overrides the defaults");
+            System.out.println("  ✅ Custom rules and unknown rule names handled\n");
+        } catch (BookingException e) {
+            System.err.println("  ❌ Booking policy test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testHolidayCalendar() {
+        System.out.println("🔍 Test 16: Holidays and Office Closures");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        
+        try {
+            Path csv = Files.createTempFile("holidays", ".csv");
+            Path ics = Files.createTempFile("holidays", ".ics");
+            try {
+                Files.writeString(csv, "date,name,office\n"
+                        + monday.plusDays(1) + ",Founders Day,\n"
+                        + monday.plusDays(2) + ",Network upgrade,London\n"
+                        + monday.plusDays(3) + ",Carnival,Rio\n");
+                Files.writeString(ics, "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\n"
+                        + "DTSTART;VALUE=DATE:20260309\r\nDTEND;VALUE=DATE:20260311\r\n"
+                        + "SUMMARY:Spring\r\n  break\r\nEND:VEVENT\r\n"
+                        + "BEGIN:VEVENT\r\nDTSTART;VALUE=DATE:20260316\r\nSUMMARY:Carnival\r\n"
+                        + "X-OFFICE:Rio\r\nEND:VEVENT\r\n"
+                        + "BEGIN:VEVENT\r\nDTSTART;VALUE=DATE:20260317\r\nSUMMARY:Network upgrade\r\n"
+                        + "X-OFFICE:Paris,london\r\nEND:VEVENT\r\nEND:VCALENDAR\r\n");
+                
+                HolidayCalendar london = HolidayCalendar.load(csv, "London");
+                assert london.isClosed(monday.plusDays(1)) && london.isClosed(monday.plusDays(2)) 
+                    : "Shared and London closures should load";
+                assert !london.isClosed(monday.plusDays(3)) : "Other offices' closures should be skipped";
+                
+                HolidayCalendar spring = HolidayCalendar.load(ics, "London");
+                assert spring.getClosedDays().size() == 3 : "DTEND should be exclusive";
+                assert "Spring break".equals(spring.getName(LocalDate.of(2026, 3, 10))) : "Folded summary expected";
+                assert !spring.isClosed(LocalDate.of(2026, 3, 16)) : "Other offices' events should be skipped";
+                assert spring.isClosed(LocalDate.of(2026, 3, 17)) : "Events listing the office should load";
+                assert HolidayCalendar.load(ics, "Rio").getClosedDays().size() == 3 
+                    : "Events without X-OFFICE should apply to every office";
+                
+                service.setHolidayCalendar(london);
+            } finally {
+                Files.deleteIfExists(csv);
+                Files.deleteIfExists(ics);
+            }
+            
+            // Closed days are refused and have no rotation
+            LocalDate holiday = monday.plusDays(1);
+            String user = service.getAllowedBatchForDate(monday) == Batch.BATCH_1 ? "U01" : "U05";
+            expectRejection(() -> service.bookSeat(user, "S01", holiday), RejectionReason.OFFICE_CLOSED);
+            try {
+                service.getAllowedBatchForDate(holiday);
+                assert false : "Closed days should have no allowed batch";
+            } catch (IllegalArgumentException e) {
+                assert e.getMessage().contains("Founders Day") : "Message should name the closure";
+            }
+            
+            // A new closure cancels that day's bookings in one step
+            LocalDate closing = monday.plusDays(7);
+            String closingUser = service.getAllowedBatchForDate(closing) == Batch.BATCH_1 ? "U01" : "U05";
+            String colleague = closingUser.equals("U01") ? "U02" : "U06";
+            service.bookSeat(closingUser, "S01", closing);
+            service.bookSeat(colleague, "S02", closing);
+            String kept = service.bookSeat(user, "S01", monday);
+            long versionBefore = service.getAvailabilitySnapshot(closing).getVersion();
+            
+            List<Booking> cancelled = service.addClosure(closing, "Office move");
+            assert cancelled.size() == 2 : "Expected both bookings on the closed day to be cancelled";
+            AvailabilitySnapshot after = service.getAvailabilitySnapshot(closing);
+            assert after.getBookings().isEmpty() && after.getVersion() == versionBefore + 1
+                : "Bulk cancellation should publish a single empty snapshot";
+            assert service.getUserBookings(closingUser).stream().noneMatch(b -> b.getDate().equals(closing))
+                : "Cancelled bookings should be gone";
+            assert service.getBookingsForDate(monday).stream().anyMatch(b -> b.getBookingId().equals(kept))
+                : "Other days should be untouched";
+            expectRejection(() -> service.bookSeat(closingUser, "S01", closing), RejectionReason.OFFICE_CLOSED);
+            
+            System.out.println("  ✅ Closures loaded from CSV and iCalendar per office");
+            System.out.println("  ✅ Closed days rejected and bulk-cancelled\n");
+        } catch (IOException | BookingException e) {
+            System.err.println("  ❌ Holiday calendar test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testAuditLog() {
+        System.out.println("🔍 Test 17: Audit Trail and Time-travel Queries");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        Instant start = monday.atTime(8, 0).toInstant(ZoneOffset.UTC);
+        MutableClock clock = new MutableClock(start);
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("audit");
+            String kept;
+            String cancelled;
+            String reclaimed;
+            try (AuditLog audit = new AuditLog(service, directory, 4)) {
+                kept = service.bookSeat(userIds.get(0), "S01", monday);
+                cancelled = service.bookSeat(userIds.get(1), "S02", monday);
+                reclaimed = service.bookSeat(userIds.get(2), "S03", monday);
+                clock.advance(Duration.ofMinutes(30));
+                service.cancelBooking(cancelled);
+                clock.advance(Duration.ofMinutes(35));
+                service.checkIn(kept);
+                clock.advance(Duration.ofMinutes(40));
+                service.reclaimNoShows();
+                
+                assert audit.getEventCount() == 6 && audit.getSegmentCount() == 2 
+                    : "Expected 6 events over 2 segments";
+                checkAuditState(audit, monday, start, kept, cancelled, reclaimed);
+                assert audit.getFailure() == null : "Audit log should be healthy";
+            }
+            
+            // Reopening the directory rebuilds the index from the segment files
+            try (AuditLog reopened = new AuditLog(new BookingService(clock), directory, 4)) {
+                assert reopened.getEventCount() == 6 : "Reopened log should hold all events";
+                checkAuditState(reopened, monday, start, kept, cancelled, reclaimed);
+            }
+            
+            System.out.println("  ✅ Bookings, cancellations, check-ins and no-shows recorded");
+            System.out.println("  ✅ State of a date rebuilt as of any time, also after reopening\n");
+        } catch (IOException | BookingException e) {
+            System.err.println("  ❌ Audit trail test failed: " + e.getMessage());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    private static void testOffHeapStore() {
+        System.out.println("🔍 Test 18: Off-heap Booking Archive");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        OffHeapBookingStore store = new OffHeapBookingStore(service.getAllSeats(), 
+                                                            service.getAllUsers().values(), 2);
+        
+        try {
+            List<Booking> booked = new ArrayList<>();
+            for (int day = 0; day < 3; day++) {
+                LocalDate date = monday.plusDays(day);
+                String userId = service.getAllowedBatchForDate(date) == Batch.BATCH_1 ? "U01" : "U05";
+                String bookingId = service.bookSeat(userId, "S0" + (day + 1), date);
+                booked.add(service.getBookingsForDate(date).get(0));
+                assert booked.get(day).getBookingId().equals(bookingId) : "Unexpected booking";
+            }
+            
+            // Tuesday also has a booking the store cannot encode, which stays on the heap alone
+            LocalDate tuesday = monday.plusDays(1);
+            String tuesdayUser = booked.get(1).getUser().getUserId();
+            String otherUser = usersAllowedOn(service, tuesday).stream()
+                    .filter(userId -> !userId.equals(tuesdayUser))
+                    .findFirst()
+                    .orElseThrow();
+            Booking legacy = service.restoreBooking("LEGACY-7", otherUser, "S09", tuesday, monday.atTime(7, 0));
+            
+            clock.advance(Duration.ofDays(3));
+            assert service.archiveBookingsBefore(monday.plusDays(2), store) == 2 : "Expected 2 archived bookings";
+            assert service.getBookingsForDate(monday).isEmpty() : "Archived dates should leave the heap";
+            assert service.getBookingsForDate(monday.plusDays(2)).size() == 1 : "Later dates should stay";
+            assert service.getBookingsForDate(tuesday).equals(List.of(legacy)) 
+                : "Only the unencodable booking should stay: " + service.getBookingsForDate(tuesday);
+            assert !service.isSeatBooked("S02", tuesday) && service.isSeatBooked("S09", tuesday) 
+                : "The archived booking's seat should be free on the heap";
+            assert service.getUserBookings(tuesdayUser).stream().noneMatch(b -> b.getDate().equals(tuesday))
+                && service.restoreBooking("BK900", tuesdayUser, "S03", tuesday, monday.atTime(7, 0)) != null
+                : "The archived booking's user should hold nothing on the heap";
+            assert !service.cancelBooking(booked.get(1).getBookingId()) && service.cancelBooking(legacy.getBookingId())
+                : "Archived bookings are gone from the heap; unencodable ones are still live";
+            
+            for (Booking original : booked.subList(0, 2)) {
+                int record = store.find(original.getBookingId());
+                assert record >= 0 : "Archived booking should be found";
+                OffHeapBookingStore.BookingView view = store.newView().moveTo(record);
+                assert view.getBookingId().equals(original.getBookingId()) 
+                    && view.getUser() == original.getUser() && view.getSeat() == original.getSeat()
+                    && view.getDate().equals(original.getDate())
+                    && view.getBookingTime().equals(original.getBookingTime()) : "View should match the booking";
+                assert view.toBooking().equals(original) : "Copy should equal the original";
+            }
+            assert store.countOnDate(monday) == 1 : "Expected one archived booking on Monday";
+            assert store.find("BK1") == -1 && store.find("nope") == -1 : "Unknown IDs should not be found";
+            
+            // Many records across chunks and index resizes
+            OffHeapBookingStore large = new OffHeapBookingStore(service.getAllSeats(), 
+                                                                service.getAllUsers().values(), 64);
+            List<Seat> seats = service.getAllSeats();
+            User user = service.getAllUsers().get("U01");
+            for (int i = 0; i < 5000; i++) {
+                large.append(new Booking("BK" + (1_000_000 + i * 7), user, seats.get(i % seats.size()),
+                                         monday.plusDays(i % 30), monday.atTime(8, 0)));
+            }
+            for (int i = 0; i < 5000; i++) {
+                assert large.find("BK" + (1_000_000 + i * 7)) == i : "Index should find record " + i;
+            }
+            AtomicLong visited = new AtomicLong();
+            large.forEach(view -> visited.incrementAndGet());
+            assert visited.get() == 5000 : "forEach should visit every record";
+            
+            System.out.println("  ✅ Past bookings archived off-heap and read through flyweight views");
+            System.out.println("  ✅ ID index survives growth over thousands of records\n");
+        } catch (BookingException e) {
+            System.err.println("  ❌ Off-heap store test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testCompactModel() {
+        System.out.println("🔍 Test 19: Compact Model Objects");
+        
+        BookingService service = new BookingService();
+        List<Seat> seats = service.getAllSeats();
+        for (int i = 0; i < seats.size(); i++) {
+            assert seats.get(i).getOrdinal() == i : "Seat ordinals should be dense layout positions";
+        }
+        Set<Integer> userOrdinals = service.getAllUsers().values().stream()
+                .map(User::getOrdinal)
+                .collect(Collectors.toSet());
+        assert userOrdinals.size() == service.getAllUsers().size() 
+            && userOrdinals.stream().allMatch(o -> o >= 0 && o < userOrdinals.size()) : "User ordinals should be dense";
+        
+        // Dates and times survive the primitive encoding exactly
+        User user = service.getAllUsers().get("U01");
+        java.time.LocalDateTime bookedAt = java.time.LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123_456_789);
+        Booking booking = new Booking("BK42", user, seats.get(3), LocalDate.of(2026, 3, 2), bookedAt);
+        assert booking.getDate().equals(LocalDate.of(2026, 3, 2)) : "Date should round-trip";
+        assert booking.getEpochDay() == LocalDate.of(2026, 3, 2).toEpochDay() : "Epoch day should match";
+        assert booking.getBookingTime().equals(bookedAt) : "Booking time should round-trip to the nanosecond";
+        
+        // Identity is still the ID
+        Booking same = new Booking("BK42", user, seats.get(4), LocalDate.of(2026, 3, 3), bookedAt);
+        assert booking.equals(same) && booking.hashCode() == same.hashCode() : "Equal IDs should be equal bookings";
+        assert new Seat("S04", SeatType.FLOATER, 9, 9).equals(seats.get(3)) : "Seats compare by ID";
+        assert new User("U01", "Other", Squad.values()[1]).hashCode() == user.hashCode() : "Users hash by ID";
+        
+        // Seats given without ordinals are numbered by the service; stores whose seat order differs
+        // from the seats' own ordinals still encode by their own order
+        List<Seat> unnumbered = List.of(new Seat("A1", SeatType.FIXED, 1, 1), new Seat("A2", SeatType.FIXED, 1, 2));
+        BookingService office = new BookingService(Clock.systemUTC(), unnumbered, List.of(user), 
+                                                   BookingPolicy.of(List.of()));
+        assert office.getAllSeats().get(1).getOrdinal() == 1 : "Service should number its seats";
+        List<Seat> reversed = new ArrayList<>(seats);
+        Collections.reverse(reversed);
+        OffHeapBookingStore store = new OffHeapBookingStore(reversed, service.getAllUsers().values(), 4);
+        int record = store.append(booking);
+        assert store.newView().moveTo(record).getSeat() == seats.get(3) : "Store should use its own seat order";
+        
+        System.out.println("  ✅ Dense ordinals on seats and users");
+        System.out.println("  ✅ Primitive dates round-trip exactly; identity unchanged\n");
+    }
+    
+    private static void testSimulation() {
+        System.out.println("🔍 Test 20: Deterministic Traffic Simulation");
+        
+        SeatBookingSimulation.Config config = new SeatBookingSimulation.Config(7, 120, 60, 2);
+        SeatBookingSimulation.Report first = new SeatBookingSimulation(config).run();
+        SeatBookingSimulation.Report second = new SeatBookingSimulation(config).run();
+        
+        assert first.violations().isEmpty() : "Invariant violated: " + first.violations();
+        assert first.booked() > 0 && first.reclaimed() > 0 && first.cancelled() > 0 
+            : "Simulation should book, reclaim and cancel";
+        assert first.rejections().containsKey(RejectionReason.SEAT_TAKEN) 
+            && first.rejections().containsKey(RejectionReason.WRONG_BATCH) : "Expected contention and rotation";
+        assert first.checksum() == second.checksum() && first.booked() == second.booked()
+            && first.rejections().equals(second.rejections()) : "Same seed should replay identically";
+        assert new SeatBookingSimulation(new SeatBookingSimulation.Config(8, 120, 60, 2)).run().checksum() 
+            != first.checksum() : "Different seeds should differ";
+        
+        System.out.println("  ✅ " + first.operations() + " operations, invariants held");
+        System.out.println("  ✅ Same seed replays identically\n");
+    }
+    
+    private static void testAvailabilityMatrix() {
+        System.out.println("🔍 Test 21: Availability Across a Date Range");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        
+        try {
+            for (int day = 0; day < 14; day++) {
+                LocalDate date = monday.plusDays(day);
+                if (date.getDayOfWeek().getValue() >= 6) {
+                    continue;
+                }
+                String user = service.getAllowedBatchForDate(date) == Batch.BATCH_1 ? "U01" : "U05";
+                service.bookSeat(user, String.format("S%02d", day % 5 + 1), date);
+            }
+            service.addClosure(monday.plusDays(3), "Fire drill");
+            
+            AvailabilityMatrix matrix = service.getAvailability(monday, monday.plusDays(13));
+            assert matrix.getDayCount() == 14 && matrix.getTo().equals(monday.plusDays(13)) : "Expected two weeks";
+            for (int day = 0; day < 14; day++) {
+                LocalDate date = monday.plusDays(day);
+                if (date.getDayOfWeek().getValue() >= 6 || day == 3) {
+                    assert matrix.getFreeCount(date) == 0 : "Weekends and closures should have no free seats";
+                } else {
+                    assert matrix.getFreeSeats(date).equals(service.getAvailableSeats(date))
+                        : "Matrix should match per-date availability on " + date;
+                }
+            }
+            assert !matrix.isFree(monday, 0) && matrix.isFree(monday, 1) : "S01 booked on Monday, S02 free";
+            for (int ordinal : new int[] {-1, matrix.getSeats().size(), 63}) {
+                try {
+                    matrix.isFree(monday, ordinal);
+                    assert false : "Seat ordinal " + ordinal + " should be out of range";
+                } catch (IndexOutOfBoundsException e) {
+                    // expected
+                }
+            }
+            
+            assert service.getAvailability(monday, monday.plusDays(4)).getSeatsFreeOnAllDays().isEmpty()
+                : "No seat is free on a closed day";
+            AvailabilityMatrix week = service.getAvailability(monday.plusDays(7), monday.plusDays(11), 
+                    seat -> seat.getType() == SeatType.FLOATER);
+            assert !week.getSeatsFreeOnAllDays().isEmpty() : "Expected floaters free all week";
+            assert week.getSeatsFreeOnAllDays().stream().allMatch(seat -> seat.getType() == SeatType.FLOATER)
+                : "Filter should apply to every row";
+            
+            AvailabilityMatrix weekdays = service.getAvailability(monday.plusDays(7), monday.plusDays(11));
+            assert weekdays.getSeatsFreeOnAllDays().size() == service.getAllSeats().size() - 5
+                : "Seats booked on any weekday should not be free all week";
+            
+            System.out.println("  ✅ Two-week matrix matches per-date availability");
+            System.out.println("  ✅ Filters, weekends and closures applied to every row\n");
+        } catch (BookingException e) {
+            System.err.println("  ❌ Availability matrix test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testSeatSearch() {
+        System.out.println("🔍 Test 22: Free-Seat Search");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        
+        try {
+            long number = 1;
+            for (String seatId : List.of("S41", "S27", "S17", "S05", "S33")) {
+                service.restoreBooking("BK" + number, String.format("U%02d", number), seatId, 
+                                       monday, monday.atTime(8, 0));
+                number++;
+            }
+            
+            assert service.nextFree(SeatType.FLOATER, 0, monday).getSeatId().equals("S42") : "S41 is taken";
+            assert service.nextFree(SeatType.FIXED, 4, monday).getSeatId().equals("S06") : "S05 is taken";
+            assert service.nextFree(SeatType.FIXED, 40, monday) == null : "No fixed seats past S40";
+            assert service.firstNFree(SeatType.FLOATER, 3, monday).stream().map(Seat::getSeatId)
+                .collect(Collectors.toList()).equals(List.of("S42", "S43", "S44")) : "Expected the first three floaters";
+            assert service.firstNFree(SeatType.FLOATER, 20, monday).size() == 9 : "Only nine floaters are free";
+            
+            assert service.nearestFree(3, 7, monday).getSeatId().equals("S26") 
+                : "S27 and S17 are taken; S26 is the first seat one step away";
+            assert service.nearestFree(1, 1, monday).getSeatId().equals("S01") : "Free seat at the position itself";
+            assert service.nearestFree(-5, 20, monday).getSeatId().equals("S10") : "Positions off the grid clamp";
+            
+            // Nearest matches a brute-force scan from every position
+            List<Seat> free = service.getAvailableSeats(monday);
+            for (int row = 0; row <= 6; row++) {
+                for (int col = 0; col <= 11; col++) {
+                    int r = row, c = col;
+                    int best = free.stream()
+                        .mapToInt(seat -> Math.abs(seat.getRow() - r) + Math.abs(seat.getColumn() - c))
+                        .min().getAsInt();
+                    Seat found = service.nearestFree(row, col, monday);
+                    assert Math.abs(found.getRow() - r) + Math.abs(found.getColumn() - c) == best 
+                        : "Not the nearest seat from " + row + "," + col;
+                }
+            }
+            
+            assert service.nextFree(SeatType.FIXED, 0, monday.plusDays(5)) == null 
+                && service.nearestFree(1, 1, monday.plusDays(5)) == null : "No free seats on weekends";
+            
+            System.out.println("  ✅ Next and first-N free seats by type");
+            System.out.println("  ✅ Nearest free seat on the seat grid\n");
+        } catch (BookingException e) {
+            System.err.println("  ❌ Seat search test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testMoveAndSwap() {
+        System.out.println("🔍 Test 23: Atomic Seat Moves and Swaps");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        List<String> moves = new ArrayList<>();
+        service.subscribe(new BookingListener() {
+            @Override
+            public void onBooked(Booking booking) {
+            }
+            
+            @Override
+            public void onCancelled(Booking booking) {
+                moves.add("cancelled " + booking.getBookingId());
+            }
+            
+            @Override
+            public void onMoved(List<Booking> before, List<Booking> after) {
+                moves.add(before.size() + " moved");
+            }
+        });
+        
+        try {
+            String first = service.bookSeat(userIds.get(0), "S01", monday);
+            String second = service.bookSeat(userIds.get(1), "S02", monday);
+            service.checkIn(first);
+            
+            long version = service.getAvailabilitySnapshot(monday).getVersion();
+            Booking moved = service.move(first, "S03");
+            assert moved.getBookingId().equals(first) && moved.getSeat().getSeatId().equals("S03") 
+                : "Move keeps the booking ID";
+            assert !service.isSeatBooked("S01", monday) && service.isSeatBooked("S03", monday) : "Seat not moved";
+            assert service.getAvailabilitySnapshot(monday).getVersion() == version + 1 : "Expected one snapshot";
+            assert service.isCheckedIn(first) : "Check-in should survive a move";
+            
+            expectRejection(() -> service.move(first, "S02"), RejectionReason.SEAT_TAKEN);
+            expectRejection(() -> service.move("BK0", "S04"), RejectionReason.BOOKING_NOT_FOUND);
+            expectRejection(() -> service.move(first, "S99"), RejectionReason.SEAT_NOT_FOUND);
+            expectRejection(() -> service.move(first, "S41"), RejectionReason.FLOATER_BEFORE_RELEASE);
+            
+            service.swap(first, second);
+            assert service.getUserBookings(userIds.get(0)).get(0).getSeat().getSeatId().equals("S02")
+                && service.getUserBookings(userIds.get(1)).get(0).getSeat().getSeatId().equals("S03") 
+                : "Seats should be exchanged";
+            assert service.getAvailabilitySnapshot(monday).getVersion() == version + 2 : "Expected one snapshot";
+            assert moves.equals(List.of("1 moved", "2 moved")) : "Listeners should see each move once: " + moves;
+            
+            LocalDate nextMonday = monday.plusDays(7);
+            String laterUser = usersAllowedOn(service, nextMonday).get(0);
+            String later = service.bookSeat(laterUser, "S01", nextMonday);
+            expectRejection(() -> service.swap(first, later), RejectionReason.DATE_MISMATCH);
+            
+            // Inside a batch, moves, swaps and closures see the batch's own bookings
+            LocalDate wednesday = monday.plusDays(2);
+            String[] batched = new String[3];
+            service.applyExclusively(() -> {
+                try {
+                    batched[0] = service.bookSeat(userIds.get(2), "S05", wednesday);
+                    batched[1] = service.bookSeat(userIds.get(3), "S07", wednesday);
+                    service.move(batched[0], "S06");
+                    service.swap(batched[0], batched[1]);
+                } catch (BookingException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assert service.getUserBookings(userIds.get(2)).get(0).getSeat().getSeatId().equals("S07")
+                && service.getUserBookings(userIds.get(3)).get(0).getSeat().getSeatId().equals("S06")
+                : "Batched move and swap should apply";
+            assert !service.isSeatBooked("S05", wednesday) && service.isSeatBooked("S06", wednesday) 
+                && service.isSeatBooked("S07", wednesday) : "Batched moves should reach the snapshot";
+            service.applyExclusively(() -> {
+                try {
+                    batched[2] = service.bookSeat(userIds.get(0), "S08", wednesday);
+                } catch (BookingException e) {
+                    throw new IllegalStateException(e);
+                }
+                service.addClosure(wednesday, "Fire drill");
+            });
+            assert service.getBookingsForDate(wednesday).isEmpty() : "Closure in a batch should cancel everything";
+            assert !service.isSeatBooked("S08", wednesday) && !service.cancelBooking(batched[2]) 
+                : "Booking made in the same batch should be cancelled too";
+        } catch (BookingException e) {
+            System.err.println("  ❌ Move and swap test failed: " + e.getMessage());
+            return;
+        }
+        
+        // Under contention the held seats never look free and never change hands to outsiders
+        LocalDate tuesday = monday.plusDays(1);
+        List<String> tuesdayUsers = usersAllowedOn(service, tuesday);
+        List<String> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                held.add(service.bookSeat(tuesdayUsers.get(i), String.format("S%02d", i + 1), tuesday));
+            }
+        } catch (BookingException e) {
+            System.err.println("  ❌ Move and swap test failed: " + e.getMessage());
+            return;
+        }
+        
+        // A follower applies each swap as one event, so on the replica too neither seat ever looks free
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong swaps = new AtomicLong();
+        try (ReplicationLeader leader = new ReplicationLeader(service, 0);
+             ReplicaFollower follower = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+            assert follower.awaitSequence(leader.getSequence(), 10_000) : "Follower failed: " + follower.getFailure();
+            List<Thread> swappers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                swappers.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 5_000 && failure.get() == null; i++) {
+                        int a = random.nextInt(3), b = random.nextInt(3);
+                        try {
+                            service.swap(held.get(a), held.get(b));
+                            swaps.incrementAndGet();
+                        } catch (BookingException e) {
+                            failure.compareAndSet(null, "Swap rejected: " + e.getMessage());
+                        }
+                    }
+                }));
+            }
+            Thread thief = new Thread(() -> {
+                String outsider = tuesdayUsers.get(3);
+                while (running.get() && failure.get() == null) {
+                    for (int i = 1; i <= 3; i++) {
+                        if (service.tryBookSeat(outsider, String.format("S%02d", i), tuesday).isBooked()) {
+                            failure.compareAndSet(null, "Seat S0" + i + " was free during a swap");
+                        }
+                    }
+                    for (BookingService reader : List.of(service, follower.getService())) {
+                        AvailabilitySnapshot snapshot = reader.getAvailabilitySnapshot(tuesday);
+                        String problem = checkSnapshot(snapshot, 50);
+                        if (problem == null && snapshot.getBookings().size() != 3) {
+                            problem = "Expected three bookings, saw " + snapshot.getBookings().size();
+                        }
+                        if (problem != null) {
+                            failure.compareAndSet(null, (reader == service ? "" : "Replica: ") + problem);
+                        }
+                    }
+                }
+            });
+            
+            swappers.forEach(Thread::start);
+            thief.start();
+            for (Thread swapper : swappers) {
+                swapper.join();
+            }
+            running.set(false);
+            thief.join();
+            
+            assert follower.awaitSequence(leader.getSequence(), 10_000) : "Follower failed: " + follower.getFailure();
+            assert bookingKeys(service, tuesday).equals(bookingKeys(follower.getService(), tuesday)) 
+                : "Follower diverged during swaps";
+        } catch (IOException e) {
+            failure.compareAndSet(null, "Replication failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        assert failure.get() == null : failure.get();
+        assert service.getBookingsForDate(tuesday).stream().map(booking -> booking.getSeat().getSeatId())
+            .sorted().toList().equals(List.of("S01", "S02", "S03")) : "Held seats should be unchanged";
+        
+        // Followers see moves, not cancellations, and the audit trail records them as such
+        LocalDate thursday = monday.plusDays(3);
+        List<String> thursdayUsers = usersAllowedOn(service, thursday);
+        List<String> replicaEvents = Collections.synchronizedList(new ArrayList<>());
+        Path directory = null;
+        try (ReplicationLeader leader = new ReplicationLeader(service, 0);
+             ReplicaFollower follower = new ReplicaFollower(new BookingService(clock), leader.getPort())) {
+            follower.getService().subscribe(new BookingListener() {
+                @Override
+                public void onBooked(Booking booking) {
+                }
+                
+                @Override
+                public void onCancelled(Booking booking) {
+                    replicaEvents.add("cancelled " + booking.getBookingId());
+                }
+                
+                @Override
+                public void onMoved(List<Booking> before, List<Booking> after) {
+                    replicaEvents.add(before.size() + " moved");
+                }
+            });
+            directory = Files.createTempDirectory("audit");
+            try (AuditLog audit = new AuditLog(service, directory)) {
+                String a = service.bookSeat(thursdayUsers.get(0), "S01", thursday);
+                String b = service.bookSeat(thursdayUsers.get(1), "S02", thursday);
+                service.move(a, "S03");
+                service.swap(a, b);
+                
+                assert follower.awaitSequence(leader.getSequence(), 10_000) 
+                    : "Follower failed: " + follower.getFailure();
+                assert bookingKeys(service, thursday).equals(bookingKeys(follower.getService(), thursday)) 
+                    : "Follower diverged after the swap";
+                assert replicaEvents.equals(List.of("1 moved", "2 moved")) : "Replica events: " + replicaEvents;
+                assert auditTypes(audit.getHistory(a)).equals(List.of(AuditEvent.Type.BOOKED, AuditEvent.Type.MOVED,
+                                                                      AuditEvent.Type.MOVED))
+                    : "Moves should be audited as moves: " + audit.getHistory(a);
+                assert audit.getHistory(b).get(1).seatId().equals("S03") : "A move is recorded with its new seat";
+                Set<String> replayed = audit.getBookingsAsOf(thursday, clock.instant()).stream()
+                        .map(booking -> booking.getBookingId() + "/" + booking.getUser().getUserId() 
+                                        + "/" + booking.getSeat().getSeatId())
+                        .collect(Collectors.toSet());
+                assert replayed.equals(bookingKeys(service, thursday)) : "Replay should end at the swapped seats";
+            }
+        } catch (IOException | BookingException e) {
+            System.err.println("  ❌ Move and swap replication test failed: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deleteDirectory(directory);
+        }
+        
+        System.out.println("  ✅ Moves and swaps keep IDs and publish one snapshot");
+        System.out.println("  ✅ " + swaps.get() + " concurrent swaps, no seat ever looked free, on the replica either");
+        System.out.println("  ✅ Followers and the audit trail record moves, not cancellations\n");
+    }
+    
+    private static void testBookingPipeline() {
+        System.out.println("🔍 Test 24: Single-writer Booking Pipeline");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        List<String> userIds = usersAllowedOn(service, monday);
+        AtomicReference<String> failure = new AtomicReference<>();
+        
+        BookingPipeline pipeline = new BookingPipeline(service, 8);
+        try {
+            // Concurrent requests for one seat: exactly one wins
+            long version = service.getAvailabilitySnapshot(monday).getVersion();
+            List<CompletableFuture<BookingResult>> race = new ArrayList<>();
+            for (String userId : userIds) {
+                race.add(pipeline.bookSeat(userId, "S01", monday));
+            }
+            List<BookingResult> results = race.stream().map(CompletableFuture::join).toList();
+            assert results.stream().filter(BookingResult::isBooked).count() == 1 : "Exactly one booking should win";
+            assert results.stream().filter(result -> !result.isBooked())
+                .allMatch(result -> result.getRejection() == RejectionReason.SEAT_TAKEN) : "Others see SEAT_TAKEN";
+            String winner = results.stream().filter(BookingResult::isBooked).findFirst().get().getBookingId();
+            assert pipeline.cancelBooking(winner).join() : "Cancel through the pipeline should succeed";
+            assert !pipeline.cancelBooking(winner).join() : "Second cancel should find nothing";
+            assert service.getAvailabilitySnapshot(monday).getVersion() == version + 2 
+                : "Batched snapshots should still count every change";
+            
+            // Producers keep booking and cancelling through a ring smaller than their traffic
+            List<Thread> producers = new ArrayList<>();
+            for (String userId : userIds) {
+                producers.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2_000 && failure.get() == null; i++) {
+                        String seatId = String.format("S%02d", 1 + random.nextInt(10));
+                        BookingResult result = pipeline.bookSeat(userId, seatId, monday).join();
+                        if (result.isBooked() && !pipeline.cancelBooking(result.getBookingId()).join()) {
+                            failure.compareAndSet(null, "Cancel of own booking failed: " + result.getBookingId());
+                        } else if (!result.isBooked() && result.getRejection() != RejectionReason.SEAT_TAKEN) {
+                            failure.compareAndSet(null, "Unexpected rejection " + result.getRejection());
+                        }
+                    }
+                }));
+            }
+            producers.forEach(Thread::start);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assert failure.get() == null : failure.get();
+            assert service.getBookingsForDate(monday).isEmpty() : "Every booking was cancelled";
+            assert pipeline.getBatchCount() <= pipeline.getAppliedCount() : "Batches hold at least one request";
+            
+            pipeline.close();
+            assert pipeline.bookSeat(userIds.get(0), "S01", monday).isCompletedExceptionally() 
+                : "A closed pipeline should refuse requests";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pipeline.close();
+        }
+        
+        System.out.println("  ✅ Concurrent requests applied in order by one writer");
+        System.out.println("  ✅ Full ring applies backpressure; close drains and refuses\n");
+    }
+    
+    private static void testBookingServer() {
+        System.out.println("🔍 Test 25: Binary Booking Protocol over NIO");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        List<String> userIds = usersAllowedOn(service, monday);
+        
+        try (BookingServer server = new BookingServer(service, 0);
+             BookingClient client = new BookingClient(server.getPort());
+             BookingClient rival = new BookingClient(server.getPort())) {
+            
+            // Everything is sent before any answer is read; answers come back in order
+            List<CompletableFuture<BookingResult>> bookings = new ArrayList<>();
+            List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+            for (int i = 0; i < userIds.size(); i++) {
+                String seatId = String.format("S%02d", i + 1);
+                bookings.add(client.bookSeat(userIds.get(i), seatId, monday));
+                checks.add(client.isSeatBooked(seatId, monday));
+            }
+            CompletableFuture<BitSet> free = client.getAvailability(monday);
+            CompletableFuture<BookingResult> unknownSeat = client.bookSeat(userIds.get(0), "NOPE", monday);
+            CompletableFuture<Boolean> unknownCheck = client.isSeatBooked("NOPE", monday);
+            
+            for (int i = 0; i < userIds.size(); i++) {
+                BookingResult result = bookings.get(i).join();
+                assert result.isBooked() : "Pipelined booking should succeed: " + result;
+                assert service.isSeatBooked(String.format("S%02d", i + 1), monday) : "Booking should reach the service";
+                assert checks.get(i).join() : "A check sent after a booking should see it";
+            }
+            assert unknownSeat.join().getRejection() == RejectionReason.SEAT_NOT_FOUND : "Rejections carry their reason";
+            assert !unknownCheck.join() : "Unknown seats are not booked";
+            
+            BitSet freeSeats = free.join();
+            List<Seat> allSeats = service.getAllSeats();
+            for (int ordinal = 0; ordinal < allSeats.size(); ordinal++) {
+                assert freeSeats.get(ordinal) == !service.isSeatBooked(allSeats.get(ordinal).getSeatId(), monday)
+                    : "Availability bit wrong for " + allSeats.get(ordinal).getSeatId();
+            }
+            assert freeSeats.length() <= allSeats.size() : "No bits beyond the last seat";
+            
+            // Two connections race for one seat: exactly one wins
+            List<CompletableFuture<BookingResult>> race = List.of(
+                    rival.bookSeat(userIds.get(0), "S10", monday.plusDays(1)),
+                    client.bookSeat(userIds.get(1), "S10", monday.plusDays(1)));
+            assert race.stream().map(CompletableFuture::join).filter(BookingResult::isBooked).count() == 1
+                : "Exactly one connection should win the seat";
+            
+            String first = bookings.get(0).join().getBookingId();
+            assert client.cancelBooking(first).join() : "Cancel over the wire should succeed";
+            assert !client.cancelBooking(first).join() : "Second cancel should find nothing";
+            assert client.getAvailability(monday).join().get(0) : "Cancelled seat should be free again";
+            
+            // Far-off dates are refused; dates without bookings are all free
+            assert client.getAvailability(LocalDate.of(9999, 1, 1)).handle((bits, error) -> error != null).join() 
+                : "Availability far from today should be refused";
+            assert client.isSeatBooked("S02", LocalDate.of(1900, 1, 1)).handle((booked, error) -> error != null).join()
+                : "Seat checks far from today should be refused";
+            assert client.getAvailability(monday.plusDays(300)).join().cardinality() == allSeats.size() 
+                : "Every seat is free on a date nobody booked";
+            
+            // A broken frame closes only its own connection
+            try (SocketChannel broken = SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+                broken.write(ByteBuffer.allocate(4).putInt(0, 1));
+                assert broken.read(ByteBuffer.allocate(16)) < 0 : "Server should drop a broken connection";
+            }
+            assert client.isSeatBooked("S02", monday).join() : "Other connections keep working";
+            assert server.getRequestCount() >= 2L * userIds.size() + 8 : "Server should count every answer";
+            
+            BookingClient closed = new BookingClient(server.getPort());
+            closed.close();
+            assert closed.isSeatBooked("S02", monday).isCompletedExceptionally() 
+                : "A closed client should refuse requests";
+        } catch (Exception e) {
+            System.err.println("  ❌ Booking server test failed: " + e);
+        }
+        
+        System.out.println("  ✅ Pipelined requests answered in order over one connection");
+        System.out.println("  ✅ Availability bits match the service; bad frames drop only their connection\n");
+    }
+    
+    private static void testTerminalServer() {
+        System.out.println("🔍 Test 26: Concurrent Terminal Sessions over TCP");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        List<String> userIds = usersAllowedOn(service, monday);
+        int browsers = 100;
+        
+        try (TerminalServer server = new TerminalServer(service, 0)) {
+            // A client that asks for far more seat maps than the socket can hold, and never reads them
+            Socket stalled = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            try {
+                stalled.getOutputStream().write(("1\n" + monday + "\n\n").repeat(2_000).getBytes(StandardCharsets.UTF_8));
+                
+                List<CompletableFuture<String>> sessions = new ArrayList<>();
+                for (int i = 0; i < userIds.size(); i++) {
+                    sessions.add(startTerminalSession(server.getPort(), "2\n" + userIds.get(i) + "\n" 
+                                                      + String.format("S%02d", i + 1) + "\n" + monday + "\n\n6\n"));
+                }
+                for (int i = 0; i < browsers; i++) {
+                    sessions.add(startTerminalSession(server.getPort(), "1\n" + monday + "\n\n6\n"));
+                }
+                
+                List<String> outputs = sessions.stream().map(CompletableFuture::join).toList();
+                for (int i = 0; i < userIds.size(); i++) {
+                    assert outputs.get(i).contains("Seat booked successfully") : "Session should book: " + outputs.get(i);
+                    assert service.isSeatBooked(String.format("S%02d", i + 1), monday) : "Booking should reach the service";
+                }
+                for (String output : outputs.subList(userIds.size(), outputs.size())) {
+                    assert output.contains("SEAT LAYOUT") && output.contains("Thank you") : "Session should browse and exit";
+                    assert output.contains("\r\n") && !output.replace("\r\n", "").contains("\n") 
+                        : "Line breaks should be sent as CR LF";
+                }
+                long deadline = System.nanoTime() + 5_000_000_000L;
+                while (server.getSessionCount() > 1 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assert server.getSessionCount() == 1 : "Only the stalled session should remain";
+            } finally {
+                stalled.close();
+            }
+        } catch (IOException e) {
+            System.err.println("  ❌ Terminal server test failed: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("  ✅ " + (browsers + userIds.size()) + " concurrent sessions shared one service");
+        System.out.println("  ✅ A client that stops reading stalls only its own session\n");
+    }
+    
+    private static void testCommandMode() {
+        System.out.println("🔍 Test 27: Batch Command Mode with NDJSON Output");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        BookingService service = new BookingService(
+                new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC)));
+        List<String> userIds = usersAllowedOn(service, monday);
+        
+        try {
+            String script = "# seed Monday\n"
+                    + "book " + userIds.get(0) + " S01 " + monday + "\r\n"
+                    + "book " + userIds.get(1) + " S01 " + monday + "\n"
+                    + "\n"
+                    + "  book   " + userIds.get(1) + "\tS02 " + monday + "  \n"
+                    + "avail " + monday + "\n"
+                    + "list " + userIds.get(0) + "\n"
+                    + "book " + userIds.get(2) + " S03 2026-02-30\n"
+                    + "reserve S04\n"
+                    + "list " + monday;
+            StringWriter output = new StringWriter();
+            long commands = new SeatBookingCommands(service, output).run(new StringReader(script));
+            List<String> results = output.toString().lines().toList();
+            
+            assert commands == 8 && results.size() == 8 : "One result per command: " + results;
+            assert results.get(0).startsWith("{\"line\":2,\"cmd\":\"book\",\"ok\":true,\"bookingId\":\"BK") 
+                : "Booking result: " + results.get(0);
+            assert results.get(1).equals("{\"line\":3,\"cmd\":\"book\",\"ok\":false,\"reason\":\"SEAT_TAKEN\"}")
+                : "Rejection result: " + results.get(1);
+            assert results.get(2).startsWith("{\"line\":5,\"cmd\":\"book\",\"ok\":true") : "Extra spaces are ignored";
+            assert results.get(3).contains("\"free\":48") && !results.get(3).contains("\"S01\"")
+                : "Availability should include the batch before it: " + results.get(3);
+            String bookingId = service.getUserBookings(userIds.get(0)).get(0).getBookingId();
+            assert results.get(4).contains("{\"bookingId\":\"" + bookingId + "\",\"userId\":\"" + userIds.get(0) 
+                                           + "\",\"seatId\":\"S01\",\"date\":\"" + monday + "\"}") 
+                : "List by user: " + results.get(4);
+            assert results.get(5).startsWith("{\"line\":8,\"ok\":false,\"error\":\"Invalid date") : "Bad date";
+            assert results.get(6).equals("{\"line\":9,\"ok\":false,\"error\":\"Unknown command: reserve\"}")
+                : "Unknown command: " + results.get(6);
+            assert results.get(7).contains("\"S01\"") && results.get(7).contains("\"S02\"") : "List by date";
+            
+            // Thousands of commands through buffers smaller than the input
+            LocalDate tuesday = monday.plusDays(1);
+            StringBuilder bulk = new StringBuilder("book " + userIds.get(3) + " S10 " + tuesday + "\n");
+            for (int i = 0; i < 4_999; i++) {
+                bulk.append("book ").append(userIds.get(2)).append(" S10 ").append(tuesday).append('\n');
+                bulk.append("cancel BK-none\n");
+            }
+            bulk.append("cancel ").append(bookingId).append('\n');
+            output = new StringWriter();
+            commands = new SeatBookingCommands(service, output).run(new StringReader(bulk.toString()));
+            results = output.toString().lines().toList();
+            assert commands == 10_000 && results.size() == 10_000 : "Every bulk command should report";
+            assert results.get(0).contains("\"ok\":true") && results.get(1).contains("SEAT_TAKEN") 
+                : "Bookings in one batch see each other";
+            assert results.get(2).equals("{\"line\":3,\"cmd\":\"cancel\",\"ok\":false}") : "Cancel result";
+            assert results.get(9_999).equals("{\"line\":10000,\"cmd\":\"cancel\",\"ok\":true}") 
+                : "Line numbers survive buffer refills";
+            assert !service.isSeatBooked("S01", monday) : "The cancelled seat should be free";
+        } catch (IOException e) {
+            System.err.println("  ❌ Command mode test failed: " + e);
+        }
+        
+        System.out.println("  ✅ Commands stream through in order with one NDJSON result each");
+        System.out.println("  ✅ Batched bookings are visible to the reads that follow\n");
+    }
+    
+    private static void testAdmissionControl() {
+        System.out.println("🔍 Test 28: Per-user Rate Limits and Admission Control");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        String spammer = userIds.get(0);
+        String other = userIds.get(1);
+        
+        // One booking a second with bursts of two: the third request in a row is shed
+        AdmissionController admission = new AdmissionController(service, 1, 2, 1, 64);
+        assert admission.tryBookSeat(spammer, "S01", monday).isBooked() : "First request should pass";
+        assert admission.tryBookSeat(spammer, "S02", monday).getRejection() == RejectionReason.USER_ALREADY_BOOKED 
+            : "Second request reaches the service";
+        assert admission.tryBookSeat(spammer, "S03", monday).getRejection() == RejectionReason.RATE_LIMITED 
+            : "Third request should be rate limited";
+        try {
+            admission.bookSeat(spammer, "S03", monday);
+            assert false : "Rate-limited booking should throw";
+        } catch (BookingException e) {
+            assert e.getReason() == RejectionReason.RATE_LIMITED : "Exception should carry RATE_LIMITED";
+        }
+        assert admission.tryBookSeat(other, "S03", monday).isBooked() : "Other users are not held back by the spammer";
+        clock.advance(Duration.ofMillis(999));
+        assert admission.tryBookSeat(spammer, "S04", monday).getRejection() == RejectionReason.RATE_LIMITED 
+            : "Not refilled before a second";
+        clock.advance(Duration.ofMillis(1));
+        assert admission.tryBookSeat(spammer, "S04", monday).getRejection() == RejectionReason.USER_ALREADY_BOOKED 
+            : "One token after a second";
+        assert service.getMetrics().getRejectionCount(RejectionReason.RATE_LIMITED) == 3 : "Shed requests are counted";
+        assert admission.tryBookSeat("NOBODY", "S05", monday).getRejection() == RejectionReason.USER_NOT_FOUND 
+            : "Unknown users are left to the service";
+        
+        // With one booking allowed in flight, a second one is refused at once instead of waiting
+        AdmissionController single = new AdmissionController(service, 1_000, 1_000, 1, 1);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BookingListener blocker = new BookingListener() {
+            @Override
+            public void onBooked(Booking booking) {
+                inside.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
+            @Override
+            public void onCancelled(Booking booking) {
+            }
+        };
+        service.subscribe(blocker);
+        try {
+            CompletableFuture<BookingResult> held = CompletableFuture.supplyAsync(
+                    () -> single.tryBookSeat(userIds.get(2), "S05", monday));
+            inside.await();
+            long start = System.nanoTime();
+            assert single.tryBookSeat(userIds.get(3), "S06", monday).getRejection() == RejectionReason.OVERLOADED 
+                : "Request over the limit should be shed";
+            assert System.nanoTime() - start < 50_000_000 : "Shedding should not wait for the lock";
+            assert single.getInFlight() == 1 : "One booking in flight";
+            release.countDown();
+            assert held.join().isBooked() : "The admitted booking completes";
+            assert single.tryBookSeat(userIds.get(3), "S06", monday).isBooked() : "Admitted again once it finishes";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            release.countDown();
+            service.unsubscribe(blocker);
+        }
+        
+        // Bookings that suddenly take far longer than usual bring the concurrency limit down
+        BookingService slowService = new BookingService(clock);
+        AdmissionController adaptive = new AdmissionController(slowService, 1_000, 1_000, 1, 64);
+        int initialLimit = adaptive.getConcurrencyLimit();
+        for (int i = 0; i < 500; i++) {
+            adaptive.tryBookSeat(userIds.get(i % userIds.size()), "NOPE", monday);
+        }
+        slowService.subscribe(new BookingListener() {
+            @Override
+            public void onBooked(Booking booking) {
+                LockSupport.parkNanos(2_000_000);
+            }
+            
+            @Override
+            public void onCancelled(Booking booking) {
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            BookingResult result = adaptive.tryBookSeat(userIds.get(0), "S01", monday);
+            slowService.cancelBooking(result.getBookingId());
+        }
+        assert adaptive.getConcurrencyLimit() < initialLimit 
+            : "Limit should drop from " + initialLimit + " when latency rises";
+        assert adaptive.getConcurrencyLimit() >= 1 : "Limit never drops below its minimum";
+        assert adaptive.getInFlight() == 0 : "Every admitted call was released";
+        
+        System.out.println("  ✅ Token buckets shed a flooding user without holding back others");
+        System.out.println("  ✅ Excess load is refused at once; the limit adapts to latency (" 
+                           + initialLimit + " -> " + adaptive.getConcurrencyLimit() + ")\n");
+    }
+    
+    private static void testPersistence() {
+        System.out.println("🔍 Test 29: Write-behind Persistence");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        LocalDate tuesday = monday.plusDays(1);
+        MemoryRepository repository = new MemoryRepository();
+        
+        try {
+            // Bookings made before the repository is attached are written too
+            String early = service.bookSeat(userIds.get(0), "S01", monday);
+            BookingPersistence persistence = new BookingPersistence(service, repository);
+            assert persistence.getRestoredCount() == 0 : "Nothing to restore from an empty repository";
+            
+            String kept = service.bookSeat(userIds.get(1), "S02", monday);
+            String moved = service.bookSeat(userIds.get(2), "S03", monday);
+            String cancelled = service.bookSeat(userIds.get(3), "S04", monday);
+            persistence.flush();
+            service.move(moved, "S10");
+            service.cancelBooking(cancelled);
+            persistence.flush();
+            assert repository.rows.keySet().equals(Set.of(early, kept, moved)) : "Rows: " + repository.rows.keySet();
+            assert repository.rows.get(moved).seatId().equals("S10") : "Moves update the stored seat";
+            assert repository.rows.get(kept).bookingTime().equals(monday.atTime(8, 0)) : "Booking time is stored";
+            
+            // While the repository is slow, bookings go on and their changes are coalesced
+            CountDownLatch gate = new CountDownLatch(1);
+            repository.gate = gate;
+            String blocker = service.bookSeat(userIds.get(0), "S05", tuesday);
+            repository.entered.await();
+            long start = System.nanoTime();
+            String transient1 = service.bookSeat(userIds.get(1), "S06", tuesday);
+            service.cancelBooking(transient1);
+            String late = service.bookSeat(userIds.get(1), "S07", tuesday);
+            service.move(late, "S08");
+            service.cancelBooking(kept);
+            assert System.nanoTime() - start < 50_000_000 : "Bookings should not wait for the repository";
+            assert persistence.getBacklog() == 5 : "Changes queue up behind the slow write";
+            long batchesBefore = persistence.getBatchCount();
+            gate.countDown();
+            persistence.flush();
+            assert persistence.getBatchCount() - batchesBefore == 2 : "Queued changes are written as one batch";
+            assert !repository.inserted.contains(transient1) : "A booking cancelled before it was written is never stored";
+            assert repository.rows.get(late).seatId().equals("S08") : "Moved before written: stored at its last seat";
+            assert !repository.rows.containsKey(kept) && repository.rows.containsKey(blocker) : "Cancellation stored";
+            
+            // A failed write is reported by flush and retried until it succeeds
+            repository.failures = 1;
+            String retried = service.bookSeat(userIds.get(1), "S02", monday);
+            try {
+                persistence.flush();
+                assert false : "flush should report the failed write";
+            } catch (IOException e) {
+                assert e.getMessage().contains("database unavailable") : "Failure carries the cause";
+            }
+            persistence.flush();
+            assert repository.rows.containsKey(retried) : "Retried write succeeded";
+            assert persistence.getFailure() == null : "Healthy again after the retry";
+            
+            // A change the repository rejects is dropped and reported, not retried forever; the
+            // rest of its batch is still written. Here another tool took the next ID but one
+            String taken = "BK" + (Long.parseLong(retried.substring(2)) + 2);
+            synchronized (repository) {
+                repository.rows.put(taken, new MemoryRepository.Row("U99", "S99", tuesday, monday.atTime(7, 0)));
+            }
+            repository.gate = new CountDownLatch(1);
+            CountDownLatch released = repository.gate;
+            String first = service.bookSeat(userIds.get(2), "S12", tuesday);
+            repository.entered.await();
+            String colliding = service.bookSeat(userIds.get(3), "S13", tuesday);
+            service.cancelBooking(first);
+            assert colliding.equals(taken) : "The next ID but one should be " + taken + ", was " + colliding;
+            released.countDown();
+            try {
+                persistence.flush();
+                assert false : "flush should report the rejected change";
+            } catch (IOException e) {
+                assert e.getMessage().contains("duplicate booking ID " + taken) : e.getMessage();
+            }
+            assert persistence.getRejectedCount() == 1 : "Only the bad change is dropped";
+            assert !repository.rows.containsKey(first) : "The rest of the rejected batch is written";
+            String afterRejection = service.bookSeat(userIds.get(2), "S14", tuesday);
+            persistence.flush();
+            assert repository.rows.containsKey(afterRejection) : "Later changes are written";
+            try {
+                persistence.close();
+                assert false : "close should report the rejected change";
+            } catch (IOException e) {
+                assert e.getMessage().startsWith("1 booking changes were not written") : e.getMessage();
+            }
+            synchronized (repository) {
+                repository.rows.remove(taken);
+            }
+            
+            // A stored row the service will not take back keeps its ID from being generated again
+            long lastStored = repository.rows.keySet().stream()
+                    .mapToLong(bookingId -> Long.parseLong(bookingId.substring(2)))
+                    .max().getAsLong();
+            String skippedId = "BK" + (lastStored + 1);
+            synchronized (repository) {
+                repository.rows.put(skippedId, new MemoryRepository.Row("U99", "S01", monday, monday.atTime(7, 0)));
+            }
+            
+            // A fresh service gets every stored booking back, and new IDs do not collide with them
+            BookingService restarted = new BookingService(clock);
+            BookingPersistence reopened = new BookingPersistence(restarted, repository);
+            assert reopened.getRestoredCount() == repository.rows.size() - 1 && reopened.getSkippedCount() == 1 
+                : "All rows restored but the one for an unknown user";
+            Set<String> restored = new HashSet<>();
+            for (LocalDate date : List.of(monday, tuesday)) {
+                restarted.getBookingsForDate(date).forEach(booking -> restored.add(booking.getBookingId()));
+            }
+            restored.add(skippedId);
+            assert restored.equals(repository.rows.keySet()) : "Restored bookings match the repository";
+            assert restarted.isSeatBooked("S10", monday) && !restarted.isSeatBooked("S03", monday) 
+                : "Restored at their current seats";
+            String fresh = restarted.bookSeat(userIds.get(3), "S04", monday);
+            assert !restored.contains(fresh) : "New booking ID is unused";
+            reopened.close();
+            assert reopened.getRejectedCount() == 0 : "The new booking is written";
+            synchronized (repository) {
+                repository.rows.remove(skippedId);
+            }
+            assert repository.rows.containsKey(fresh) : "close writes what is still queued";
+            assert repository.closed : "close closes the repository";
+            
+            // Archived bookings leave the repository, so the next start does not bring them back
+            BookingService archiving = new BookingService(clock);
+            BookingPersistence archived = new BookingPersistence(archiving, repository);
+            long mondayRows = repository.rows.values().stream().filter(row -> row.date().equals(monday)).count();
+            OffHeapBookingStore store = new OffHeapBookingStore(archiving.getAllSeats(), 
+                                                                archiving.getAllUsers().values(), 2);
+            assert archiving.archiveBookingsBefore(tuesday, store) == mondayRows && mondayRows > 0 
+                : "Monday's bookings should be archived";
+            archived.close();
+            assert repository.rows.values().stream().noneMatch(row -> row.date().equals(monday)) 
+                : "Archived rows should be deleted";
+            BookingService afterArchive = new BookingService(clock);
+            BookingPersistence reloaded = new BookingPersistence(afterArchive, repository);
+            assert afterArchive.getBookingsForDate(monday).isEmpty() 
+                && !afterArchive.getBookingsForDate(tuesday).isEmpty()
+                : "Only bookings that were not archived are restored";
+            reloaded.close();
+            
+            // A change dropped by an interrupted booking thread is reported by close
+            BookingService interrupted = new BookingService(clock);
+            BookingPersistence dropping = new BookingPersistence(interrupted, new MemoryRepository());
+            Thread.currentThread().interrupt();
+            interrupted.bookSeat(userIds.get(0), "S01", monday);
+            assert Thread.interrupted() : "The interrupt is kept for the booking thread";
+            try {
+                dropping.close();
+                assert false : "close should report the dropped change";
+            } catch (IOException e) {
+                assert e.getMessage().startsWith("1 booking changes were not written") : e.getMessage();
+            }
+        } catch (BookingException | IOException e) {
+            assert false : "Unexpected failure: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("  ✅ Changes reach the repository in batches, coalesced, without slowing bookings");
+        System.out.println("  ✅ Failed writes are retried, rejected ones reported; a restart restores every row\n");
+    }
+    
+    private static void testBulkTransfer() {
+        System.out.println("🔍 Test 30: Bulk Import and Export");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = service.getAllUsers().keySet().stream().sorted().toList();
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("seatbooking-transfer");
+            
+            // History: every user on their own seat each day for 625 days, 5000 bookings in all
+            LocalDate historyStart = LocalDate.of(2024, 1, 1);
+            Path history = directory.resolve("history.ndjson");
+            try (var writer = Files.newBufferedWriter(history)) {
+                for (int day = 0; day < 625; day++) {
+                    for (int u = 0; u < userIds.size(); u++) {
+                        // Keys in any order, with spaces and an escaped character
+                        writer.write(String.format("{ \"seatId\": \"S%02d\", \"bookingId\": \"BK%d\", "
+                                                   + "\"userId\": \"\\u0055%s\", \"date\": \"%s\", "
+                                                   + "\"bookedAt\": \"%sT07:30\" }%n",
+                                                   u + 1, 1_000_000 + day * 10 + u, userIds.get(u).substring(1), 
+                                                   historyStart.plusDays(day), historyStart.plusDays(day - 1)));
+                    }
+                }
+            }
+            long[] lastProgress = new long[1];
+            BookingTransfer transfer = new BookingTransfer(service, (records, bytes) -> lastProgress[0] = records);
+            BookingTransfer.ImportResult imported = transfer.importBookings(history);
+            assert imported.records() == 5000 && imported.imported() == 5000 && imported.rejected() == 0 
+                : "All history imported: " + imported;
+            assert lastProgress[0] == 5000 : "Progress reported at the end";
+            assert service.getBookingsForDate(historyStart.plusDays(624)).size() == userIds.size() 
+                : "Last day imported";
+            Booking sample = service.getBookingsForDate(historyStart.plusDays(10)).stream()
+                    .filter(booking -> booking.getBookingId().equals("BK1000100")).findFirst().orElseThrow();
+            assert sample.getUser().getUserId().equals(userIds.get(0)) && sample.getSeat().getSeatId().equals("S01") 
+                : "Fields mapped by name";
+            assert sample.getBookingTime().equals(historyStart.plusDays(9).atTime(7, 30)) : "Booking time kept";
+            assert service.reclaimNoShows().isEmpty() : "Imported history is not reclaimed as no-shows";
+            
+            // Invalid and conflicting records are rejected with their line numbers; the rest still go in
+            Path mixed = directory.resolve("mixed.csv");
+            Files.writeString(mixed, String.join("\r\n",
+                    "bookingId,userId,seatId,date,bookedAt",
+                    "BK1,U01,S01,2026-03-02,2026-03-01T10:15:30.5",
+                    "\"BK2\",\"U02\",\"S02\",2026-03-02,2026-03-01T10:16:00",
+                    "BK3,U03,S01,2026-03-02,2026-03-01T10:17:00",
+                    "BK4,U04,S04,2026-02-30,2026-03-01T10:17:00",
+                    "BK5,U05,S05",
+                    "BK1000100,U05,S05,2026-03-03,2026-03-01T10:17:00",
+                    "BK6,NOBODY,S06,2026-03-02,2026-03-01T10:17:00",
+                    "",
+                    "BK7,U07,S07,2026-03-02,2026-03-01T10:18") + "\r\n");
+            imported = transfer.importBookings(mixed);
+            assert imported.records() == 8 && imported.imported() == 3 && imported.rejected() == 5 
+                : "Mixed import: " + imported;
+            assert imported.errors().equals(List.of("line 4: SEAT_TAKEN", 
+                                                    "line 5: Invalid date 'FEBRUARY 30'", 
+                                                    "line 6: Expected 5 fields",
+                                                    "line 7: DUPLICATE_BOOKING", 
+                                                    "line 8: USER_NOT_FOUND")) 
+                : "Errors: " + imported.errors();
+            
+            // Export and re-import round-trips every field in both formats
+            for (String name : List.of("export.csv", "export.ndjson")) {
+                Path file = directory.resolve(name);
+                long exported = transfer.exportBookings(historyStart, monday.plusDays(6), file);
+                assert exported == 5003 : "Everything in the range exported: " + exported;
+                BookingService copy = new BookingService(clock);
+                BookingTransfer.ImportResult reimported = new BookingTransfer(copy).importBookings(file);
+                assert reimported.imported() == 5003 : name + " re-imported: " + reimported;
+                for (LocalDate date : List.of(historyStart, historyStart.plusDays(10), monday)) {
+                    assert copy.getBookingsForDate(date).equals(service.getBookingsForDate(date)) 
+                        : "Same bookings " + date;
+                    for (Booking booking : service.getBookingsForDate(date)) {
+                        Booking other = copy.getBookingsForDate(date).stream()
+                                .filter(b -> b.getBookingId().equals(booking.getBookingId())).findFirst().orElseThrow();
+                        assert other.getSeat().equals(booking.getSeat()) && other.getUser().equals(booking.getUser())
+                               && other.getBookingTime().equals(booking.getBookingTime()) : "Same fields " + booking;
+                    }
+                }
+            }
+            List<String> csv = Files.readAllLines(directory.resolve("export.csv"));
+            assert csv.get(0).equals("bookingId,userId,seatId,date,bookedAt") : "CSV header";
+            assert csv.contains("BK1,U01,S01,2026-03-02,2026-03-01T10:15:30.500000000") : "Fractional seconds kept";
+            
+            // Available as commands too
+            StringWriter output = new StringWriter();
+            new SeatBookingCommands(new BookingService(clock), output).run(new StringReader(
+                    "import " + directory.resolve("export.csv") + "\nexport 2026-03-02 2026-03-02 " 
+                    + directory.resolve("monday.ndjson") + "\nimport nowhere.txt\n"));
+            String[] results = output.toString().split("\n");
+            assert results[0].startsWith("{\"line\":1,\"cmd\":\"import\",\"ok\":true,"
+                                         + "\"records\":5003,\"imported\":5003,") : results[0];
+            assert results[1].equals("{\"line\":2,\"cmd\":\"export\",\"ok\":true,\"exported\":3}") : results[1];
+            assert results[2].startsWith("{\"line\":3,\"ok\":false,\"error\":\"Import failed") : results[2];
+        } catch (IOException e) {
+            assert false : "Unexpected I/O failure: " + e.getMessage();
+        } finally {
+            if (directory != null) {
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + directory);
+                }
+            }
+        }
+        
+        System.out.println("  ✅ 5000-record NDJSON history imported in batches, with progress");
+        System.out.println("  ✅ Bad records reported by line; CSV and NDJSON exports round-trip\n");
+    }
+    
+    private static void testIdempotencyKeys() {
+        System.out.println("🔍 Test 31: Idempotency Keys for Retried Requests");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        AtomicLong events = new AtomicLong();
+        service.subscribe(new BookingListener() {
+            @Override
+            public void onBooked(Booking booking) {
+                events.incrementAndGet();
+            }
+            
+            @Override
+            public void onCancelled(Booking booking) {
+                events.incrementAndGet();
+            }
+        });
+        
+        // A retry gets the first booking back instead of USER_ALREADY_BOOKED
+        BookingResult first = service.tryBookSeatIdempotent("k-1", userIds.get(0), "S01", monday);
+        assert first.isBooked() : "Keyed booking should succeed: " + first;
+        BookingResult retry = service.tryBookSeatIdempotent("k-1", userIds.get(0), "S01", monday);
+        assert retry.isBooked() && retry.getBookingId().equals(first.getBookingId()) 
+            : "Retry should return the first booking: " + retry;
+        assert service.tryBookSeatIdempotent("k-2", userIds.get(0), "S01", monday).getRejection() 
+               == RejectionReason.USER_ALREADY_BOOKED : "A new key is a new request";
+        assert events.get() == 1 && service.getMetrics().getBookings() == 1 : "Retries should not touch the bookings";
+        
+        // Reusing a key for a different request is refused
+        assert service.tryBookSeatIdempotent("k-1", userIds.get(0), "S02", monday).getRejection() 
+               == RejectionReason.IDEMPOTENCY_KEY_REUSED : "Key reused for another seat";
+        try {
+            service.bookSeatIdempotent("k-1", userIds.get(1), "S01", monday);
+            assert false : "Reused key should throw";
+        } catch (BookingException e) {
+            assert e.getReason() == RejectionReason.IDEMPOTENCY_KEY_REUSED : "Exception should carry the reuse";
+        }
+        
+        try {
+            // Rejections are remembered too, even once the seat becomes free
+            assert service.tryBookSeatIdempotent("k-3", userIds.get(1), "S01", monday).getRejection() 
+                   == RejectionReason.SEAT_TAKEN 
+                : "Seat is taken";
+            assert service.cancelBookingIdempotent("k-4", first.getBookingId()) : "Keyed cancellation should succeed";
+            assert service.cancelBookingIdempotent("k-4", first.getBookingId()) 
+                : "Retried cancellation should report true again";
+            assert !service.cancelBooking(first.getBookingId()) : "Unkeyed cancellation finds nothing";
+            assert service.tryBookSeatIdempotent("k-3", userIds.get(1), "S01", monday).getRejection() 
+                   == RejectionReason.SEAT_TAKEN 
+                : "Retry should repeat the first rejection";
+            expectRejection(() -> service.cancelBookingIdempotent("k-1", first.getBookingId()), 
+                            RejectionReason.IDEMPOTENCY_KEY_REUSED);
+            assert events.get() == 2 : "Only the first cancellation should reach the listeners";
+            
+            // Keys expire after the retention; then the same key is a new request
+            service.setIdempotencyRetention(1000, Duration.ofMinutes(10));
+            BookingResult booked = service.tryBookSeatIdempotent("k-5", userIds.get(1), "S05", monday);
+            assert booked.isBooked() : "Booking should succeed";
+            clock.advance(Duration.ofMinutes(9));
+            assert service.tryBookSeatIdempotent("k-5", userIds.get(1), "S05", monday).getBookingId()
+                    .equals(booked.getBookingId()) 
+                : "Still remembered before the retention ends";
+            clock.advance(Duration.ofMinutes(1));
+            assert service.tryBookSeatIdempotent("k-5", userIds.get(1), "S05", monday).getRejection() 
+                   == RejectionReason.USER_ALREADY_BOOKED : "Forgotten once the retention ends";
+            
+            // The cache stays bounded, and a flood of one-off keys does not push out a key being retried
+            service.setIdempotencyRetention(64, Duration.ofHours(1));
+            BookingResult retried = service.tryBookSeatIdempotent("kept", userIds.get(2), "S07", monday);
+            service.tryBookSeatIdempotent("kept", userIds.get(2), "S07", monday);
+            for (int i = 0; i < 10_000; i++) {
+                service.cancelBookingIdempotent("one-off-" + i, "BK-missing");
+            }
+            assert service.getIdempotencyKeyCount() <= 64 : "Too many keys kept: " + service.getIdempotencyKeyCount();
+            assert service.getIdempotencyKeyCount() >= 32 
+                : "Cache should stay in use: " + service.getIdempotencyKeyCount();
+            assert retried.getBookingId()
+                    .equals(service.tryBookSeatIdempotent("kept", userIds.get(2), "S07", monday).getBookingId()) 
+                : "A retried key should survive one-off keys";
+            
+            // Concurrent retries of one request book once
+            String userId = userIds.get(3);
+            List<CompletableFuture<BookingResult>> attempts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                attempts.add(CompletableFuture.supplyAsync(
+                        () -> service.tryBookSeatIdempotent("k-race", userId, "S09", monday)));
+            }
+            Set<String> bookingIds = new HashSet<>();
+            for (CompletableFuture<BookingResult> attempt : attempts) {
+                BookingResult result = attempt.join();
+                assert result.isBooked() : "Every retry should see the booking: " + result;
+                bookingIds.add(result.getBookingId());
+            }
+            assert bookingIds.size() == 1 && service.getUserBookings(userId).size() == 1 : "Booked exactly once";
+            
+            // Retries are answered before admission control, so they never use up the user's rate
+            AdmissionController admission = new AdmissionController(service, 0.001, 1, 1, 4);
+            LocalDate wednesday = monday.plusDays(2);
+            String limitedUser = usersAllowedOn(service, wednesday).get(0);
+            BookingResult admitted = admission.tryBookSeatIdempotent("k-admit", limitedUser, "S13", wednesday);
+            assert admitted.isBooked() : "First keyed booking should be admitted: " + admitted;
+            for (int i = 0; i < 3; i++) {
+                BookingResult replayed = admission.tryBookSeatIdempotent("k-admit", limitedUser, "S13", wednesday);
+                assert replayed.isBooked() && replayed.getBookingId().equals(admitted.getBookingId()) 
+                    : "A retry should not be rate limited: " + replayed;
+            }
+            assert admission.tryBookSeatIdempotent("k-new", limitedUser, "S14", monday).getRejection() 
+                   == RejectionReason.RATE_LIMITED : "A new key is still metered";
+            
+            // Keys travel over the binary protocol as well
+            try (BookingServer server = new BookingServer(service, 0);
+                 BookingClient client = new BookingClient(server.getPort())) {
+                LocalDate tuesday = monday.plusDays(1);
+                String tuesdayUser = usersAllowedOn(service, tuesday).get(0);
+                BookingResult sent = client.bookSeatIdempotent("net-1", tuesdayUser, "S11", tuesday).join();
+                BookingResult resent = client.bookSeatIdempotent("net-1", tuesdayUser, "S11", tuesday).join();
+                assert sent.isBooked() && sent.getBookingId().equals(resent.getBookingId()) 
+                    : "Resent booking: " + resent;
+                assert client.cancelBookingIdempotent("net-2", sent.getBookingId()).join() 
+                    : "Keyed cancel over the network";
+                assert client.cancelBookingIdempotent("net-2", sent.getBookingId()).join() 
+                    : "Resent cancel over the network";
+                CompletableFuture<Boolean> reused = client.cancelBookingIdempotent("net-1", sent.getBookingId());
+                assert reused.handle((cancelled, error) -> 
+                        error instanceof CompletionException 
+                        && error.getCause() instanceof BookingException rejected
+                        && rejected.getReason() == RejectionReason.IDEMPOTENCY_KEY_REUSED).join() 
+                    : "Reused key over the network";
+            } catch (IOException e) {
+                throw new AssertionError("Server failed", e);
+            }
+            
+            System.out.println("  ✅ Retried bookings and cancellations get their first outcome back");
+            System.out.println("  ✅ Keys expire, stay bounded, and reused keys are refused\n");
+        } catch (BookingException e) {
+            System.err.println("  ❌ Idempotency key test failed: " + e.getMessage());
+        }
+    }
+    
+    private static void testNotificationOutbox() {
+        System.out.println("🔍 Test 32: Notification Outbox");
+        
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        MutableClock clock = new MutableClock(monday.atTime(8, 0).toInstant(ZoneOffset.UTC));
+        BookingService service = new BookingService(clock);
+        List<String> userIds = usersAllowedOn(service, monday);
+        RecordingSink sink = new RecordingSink();
+        Path directory = null;
+        try (NotificationOutbox outbox = new NotificationOutbox(service, sink, Duration.ofSeconds(5))) {
+            // Booked then cancelled within the hold time: nothing is sent; a moved booking is confirmed once
+            String cancelled = service.bookSeat(userIds.get(0), "S01", monday);
+            String moved = service.bookSeat(userIds.get(1), "S02", monday);
+            assert service.cancelBooking(cancelled) : "Cancel should succeed";
+            Instant booked = clock.instant();
+            clock.advance(Duration.ofSeconds(2));
+            service.move(moved, "S12");
+            Thread.sleep(300);
+            assert sink.delivered().isEmpty() : "Nothing is sent before the hold time";
+            assert outbox.getPendingCount() == 1 && outbox.getRecordedCount() == 4 : "Changes coalesced per booking";
+            outbox.flush();
+            List<Notification> sent = sink.delivered();
+            assert sent.size() == 1 : "Only one notice expected: " + sent;
+            assert sent.get(0).type() == Notification.Type.CONFIRMED && sent.get(0).bookingId().equals(moved) 
+                   && sent.get(0).seatId().equals("S12") && sent.get(0).userId().equals(userIds.get(1)) 
+                : "Confirmation at the last seat: " + sent.get(0);
+            assert sent.get(0).time().equals(booked.plusSeconds(2)) : "Time of the latest change: " + sent.get(0);
+            
+            // Once the hold time passes, the dispatcher delivers on its own
+            String later = service.bookSeat(userIds.get(2), "S03", monday);
+            clock.advance(Duration.ofSeconds(5));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (sink.delivered().size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assert sink.delivered().size() == 2 && sink.delivered().get(1).bookingId().equals(later) 
+                : "Due notice delivered: " + sink.delivered();
+            
+            // A cancellation after the confirmation went out is sent as well
+            assert service.cancelBooking(later) : "Cancel should succeed";
+            outbox.flush();
+            assert sink.delivered().get(2).type() == Notification.Type.CANCELLED : "Cancellation notice";
+            
+            // Failed deliveries are retried until the sink takes them, without repeats
+            sink.failures = 2;
+            service.bookSeat(userIds.get(3), "S04", monday);
+            try {
+                outbox.flush();
+                assert false : "Flush should report the failure";
+            } catch (IOException e) {
+                // expected
+            }
+            for (int attempt = 0; attempt < 100 && outbox.getPendingCount() + sink.delivered().size() < 4; attempt++) {
+                try {
+                    outbox.flush();
+                } catch (IOException e) {
+                    // still failing
+                }
+            }
+            outbox.flush();
+            assert sink.delivered().size() == 4 && outbox.getFailure() == null : "Delivered once after retries";
+            
+            // Changes to past days, such as restored history, are not notified
+            service.restoreBooking("BK77", userIds.get(0), "S05", monday.minusWeeks(1), 
+                                   monday.minusWeeks(2).atStartOfDay());
+            outbox.flush();
+            assert sink.delivered().size() == 4 : "Past bookings are not notified";
+            
+            // Imported bookings were made elsewhere, so even future ones are not confirmed again
+            directory = Files.createTempDirectory("seatbooking-notifications");
+            Path migrated = directory.resolve("migrated.ndjson");
+            Files.writeString(migrated, String.format("{\"bookingId\":\"BK88\",\"userId\":\"%s\",\"seatId\":\"S07\","
+                                                      + "\"date\":\"%s\",\"bookedAt\":\"%sT07:30\"}%n", 
+                                                      userIds.get(0), monday.plusWeeks(1), monday));
+            assert new BookingTransfer(service).importBookings(migrated).imported() == 1 : "Import should succeed";
+            outbox.flush();
+            assert sink.delivered().size() == 4 : "Imported bookings are not notified: " + sink.delivered();
+            
+            // File sink: one NDJSON line per notice
+            Path file = directory.resolve("notifications.ndjson");
+            try (NotificationOutbox fileOutbox = new NotificationOutbox(service, new FileNotificationSink(file), 
+                                                                        Duration.ZERO)) {
+                String bookingId = service.bookSeat(userIds.get(0), "S06", monday);
+                fileOutbox.flush();
+                List<String> lines = Files.readAllLines(file);
+                assert lines.size() == 1 && lines.get(0).startsWith("{\"type\":\"CONFIRMED\"") 
+                       && lines.get(0).contains("\"bookingId\":\"" + bookingId + "\"") 
+                       && lines.get(0).contains("\"date\":\"" + monday + "\"") 
+                    : "NDJSON notice: " + lines;
+            }
+        } catch (BookingException | IOException e) {
+            throw new AssertionError("Outbox failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Interrupted", e);
+        } finally {
+            if (directory != null) {
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + directory);
+                }
+            }
+        }
+        
+        // A stuck sink never holds up bookings; intents collect and go out once it recovers
+        List<Seat> seats = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            seats.add(new Seat(String.format("S%03d", i), SeatType.FIXED, i / 50 + 1, i % 50 + 1, i));
+            users.add(new User(String.format("U%03d", i), "User " + i, Squad.values()[i % Squad.values().length]));
+        }
+        BookingService office = new BookingService(clock, seats, users, BookingPolicy.of(List.of()));
+        RecordingSink stuck = new RecordingSink();
+        CountDownLatch gate = new CountDownLatch(1);
+        stuck.gate = gate;
+        try (NotificationOutbox outbox = new NotificationOutbox(office, stuck, Duration.ZERO)) {
+            office.bookSeat("U000", "S000", monday);
+            assert stuck.entered.await(5, TimeUnit.SECONDS) : "Sink should be called";
+            for (int i = 1; i < 500; i++) {
+                assert office.tryBookSeat(String.format("U%03d", i), String.format("S%03d", i), monday).isBooked() 
+                    : "Booking should not wait for the sink";
+            }
+            assert outbox.getPendingCount() == 499 : "Intents collect while the sink is stuck";
+            gate.countDown();
+            outbox.flush();
+            assert stuck.delivered().size() == 500 : "Everything delivered once the sink recovers";
+            assert outbox.getBatchCount() < 10 : "Backlog delivered in batches: " + outbox.getBatchCount();
+        } catch (BookingException | IOException e) {
+            throw new AssertionError("Outbox failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Interrupted", e);
+        } finally {
+            gate.countDown();
+        }
+        
+        System.out.println("  ✅ Notices recorded with each change and coalesced; book-then-cancel sends nothing");
+        System.out.println("  ✅ Batched delivery with retries; a stuck sink never blocks bookings\n");
+    }
+    
+    /**
+     * Plays a script of input lines into a new terminal session on its own thread,
+     * completing with everything the session printed.
+     */
+    private static CompletableFuture<String> startTerminalSession(int port, String script) {
+        CompletableFuture<String> output = new CompletableFuture<>();
+        Thread client = new Thread(() -> {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.getOutputStream().write(script.getBytes(StandardCharsets.UTF_8));
+                output.complete(new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                output.completeExceptionally(e);
+            }
+        });
+        client.setDaemon(true);
+        client.start();
+        return output;
+    }
+    
+    private static void checkAuditState(AuditLog audit, LocalDate date, Instant start, 
+                                        String kept, String cancelled, String reclaimed) throws IOException {
+        assert audit.getBookingsAsOf(date, start.minusMillis(1)).isEmpty() : "Nothing booked before the start";
+        assert bookingIds(audit.getBookingsAsOf(date, start.plus(Duration.ofMinutes(10))))
+            .equals(List.of(kept, cancelled, reclaimed)) : "All three bookings live at 08:10";
+        assert bookingIds(audit.getBookingsAsOf(date, start.plus(Duration.ofMinutes(40))))
+            .equals(List.of(kept, reclaimed)) : "Cancelled booking gone at 08:40";
+        assert bookingIds(audit.getBookingsAsOf(date, start.plus(Duration.ofHours(2))))
+            .equals(List.of(kept)) : "Only the checked-in booking left at 10:00";
+        assert audit.getBookingsAsOf(date.plusDays(1), start.plus(Duration.ofHours(2))).isEmpty() 
+            : "Other dates unaffected";
+        
+        assert auditTypes(audit.getHistory(kept))
+            .equals(List.of(AuditEvent.Type.BOOKED, AuditEvent.Type.CHECKED_IN)) : "Unexpected check-in history";
+        assert auditTypes(audit.getHistory(cancelled))
+            .equals(List.of(AuditEvent.Type.BOOKED, AuditEvent.Type.CANCELLED)) : "Unexpected cancel history";
+        assert auditTypes(audit.getHistory(reclaimed))
+            .equals(List.of(AuditEvent.Type.BOOKED, AuditEvent.Type.RECLAIMED)) : "Unexpected no-show history";
+        assert audit.getHistory(cancelled).get(1).time().equals(start.plus(Duration.ofMinutes(30)))
+            : "Events should carry the service clock time";
+    }
+    
+    private static List<String> bookingIds(List<Booking> bookings) {
+        return bookings.stream().map(Booking::getBookingId).collect(Collectors.toList());
+    }
+    
+    private static List<AuditEvent.Type> auditTypes(List<AuditEvent> events) {
+        return events.stream().map(AuditEvent::type).collect(Collectors.toList());
+    }
+    
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("  ⚠️  Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+    
+    private static void expectRejection(BookingCall call, RejectionReason expected) {
+        try {
+            call.run();
+            assert false : "Expected rejection " + expected;
+        } catch (BookingException e) {
+            assert e.getReason() == expected : "Expected " + expected + " but got " + e.getReason();
+        }
+    }
+    
+    /**
+     * Returns the IDs of the users whose batch may book on a date, in ID order.
+     */
+    private static List<String> usersAllowedOn(BookingService service, LocalDate date) {
+        Batch batch = service.getAllowedBatchForDate(date);
+        return service.getAllUsers().values().stream()
+                .filter(user -> user.getBatch() == batch)
+                .map(User::getUserId)
+                .sorted()
+                .toList();
+    }
+    
+    /**
+     * A booking operation that may be rejected.
+     */
+    private interface BookingCall {
+        void run() throws BookingException;
+    }
+    
+    private static Set<String> bookingKeys(BookingService service, LocalDate date) {
+        return service.getBookingsForDate(date).stream()
+                .map(booking -> booking.getBookingId() + "/" + booking.getUser().getUserId() 
+                                + "/" + booking.getSeat().getSeatId())
+                .collect(Collectors.toSet());
+    }
+    
+    /**
+     * Returns a description of the first inconsistency in a snapshot, or null if there is none.
+     */
+    private static String checkSnapshot(AvailabilitySnapshot snapshot, int totalSeats) {
+        Set<String> bookedSeats = new HashSet<>();
+        Set<String> bookedUsers = new HashSet<>();
+        for (Booking booking : snapshot.getBookings()) {
+            if (!bookedSeats.add(booking.getSeat().getSeatId())) {
+                return "Seat double booked: " + booking.getSeat().getSeatId();
+            }
+            if (!bookedUsers.add(booking.getUser().getUserId())) {
+                return "User booked twice: " + booking.getUser().getUserId();
+            }
+        }
+        for (Seat seat : snapshot.getAvailableSeats()) {
+            if (bookedSeats.contains(seat.getSeatId())) {
+                return "Booked seat listed as available: " + seat.getSeatId();
+            }
+        }
+        if (bookedSeats.size() + snapshot.getAvailableSeats().size() != totalSeats) {
+            return "Booked plus available seats do not add up to " + totalSeats;
+        }
+        return null;
+    }
+    
+    /**
+     * Repository holding rows in memory, whose writes can be held up or made to fail.
+     * Like a table keyed by booking ID, it rejects a batch inserting an ID it already holds.
+     */
+    private static class MemoryRepository implements BookingRepository {
+        private record Row(String userId, String seatId, LocalDate date, LocalDateTime bookingTime) {
+        }
+        
+        final Map<String, Row> rows = new LinkedHashMap<>();
+        final Set<String> inserted = ConcurrentHashMap.newKeySet();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+        volatile int failures;
+        volatile boolean closed;
+        
+        @Override
+        public synchronized void loadAll(StoredBookingHandler handler) {
+            rows.forEach((bookingId, row) -> handler.accept(bookingId, row.userId(), row.seatId(), 
+                                                            row.date(), row.bookingTime()));
+        }
+        
+        @Override
+        public void write(Collection<String> deleted, Collection<Booking> updated, Collection<Booking> inserted) 
+                throws IOException {
+            CountDownLatch held = gate;
+            if (held != null) {
+                gate = null;
+                entered.countDown();
+                try {
+                    held.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failures > 0) {
+                failures--;
+                throw new IOException("database unavailable");
+            }
+            synchronized (this) {
+                for (Booking booking : inserted) {
+                    if (rows.containsKey(booking.getBookingId()) && !deleted.contains(booking.getBookingId())) {
+                        throw new BookingRepository.BatchRejectedException(
+                                "duplicate booking ID " + booking.getBookingId(), null);
+                    }
+                }
+                deleted.forEach(rows::remove);
+                for (Booking booking : updated) {
+                    rows.computeIfPresent(booking.getBookingId(), (id, row) -> 
+                            new Row(row.userId(), booking.getSeat().getSeatId(), row.date(), row.bookingTime()));
+                }
+                for (Booking booking : inserted) {
+                    rows.put(booking.getBookingId(), new Row(booking.getUser().getUserId(), 
+                            booking.getSeat().getSeatId(), booking.getDate(), booking.getBookingTime()));
+                    this.inserted.add(booking.getBookingId());
+                }
+            }
+        }
+        
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+    
+    /**
+     * Notification sink that keeps what it was given, and can fail or hold deliveries.
+     */
+    private static class RecordingSink implements NotificationSink {
+        private final List<Notification> delivered = new ArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        volatile int failures;
+        volatile CountDownLatch gate;
+        
+        synchronized List<Notification> delivered() {
+            return new ArrayList<>(delivered);
+        }
+        
+        @Override
+        public void deliver(List<Notification> batch) throws IOException {
+            entered.countDown();
+            CountDownLatch held = gate;
+            if (held != null) {
+                gate = null;
+                try {
+                    held.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failures > 0) {
+                failures--;
+                throw new IOException("sink unavailable");
+            }
+            synchronized (this) {
+                delivered.addAll(batch);
+            }
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
 }
\ No newline at end of file
@@ -2,25 +2,41 @@ package com.seatbooking.model;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Objects;
 
 /**
  * Represents a seat booking in the system.
  * Links a user to a seat for a specific date.
+ * 
+ * Dates are held as primitives (epoch day, and nanoseconds since 1970-01-01T00:00
+ * local time) rather than java.time objects, which keeps a booking to one small
+ * object plus its ID; getDate and getBookingTime build the java.time values on demand.
  */
 public class Booking {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    
     private final String bookingId;
     private final User user;
     private final Seat seat;
-    private final LocalDate date;
-    private final LocalDateTime bookingTime;
+    private final int epochDay;
+    private final long bookingTimeNanos;
+    private final int hash;
     
     public Booking(String bookingId, User user, Seat seat, LocalDate date) {
+        this(bookingId, user, seat, date, LocalDateTime.now());
+    }
+    
+    public Booking(String bookingId, User user, Seat seat, LocalDate date, LocalDateTime bookingTime) {
         this.bookingId = Objects.requireNonNull(bookingId, "Booking ID cannot be null");
         this.user = Objects.requireNonNull(user, "User cannot be null");
         this.seat = Objects.requireNonNull(seat, "Seat cannot be null");
-        this.date = Objects.requireNonNull(date, "Date cannot be null");
-        this.bookingTime = LocalDateTime.now();
+        this.epochDay = Math.toIntExact(Objects.requireNonNull(date, "Date cannot be null").toEpochDay());
+        Objects.requireNonNull(bookingTime, "Booking time cannot be null");
+        this.bookingTimeNanos = Math.addExact(
+                Math.multiplyExact(bookingTime.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND),
+                bookingTime.getNano());
+        this.hash = bookingId.hashCode();
     }
     
     public String getBookingId() {
@@ -36,11 +52,20 @@ public class Booking {
     }
     
     public LocalDate getDate() {
-        return date;
+        return LocalDate.ofEpochDay(epochDay);
+    }
+    
+    /**
+     * Returns the booking date as an epoch day, without creating a LocalDate.
+     */
+    public long getEpochDay() {
+        return epochDay;
     }
     
     public LocalDateTime getBookingTime() {
-        return bookingTime;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(bookingTimeNanos, NANOS_PER_SECOND),
+                                           (int) Math.floorMod(bookingTimeNanos, NANOS_PER_SECOND),
+                                           ZoneOffset.UTC);
     }
     
     @Override
@@ -48,17 +73,17 @@ public class Booking {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Booking booking = (Booking) obj;
-        return Objects.equals(bookingId, booking.bookingId);
+        return hash == booking.hash && bookingId.equals(booking.bookingId);
     }
     
     @Override
     public int hashCode() {
-        return Objects.hash(bookingId);
+        return hash;
     }
     
     @Override
     public String toString() {
         return String.format("Booking{id='%s', user=%s, seat=%s, date=%s}", 
-                           bookingId, user.getName(), seat.getSeatId(), date);
+                           bookingId, user.getName(), seat.getSeatId(), getDate());
     }
-}
\ No newline at end of file
+}
@@ -5,18 +5,30 @@ import java.util.Objects;
 /**
  * Represents a seat in the booking system.
  * Seats can be either FIXED or FLOATER type.
+ * Identity is the seat ID; its hash is computed once.
  */
 public class Seat {
     private final String seatId;
     private final SeatType type;
     private final int row;
     private final int column;
+    private final int ordinal;
+    private final int hash;
     
     public Seat(String seatId, SeatType type, int row, int column) {
+        this(seatId, type, row, column, -1);
+    }
+    
+    /**
+     * Creates a seat with its dense position in the office layout (0-based).
+     */
+    public Seat(String seatId, SeatType type, int row, int column, int ordinal) {
         this.seatId = Objects.requireNonNull(seatId, "Seat ID cannot be null");
         this.type = Objects.requireNonNull(type, "Seat type cannot be null");
         this.row = row;
         this.column = column;
+        this.ordinal = ordinal;
+        this.hash = seatId.hashCode();
     }
     
     public String getSeatId() {
@@ -35,6 +47,13 @@ public class Seat {
         return column;
     }
     
+    /**
+     * Returns the seat's dense position in the office layout, or -1 if it has none.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
     /**
      * Returns display character for seat matrix.
      * F for FIXED, L for FLOATER
@@ -48,12 +67,12 @@ public class Seat {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Seat seat = (Seat) obj;
-        return Objects.equals(seatId, seat.seatId);
+        return hash == seat.hash && seatId.equals(seat.seatId);
     }
     
     @Override
     public int hashCode() {
-        return Objects.hash(seatId);
+        return hash;
     }
     
     @Override
@@ -5,16 +5,28 @@ import java.util.Objects;
 /**
  * Represents a user in the seat booking system.
  * Each user belongs to a specific squad and batch.
+ * Identity is the user ID; its hash is computed once.
  */
 public class User {
     private final String userId;
     private final String name;
     private final Squad squad;
+    private final int ordinal;
+    private final int hash;
     
     public User(String userId, String name, Squad squad) {
+        this(userId, name, squad, -1);
+    }
+    
+    /**
+     * Creates a user with a dense index among all users (0-based).
+     */
+    public User(String userId, String name, Squad squad, int ordinal) {
         this.userId = Objects.requireNonNull(userId, "User ID cannot be null");
         this.name = Objects.requireNonNull(name, "Name cannot be null");
         this.squad = Objects.requireNonNull(squad, "Squad cannot be null");
+        this.ordinal = ordinal;
+        this.hash = userId.hashCode();
     }
     
     public String getUserId() {
@@ -33,17 +45,24 @@ public class User {
         return squad.getBatch();
     }
     
+    /**
+     * Returns the user's dense index among all users, or -1 if it has none.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         User user = (User) obj;
-        return Objects.equals(userId, user.userId);
+        return hash == user.hash && userId.equals(user.userId);
     }
     
     @Override
     public int hashCode() {
-        return Objects.hash(userId);
+        return hash;
     }
     
     @Override
@@ -0,0 +1,109 @@
+package com.seatbooking.service;
+
+import java.time.LocalDate;
+
+/**
+ * Sheds booking requests in front of a BookingService before they can pile up on its
+ * write lock, such as when scripted clients hammer the floater release.
+ * 
+ * Each user has a token bucket, so one user's flood cannot crowd out everyone else, and
+ * the bookings in flight overall are capped by a limit that adapts to their latency.
+ * Shed requests get a RATE_LIMITED or OVERLOADED rejection straight away, without
+ * queueing, and are counted in the service's metrics like any other rejection.
+ */
+public final class AdmissionController {
+    
+    public static final double DEFAULT_BOOKINGS_PER_SECOND = 2;
+    public static final int DEFAULT_BURST = 5;
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    
+    private final BookingService service;
+    private final UserRateLimiter userLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    
+    public AdmissionController(BookingService service) {
+        this(service, DEFAULT_BOOKINGS_PER_SECOND, DEFAULT_BURST, 1, DEFAULT_MAX_CONCURRENCY);
+    }
+    
+    /**
+     * Creates a controller allowing each user bookingsPerSecond on average with bursts of up
+     * to burst, and between minConcurrency and maxConcurrency bookings in flight overall.
+     */
+    public AdmissionController(BookingService service, double bookingsPerSecond, int burst,
+                               int minConcurrency, int maxConcurrency) {
+        this.service = service;
+        this.userLimiter = new UserRateLimiter(service.getAllUsers().keySet(), bookingsPerSecond, burst,
+                                               service.getClock().millis());
+        this.concurrencyLimiter = new ConcurrencyLimiter(minConcurrency, maxConcurrency);
+    }
+    
+    /**
+     * Books a seat unless the request is shed; see BookingService#tryBookSeat.
+     */
+    public BookingResult tryBookSeat(String userId, String seatId, LocalDate date) {
+        return tryBookSeatIdempotent(null, userId, seatId, date);
+    }
+    
+    /**
+     * Books a seat under an idempotency key unless the request is shed; see
+     * BookingService#tryBookSeatIdempotent. A null key books without one. A key the service has seen
+     * before is answered from its memory ahead of the limits, so retries are not metered;
+     * shed requests are not remembered under their key, so a retry of one is admitted like
+     * a new request.
+     */
+    public BookingResult tryBookSeatIdempotent(String idempotencyKey, String userId, String seatId,
+                                               LocalDate date) {
+        if (idempotencyKey != null) {
+            BookingResult replayed = service.replayBooking(idempotencyKey, userId, seatId, date);
+            if (replayed != null) {
+                return replayed;
+            }
+        }
+        if (!userLimiter.tryAcquire(userId, service.getClock().millis())) {
+            return shed(RejectionReason.RATE_LIMITED);
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            return shed(RejectionReason.OVERLOADED);
+        }
+        long start = System.nanoTime();
+        try {
+            return idempotencyKey != null 
+                   ? service.tryBookSeatIdempotent(idempotencyKey, userId, seatId, date)
+                   : service.tryBookSeat(userId, seatId, date);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Books a seat unless the request is shed; see BookingService#bookSeat.
+     */
+    public String bookSeat(String userId, String seatId, LocalDate date) throws BookingException {
+        BookingResult result = tryBookSeat(userId, seatId, date);
+        if (!result.isBooked()) {
+            throw new BookingException(result.getRejection(),
+                                       service.describeRejection(result.getRejection(), userId, seatId, date));
+        }
+        return result.getBookingId();
+    }
+    
+    /**
+     * Returns the current limit on bookings in flight.
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimiter.getLimit();
+    }
+    
+    public int getInFlight() {
+        return concurrencyLimiter.getInFlight();
+    }
+    
+    public BookingService getService() {
+        return service;
+    }
+    
+    private BookingResult shed(RejectionReason reason) {
+        service.getMetrics().recordRejected(reason, BookingMetrics.NOT_TIMED);
+        return BookingResult.rejected(reason);
+    }
+}
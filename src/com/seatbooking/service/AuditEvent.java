@@ -0,0 +1,22 @@
+package com.seatbooking.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * One entry of the audit trail: what happened to a booking, and when.
+ */
+public record AuditEvent(Type type, Instant time, String bookingId, String userId, String seatId, LocalDate date) {
+    
+    /**
+     * Kinds of audited changes. The ordinal is the type byte of the binary record.
+     */
+    public enum Type {
+        BOOKED,
+        CANCELLED,
+        RECLAIMED,
+        CHECKED_IN,
+        // The booking as it is after the move; its ID, user and date stay the same
+        MOVED
+    }
+}
@@ -0,0 +1,487 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import com.seatbooking.model.User;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Event-sourced audit trail of a BookingService: every booking, move, cancellation,
+ * no-show reclamation and check-in, with the time it happened. A move is recorded with
+ * the seat it moved to; the moves of a swap share one time, so a query as of any moment
+ * sees either both or neither.
+ * 
+ * Events are fixed-width 32-byte records appended to segment files in commit order:
+ * <pre>
+ *   0  long   event time (epoch millis, service clock)
+ *   8  long   booking number (the digits of "BK...")
+ *  16  int    booking date (epoch day)
+ *  20  short  seat ordinal
+ *  22  short  user ordinal (users sorted by ID)
+ *  24  byte   AuditEvent.Type ordinal
+ *  25  7 bytes padding
+ * </pre>
+ * Each segment keeps an in-memory index of its time range, its date range and the
+ * positions of the records for each date, rebuilt by scanning when the log is reopened.
+ * A query for the state of one date replays only that date's records from the
+ * segments that can contain them, read through memory-mapped files.
+ * 
+ * Attach the log before bookings are taken; bookings made earlier are not in the trail.
+ * Booking IDs that are not "BK" followed by a number (e.g. restored from a foreign
+ * system) cannot be encoded and are counted in getSkippedEvents instead.
+ * Ordinals are only meaningful for the same seat and user set, so a log directory
+ * belongs to one office configuration.
+ */
+public class AuditLog implements BookingListener, Closeable {
+    
+    static final int RECORD_SIZE = 32;
+    private static final int DEFAULT_SEGMENT_RECORDS = 1 << 20; // 32 MB segments
+    private static final int WRITE_BUFFER_RECORDS = 2048;
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final AuditEvent.Type[] TYPES = AuditEvent.Type.values();
+    private static final byte[] PADDING = new byte[RECORD_SIZE - 25];
+    
+    private final BookingService service;
+    private final Path directory;
+    private final Clock clock;
+    private final int segmentRecords;
+    
+    private final List<Seat> seats;
+    private final Map<String, Integer> seatOrdinals;
+    private final List<User> users;
+    private final Map<String, Integer> userOrdinals;
+    
+    // Guarded by this
+    private final List<Segment> segments;
+    private final ByteBuffer writeBuffer;
+    private FileChannel activeChannel;
+    private long skippedEvents;
+    private String failure;
+    
+    /**
+     * Opens (or creates) the audit log in a directory and starts recording the service's events.
+     */
+    public AuditLog(BookingService service, Path directory) throws IOException {
+        this(service, directory, DEFAULT_SEGMENT_RECORDS);
+    }
+    
+    /**
+     * Opens the audit log with segments of the given number of records.
+     */
+    public AuditLog(BookingService service, Path directory, int segmentRecords) throws IOException {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("Segments must hold at least one record");
+        }
+        this.service = service;
+        this.directory = directory;
+        this.clock = service.getClock();
+        this.segmentRecords = segmentRecords;
+        
+        this.seats = service.getAllSeats();
+        this.seatOrdinals = new HashMap<>();
+        for (int i = 0; i < seats.size(); i++) {
+            seatOrdinals.put(seats.get(i).getSeatId(), i);
+        }
+        this.users = service.getAllUsers().values().stream()
+                .sorted(Comparator.comparing(User::getUserId))
+                .toList();
+        this.userOrdinals = new HashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            userOrdinals.put(users.get(i).getUserId(), i);
+        }
+        if (seats.size() > 0xFFFF || users.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Audit records hold at most 65535 seats and users");
+        }
+        
+        this.segments = new ArrayList<>();
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_RECORDS * RECORD_SIZE);
+        Files.createDirectories(directory);
+        openSegments();
+        
+        service.subscribe(this);
+    }
+    
+    @Override
+    public void onBooked(Booking booking) {
+        append(AuditEvent.Type.BOOKED, booking);
+    }
+    
+    @Override
+    public void onCancelled(Booking booking) {
+        append(AuditEvent.Type.CANCELLED, booking);
+    }
+    
+    @Override
+    public void onReclaimed(Booking booking) {
+        append(AuditEvent.Type.RECLAIMED, booking);
+    }
+    
+    @Override
+    public synchronized void onMoved(List<Booking> before, List<Booking> after) {
+        long time = clock.millis();
+        for (Booking booking : after) {
+            append(AuditEvent.Type.MOVED, booking, time);
+        }
+    }
+    
+    @Override
+    public void onCheckedIn(Booking booking) {
+        append(AuditEvent.Type.CHECKED_IN, booking);
+    }
+    
+    @Override
+    public void onArchived(Booking booking) {
+        // The booking still happened; archiving only moves where it is kept
+    }
+    
+    /**
+     * Rebuilds the bookings that were live for a date at a point in time.
+     * Only the records of that date are replayed, from segments whose time
+     * and date ranges can contain them.
+     */
+    public synchronized List<Booking> getBookingsAsOf(LocalDate date, Instant asOf) throws IOException {
+        checkRunning();
+        flushBuffer();
+        
+        long asOfMillis = asOf.toEpochMilli();
+        int epochDay = Math.toIntExact(date.toEpochDay());
+        Map<Long, Booking> live = new LinkedHashMap<>();
+        
+        for (Segment segment : segments) {
+            if (segment.count == 0 || segment.minTime > asOfMillis 
+                    || epochDay < segment.minDay || epochDay > segment.maxDay) {
+                continue;
+            }
+            IntList positions = segment.recordsByDay.get(epochDay);
+            if (positions == null) {
+                continue;
+            }
+            
+            ByteBuffer records = segment.records(activeChannel);
+            for (int i = 0; i < positions.size; i++) {
+                int offset = positions.values[i] * RECORD_SIZE;
+                long time = records.getLong(offset);
+                if (time > asOfMillis) {
+                    continue;
+                }
+                long number = records.getLong(offset + 8);
+                switch (TYPES[records.get(offset + 24)]) {
+                    case BOOKED -> live.put(number, new Booking("BK" + number,
+                            users.get(Short.toUnsignedInt(records.getShort(offset + 22))),
+                            seats.get(Short.toUnsignedInt(records.getShort(offset + 20))),
+                            date, LocalDateTime.ofInstant(Instant.ofEpochMilli(time), clock.getZone())));
+                    case CANCELLED, RECLAIMED -> live.remove(number);
+                    case MOVED -> live.computeIfPresent(number, (key, booking) -> new Booking(
+                            booking.getBookingId(), booking.getUser(),
+                            seats.get(Short.toUnsignedInt(records.getShort(offset + 20))),
+                            date, booking.getBookingTime()));
+                    case CHECKED_IN -> { }
+                }
+            }
+        }
+        return new ArrayList<>(live.values());
+    }
+    
+    /**
+     * Returns every event recorded for a booking, oldest first.
+     * Booking IDs are not indexed, so this scans all segments.
+     */
+    public synchronized List<AuditEvent> getHistory(String bookingId) throws IOException {
+        checkRunning();
+        flushBuffer();
+        
+        long number = bookingNumber(bookingId);
+        List<AuditEvent> history = new ArrayList<>();
+        if (number < 0) {
+            return history;
+        }
+        for (Segment segment : segments) {
+            ByteBuffer records = segment.records(activeChannel);
+            for (int i = 0; i < segment.count; i++) {
+                int offset = i * RECORD_SIZE;
+                if (records.getLong(offset + 8) == number) {
+                    history.add(new AuditEvent(TYPES[records.get(offset + 24)],
+                            Instant.ofEpochMilli(records.getLong(offset)), bookingId,
+                            users.get(Short.toUnsignedInt(records.getShort(offset + 22))).getUserId(),
+                            seats.get(Short.toUnsignedInt(records.getShort(offset + 20))).getSeatId(),
+                            LocalDate.ofEpochDay(records.getInt(offset + 16))));
+                }
+            }
+        }
+        return history;
+    }
+    
+    public synchronized long getEventCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.count;
+        }
+        return count;
+    }
+    
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+    
+    /**
+     * Returns the number of events that could not be encoded; see the class documentation.
+     */
+    public synchronized long getSkippedEvents() {
+        return skippedEvents;
+    }
+    
+    /**
+     * Returns why recording stopped, or null while the log is healthy.
+     */
+    public synchronized String getFailure() {
+        return failure;
+    }
+    
+    /**
+     * Writes buffered events to the active segment file.
+     */
+    public synchronized void flush() throws IOException {
+        checkRunning();
+        flushBuffer();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        service.unsubscribe(this);
+        try {
+            if (failure == null) {
+                flushBuffer();
+            }
+        } finally {
+            activeChannel.close();
+        }
+    }
+    
+    private synchronized void append(AuditEvent.Type type, Booking booking) {
+        append(type, booking, clock.millis());
+    }
+    
+    private synchronized void append(AuditEvent.Type type, Booking booking, long time) {
+        if (failure != null) {
+            return;
+        }
+        long number = bookingNumber(booking.getBookingId());
+        int seatOrdinal = seatOrdinal(booking.getSeat());
+        int userOrdinal = userOrdinal(booking.getUser());
+        if (number < 0 || seatOrdinal < 0 || userOrdinal < 0) {
+            skippedEvents++;
+            return;
+        }
+        
+        try {
+            Segment active = segments.get(segments.size() - 1);
+            if (active.count == segmentRecords) {
+                active = rollSegment();
+            }
+            
+            int epochDay = Math.toIntExact(booking.getEpochDay());
+            writeBuffer.putLong(time)
+                       .putLong(number)
+                       .putInt(epochDay)
+                       .putShort((short) seatOrdinal)
+                       .putShort((short) userOrdinal)
+                       .put((byte) type.ordinal())
+                       .put(PADDING);
+            active.indexRecord(time, epochDay);
+            
+            if (!writeBuffer.hasRemaining()) {
+                flushBuffer();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Never fail the booking that triggered the event; stop recording instead
+            failure = e.toString();
+        }
+    }
+    
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            activeChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+    
+    private Segment rollSegment() throws IOException {
+        flushBuffer();
+        activeChannel.close();
+        Segment segment = new Segment(segmentFile(segments.size()));
+        segments.add(segment);
+        activeChannel = openForAppend(segment.file);
+        return segment;
+    }
+    
+    /**
+     * Indexes existing segments and opens the last one for appending.
+     */
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_RECORDS * RECORD_SIZE);
+        for (Path file : files) {
+            Segment segment = new Segment(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // A crash may leave a partial record at the end; drop it
+                long whole = channel.size() - channel.size() % RECORD_SIZE;
+                channel.truncate(whole);
+                
+                buffer.clear();
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RECORD_SIZE) {
+                        int offset = buffer.position();
+                        segment.indexRecord(buffer.getLong(offset), buffer.getInt(offset + 16));
+                        buffer.position(offset + RECORD_SIZE);
+                    }
+                    buffer.compact();
+                }
+            }
+            segments.add(segment);
+        }
+        
+        if (segments.isEmpty()) {
+            segments.add(new Segment(segmentFile(0)));
+        }
+        Segment last = segments.get(segments.size() - 1);
+        activeChannel = openForAppend(last.file);
+    }
+    
+    /**
+     * Opens a segment for appending; READ is needed to map it for queries, which rules out APPEND.
+     */
+    private static FileChannel openForAppend(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+    
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+    
+    private void checkRunning() throws IOException {
+        if (failure != null) {
+            throw new IOException("Audit log stopped: " + failure);
+        }
+    }
+    
+    /**
+     * Returns a seat's ordinal in this log, or -1 if it has no such seat. The seat's own
+     * ordinal is used when it points back at the seat, which saves a lookup by ID.
+     */
+    private int seatOrdinal(Seat seat) {
+        int ordinal = seat.getOrdinal();
+        if (ordinal >= 0 && ordinal < seats.size() && seats.get(ordinal).equals(seat)) {
+            return ordinal;
+        }
+        return seatOrdinals.getOrDefault(seat.getSeatId(), -1);
+    }
+    
+    /**
+     * Returns a user's ordinal in this log, or -1 if it has no such user; see seatOrdinal.
+     */
+    private int userOrdinal(User user) {
+        int ordinal = user.getOrdinal();
+        if (ordinal >= 0 && ordinal < users.size() && users.get(ordinal).equals(user)) {
+            return ordinal;
+        }
+        return userOrdinals.getOrDefault(user.getUserId(), -1);
+    }
+    
+    private static long bookingNumber(String bookingId) {
+        if (bookingId.startsWith("BK")) {
+            try {
+                return Long.parseLong(bookingId.substring(2));
+            } catch (NumberFormatException e) {
+                // Not a generated ID
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * A segment file and its in-memory index.
+     */
+    private final class Segment {
+        final Path file;
+        final Map<Integer, IntList> recordsByDay = new HashMap<>();
+        int count;
+        long minTime = Long.MAX_VALUE;
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        
+        // Mapped once the segment is full and no longer changes
+        private ByteBuffer sealed;
+        
+        Segment(Path file) {
+            this.file = file;
+        }
+        
+        void indexRecord(long time, int epochDay) {
+            minTime = Math.min(minTime, time);
+            minDay = Math.min(minDay, epochDay);
+            maxDay = Math.max(maxDay, epochDay);
+            recordsByDay.computeIfAbsent(epochDay, day -> new IntList()).add(count++);
+        }
+        
+        /**
+         * Returns the segment's records; the caller must have flushed buffered writes.
+         */
+        ByteBuffer records(FileChannel activeChannel) throws IOException {
+            if (sealed != null) {
+                return sealed;
+            }
+            long size = (long) count * RECORD_SIZE;
+            boolean full = count == segmentRecords;
+            if (file.equals(segments.get(segments.size() - 1).file) && !full) {
+                return activeChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (full) {
+                    sealed = mapped;
+                }
+                return mapped;
+            }
+        }
+    }
+    
+    /**
+     * Growable array of record positions.
+     */
+    private static final class IntList {
+        int[] values = new int[8];
+        int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Seat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Free seats over a range of dates, as a seat x date bitset.
+ * 
+ * Each date is a row of words with one bit per seat ordinal, set when the seat is free
+ * and matches the query's filter. Weekends and office closures have no free seats.
+ * The matrix is a copy: later bookings do not change it.
+ */
+public final class AvailabilityMatrix {
+    private final LocalDate from;
+    private final int dayCount;
+    private final List<Seat> seats;
+    private final int wordsPerDay;
+    private final long[] free;
+    
+    AvailabilityMatrix(LocalDate from, int dayCount, List<Seat> seats, long[] free) {
+        this.from = from;
+        this.dayCount = dayCount;
+        this.seats = seats;
+        this.wordsPerDay = wordsPerDay(seats.size());
+        this.free = free;
+    }
+    
+    static int wordsPerDay(int seatCount) {
+        return (seatCount + 63) >>> 6;
+    }
+    
+    public LocalDate getFrom() {
+        return from;
+    }
+    
+    public LocalDate getTo() {
+        return from.plusDays(dayCount - 1);
+    }
+    
+    public int getDayCount() {
+        return dayCount;
+    }
+    
+    /**
+     * Returns the seats the matrix columns refer to, indexed by seat ordinal.
+     */
+    public List<Seat> getSeats() {
+        return seats;
+    }
+    
+    /**
+     * Checks if the seat with the given ordinal is free on a date in the range.
+     */
+    public boolean isFree(LocalDate date, int seatOrdinal) {
+        Objects.checkIndex(seatOrdinal, seats.size());
+        int day = dayIndex(date);
+        return (free[day * wordsPerDay + (seatOrdinal >>> 6)] & (1L << seatOrdinal)) != 0;
+    }
+    
+    /**
+     * Returns the number of free seats on a date in the range.
+     */
+    public int getFreeCount(LocalDate date) {
+        int start = dayIndex(date) * wordsPerDay;
+        int count = 0;
+        for (int i = start; i < start + wordsPerDay; i++) {
+            count += Long.bitCount(free[i]);
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the free seats on a date in the range, in seat order.
+     */
+    public List<Seat> getFreeSeats(LocalDate date) {
+        return seatsIn(free, dayIndex(date) * wordsPerDay);
+    }
+    
+    /**
+     * Returns the seats that are free on every date of the range,
+     * e.g. a desk that can be kept for a whole week.
+     */
+    public List<Seat> getSeatsFreeOnAllDays() {
+        long[] common = new long[wordsPerDay];
+        Arrays.fill(common, -1L);
+        for (int day = 0; day < dayCount; day++) {
+            for (int w = 0; w < wordsPerDay; w++) {
+                common[w] &= free[day * wordsPerDay + w];
+            }
+        }
+        return seatsIn(common, 0);
+    }
+    
+    private List<Seat> seatsIn(long[] words, int start) {
+        List<Seat> result = new ArrayList<>();
+        for (int w = 0; w < wordsPerDay; w++) {
+            long word = words[start + w];
+            while (word != 0) {
+                result.add(seats.get((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+    
+    private int dayIndex(LocalDate date) {
+        long day = date.toEpochDay() - from.toEpochDay();
+        if (day < 0 || day >= dayCount) {
+            throw new IllegalArgumentException(date + " is outside " + from + " to " + getTo());
+        }
+        return (int) day;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("AvailabilityMatrix{from=%s, days=%d, seats=%d}", from, dayCount, seats.size());
+    }
+}
@@ -0,0 +1,264 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable view of seat availability and bookings for a single date.
+ * The version increases with every booking or cancellation for the date,
+ * so two snapshots with the same version describe the same state.
+ * 
+ * Snapshots double as the copy-on-write storage for a date: writers derive
+ * the next snapshot and publish it, readers never see a partially applied change.
+ */
+public final class AvailabilitySnapshot {
+    private final LocalDate date;
+    private final long version;
+    private final List<Seat> allSeats;
+    private final long[] bookedSeats; // one bit per seat ordinal
+    private final Set<String> bookedUsers;
+    private final List<Booking> bookings;
+    
+    // Built on first read; racing readers may each build one, which is harmless
+    private List<Seat> availableSeats;
+    
+    private AvailabilitySnapshot(LocalDate date, long version, List<Seat> allSeats, long[] bookedSeats,
+                                 Set<String> bookedUsers, List<Booking> bookings) {
+        this.date = date;
+        this.version = version;
+        this.allSeats = allSeats;
+        this.bookedSeats = bookedSeats;
+        this.bookedUsers = bookedUsers;
+        this.bookings = bookings;
+    }
+    
+    /**
+     * Creates the snapshot of a date without any bookings.
+     */
+    static AvailabilitySnapshot empty(LocalDate date, List<Seat> allSeats) {
+        return new AvailabilitySnapshot(date, 0, allSeats, new long[(allSeats.size() + 63) >>> 6],
+                                        Collections.emptySet(), Collections.emptyList());
+    }
+    
+    /**
+     * Returns the next snapshot with the booking added.
+     */
+    AvailabilitySnapshot withBooking(Booking booking, int seatOrdinal) {
+        Draft draft = edit();
+        draft.add(booking, seatOrdinal);
+        return draft.publish();
+    }
+    
+    /**
+     * Returns the next snapshot with the booking removed.
+     */
+    AvailabilitySnapshot withoutBooking(Booking booking, int seatOrdinal) {
+        Draft draft = edit();
+        draft.remove(booking, seatOrdinal);
+        return draft.publish();
+    }
+    
+    /**
+     * Starts a draft of the next snapshot, for applying several changes and publishing them as one.
+     */
+    Draft edit() {
+        return new Draft(this);
+    }
+    
+    /**
+     * Writes the free seats among those in mask into dest, starting at offset.
+     */
+    void copyFreeSeats(long[] mask, long[] dest, int offset) {
+        for (int w = 0; w < mask.length; w++) {
+            dest[offset + w] = mask[w] & ~bookedSeats[w];
+        }
+    }
+    
+    /**
+     * Returns the first ordinal at or after from that is in mask and free, or -1 if none.
+     * Scans a word of 64 seats at a time.
+     */
+    int nextFreeSeat(long[] mask, int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int w = from >>> 6;
+        if (w >= mask.length) {
+            return -1;
+        }
+        long word = mask[w] & ~bookedSeats[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == mask.length) {
+                return -1;
+            }
+            word = mask[w] & ~bookedSeats[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    /**
+     * Returns the number of bytes putFreeSeatBits writes.
+     */
+    int freeSeatBitsBytes() {
+        return bookedSeats.length * 8;
+    }
+    
+    /**
+     * Writes the free seats into dest as one bit per seat ordinal, in little-endian longs,
+     * whatever the buffer's byte order.
+     */
+    void putFreeSeatBits(ByteBuffer dest) {
+        boolean swap = dest.order() != ByteOrder.LITTLE_ENDIAN;
+        int seatCount = allSeats.size();
+        for (int w = 0; w < bookedSeats.length; w++) {
+            long seatsInWord = seatCount - (w << 6) >= 64 ? -1L : (1L << (seatCount - (w << 6))) - 1;
+            long free = ~bookedSeats[w] & seatsInWord;
+            dest.putLong(swap ? Long.reverseBytes(free) : free);
+        }
+    }
+    
+    boolean isSeatBooked(int seatOrdinal) {
+        return (bookedSeats[seatOrdinal >>> 6] & (1L << seatOrdinal)) != 0;
+    }
+    
+    boolean hasBookingFor(String userId) {
+        return bookedUsers.contains(userId);
+    }
+    
+    public LocalDate getDate() {
+        return date;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public List<Seat> getAvailableSeats() {
+        List<Seat> seats = availableSeats;
+        if (seats == null) {
+            List<Seat> free = new ArrayList<>(allSeats.size() - bookings.size());
+            for (int i = 0; i < allSeats.size(); i++) {
+                if (!isSeatBooked(i)) {
+                    free.add(allSeats.get(i));
+                }
+            }
+            seats = List.copyOf(free);
+            availableSeats = seats;
+        }
+        return seats;
+    }
+    
+    public List<Booking> getBookings() {
+        return bookings;
+    }
+    
+    /**
+     * Mutable successor of a snapshot, used by writers under the write lock.
+     * The snapshot's state is copied on the first change only, and publish() turns the
+     * draft into the next snapshot, whose version counts every change applied.
+     * A draft must not be changed after it is published.
+     */
+    static final class Draft {
+        private final AvailabilitySnapshot base;
+        private long[] seats;
+        private Set<String> users;
+        private List<Booking> list;
+        private int changes;
+        
+        private Draft(AvailabilitySnapshot base) {
+            this.base = base;
+        }
+        
+        LocalDate getDate() {
+            return base.date;
+        }
+        
+        boolean isSeatBooked(int seatOrdinal) {
+            long[] words = seats != null ? seats : base.bookedSeats;
+            return (words[seatOrdinal >>> 6] & (1L << seatOrdinal)) != 0;
+        }
+        
+        boolean hasBookingFor(String userId) {
+            return (users != null ? users : base.bookedUsers).contains(userId);
+        }
+        
+        List<Booking> getBookings() {
+            return Collections.unmodifiableList(list != null ? list : base.bookings);
+        }
+        
+        void add(Booking booking, int seatOrdinal) {
+            copyOnFirstChange(1);
+            seats[seatOrdinal >>> 6] |= 1L << seatOrdinal;
+            users.add(booking.getUser().getUserId());
+            list.add(booking);
+            changes++;
+        }
+        
+        void remove(Booking booking, int seatOrdinal) {
+            copyOnFirstChange(0);
+            seats[seatOrdinal >>> 6] &= ~(1L << seatOrdinal);
+            users.remove(booking.getUser().getUserId());
+            list.remove(booking);
+            changes++;
+        }
+        
+        /**
+         * Moves bookings to other seats: before.get(i) is replaced by after.get(i), moving
+         * from seat ordinal from[i] to to[i]. Users are unchanged and no seat is free in between.
+         */
+        void move(List<Booking> before, List<Booking> after, int[] from, int[] to) {
+            copyOnFirstChange(0);
+            for (int ordinal : from) {
+                seats[ordinal >>> 6] &= ~(1L << ordinal);
+            }
+            for (int ordinal : to) {
+                seats[ordinal >>> 6] |= 1L << ordinal;
+            }
+            for (int i = 0; i < before.size(); i++) {
+                list.set(list.indexOf(before.get(i)), after.get(i));
+            }
+            changes++;
+        }
+        
+        /**
+         * Removes every booking.
+         */
+        void clear() {
+            seats = new long[base.bookedSeats.length];
+            users = new HashSet<>();
+            list = new ArrayList<>();
+            changes++;
+        }
+        
+        AvailabilitySnapshot publish() {
+            if (changes == 0) {
+                return base;
+            }
+            return new AvailabilitySnapshot(base.date, base.version + changes, base.allSeats, seats,
+                                            Collections.unmodifiableSet(users), Collections.unmodifiableList(list));
+        }
+        
+        private void copyOnFirstChange(int extraCapacity) {
+            if (seats == null) {
+                seats = base.bookedSeats.clone();
+                users = new HashSet<>(base.bookedUsers);
+                list = new ArrayList<>(base.bookings.size() + extraCapacity);
+                list.addAll(base.bookings);
+            }
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("AvailabilitySnapshot{date=%s, version=%d, available=%d, booked=%d}", 
+                           date, version, allSeats.size() - bookings.size(), bookings.size());
+    }
+}
@@ -0,0 +1,297 @@
+package com.seatbooking.service;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Client for a BookingServer over one connection.
+ * 
+ * Every call sends its request straight away and returns a future, without waiting for
+ * earlier answers, so many requests can be in flight on the connection at once. Answers
+ * arrive in request order and are matched up by a reader thread, which also completes the
+ * futures; callbacks on them must not block. Calls are safe from any thread.
+ * 
+ * If the connection fails, every outstanding and later future fails with the cause.
+ */
+public class BookingClient implements Closeable {
+    
+    private static final int BUFFER_BYTES = 16 * 1024;
+    
+    private final SocketChannel channel;
+    private final Queue<Pending<?>> inFlight;
+    private final Thread reader;
+    
+    // Guarded by this
+    private final ByteBuffer out;
+    private int nextRequestId;
+    private IOException failure;
+    
+    /**
+     * Connects to a server on the loopback interface.
+     */
+    public BookingClient(int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.inFlight = new ConcurrentLinkedQueue<>();
+        this.out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        
+        this.reader = new Thread(this::readAnswers, "booking-client-" + channel.socket().getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    /**
+     * Books a seat; see BookingService#tryBookSeat.
+     */
+    public CompletableFuture<BookingResult> bookSeat(String userId, String seatId, LocalDate date) {
+        return send(BookingProtocol.BOOK,
+                    request -> {
+                        request.putInt((int) date.toEpochDay());
+                        BookingProtocol.putString(request, userId);
+                        BookingProtocol.putString(request, seatId);
+                    },
+                    BookingClient::readBookingResult);
+    }
+    
+    /**
+     * Cancels a booking; see BookingService#cancelBooking.
+     */
+    public CompletableFuture<Boolean> cancelBooking(String bookingId) {
+        return send(BookingProtocol.CANCEL,
+                    request -> BookingProtocol.putString(request, bookingId),
+                    BookingClient::readBoolean);
+    }
+    
+    /**
+     * Books a seat under an idempotency key, so the same call can be sent again after
+     * a lost connection; see BookingService#tryBookSeatIdempotent.
+     */
+    public CompletableFuture<BookingResult> bookSeatIdempotent(String idempotencyKey, String userId, String seatId,
+                                                               LocalDate date) {
+        return send(BookingProtocol.KEYED_BOOK,
+                    request -> {
+                        BookingProtocol.putString(request, idempotencyKey);
+                        request.putInt((int) date.toEpochDay());
+                        BookingProtocol.putString(request, userId);
+                        BookingProtocol.putString(request, seatId);
+                    },
+                    BookingClient::readBookingResult);
+    }
+    
+    /**
+     * Cancels a booking under an idempotency key; see BookingService#cancelBookingIdempotent.
+     * A reused key completes the future with a BookingException carrying IDEMPOTENCY_KEY_REUSED.
+     */
+    public CompletableFuture<Boolean> cancelBookingIdempotent(String idempotencyKey, String bookingId) {
+        return send(BookingProtocol.KEYED_CANCEL,
+                    request -> {
+                        BookingProtocol.putString(request, idempotencyKey);
+                        BookingProtocol.putString(request, bookingId);
+                    },
+                    BookingClient::readCancelled);
+    }
+    
+    /**
+     * Checks if a seat is booked; see BookingService#isSeatBooked.
+     */
+    public CompletableFuture<Boolean> isSeatBooked(String seatId, LocalDate date) {
+        return send(BookingProtocol.IS_BOOKED,
+                    request -> {
+                        request.putInt((int) date.toEpochDay());
+                        BookingProtocol.putString(request, seatId);
+                    },
+                    BookingClient::readBoolean);
+    }
+    
+    /**
+     * Returns the free seats of a date as a bit set indexed by seat ordinal,
+     * the position of the seat in BookingService#getAllSeats.
+     */
+    public CompletableFuture<BitSet> getAvailability(LocalDate date) {
+        return send(BookingProtocol.AVAILABILITY,
+                    request -> request.putInt((int) date.toEpochDay()),
+                    BookingClient::readFreeSeats);
+    }
+    
+    /**
+     * Returns the number of requests sent that have no answer yet.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+    
+    /**
+     * Closes the connection; futures still waiting for an answer fail.
+     */
+    @Override
+    public void close() throws IOException {
+        fail(new IOException("Client is closed"));
+        channel.close();
+        if (Thread.currentThread() != reader) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private synchronized <T> CompletableFuture<T> send(byte operation, Consumer<ByteBuffer> body,
+                                                       AnswerReader<T> answerReader) {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        int requestId = nextRequestId++;
+        int start = out.position();
+        try {
+            out.putInt(0).put(operation).putInt(requestId);
+            body.accept(out);
+        } catch (RuntimeException e) {
+            // Nothing was sent; drop the partly written request
+            out.position(start);
+            throw e;
+        }
+        out.putInt(start, out.position() - start - 4);
+        
+        // Registered before sending, so the reader always finds it
+        Pending<T> pending = new Pending<>(requestId, answerReader);
+        inFlight.add(pending);
+        try {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            out.clear();
+        }
+        return pending.future;
+    }
+    
+    private synchronized void fail(IOException cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        Pending<?> pending;
+        while ((pending = inFlight.poll()) != null) {
+            pending.future.completeExceptionally(failure);
+        }
+    }
+    
+    private void readAnswers() {
+        ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try {
+            while (true) {
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Server closed the connection");
+                }
+                in.flip();
+                int needed = 0;
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < BookingProtocol.HEADER_BYTES) {
+                        throw new IOException("Bad answer length " + length);
+                    }
+                    if (in.remaining() < 4 + length) {
+                        needed = 4 + length;
+                        break;
+                    }
+                    int end = in.position() + 4 + length;
+                    int limit = in.limit();
+                    in.position(in.position() + 4).limit(end);
+                    byte status = in.get();
+                    int requestId = in.getInt();
+                    Pending<?> pending = inFlight.poll();
+                    if (pending == null || pending.requestId != requestId) {
+                        throw new IOException("Unexpected answer to request " + requestId);
+                    }
+                    pending.complete(status, in);
+                    in.limit(limit).position(end);
+                }
+                if (needed > in.capacity()) {
+                    // Availability of a very large office; keep the bigger buffer from now on
+                    ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(needed) << 1);
+                    larger.put(in);
+                    in = larger;
+                } else {
+                    in.compact();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    private static BookingResult readBookingResult(byte status, ByteBuffer answer) {
+        if (status == BookingProtocol.REJECTED) {
+            return BookingResult.rejected(RejectionReason.values()[answer.get()]);
+        }
+        return BookingResult.booked(BookingProtocol.getString(answer));
+    }
+    
+    private static Boolean readBoolean(byte status, ByteBuffer answer) {
+        return answer.get() != 0;
+    }
+    
+    private static Boolean readCancelled(byte status, ByteBuffer answer) {
+        if (status == BookingProtocol.REJECTED) {
+            RejectionReason reason = RejectionReason.values()[answer.get()];
+            throw new CompletionException(new BookingException(reason, "Cancellation rejected: " + reason));
+        }
+        return readBoolean(status, answer);
+    }
+    
+    private static BitSet readFreeSeats(byte status, ByteBuffer answer) {
+        answer.getInt(); // seat count; the bit set ends at the last free seat
+        return BitSet.valueOf(answer);
+    }
+    
+    /**
+     * Decodes the body of a successful or rejected answer.
+     */
+    @FunctionalInterface
+    private interface AnswerReader<T> {
+        T read(byte status, ByteBuffer answer);
+    }
+    
+    /**
+     * A request waiting for its answer.
+     */
+    private static final class Pending<T> {
+        final int requestId;
+        final AnswerReader<T> answerReader;
+        final CompletableFuture<T> future;
+        
+        Pending(int requestId, AnswerReader<T> answerReader) {
+            this.requestId = requestId;
+            this.answerReader = answerReader;
+            this.future = new CompletableFuture<>();
+        }
+        
+        void complete(byte status, ByteBuffer answer) {
+            if (status == BookingProtocol.ERROR) {
+                future.completeExceptionally(new IllegalArgumentException(BookingProtocol.getString(answer)));
+                return;
+            }
+            try {
+                future.complete(answerReader.read(status, answer));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
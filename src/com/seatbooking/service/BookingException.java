@@ -5,11 +5,26 @@ package com.seatbooking.service;
  */
 public class BookingException extends Exception {
     
+    private final RejectionReason reason;
+    
     public BookingException(String message) {
+        this(null, message);
+    }
+    
+    public BookingException(RejectionReason reason, String message) {
         super(message);
+        this.reason = reason;
     }
     
     public BookingException(String message, Throwable cause) {
         super(message, cause);
+        this.reason = null;
+    }
+    
+    /**
+     * Returns why the operation was rejected, or null if the cause is not a booking rule.
+     */
+    public RejectionReason getReason() {
+        return reason;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.util.List;
+
+/**
+ * Receives booking changes from a BookingService in commit order.
+ * Callbacks run while the service's write lock is held; see BookingService#subscribe.
+ */
+public interface BookingListener {
+    
+    /**
+     * Called after a booking has been stored.
+     */
+    void onBooked(Booking booking);
+    
+    /**
+     * Called after a booking made elsewhere has been stored through restoreBooking, such as
+     * one replicated from a leader, loaded from a database or imported from a file.
+     * Listeners that do not tell the two apart see an ordinary booking.
+     */
+    default void onRestored(Booking booking) {
+        onBooked(booking);
+    }
+    
+    /**
+     * Called after a booking has been cancelled.
+     */
+    void onCancelled(Booking booking);
+    
+    /**
+     * Called after a booking has been reclaimed as a no-show.
+     * Listeners that do not tell the two apart see an ordinary cancellation.
+     */
+    default void onReclaimed(Booking booking) {
+        onCancelled(booking);
+    }
+    
+    /**
+     * Called after a booking has been moved out of the service into an archive, such as by
+     * archiveBookingsBefore. Listeners that do not tell the two apart see an ordinary
+     * cancellation, which is right for those mirroring the service's live bookings.
+     */
+    default void onArchived(Booking booking) {
+        onCancelled(booking);
+    }
+    
+    /**
+     * Called after bookings have moved to other seats in one step, such as a swap.
+     * before.get(i) became after.get(i), keeping its ID, user and date.
+     * Listeners that do not handle moves see all the old bookings cancelled,
+     * then all the new ones booked, so no seat is ever held twice.
+     */
+    default void onMoved(List<Booking> before, List<Booking> after) {
+        before.forEach(this::onCancelled);
+        after.forEach(this::onBooked);
+    }
+    
+    /**
+     * Called the first time the holder of a booking checks in.
+     */
+    default void onCheckedIn(Booking booking) {
+    }
+}
@@ -0,0 +1,217 @@
+package com.seatbooking.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Low-overhead operational metrics for a BookingService: per-operation latency
+ * histograms, counters per rejection reason and occupancy gauges.
+ * 
+ * Counters are exact. Latency is sampled: reading the clock costs more than a
+ * lock-free availability read, so by default only one call in 16 is timed, which keeps
+ * the amortized overhead to a few nanoseconds while percentiles stay unbiased.
+ * Recording never allocates or locks. Metrics are readable through JMX (see register)
+ * or as plain text via dump.
+ */
+public class BookingMetrics implements BookingMetricsMBean {
+    
+    private static final double[] DUMP_PERCENTILES = {50, 90, 99, 99.9};
+    private static final int DEFAULT_SAMPLE_INTERVAL = 16;
+    
+    /**
+     * Timer value for calls that are not sampled.
+     */
+    static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private final LatencyHistogram bookLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+    private final LatencyHistogram availabilityLatency = new LatencyHistogram();
+    
+    private final LongAdder bookings = new LongAdder();
+    private final LongAdder cancellations = new LongAdder();
+    private final LongAdder[] rejections;
+    
+    private final IntSupplier activeBookings;
+    private final IntSupplier bookedToday;
+    private final int totalSeats;
+    private volatile int sampleMask = DEFAULT_SAMPLE_INTERVAL - 1;
+    
+    BookingMetrics(IntSupplier activeBookings, IntSupplier bookedToday, int totalSeats) {
+        this.activeBookings = activeBookings;
+        this.bookedToday = bookedToday;
+        this.totalSeats = totalSeats;
+        this.rejections = new LongAdder[RejectionReason.values().length];
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Starts timing a call if it is sampled; returns NOT_TIMED otherwise.
+     */
+    long startTimer() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    void recordBooked(long timer) {
+        bookings.increment();
+        stopTimer(bookLatency, timer);
+    }
+    
+    void recordRejected(RejectionReason reason, long timer) {
+        if (reason != null) {
+            rejections[reason.ordinal()].increment();
+        }
+        stopTimer(bookLatency, timer);
+    }
+    
+    void recordCancel(boolean cancelled, long timer) {
+        if (cancelled) {
+            cancellations.increment();
+        }
+        stopTimer(cancelLatency, timer);
+    }
+    
+    void recordAvailability(long timer) {
+        stopTimer(availabilityLatency, timer);
+    }
+    
+    private static void stopTimer(LatencyHistogram histogram, long timer) {
+        if (timer != NOT_TIMED) {
+            histogram.record(System.nanoTime() - timer);
+        }
+    }
+    
+    /**
+     * Sets how many calls share one latency sample: 1 times every call.
+     * Must be a power of two.
+     */
+    public void setSampleInterval(int interval) {
+        if (interval < 1 || Integer.bitCount(interval) != 1) {
+            throw new IllegalArgumentException("Sample interval must be a power of two");
+        }
+        this.sampleMask = interval - 1;
+    }
+    
+    /**
+     * Registers these metrics with the platform MBean server under
+     * com.seatbooking:type=BookingMetrics,name=&lt;name&gt;.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.seatbooking:type=BookingMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+    
+    public LatencyHistogram getBookLatency() {
+        return bookLatency;
+    }
+    
+    public LatencyHistogram getCancelLatency() {
+        return cancelLatency;
+    }
+    
+    public LatencyHistogram getAvailabilityLatency() {
+        return availabilityLatency;
+    }
+    
+    public long getRejectionCount(RejectionReason reason) {
+        return rejections[reason.ordinal()].sum();
+    }
+    
+    @Override
+    public long getBookings() {
+        return bookings.sum();
+    }
+    
+    @Override
+    public long getCancellations() {
+        return cancellations.sum();
+    }
+    
+    @Override
+    public long getRejections() {
+        long total = 0;
+        for (LongAdder adder : rejections) {
+            total += adder.sum();
+        }
+        return total;
+    }
+    
+    @Override
+    public int getActiveBookings() {
+        return activeBookings.getAsInt();
+    }
+    
+    @Override
+    public int getBookedToday() {
+        return bookedToday.getAsInt();
+    }
+    
+    @Override
+    public double getOccupancyToday() {
+        return totalSeats == 0 ? 0 : (double) getBookedToday() / totalSeats;
+    }
+    
+    @Override
+    public long getBookP50Nanos() {
+        return bookLatency.getValueAtPercentile(50);
+    }
+    
+    @Override
+    public long getBookP99Nanos() {
+        return bookLatency.getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getCancelP99Nanos() {
+        return cancelLatency.getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getAvailabilityP99Nanos() {
+        return availabilityLatency.getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getRejectionCount(String reason) {
+        return getRejectionCount(RejectionReason.valueOf(reason));
+    }
+    
+    /**
+     * Returns all metrics as plain text, one "name value" pair per line.
+     */
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        line(out, "bookings_total", getBookings());
+        line(out, "cancellations_total", getCancellations());
+        for (RejectionReason reason : RejectionReason.values()) {
+            line(out, "rejections_total{reason=\"" + reason + "\"}", getRejectionCount(reason));
+        }
+        line(out, "active_bookings", getActiveBookings());
+        line(out, "booked_today", getBookedToday());
+        line(out, "seats_total", totalSeats);
+        dumpLatency(out, "book", bookLatency);
+        dumpLatency(out, "cancel", cancelLatency);
+        dumpLatency(out, "availability", availabilityLatency);
+        return out.toString();
+    }
+    
+    private static void dumpLatency(StringBuilder out, String operation, LatencyHistogram histogram) {
+        line(out, "latency_count{op=\"" + operation + "\"}", histogram.getCount());
+        for (double percentile : DUMP_PERCENTILES) {
+            line(out, "latency_ns{op=\"" + operation + "\",p=\"" + percentile + "\"}", 
+                 histogram.getValueAtPercentile(percentile));
+        }
+        line(out, "latency_ns{op=\"" + operation + "\",p=\"max\"}", histogram.getMax());
+    }
+    
+    private static void line(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
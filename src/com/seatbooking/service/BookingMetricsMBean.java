@@ -0,0 +1,31 @@
+package com.seatbooking.service;
+
+/**
+ * JMX management interface for BookingMetrics.
+ */
+public interface BookingMetricsMBean {
+    
+    long getBookings();
+    
+    long getCancellations();
+    
+    long getRejections();
+    
+    int getActiveBookings();
+    
+    int getBookedToday();
+    
+    double getOccupancyToday();
+    
+    long getBookP50Nanos();
+    
+    long getBookP99Nanos();
+    
+    long getCancelP99Nanos();
+    
+    long getAvailabilityP99Nanos();
+    
+    long getRejectionCount(String reason);
+    
+    String dump();
+}
@@ -0,0 +1,383 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a BookingRepository in step with a BookingService by write-behind.
+ * 
+ * On start the repository's bookings are restored into the service, which then serves
+ * every read from memory as before. Changes are handed to a bounded queue under the
+ * service's write lock and written by one writer thread, which drains whatever has
+ * queued up into a single repository batch. Within a batch, changes to the same booking
+ * are coalesced, so a booking made and cancelled before it was written costs nothing.
+ * Bookings therefore never wait for the database, unless it falls a whole queue behind;
+ * then bookings wait for room, so no change is ever dropped.
+ * 
+ * A failed write is retried, with growing pauses, until it succeeds. A batch the
+ * repository rejects outright, such as for a key constraint, is written again one change
+ * at a time, and only the changes rejected on their own are dropped and reported. Archived
+ * bookings are deleted from the repository like cancelled ones, so they are not restored
+ * as live bookings on the next start; the archive keeps them.
+ * 
+ * Every stored booking ID is kept from reuse, including those of rows the service would
+ * not take back on start, which stay in the repository.
+ */
+public class BookingPersistence implements BookingListener, Closeable {
+    
+    public static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+    
+    private static final int MAX_BATCH = 4096;
+    private static final long MIN_RETRY_MILLIS = 10;
+    private static final long MAX_RETRY_MILLIS = 1000;
+    private static final long POLL_MILLIS = 100;
+    
+    private static final byte INSERT = 0;
+    private static final byte UPDATE = 1;
+    private static final byte DELETE = 2;
+    
+    private final BookingService service;
+    private final BookingRepository repository;
+    private final BlockingQueue<Change> queue;
+    private final Thread writer;
+    private final int restoredCount;
+    private final int skippedCount;
+    
+    // Only changed under the service's write lock
+    private volatile long queuedCount;
+    
+    // Guarded by this
+    private long writtenCount;
+    private long batchCount;
+    private long failureCount;
+    // Failures a flush has already thrown for, or that were healed by the time a flush returned
+    private long reportedFailures;
+    // Changes the repository rejected, which are never written, and how many a flush has thrown for
+    private long rejectedCount;
+    private long reportedRejections;
+    private String rejection;
+    // Changes dropped because the thread making them was interrupted while queueing
+    private long lostCount;
+    private String failure;
+    
+    private volatile boolean running;
+    
+    /**
+     * Restores the repository's bookings into the service and starts writing its changes.
+     */
+    public BookingPersistence(BookingService service, BookingRepository repository) throws IOException {
+        this(service, repository, DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Restores the repository's bookings into the service and starts writing its changes,
+     * with room for queueCapacity changes that are not yet written.
+     */
+    public BookingPersistence(BookingService service, BookingRepository repository, int queueCapacity)
+            throws IOException {
+        this.service = service;
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        
+        List<StoredBooking> stored = new ArrayList<>();
+        repository.loadAll((bookingId, userId, seatId, date, bookingTime) ->
+                stored.add(new StoredBooking(bookingId, userId, seatId, date, bookingTime)));
+        Set<String> storedIds = new HashSet<>();
+        int[] skipped = new int[1];
+        service.applyExclusively(() -> {
+            for (StoredBooking booking : stored) {
+                try {
+                    service.restoreBooking(booking.bookingId(), booking.userId(), booking.seatId(),
+                                           booking.date(), booking.bookingTime());
+                    storedIds.add(booking.bookingId());
+                } catch (BookingException e) {
+                    // Unknown users or seats, or conflicts: left in the repository, but not live here;
+                    // the service still keeps their IDs from being generated again
+                    skipped[0]++;
+                }
+            }
+        });
+        this.restoredCount = storedIds.size();
+        this.skippedCount = skipped[0];
+        
+        this.running = true;
+        this.writer = new Thread(this::writeChanges, "booking-persistence");
+        writer.setDaemon(true);
+        writer.start();
+        
+        // Bookings made before the repository was attached are written first, ahead of any later change
+        service.applyExclusively(() -> {
+            for (Booking booking : service.subscribe(this)) {
+                if (!storedIds.contains(booking.getBookingId())) {
+                    enqueue(INSERT, booking);
+                }
+            }
+        });
+    }
+    
+    @Override
+    public void onBooked(Booking booking) {
+        enqueue(INSERT, booking);
+    }
+    
+    @Override
+    public void onCancelled(Booking booking) {
+        enqueue(DELETE, booking);
+    }
+    
+    @Override
+    public void onMoved(List<Booking> before, List<Booking> after) {
+        for (Booking booking : after) {
+            enqueue(UPDATE, booking);
+        }
+    }
+    
+    /**
+     * Returns the number of bookings restored from the repository on start.
+     */
+    public int getRestoredCount() {
+        return restoredCount;
+    }
+    
+    /**
+     * Returns the number of stored bookings the service would not take back on start.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+    
+    /**
+     * Returns the number of changes dropped because the repository rejected them.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+    
+    /**
+     * Returns the number of changes waiting to be written.
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+    
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+    
+    /**
+     * Returns the last write error, or null once writes succeed again.
+     */
+    public synchronized String getFailure() {
+        return failure;
+    }
+    
+    /**
+     * Waits until every change made so far is in the repository, or was rejected by it.
+     * Throws if a write fails before then, including one that failed just before the call
+     * and has not been reported by an earlier flush; the writer keeps retrying regardless.
+     * Also throws, once, for changes rejected since the last flush.
+     */
+    public void flush() throws IOException, InterruptedException {
+        long target = queuedCount;
+        synchronized (this) {
+            while (writtenCount + rejectedCount < target) {
+                if (failureCount != reportedFailures) {
+                    reportedFailures = failureCount;
+                    throw new IOException("Booking repository write failed: " + failure);
+                }
+                wait();
+            }
+            reportedFailures = failureCount;
+            if (rejectedCount != reportedRejections) {
+                reportedRejections = rejectedCount;
+                throw new IOException("Booking repository rejected changes: " + rejection);
+            }
+        }
+    }
+    
+    /**
+     * Stops listening, writes the remaining changes and closes the repository.
+     */
+    @Override
+    public void close() throws IOException {
+        // Under the write lock, so no change is still being queued once the writer is told to stop
+        service.applyExclusively(() -> service.unsubscribe(this));
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            repository.close();
+        }
+        synchronized (this) {
+            if (writtenCount < queuedCount || lostCount > 0) {
+                throw new IOException((queuedCount - writtenCount + lostCount) + " booking changes were not written: "
+                                      + (failure != null ? failure : rejection));
+            }
+        }
+    }
+    
+    private void enqueue(byte type, Booking booking) {
+        try {
+            queue.put(new Change(type, booking));
+            queuedCount++;
+        } catch (InterruptedException e) {
+            // Listeners must not throw; keep the interrupt for the caller and drop the change
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                lostCount++;
+                failure = "Interrupted while queueing " + booking.getBookingId();
+            }
+        }
+    }
+    
+    private void writeChanges() {
+        List<Change> drained = new ArrayList<>(MAX_BATCH);
+        Map<String, Change> pending = new LinkedHashMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<Booking> updated = new ArrayList<>();
+        List<Booking> inserted = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Change first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(drained, MAX_BATCH - 1);
+            
+            coalesce(drained, pending);
+            for (Change change : pending.values()) {
+                switch (change.type) {
+                    case INSERT -> inserted.add(change.booking);
+                    case UPDATE -> updated.add(change.booking);
+                    default -> deleted.add(change.booking.getBookingId());
+                }
+            }
+            writeBatch(pending.values(), deleted, updated, inserted, drained.size());
+            
+            drained.clear();
+            pending.clear();
+            deleted.clear();
+            updated.clear();
+            inserted.clear();
+        }
+    }
+    
+    /**
+     * Reduces changes in commit order to one per booking: a booking made and then moved is
+     * inserted at its last seat, and one made and then cancelled is not written at all.
+     */
+    private static void coalesce(List<Change> changes, Map<String, Change> pending) {
+        for (Change change : changes) {
+            String bookingId = change.booking.getBookingId();
+            Change earlier = pending.get(bookingId);
+            if (earlier == null) {
+                pending.put(bookingId, change);
+            } else if (earlier.type == INSERT && change.type == DELETE) {
+                pending.remove(bookingId);
+            } else if (earlier.type == INSERT) {
+                pending.put(bookingId, new Change(INSERT, change.booking));
+            } else {
+                pending.put(bookingId, change);
+            }
+        }
+    }
+    
+    /**
+     * Writes the coalesced form of a number of queued changes as one batch. If the repository
+     * rejects the batch, the changes are written one at a time and those rejected on their
+     * own are dropped, so one bad change cannot hold up the rest forever.
+     */
+    private void writeBatch(Collection<Change> pending, List<String> deleted, List<Booking> updated,
+                            List<Booking> inserted, int changes) {
+        boolean written;
+        int rejected = 0;
+        String lastRejection = null;
+        try {
+            written = writeWithRetry(deleted, updated, inserted);
+        } catch (BookingRepository.BatchRejectedException e) {
+            written = true;
+            for (Change change : pending) {
+                try {
+                    String bookingId = change.booking.getBookingId();
+                    written = writeWithRetry(change.type == DELETE ? List.of(bookingId) : List.of(),
+                                             change.type == UPDATE ? List.of(change.booking) : List.of(),
+                                             change.type == INSERT ? List.of(change.booking) : List.of());
+                } catch (BookingRepository.BatchRejectedException bad) {
+                    rejected++;
+                    lastRejection = bad.toString();
+                }
+                if (!written) {
+                    break;
+                }
+            }
+        }
+        if (written) {
+            synchronized (this) {
+                // A rejected change may stand for several queued ones; the others count as written, so flush returns
+                writtenCount += changes - rejected;
+                rejectedCount += rejected;
+                batchCount++;
+                if (lastRejection != null) {
+                    rejection = rejectedCount + " changes rejected, last: " + lastRejection;
+                }
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Writes one batch, retrying until it is written, and returns true; returns false if
+     * the writer is stopped first. Throws, without retrying, if the repository rejects it.
+     */
+    private boolean writeWithRetry(List<String> deleted, List<Booking> updated, List<Booking> inserted)
+            throws BookingRepository.BatchRejectedException {
+        long pause = MIN_RETRY_MILLIS;
+        while (true) {
+            try {
+                repository.write(deleted, updated, inserted);
+                synchronized (this) {
+                    failure = null;
+                }
+                return true;
+            } catch (BookingRepository.BatchRejectedException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    failureCount++;
+                    failure = e.toString();
+                    notifyAll();
+                }
+                if (!running) {
+                    // Closing: give up rather than retry forever; close reports what was lost
+                    return false;
+                }
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    return false;
+                }
+                pause = Math.min(pause * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+    
+    private record Change(byte type, Booking booking) {
+    }
+    
+    private record StoredBooking(String bookingId, String userId, String seatId, LocalDate date,
+                                 LocalDateTime bookingTime) {
+    }
+}
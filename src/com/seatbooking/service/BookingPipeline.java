@@ -0,0 +1,309 @@
+package com.seatbooking.service;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional execution mode for a BookingService in which bookings and cancellations are
+ * queued on a preallocated ring buffer and applied by a single writer thread.
+ * 
+ * Producers claim a slot, fill it and publish it; they never touch the service's write lock.
+ * The writer takes every published request at once and applies the batch under one
+ * acquisition of the write lock, so the lock is never contended by pipeline traffic and
+ * listeners (audit log, replication) see the batch in ring order. Each date the batch
+ * changes is copied and published once, rather than once per request. Futures are completed
+ * after the lock is released, on the writer thread, so their callbacks must not block.
+ * 
+ * When the ring is full, producers wait for the writer rather than queueing without bound.
+ * Direct calls on the service still work alongside the pipeline and take the lock as usual.
+ */
+public final class BookingPipeline implements Closeable {
+    
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    // Set in the claim counter once closed; sequences never get near it
+    private static final long CLOSED = 1L << 62;
+    private static final int SPINS_BEFORE_PARKING = 64;
+    // Waiters are woken explicitly; the timeout only bounds the cost of a missed wakeup
+    private static final long PARK_NANOS = 10_000_000;
+    
+    private final BookingService service;
+    private final Slot[] slots;
+    private final int mask;
+    
+    // Next sequence to claim, plus the CLOSED bit
+    private final AtomicLong claimed;
+    // Per slot, the sequence last published into it
+    private final AtomicLongArray published;
+    // Next sequence the writer will take; slots below it are free again
+    private volatile long consumed;
+    private volatile boolean writerParked;
+    // Producers parked on a full ring, woken whenever the writer frees slots
+    private final Queue<Thread> blockedProducers;
+    
+    private final Thread writer;
+    private final AtomicLong batches;
+    
+    public BookingPipeline(BookingService service) {
+        this(service, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Starts a pipeline for the service with a ring of the given capacity,
+     * which must be a power of two.
+     */
+    public BookingPipeline(BookingService service, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, at least 2");
+        }
+        this.service = service;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, i - capacity);
+        }
+        this.mask = capacity - 1;
+        this.claimed = new AtomicLong();
+        this.batches = new AtomicLong();
+        this.blockedProducers = new ConcurrentLinkedQueue<>();
+        
+        this.writer = new Thread(this::runWriter, "booking-pipeline");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Queues a booking; see BookingService#tryBookSeat.
+     */
+    public CompletableFuture<BookingResult> bookSeat(String userId, String seatId, LocalDate date) {
+        CompletableFuture<BookingResult> future = new CompletableFuture<>();
+        if (Thread.currentThread() == writer) {
+            // Called from a completion callback; waiting for a slot here could deadlock
+            future.complete(service.tryBookSeat(userId, seatId, date));
+            return future;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            future.completeExceptionally(new IllegalStateException("Pipeline is closed"));
+            return future;
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.userId = userId;
+        slot.seatId = seatId;
+        slot.date = date;
+        slot.bookingFuture = future;
+        publish(sequence);
+        return future;
+    }
+    
+    /**
+     * Queues a cancellation; see BookingService#cancelBooking.
+     */
+    public CompletableFuture<Boolean> cancelBooking(String bookingId) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (Thread.currentThread() == writer) {
+            future.complete(service.cancelBooking(bookingId));
+            return future;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            future.completeExceptionally(new IllegalStateException("Pipeline is closed"));
+            return future;
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.bookingId = bookingId;
+        slot.cancelFuture = future;
+        publish(sequence);
+        return future;
+    }
+    
+    /**
+     * Returns the number of batches applied so far; with the number of requests
+     * this gives the average batch size.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+    
+    /**
+     * Returns the number of requests applied so far.
+     */
+    public long getAppliedCount() {
+        return consumed;
+    }
+    
+    /**
+     * Stops accepting requests, applies those already queued and waits for the writer to finish.
+     */
+    @Override
+    public void close() {
+        long current = claimed.get();
+        while ((current & CLOSED) == 0 && !claimed.compareAndSet(current, current | CLOSED)) {
+            current = claimed.get();
+        }
+        LockSupport.unpark(writer);
+        if (Thread.currentThread() != writer) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Claims the next sequence once its slot is free, so every claimed slot can be
+     * published straight away. Returns -1 once the pipeline is closed.
+     */
+    private long claim() {
+        int spins = 0;
+        while (true) {
+            long sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) {
+                return -1;
+            }
+            if (sequence - consumed < slots.length) {
+                if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            } else if (++spins < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+            } else {
+                // The ring is full: park so the writer gets the CPU, until it frees slots
+                Thread current = Thread.currentThread();
+                blockedProducers.add(current);
+                if (sequence - consumed >= slots.length) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+                blockedProducers.remove(current);
+            }
+        }
+    }
+    
+    private void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+    
+    private void runWriter() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            // Take every request published in order from next on
+            long end = next;
+            while (end - next < slots.length && published.get((int) end & mask) == end) {
+                end++;
+            }
+            
+            if (end == next) {
+                long claimState = claimed.get();
+                if ((claimState & CLOSED) != 0 && (claimState & ~CLOSED) == next) {
+                    // Producers still waiting for a slot will see the pipeline closed
+                    blockedProducers.forEach(LockSupport::unpark);
+                    return;
+                }
+                if (++idle < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                } else if (idle < 2 * SPINS_BEFORE_PARKING) {
+                    Thread.yield();
+                } else {
+                    writerParked = true;
+                    if (published.get((int) next & mask) != next) {
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                    writerParked = false;
+                }
+                continue;
+            }
+            idle = 0;
+            
+            long from = next;
+            long to = end;
+            service.applyExclusively(() -> {
+                for (long sequence = from; sequence < to; sequence++) {
+                    slots[(int) sequence & mask].apply(service);
+                }
+            });
+            batches.incrementAndGet();
+            
+            // Each slot is handed back as soon as its future is completed
+            for (long sequence = from; sequence < to; sequence++) {
+                slots[(int) sequence & mask].complete();
+                consumed = sequence + 1;
+            }
+            next = end;
+            // Wake the producers waiting now; any that queue up meanwhile found the ring full again
+            for (int waiting = blockedProducers.size(); waiting > 0; waiting--) {
+                Thread producer = blockedProducers.poll();
+                if (producer == null) {
+                    break;
+                }
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+    
+    /**
+     * A preallocated request cell: either a booking or a cancellation, and its outcome
+     * until the future is completed.
+     */
+    private static final class Slot {
+        String userId;
+        String seatId;
+        LocalDate date;
+        String bookingId;
+        CompletableFuture<BookingResult> bookingFuture;
+        CompletableFuture<Boolean> cancelFuture;
+        BookingResult bookingResult;
+        boolean cancelled;
+        RuntimeException failure;
+        
+        void apply(BookingService service) {
+            try {
+                if (bookingFuture != null) {
+                    bookingResult = service.tryBookSeat(userId, seatId, date);
+                } else {
+                    cancelled = service.cancelBooking(bookingId);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        
+        void complete() {
+            CompletableFuture<BookingResult> booking = bookingFuture;
+            CompletableFuture<Boolean> cancel = cancelFuture;
+            BookingResult result = bookingResult;
+            boolean wasCancelled = cancelled;
+            RuntimeException error = failure;
+            
+            // Release references before the slot is handed back to producers
+            userId = null;
+            seatId = null;
+            date = null;
+            bookingId = null;
+            bookingFuture = null;
+            cancelFuture = null;
+            bookingResult = null;
+            failure = null;
+            
+            CompletableFuture<?> future = booking != null ? booking : cancel;
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else if (booking != null) {
+                booking.complete(result);
+            } else {
+                cancel.complete(wasCancelled);
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.SeatType;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * The set of booking rules an office enforces, compiled into a flat chain per seat type.
+ * 
+ * Policies are declared in a properties file, for example:
+ * <pre>
+ * rules = weekend, past-date, batch-rotation, advance-limit, release-time, next-day-only
+ * advance-limit.days = 14
+ * advance-limit.seat-types = FIXED
+ * release-time.time = 15:00
+ * release-time.seat-types = FLOATER
+ * next-day-only.seat-types = FLOATER
+ * </pre>
+ * At load time the rules are sorted cheapest-first and split by seat type, so checking a
+ * request is one array lookup followed by a straight loop that stops at the first violation.
+ * Built-in rules are compiled to opcodes evaluated in a single switch, so the loop makes
+ * no virtual calls; only custom rules supplied through {@link #of(List)} are called as objects.
+ */
+public final class BookingPolicy {
+    
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("h:mm a", Locale.ENGLISH);
+    
+    private final List<String> ruleNames;
+    private final Chain[] chainBySeatType;
+    private final int advanceLimitDays;
+    private final LocalTime releaseTime;
+    // Whether the weekend rule covers every seat type, so nothing can be booked on weekends
+    private final boolean closedOnWeekends;
+    
+    private BookingPolicy(List<String> ruleNames, List<BookingRule> rules, int advanceLimitDays, 
+                          LocalTime releaseTime) {
+        this.ruleNames = List.copyOf(ruleNames);
+        this.advanceLimitDays = advanceLimitDays;
+        this.releaseTime = releaseTime;
+        
+        List<BookingRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparingInt(BookingRule::cost)); // stable: ties keep declared order
+        
+        SeatType[] types = SeatType.values();
+        this.chainBySeatType = new Chain[types.length];
+        for (SeatType type : types) {
+            chainBySeatType[type.ordinal()] = Chain.compile(ordered.stream()
+                    .filter(rule -> rule.appliesTo(type))
+                    .toArray(BookingRule[]::new));
+        }
+        this.closedOnWeekends = Arrays.stream(chainBySeatType)
+                .allMatch(chain -> Arrays.stream(chain.ops).anyMatch(op -> op == OP_WEEKEND));
+    }
+    
+    /**
+     * Returns the standard policy: no weekends or past dates, batch rotation,
+     * FIXED seats up to 14 days ahead, FLOATER seats only for tomorrow and after 3 PM.
+     */
+    public static BookingPolicy defaultPolicy() {
+        Properties properties = new Properties();
+        properties.setProperty("rules", "weekend, past-date, batch-rotation, advance-limit, release-time, next-day-only");
+        properties.setProperty("advance-limit.days", "14");
+        properties.setProperty("advance-limit.seat-types", "FIXED");
+        properties.setProperty("release-time.time", "15:00");
+        properties.setProperty("release-time.seat-types", "FLOATER");
+        properties.setProperty("next-day-only.seat-types", "FLOATER");
+        return fromProperties(properties);
+    }
+    
+    /**
+     * Loads and compiles a policy from a properties file.
+     */
+    public static BookingPolicy load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+    
+    /**
+     * Compiles a policy from properties; see the class documentation for the format.
+     */
+    public static BookingPolicy fromProperties(Properties properties) {
+        List<String> names = new ArrayList<>();
+        List<BookingRule> rules = new ArrayList<>();
+        int advanceLimitDays = -1;
+        LocalTime releaseTime = null;
+        
+        for (String token : properties.getProperty("rules", "").split(",")) {
+            String name = token.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Set<SeatType> seatTypes = seatTypes(properties, name);
+            BookingRule rule;
+            switch (name) {
+                case "weekend" -> rule = new BuiltInRule(OP_WEEKEND, 0, 1, seatTypes);
+                case "past-date" -> rule = new BuiltInRule(OP_PAST_DATE, 0, 1, seatTypes);
+                case "batch-rotation" -> rule = new BuiltInRule(OP_BATCH_ROTATION, 0, 3, seatTypes);
+                case "advance-limit" -> {
+                    advanceLimitDays = Integer.parseInt(required(properties, name + ".days"));
+                    rule = new BuiltInRule(OP_ADVANCE_LIMIT, advanceLimitDays, 2, seatTypes);
+                }
+                case "release-time" -> {
+                    releaseTime = LocalTime.parse(required(properties, name + ".time"));
+                    rule = new BuiltInRule(OP_RELEASE_TIME, releaseTime.toNanoOfDay(), 2, seatTypes);
+                }
+                case "next-day-only" -> rule = new BuiltInRule(OP_NEXT_DAY_ONLY, 0, 2, seatTypes);
+                default -> throw new IllegalArgumentException("Unknown booking rule: " + name);
+            }
+            names.add(name);
+            rules.add(rule);
+        }
+        
+        return new BookingPolicy(names, rules, advanceLimitDays, releaseTime);
+    }
+    
+    /**
+     * Returns a policy made of custom rules.
+     */
+    public static BookingPolicy of(List<BookingRule> rules) {
+        List<String> names = new ArrayList<>();
+        rules.forEach(rule -> names.add(rule.getClass().getSimpleName()));
+        return new BookingPolicy(names, rules, -1, null);
+    }
+    
+    /**
+     * Returns the first rule the request violates, or null if it is allowed.
+     */
+    public RejectionReason check(BookingRequest request) {
+        Chain chain = chainBySeatType[request.seat().getType().ordinal()];
+        int[] ops = chain.ops;
+        long day = request.date().toEpochDay();
+        long today = request.today().toEpochDay();
+        for (int i = 0; i < ops.length; i++) {
+            RejectionReason rejection = ops[i] == OP_CUSTOM 
+                    ? chain.rules[i].check(request) 
+                    : evaluate(ops[i], chain.params[i], request, day, today);
+            if (rejection != null) {
+                return rejection;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns whether the office is open on a date under this policy, that is whether some
+     * seat can be booked for it at all: false on weekends when the weekend rule applies to
+     * every seat type. Rules that depend on the day the booking is made, and custom rules,
+     * do not close a date.
+     */
+    public boolean allowsDate(LocalDate date) {
+        return !closedOnWeekends || !isWeekend(date.toEpochDay());
+    }
+    
+    /**
+     * Returns the rule names in declaration order.
+     */
+    public List<String> getRuleNames() {
+        return ruleNames;
+    }
+    
+    /**
+     * Returns the number of rules evaluated for a seat type.
+     */
+    public int getChainLength(SeatType type) {
+        return chainBySeatType[type.ordinal()].ops.length;
+    }
+    
+    /**
+     * Builds the user-facing message for a rule violation of this policy.
+     */
+    String describe(RejectionReason reason, SeatType seatType) {
+        return switch (reason) {
+            case WEEKEND -> "Booking not allowed on weekends";
+            case PAST_DATE -> "Cannot book seats for past dates";
+            case BEYOND_ADVANCE_LIMIT -> seatType.getDisplayName() + " seats can only be booked up to " 
+                                         + advanceLimitDays + " days in advance";
+            case FLOATER_BEFORE_RELEASE -> seatType.getDisplayName() + " seats can only be booked after " 
+                                           + (releaseTime == null ? "release" : releaseTime.format(TIME_FORMAT));
+            case FLOATER_NOT_TOMORROW -> seatType.getDisplayName() + " seats can only be booked for tomorrow";
+            default -> "Booking rejected: " + reason;
+        };
+    }
+    
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing policy property: " + key);
+        }
+        return value.trim();
+    }
+    
+    private static Set<SeatType> seatTypes(Properties properties, String ruleName) {
+        String value = properties.getProperty(ruleName + ".seat-types");
+        if (value == null || value.isBlank()) {
+            return EnumSet.allOf(SeatType.class);
+        }
+        Set<SeatType> types = EnumSet.noneOf(SeatType.class);
+        for (String type : value.split(",")) {
+            types.add(SeatType.valueOf(type.trim().toUpperCase()));
+        }
+        return types;
+    }
+    
+    // Built-in rules
+    
+    private static final int OP_CUSTOM = 0;
+    private static final int OP_WEEKEND = 1;
+    private static final int OP_PAST_DATE = 2;
+    private static final int OP_ADVANCE_LIMIT = 3;
+    private static final int OP_RELEASE_TIME = 4;
+    private static final int OP_NEXT_DAY_ONLY = 5;
+    private static final int OP_BATCH_ROTATION = 6;
+    
+    /**
+     * Evaluates a built-in rule. param holds the rule's setting: the advance limit
+     * in days, or the release time as nano-of-day. day and today are the request's epoch days.
+     */
+    private static RejectionReason evaluate(int op, long param, BookingRequest request, long day, long today) {
+        return switch (op) {
+            case OP_WEEKEND -> isWeekend(day) ? RejectionReason.WEEKEND : null;
+            case OP_PAST_DATE -> day < today ? RejectionReason.PAST_DATE : null;
+            case OP_ADVANCE_LIMIT -> day - today > param ? RejectionReason.BEYOND_ADVANCE_LIMIT : null;
+            case OP_RELEASE_TIME -> day == today && request.now().toNanoOfDay() < param 
+                    ? RejectionReason.FLOATER_BEFORE_RELEASE : null;
+            case OP_NEXT_DAY_ONLY -> day != today + 1 ? RejectionReason.FLOATER_NOT_TOMORROW : null;
+            case OP_BATCH_ROTATION -> request.user().getBatch() != BookingService.rotationBatchFor(request.date())
+                    ? RejectionReason.WRONG_BATCH : null;
+            default -> throw new IllegalStateException("Unknown rule opcode: " + op);
+        };
+    }
+    
+    private static boolean isWeekend(long epochDay) {
+        return Math.floorMod(epochDay + 3, 7) >= 5; // 0 = Monday
+    }
+    
+    /**
+     * A built-in rule as declared in configuration.
+     */
+    private static final class BuiltInRule implements BookingRule {
+        private final int op;
+        private final long param;
+        private final int cost;
+        private final Set<SeatType> seatTypes;
+        
+        BuiltInRule(int op, long param, int cost, Set<SeatType> seatTypes) {
+            this.op = op;
+            this.param = param;
+            this.cost = cost;
+            this.seatTypes = seatTypes;
+        }
+        
+        @Override
+        public RejectionReason check(BookingRequest request) {
+            return evaluate(op, param, request, request.date().toEpochDay(), request.today().toEpochDay());
+        }
+        
+        @Override
+        public int cost() {
+            return cost;
+        }
+        
+        @Override
+        public boolean appliesTo(SeatType type) {
+            return seatTypes.contains(type);
+        }
+    }
+    
+    /**
+     * The ordered rules for one seat type, flattened into parallel arrays.
+     */
+    private static final class Chain {
+        final int[] ops;
+        final long[] params;
+        final BookingRule[] rules;
+        
+        private Chain(int[] ops, long[] params, BookingRule[] rules) {
+            this.ops = ops;
+            this.params = params;
+            this.rules = rules;
+        }
+        
+        static Chain compile(BookingRule[] rules) {
+            int[] ops = new int[rules.length];
+            long[] params = new long[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                if (rules[i] instanceof BuiltInRule builtIn) {
+                    ops[i] = builtIn.op;
+                    params[i] = builtIn.param;
+                } else {
+                    ops[i] = OP_CUSTOM;
+                }
+            }
+            return new Chain(ops, params, rules);
+        }
+    }
+}
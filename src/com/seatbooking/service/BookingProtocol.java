@@ -0,0 +1,64 @@
+package com.seatbooking.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by BookingServer and BookingClient.
+ * 
+ * Every frame starts with its length (an int counting the bytes after it), then a type byte
+ * and the request ID chosen by the client. Requests carry an operation in the type byte;
+ * responses carry a status and echo the ID, and come back in request order.
+ * 
+ * Request bodies: BOOK has the date (epoch day), user ID and seat ID; CANCEL has a booking ID;
+ * IS_BOOKED has the date and seat ID; AVAILABILITY has the date. KEYED_BOOK and KEYED_CANCEL
+ * are BOOK and CANCEL preceded by an idempotency key, and are answered like them, except that
+ * KEYED_CANCEL is REJECTED with IDEMPOTENCY_KEY_REUSED when its key was used for another request.
+ * Response bodies for OK: BOOK has the booking ID, CANCEL and IS_BOOKED a boolean byte,
+ * AVAILABILITY the seat count and then one bit per seat ordinal, set when the seat is free,
+ * as little-endian longs. REJECTED carries a RejectionReason ordinal and ERROR a message.
+ * Strings are a length byte followed by that many UTF-8 bytes.
+ */
+final class BookingProtocol {
+    
+    static final byte BOOK = 'B';
+    static final byte CANCEL = 'C';
+    static final byte IS_BOOKED = 'Q';
+    static final byte AVAILABILITY = 'A';
+    static final byte KEYED_BOOK = 'b';
+    static final byte KEYED_CANCEL = 'c';
+    
+    static final byte OK = 0;
+    static final byte REJECTED = 1;
+    static final byte ERROR = 2;
+    
+    // Type byte plus request ID
+    static final int HEADER_BYTES = 5;
+    // Largest request a server accepts; responses may be longer
+    static final int MAX_REQUEST_BYTES = 1024;
+    
+    private BookingProtocol() {
+    }
+    
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("String too long for the protocol: " + value);
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+    
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Returns the most bytes putString can write for a string.
+     */
+    static int maxStringBytes(String value) {
+        return 1 + value.length() * 3;
+    }
+}
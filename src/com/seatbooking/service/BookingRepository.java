@@ -0,0 +1,53 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Durable storage for the live bookings of a BookingService, such as a SQL database
+ * that other tools read. BookingPersistence keeps a repository in step with a service;
+ * the service's in-memory state stays the read model, so no read touches the repository.
+ * 
+ * Implementations are only called by one thread at a time.
+ */
+public interface BookingRepository extends Closeable {
+    
+    /**
+     * Passes every stored booking to the handler.
+     */
+    void loadAll(StoredBookingHandler handler) throws IOException;
+    
+    /**
+     * Stores one batch of changes as a single transaction: removes the deleted IDs,
+     * moves the updated bookings to their current seats, then adds the inserted ones.
+     * Either the whole batch is stored or, if an exception is thrown, none of it.
+     * A batch that can never be stored, such as one breaking a key constraint, is reported
+     * with a BatchRejectedException, so it is not retried.
+     */
+    void write(Collection<String> deleted, Collection<Booking> updated, Collection<Booking> inserted)
+            throws IOException;
+    
+    /**
+     * Receives the stored bookings as plain values; they become bookings again
+     * through BookingService#restoreBooking.
+     */
+    @FunctionalInterface
+    interface StoredBookingHandler {
+        void accept(String bookingId, String userId, String seatId, LocalDate date, LocalDateTime bookingTime);
+    }
+    
+    /**
+     * Thrown by write for a batch that will fail however often it is retried.
+     */
+    class BatchRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        public BatchRejectedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Seat;
+import com.seatbooking.model.User;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * A booking request as seen by booking rules, with the current date and time
+ * resolved once so every rule in a chain sees the same clock reading.
+ */
+public record BookingRequest(User user, Seat seat, LocalDate date, LocalDate today, LocalTime now) {
+}
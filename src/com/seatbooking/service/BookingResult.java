@@ -0,0 +1,62 @@
+package com.seatbooking.service;
+
+/**
+ * Outcome of a booking request: either the ID of the new booking or the reason
+ * it was rejected. Rejected results are shared constants, so reporting a
+ * rejection allocates nothing.
+ */
+public final class BookingResult {
+    
+    private static final BookingResult[] REJECTED = new BookingResult[RejectionReason.values().length];
+    
+    static {
+        for (RejectionReason reason : RejectionReason.values()) {
+            REJECTED[reason.ordinal()] = new BookingResult(null, reason);
+        }
+    }
+    
+    private final String bookingId;
+    private final RejectionReason rejection;
+    
+    private BookingResult(String bookingId, RejectionReason rejection) {
+        this.bookingId = bookingId;
+        this.rejection = rejection;
+    }
+    
+    /**
+     * Returns a successful result for the given booking.
+     */
+    public static BookingResult booked(String bookingId) {
+        return new BookingResult(bookingId, null);
+    }
+    
+    /**
+     * Returns the shared rejected result for the given reason.
+     */
+    public static BookingResult rejected(RejectionReason reason) {
+        return REJECTED[reason.ordinal()];
+    }
+    
+    public boolean isBooked() {
+        return rejection == null;
+    }
+    
+    /**
+     * Returns the ID of the new booking, or null if the request was rejected.
+     */
+    public String getBookingId() {
+        return bookingId;
+    }
+    
+    /**
+     * Returns why the request was rejected, or null if it succeeded.
+     */
+    public RejectionReason getRejection() {
+        return rejection;
+    }
+    
+    @Override
+    public String toString() {
+        return isBooked() ? "BookingResult{booked=" + bookingId + "}" : "BookingResult{rejected=" + rejection + "}";
+    }
+}
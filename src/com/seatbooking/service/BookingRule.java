@@ -0,0 +1,31 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.SeatType;
+
+/**
+ * A single booking policy check, such as the weekend ban or the advance booking limit.
+ * Rules are stateless; conflicts with existing bookings are checked by the service itself.
+ */
+@FunctionalInterface
+public interface BookingRule {
+    
+    /**
+     * Returns why the request violates this rule, or null if it is allowed.
+     */
+    RejectionReason check(BookingRequest request);
+    
+    /**
+     * Relative cost of evaluating the rule. Cheaper rules run first, so common
+     * rejections are found with the least work.
+     */
+    default int cost() {
+        return 1;
+    }
+    
+    /**
+     * Whether the rule applies to seats of the given type.
+     */
+    default boolean appliesTo(SeatType type) {
+        return true;
+    }
+}
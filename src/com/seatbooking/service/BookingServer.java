@@ -0,0 +1,398 @@
+package com.seatbooking.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Serves a BookingService to local clients over the binary protocol described in
+ * BookingProtocol; BookingClient is the matching client.
+ * 
+ * A single selector thread handles every connection without blocking on sockets. Clients
+ * may pipeline requests: each read answers every complete request in the buffer, in order,
+ * and the answers go out together in one gathering write. Buffers are direct and pooled
+ * across connections, and availability answers copy the snapshot's free-seat words straight
+ * into them, so no answer allocates. Seat checks and availability are only answered for
+ * dates within a year of today. A connection whose answers pile up because its client is
+ * not reading is not read from either, until the backlog drains.
+ * 
+ * Requests run on the selector thread, so a booking waits for the service's write lock
+ * like any other caller.
+ */
+public class BookingServer implements Closeable {
+    
+    private static final int BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    // Answers queued on a connection before it stops reading requests
+    private static final int MAX_QUEUED_WRITES = 64;
+    private static final int MAX_GATHERED_WRITES = 16;
+    private static final int MAX_ERROR_CHARS = 80;
+    private static final int MAX_QUERY_DAYS = 366;
+    
+    private final BookingService service;
+    private final AdmissionController admission;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    
+    // Selector thread only
+    private final ArrayDeque<ByteBuffer> bufferPool;
+    private final ByteBuffer[] gather;
+    
+    private volatile long requestCount;
+    private volatile boolean running;
+    
+    /**
+     * Starts a server for the service, listening on the loopback interface.
+     * Use port 0 to pick a free port.
+     */
+    public BookingServer(BookingService service, int port) throws IOException {
+        this(service, null, port);
+    }
+    
+    /**
+     * Starts a server whose bookings go through an admission controller first,
+     * so clients flooding the server are shed with RATE_LIMITED or OVERLOADED.
+     */
+    public BookingServer(AdmissionController admission, int port) throws IOException {
+        this(admission.getService(), admission, port);
+    }
+    
+    private BookingServer(BookingService service, AdmissionController admission, int port) throws IOException {
+        this.service = service;
+        this.admission = admission;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.bufferPool = new ArrayDeque<>();
+        this.gather = new ByteBuffer[MAX_GATHERED_WRITES];
+        this.running = true;
+        
+        this.selectorThread = new Thread(this::serve, "booking-server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+    
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    /**
+     * Returns the number of requests answered so far, over all connections.
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+    
+    /**
+     * Stops the server and closes every connection; requests not yet answered are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (Thread.currentThread() != selectorThread) {
+            try {
+                selectorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (IOException e) {
+                        // Client went away or broke the protocol; only its connection is affected
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Booking server stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                if (key.attachment() instanceof Connection connection) {
+                    connection.close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {
+                // Already closing
+            }
+        }
+    }
+    
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException e) {
+            System.err.println("Booking server accept failed: " + e.getMessage());
+        }
+    }
+    
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
+    
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (buffer != null && bufferPool.size() < MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            bufferPool.push(buffer);
+        }
+    }
+    
+    /**
+     * One client connection: its partly read requests and its answers waiting to be written.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> queued;
+        private ByteBuffer in;
+        // Answers are appended here until it is queued for writing
+        private ByteBuffer out;
+        private boolean closed;
+        
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.queued = new ArrayDeque<>();
+            this.in = acquireBuffer();
+        }
+        
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < BookingProtocol.HEADER_BYTES || length > BookingProtocol.MAX_REQUEST_BYTES) {
+                    throw new IOException("Bad request length " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                int end = in.position() + 4 + length;
+                int limit = in.limit();
+                in.position(in.position() + 4).limit(end);
+                answer(in);
+                in.limit(limit).position(end);
+            }
+            in.compact();
+            flush();
+        }
+        
+        private void answer(ByteBuffer request) {
+            byte operation = request.get();
+            int requestId = request.getInt();
+            try {
+                switch (operation) {
+                    case BookingProtocol.BOOK -> book(request, requestId, null);
+                    case BookingProtocol.KEYED_BOOK -> book(request, requestId, BookingProtocol.getString(request));
+                    case BookingProtocol.CANCEL -> {
+                        boolean cancelled = service.cancelBooking(BookingProtocol.getString(request));
+                        answer(BookingProtocol.OK, requestId, (byte) (cancelled ? 1 : 0));
+                    }
+                    case BookingProtocol.KEYED_CANCEL -> {
+                        String idempotencyKey = BookingProtocol.getString(request);
+                        try {
+                            boolean cancelled = service.cancelBookingIdempotent(idempotencyKey, 
+                                                                                BookingProtocol.getString(request));
+                            answer(BookingProtocol.OK, requestId, (byte) (cancelled ? 1 : 0));
+                        } catch (BookingException e) {
+                            answer(BookingProtocol.REJECTED, requestId, (byte) e.getReason().ordinal());
+                        }
+                    }
+                    case BookingProtocol.IS_BOOKED -> {
+                        LocalDate date = queryDate(request);
+                        boolean booked = service.isSeatBooked(BookingProtocol.getString(request), date);
+                        answer(BookingProtocol.OK, requestId, (byte) (booked ? 1 : 0));
+                    }
+                    case BookingProtocol.AVAILABILITY -> {
+                        AvailabilitySnapshot snapshot = service.getAvailabilitySnapshot(queryDate(request));
+                        int bitsBytes = snapshot.freeSeatBitsBytes();
+                        ByteBuffer buffer = reserve(4 + BookingProtocol.HEADER_BYTES + 4 + bitsBytes);
+                        buffer.putInt(BookingProtocol.HEADER_BYTES + 4 + bitsBytes)
+                              .put(BookingProtocol.OK)
+                              .putInt(requestId)
+                              .putInt(service.getAllSeats().size());
+                        snapshot.putFreeSeatBits(buffer);
+                    }
+                    default -> answerError(requestId, "Unknown operation " + operation);
+                }
+            } catch (RuntimeException e) {
+                answerError(requestId, String.valueOf(e.getMessage()));
+            }
+            requestCount++;
+        }
+        
+        /**
+         * Reads the date of a seat check or availability query, refusing dates too far from today.
+         */
+        private LocalDate queryDate(ByteBuffer request) {
+            long day = request.getInt();
+            if (Math.abs(day - LocalDate.now(service.getClock()).toEpochDay()) > MAX_QUERY_DAYS) {
+                throw new IllegalArgumentException("Date out of range: day " + day);
+            }
+            return LocalDate.ofEpochDay(day);
+        }
+        
+        private void book(ByteBuffer request, int requestId, String idempotencyKey) {
+            LocalDate date = LocalDate.ofEpochDay(request.getInt());
+            String userId = BookingProtocol.getString(request);
+            String seatId = BookingProtocol.getString(request);
+            BookingResult result = admission != null 
+                                   ? admission.tryBookSeatIdempotent(idempotencyKey, userId, seatId, date)
+                                   : idempotencyKey != null 
+                                     ? service.tryBookSeatIdempotent(idempotencyKey, userId, seatId, date)
+                                     : service.tryBookSeat(userId, seatId, date);
+            if (result.isBooked()) {
+                String bookingId = result.getBookingId();
+                ByteBuffer buffer = reserve(4 + BookingProtocol.HEADER_BYTES
+                                            + BookingProtocol.maxStringBytes(bookingId));
+                int start = buffer.position();
+                buffer.putInt(0).put(BookingProtocol.OK).putInt(requestId);
+                BookingProtocol.putString(buffer, bookingId);
+                buffer.putInt(start, buffer.position() - start - 4);
+            } else {
+                answer(BookingProtocol.REJECTED, requestId, (byte) result.getRejection().ordinal());
+            }
+        }
+        
+        private void answer(byte status, int requestId, byte value) {
+            reserve(4 + BookingProtocol.HEADER_BYTES + 1)
+                    .putInt(BookingProtocol.HEADER_BYTES + 1).put(status).putInt(requestId).put(value);
+        }
+        
+        private void answerError(int requestId, String message) {
+            if (message.length() > MAX_ERROR_CHARS) {
+                message = message.substring(0, MAX_ERROR_CHARS);
+            }
+            ByteBuffer buffer = reserve(4 + BookingProtocol.HEADER_BYTES + BookingProtocol.maxStringBytes(message));
+            int start = buffer.position();
+            buffer.putInt(0).put(BookingProtocol.ERROR).putInt(requestId);
+            BookingProtocol.putString(buffer, message);
+            buffer.putInt(start, buffer.position() - start - 4);
+        }
+        
+        /**
+         * Returns the buffer to append an answer of up to the given size to.
+         */
+        private ByteBuffer reserve(int bytes) {
+            if (out != null && out.remaining() < bytes) {
+                queueOut();
+            }
+            if (out == null) {
+                out = acquireBuffer();
+            }
+            return out;
+        }
+        
+        private void queueOut() {
+            if (out != null && out.position() > 0) {
+                out.flip();
+                queued.add(out);
+                out = null;
+            }
+        }
+        
+        /**
+         * Writes as much of the queued answers as the socket takes, and watches for
+         * writability only while some are left.
+         */
+        void flush() throws IOException {
+            queueOut();
+            while (!queued.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : queued) {
+                    gather[count++] = buffer;
+                    if (count == gather.length) {
+                        break;
+                    }
+                }
+                long written = channel.write(gather, 0, count);
+                while (!queued.isEmpty() && !queued.peek().hasRemaining()) {
+                    releaseBuffer(queued.poll());
+                }
+                if (written == 0) {
+                    break;
+                }
+            }
+            if (queued.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ);
+            } else if (queued.size() <= MAX_QUEUED_WRITES) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+        
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already closing
+            }
+            releaseBuffer(in);
+            releaseBuffer(out);
+            for (ByteBuffer buffer : queued) {
+                releaseBuffer(buffer);
+            }
+            in = null;
+            out = null;
+            queued.clear();
+        }
+    }
+}
@@ -1,16 +1,27 @@
 package com.seatbooking.service;
 
 import com.seatbooking.model.*;
+import java.time.Clock;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.stream.Collectors;
 
 /**
  * Service class that handles all seat booking operations and business rules.
- * Implements efficient O(1) conflict checking using HashMap and HashSet.
+ * Implements efficient O(1) conflict checking using per-date seat bitsets and user sets.
+ * 
+ * Thread-safe: mutations are serialized on a single write lock, while reads never lock.
+ * Each date's state is an immutable AvailabilitySnapshot that writers replace as a whole,
+ * so a reader always sees either all or none of a concurrent bookSeat or cancelBooking.
  */
 public class BookingService {
     
@@ -19,31 +30,114 @@ public class BookingService {
     private static final int FLOATER_SEATS = 10;
     private static final int ROWS = 5;
     private static final int COLUMNS = 10;
-    private static final LocalTime FLOATER_BOOKING_TIME = LocalTime.of(15, 0); // 3 PM
+    private static final LocalTime CHECK_IN_OPENS = LocalTime.of(9, 0); // 9 AM
+    private static final Duration DEFAULT_CHECK_IN_GRACE = Duration.ofMinutes(30);
+    private static final int DEFAULT_IDEMPOTENCY_KEYS = 100_000;
+    private static final Duration DEFAULT_IDEMPOTENCY_RETENTION = Duration.ofHours(24);
+    // Below this many words a range query is cheaper than forking tasks for it
+    private static final int PARALLEL_AVAILABILITY_WORDS = 1 << 12;
+    private static final int EMPTY_SNAPSHOTS = 64;
+    
+    private final Clock clock;
+    private final BookingPolicy policy;
+    
+    // Replaced as a whole under the write lock when closures are added
+    private volatile HolidayCalendar holidayCalendar;
+    
+    // Guards all mutations; readers rely on immutable snapshots instead
+    private final Object writeLock = new Object();
     
     // In-memory storage
-    private final Map<LocalDate, List<Booking>> bookingsByDate;
     private final Map<String, Booking> bookingsById;
     private final List<Seat> allSeats;
+    private final Map<String, Integer> seatOrdinals;
+    private final SeatLayout seatLayout;
     private final Map<String, User> users;
     
-    // Efficient lookup structures
-    private final Map<LocalDate, Set<String>> bookedSeatsPerDate;
-    private final Map<LocalDate, Set<String>> bookedUsersPerDate;
+    // Copy-on-write per-date state, replaced as a whole on every booking or cancellation
+    private final Map<LocalDate, AvailabilitySnapshot> snapshotsByDate;
+    // Snapshots handed out for dates not in snapshotsByDate, by epoch day modulo the length;
+    // racing readers may each make one, which is harmless
+    private final AvailabilitySnapshot[] emptySnapshots;
+    
+    // No-show tracking: pending check-ins ordered by the time check-in opens
+    private final PriorityQueue<PendingCheckIn> pendingCheckIns;
+    private final Set<String> checkedInBookings;
+    private volatile Duration checkInGracePeriod;
+    private long lastBookingId;
+    
+    // Outcomes of keyed requests; made on first use and replaced as a whole when the retention changes
+    private volatile IdempotencyCache idempotencyKeys;
+    private int idempotencyMaxKeys;
+    private Duration idempotencyRetention;
+    
+    // Drafts of the dates changed by the batch being applied; null outside applyExclusively
+    private Map<LocalDate, AvailabilitySnapshot.Draft> batchDrafts;
+    
+    // Notified of every change, in commit order, while the write lock is held
+    private final List<BookingListener> listeners;
+    
+    private final BookingMetrics metrics;
+    
+    // Booking IDs are numbers congruent to idOffset modulo idStride, so shards never collide
+    private final int idStride;
+    private final int idOffset;
     
     public BookingService() {
-        this.bookingsByDate = new HashMap<>();
-        this.bookingsById = new HashMap<>();
-        this.allSeats = initializeSeats();
-        this.users = initializeUsers();
-        this.bookedSeatsPerDate = new HashMap<>();
-        this.bookedUsersPerDate = new HashMap<>();
+        this(Clock.systemDefaultZone());
+    }
+    
+    public BookingService(Clock clock) {
+        this(clock, initializeSeats(), initializeUsers().values());
+    }
+    
+    public BookingService(Clock clock, BookingPolicy policy) {
+        this(clock, initializeSeats(), initializeUsers().values(), policy);
+    }
+    
+    /**
+     * Creates a service that manages the given seats and users.
+     */
+    public BookingService(Clock clock, List<Seat> seats, Collection<User> users) {
+        this(clock, seats, users, BookingPolicy.defaultPolicy());
+    }
+    
+    /**
+     * Creates a service that manages the given seats and users under an office's own booking policy.
+     */
+    public BookingService(Clock clock, List<Seat> seats, Collection<User> users, BookingPolicy policy) {
+        this(clock, seats, users, policy, 1, 0);
+    }
+    
+    BookingService(Clock clock, List<Seat> seats, Collection<User> users, BookingPolicy policy,
+                   int idStride, int idOffset) {
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        this.policy = Objects.requireNonNull(policy, "Policy cannot be null");
+        this.holidayCalendar = HolidayCalendar.empty();
+        this.bookingsById = new ConcurrentHashMap<>();
+        this.allSeats = numberSeats(seats);
+        this.seatOrdinals = indexSeats(allSeats);
+        this.seatLayout = new SeatLayout(allSeats);
+        this.users = indexUsers(users);
+        this.idStride = idStride;
+        this.idOffset = idOffset;
+        this.snapshotsByDate = new ConcurrentHashMap<>();
+        this.emptySnapshots = new AvailabilitySnapshot[EMPTY_SNAPSHOTS];
+        this.pendingCheckIns = new PriorityQueue<>(Comparator.comparing(PendingCheckIn::opensAt));
+        this.checkedInBookings = ConcurrentHashMap.newKeySet();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.metrics = new BookingMetrics(bookingsById::size,
+                () -> getAvailabilitySnapshot(LocalDate.now(this.clock)).getBookings().size(),
+                allSeats.size());
+        this.checkInGracePeriod = DEFAULT_CHECK_IN_GRACE;
+        this.idempotencyMaxKeys = DEFAULT_IDEMPOTENCY_KEYS;
+        this.idempotencyRetention = DEFAULT_IDEMPOTENCY_RETENTION;
     }
     
     /**
      * Initialize all 50 seats (40 FIXED + 10 FLOATER) in a 5x10 matrix.
      */
-    private List<Seat> initializeSeats() {
+    static List<Seat> initializeSeats() {
         List<Seat> seats = new ArrayList<>();
         int seatCounter = 1;
         
@@ -53,7 +147,7 @@ public class BookingService {
                 String seatId = String.format("S%02d", seatCounter);
                 // First 40 seats are FIXED, last 10 are FLOATER
                 SeatType type = seatCounter <= FIXED_SEATS ? SeatType.FIXED : SeatType.FLOATER;
-                seats.add(new Seat(seatId, type, row, col));
+                seats.add(new Seat(seatId, type, row, col, seatCounter - 1));
                 seatCounter++;
             }
         }
@@ -61,10 +155,48 @@ public class BookingService {
         return seats;
     }
     
+    /**
+     * Copies the seat list, giving each seat its position in the list as its ordinal, so a
+     * booking's seat always knows its bit in the per-date bitsets. Seats already numbered
+     * that way are kept as they are.
+     */
+    private static List<Seat> numberSeats(List<Seat> seats) {
+        List<Seat> numbered = new ArrayList<>(seats.size());
+        for (int i = 0; i < seats.size(); i++) {
+            Seat seat = seats.get(i);
+            numbered.add(seat.getOrdinal() == i 
+                         ? seat 
+                         : new Seat(seat.getSeatId(), seat.getType(), seat.getRow(), seat.getColumn(), i));
+        }
+        return List.copyOf(numbered);
+    }
+    
+    /**
+     * Maps each seat ID to its position in the seat list, used as its bit in the per-date bitsets.
+     */
+    private static Map<String, Integer> indexSeats(List<Seat> seats) {
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (int i = 0; i < seats.size(); i++) {
+            ordinals.put(seats.get(i).getSeatId(), i);
+        }
+        return Map.copyOf(ordinals);
+    }
+    
+    /**
+     * Maps each user ID to its user.
+     */
+    private static Map<String, User> indexUsers(Collection<User> users) {
+        Map<String, User> userMap = new HashMap<>();
+        for (User user : users) {
+            userMap.put(user.getUserId(), user);
+        }
+        return Map.copyOf(userMap);
+    }
+    
     /**
      * Initialize sample users for demonstration.
      */
-    private Map<String, User> initializeUsers() {
+    static Map<String, User> initializeUsers() {
         Map<String, User> userMap = new HashMap<>();
         
         // Create sample users across different squads
@@ -72,7 +204,7 @@ public class BookingService {
         for (int i = 0; i < squads.length; i++) {
             String userId = String.format("U%02d", i + 1);
             String name = String.format("User %d", i + 1);
-            User user = new User(userId, name, squads[i]);
+            User user = new User(userId, name, squads[i], i);
             userMap.put(userId, user);
         }
         
@@ -81,15 +213,25 @@ public class BookingService {
     
     /**
      * Determines which batch can book for a given date using dynamic rotation logic.
+     * Throws for a date the office is closed, by its booking policy or its holiday calendar.
      */
     public Batch getAllowedBatchForDate(LocalDate date) {
-        if (isWeekend(date)) {
+        if (!policy.allowsDate(date)) {
             throw new IllegalArgumentException("Booking not allowed on weekends");
         }
+        if (holidayCalendar.isClosed(date)) {
+            throw new IllegalArgumentException(describeClosure(date));
+        }
         
-        // Calculate week number from epoch (1970-01-05 was a Monday - week 1)
-        LocalDate epoch = LocalDate.of(1970, 1, 5);
-        long weekNumber = ChronoUnit.WEEKS.between(epoch, date.with(DayOfWeek.MONDAY)) + 1;
+        return rotationBatchFor(date);
+    }
+    
+    /**
+     * Rotation logic behind getAllowedBatchForDate, without the closed-day checks.
+     */
+    static Batch rotationBatchFor(LocalDate date) {
+        // Calculate week number from epoch (1970-01-05, epoch day 4, was a Monday - week 1)
+        long weekNumber = Math.floorDiv(date.toEpochDay() - 4, 7) + 1;
         boolean isEvenWeek = weekNumber % 2 == 0;
         
         DayOfWeek dayOfWeek = date.getDayOfWeek();
@@ -105,142 +247,810 @@ public class BookingService {
     /**
      * Books a seat for a user on a specific date.
      * Validates all business rules before booking.
+     * Thin wrapper around tryBookSeat that turns a rejection into a BookingException.
      */
     public String bookSeat(String userId, String seatId, LocalDate date) throws BookingException {
+        BookingResult result = tryBookSeat(userId, seatId, date);
+        if (!result.isBooked()) {
+            throw new BookingException(result.getRejection(), 
+                                       describeRejection(result.getRejection(), userId, seatId, date));
+        }
+        return result.getBookingId();
+    }
+    
+    /**
+     * Books a seat for a user on a specific date and reports the outcome as a value.
+     * Rejections are normal, high-volume outcomes (e.g. at the floater release), so this
+     * path throws no exception and builds no message: a rejected result is a shared constant.
+     */
+    public BookingResult tryBookSeat(String userId, String seatId, LocalDate date) {
+        long timer = metrics.startTimer();
+        BookingResult result = tryBookSeatUnmetered(userId, seatId, date);
+        if (result.isBooked()) {
+            metrics.recordBooked(timer);
+        } else {
+            metrics.recordRejected(result.getRejection(), timer);
+        }
+        return result;
+    }
+    
+    /**
+     * Books a seat like bookSeat, remembering the outcome under a key chosen by the client;
+     * see tryBookSeatIdempotent.
+     */
+    public String bookSeatIdempotent(String idempotencyKey, String userId, String seatId, LocalDate date)
+            throws BookingException {
+        BookingResult result = tryBookSeatIdempotent(idempotencyKey, userId, seatId, date);
+        if (!result.isBooked()) {
+            throw new BookingException(result.getRejection(), 
+                                       describeRejection(result.getRejection(), userId, seatId, date));
+        }
+        return result.getBookingId();
+    }
+    
+    /**
+     * Books a seat like tryBookSeat, remembering the outcome under a key chosen by the client,
+     * so a client that cannot tell whether its first attempt arrived can simply send it again.
+     * A repeated key gets the first outcome back, booked or rejected, without touching the
+     * bookings; a key reused for a different request is rejected with IDEMPOTENCY_KEY_REUSED.
+     * Keys are remembered as set by setIdempotencyRetention.
+     */
+    public BookingResult tryBookSeatIdempotent(String idempotencyKey, String userId, String seatId,
+                                               LocalDate date) {
+        Objects.requireNonNull(idempotencyKey, "Idempotency key cannot be null");
+        BookingResult replayed = replayBooking(idempotencyKey, userId, seatId, date);
+        if (replayed != null) {
+            return replayed;
+        }
+        synchronized (writeLock) {
+            // Checked again under the lock, in case a concurrent retry got here first
+            replayed = replayBooking(idempotencyKey, userId, seatId, date);
+            if (replayed != null) {
+                return replayed;
+            }
+            BookingResult result = tryBookSeat(userId, seatId, date);
+            idempotencyKeys().putBooking(idempotencyKey, userId, seatId, date, result, clock.millis());
+            return result;
+        }
+    }
+    
+    /**
+     * Returns what tryBookSeatIdempotent would answer for a key it has seen before, or null
+     * if the key is new, without booking anything.
+     */
+    BookingResult replayBooking(String idempotencyKey, String userId, String seatId, LocalDate date) {
+        IdempotencyCache.Entry first = idempotencyKeys().get(idempotencyKey, clock.millis());
+        if (first == null) {
+            return null;
+        }
+        return first.isBooking(userId, seatId, date) 
+               ? first.result 
+               : BookingResult.rejected(RejectionReason.IDEMPOTENCY_KEY_REUSED);
+    }
+    
+    private BookingResult tryBookSeatUnmetered(String userId, String seatId, LocalDate date) {
         User user = users.get(userId);
         if (user == null) {
-            throw new BookingException("User not found: " + userId);
+            return BookingResult.rejected(RejectionReason.USER_NOT_FOUND);
         }
         
-        Seat seat = findSeatById(seatId);
-        if (seat == null) {
-            throw new BookingException("Seat not found: " + seatId);
+        Integer seatOrdinal = seatOrdinals.get(seatId);
+        if (seatOrdinal == null) {
+            return BookingResult.rejected(RejectionReason.SEAT_NOT_FOUND);
         }
+        Seat seat = allSeats.get(seatOrdinal);
         
-        validateBookingRules(user, seat, date);
-        
-        // Create booking
-        String bookingId = generateBookingId();
-        Booking booking = new Booking(bookingId, user, seat, date);
-        
-        // Store booking
-        bookingsByDate.computeIfAbsent(date, k -> new ArrayList<>()).add(booking);
-        bookingsById.put(bookingId, booking);
+        // Checked again under the lock, in case a closure is added meanwhile
+        if (holidayCalendar.isClosed(date)) {
+            return BookingResult.rejected(RejectionReason.OFFICE_CLOSED);
+        }
         
-        // Update efficient lookup structures
-        bookedSeatsPerDate.computeIfAbsent(date, k -> new HashSet<>()).add(seatId);
-        bookedUsersPerDate.computeIfAbsent(date, k -> new HashSet<>()).add(userId);
+        // Policy rules depend only on the request and the clock, so they run outside the lock
+        LocalDateTime now = LocalDateTime.now(clock);
+        RejectionReason rejection = policy.check(
+                new BookingRequest(user, seat, date, now.toLocalDate(), now.toLocalTime()));
+        if (rejection != null) {
+            return BookingResult.rejected(rejection);
+        }
         
-        return bookingId;
+        synchronized (writeLock) {
+            AvailabilitySnapshot.Draft current = draftFor(date);
+            if (holidayCalendar.isClosed(date)) {
+                return BookingResult.rejected(RejectionReason.OFFICE_CLOSED);
+            }
+            rejection = checkConflicts(user, seatOrdinal, current);
+            if (rejection != null) {
+                return BookingResult.rejected(rejection);
+            }
+            
+            // Create booking
+            String bookingId = generateBookingId();
+            Booking booking = new Booking(bookingId, user, seat, date, LocalDateTime.now(clock));
+            storeBooking(booking, seatOrdinal, current, false);
+            
+            return BookingResult.booked(bookingId);
+        }
     }
     
     /**
-     * Validates all booking rules for a specific booking request.
+     * Builds the user-facing message for a rejected booking request.
+     * Only called on the exception path, so formatting cost does not matter here.
      */
-    private void validateBookingRules(User user, Seat seat, LocalDate date) throws BookingException {
-        LocalDate today = LocalDate.now();
-        LocalTime now = LocalTime.now();
-        
-        // Rule: No booking on weekends
-        if (isWeekend(date)) {
-            throw new BookingException("Booking not allowed on weekends");
+    String describeRejection(RejectionReason reason, String userId, String seatId, LocalDate date) {
+        return switch (reason) {
+            case USER_NOT_FOUND -> "User not found: " + userId;
+            case SEAT_NOT_FOUND -> "Seat not found: " + seatId;
+            case OFFICE_CLOSED -> describeClosure(date);
+            case USER_ALREADY_BOOKED -> "User already has a booking for " + date;
+            case SEAT_TAKEN -> "Seat " + seatId + " is already booked for " + date;
+            case WRONG_BATCH -> String.format("Only %s can book for %s", 
+                                              rotationBatchFor(date).getDisplayName(), date);
+            case RATE_LIMITED -> "Too many booking requests from " + userId + ", try again shortly";
+            case OVERLOADED -> "The booking service is busy, try again shortly";
+            case IDEMPOTENCY_KEY_REUSED -> "Idempotency key was already used for a different request";
+            default -> {
+                Integer seatOrdinal = seatOrdinals.get(seatId);
+                SeatType seatType = seatOrdinal == null ? SeatType.FIXED : allSeats.get(seatOrdinal).getType();
+                yield policy.describe(reason, seatType);
+            }
+        };
+    }
+    
+    private String describeClosure(LocalDate date) {
+        String name = holidayCalendar.getName(date);
+        return "Office closed on " + date + (name == null ? "" : ": " + name);
+    }
+    
+    /**
+     * Re-creates a booking that was made elsewhere, such as on a replication leader,
+     * keeping its ID and booking time. Only conflicts are checked; the booking
+     * policy (dates, batches, seat types) is assumed to have been applied already.
+     */
+    public Booking restoreBooking(String bookingId, String userId, String seatId, LocalDate date,
+                                  LocalDateTime bookingTime) throws BookingException {
+        synchronized (writeLock) {
+            RejectionReason rejection = tryRestoreBooking(bookingId, userId, seatId, date, bookingTime);
+            if (rejection != null) {
+                throw new BookingException(rejection, switch (rejection) {
+                    case USER_NOT_FOUND -> "User not found: " + userId;
+                    case SEAT_NOT_FOUND -> "Seat not found: " + seatId;
+                    case DUPLICATE_BOOKING -> "Booking already exists: " + bookingId;
+                    case USER_ALREADY_BOOKED -> "User already has a booking for " + date;
+                    default -> "Seat " + seatId + " is already booked for " + date;
+                });
+            }
+            return bookingsById.get(bookingId);
+        }
+    }
+    
+    /**
+     * Does the work of restoreBooking, returning the conflict found, or null once the
+     * booking is stored, so bulk imports do not pay for an exception per rejected record.
+     * Generated IDs are kept ahead of the restored ID even when the booking is rejected,
+     * since a rejected record may still be stored elsewhere under that ID.
+     */
+    RejectionReason tryRestoreBooking(String bookingId, String userId, String seatId, LocalDate date,
+                                      LocalDateTime bookingTime) {
+        synchronized (writeLock) {
+            reserveBookingId(bookingId);
+            User user = users.get(userId);
+            if (user == null) {
+                return RejectionReason.USER_NOT_FOUND;
+            }
+            
+            Integer seatOrdinal = seatOrdinals.get(seatId);
+            if (seatOrdinal == null) {
+                return RejectionReason.SEAT_NOT_FOUND;
+            }
+            
+            if (bookingsById.containsKey(bookingId)) {
+                return RejectionReason.DUPLICATE_BOOKING;
+            }
+            AvailabilitySnapshot.Draft current = draftFor(date);
+            if (current.hasBookingFor(userId)) {
+                return RejectionReason.USER_ALREADY_BOOKED;
+            }
+            if (current.isSeatBooked(seatOrdinal)) {
+                return RejectionReason.SEAT_TAKEN;
+            }
+            
+            Booking booking = new Booking(bookingId, user, allSeats.get(seatOrdinal), date, bookingTime);
+            storeBooking(booking, seatOrdinal, current, true);
+            return null;
+        }
+    }
+    
+    /**
+     * Keeps generated IDs ahead of a booking ID made elsewhere.
+     * Must be called while holding the write lock.
+     */
+    private void reserveBookingId(String bookingId) {
+        if (bookingId.startsWith("BK")) {
+            try {
+                lastBookingId = Math.max(lastBookingId, Long.parseLong(bookingId, 2, bookingId.length(), 10));
+            } catch (NumberFormatException e) {
+                // Foreign ID format; cannot collide with generated IDs
+            }
         }
+    }
+    
+    /**
+     * Stores a validated booking and publishes the new state of its date in one step.
+     * restored tells listeners the booking was made elsewhere rather than by a user here.
+     * Must be called while holding the write lock.
+     */
+    private void storeBooking(Booking booking, int seatOrdinal, AvailabilitySnapshot.Draft current, 
+                              boolean restored) {
+        bookingsById.put(booking.getBookingId(), booking);
+        current.add(booking, seatOrdinal);
+        publish(current);
         
-        // Rule: No booking for past dates
-        if (date.isBefore(today)) {
-            throw new BookingException("Cannot book seats for past dates");
+        // Track for no-show reclamation; bookings made after check-in opened get the full grace period.
+        // Restored bookings whose grace period is already over, such as imported history, are not tracked.
+        LocalDateTime opensAt = booking.getDate().atTime(CHECK_IN_OPENS);
+        LocalDateTime bookedAt = booking.getBookingTime();
+        if (bookedAt.isAfter(opensAt)) {
+            opensAt = bookedAt;
+        }
+        if (opensAt.plus(checkInGracePeriod).isAfter(LocalDateTime.now(clock))) {
+            pendingCheckIns.add(new PendingCheckIn(opensAt, booking.getBookingId()));
         }
         
+        for (BookingListener listener : listeners) {
+            if (restored) {
+                listener.onRestored(booking);
+            } else {
+                listener.onBooked(booking);
+            }
+        }
+    }
+    
+    /**
+     * Checks a booking request against the current bookings for its date.
+     * These invariants hold under every policy and are checked under the write lock.
+     * Returns the conflict found, or null if the booking is allowed.
+     */
+    private RejectionReason checkConflicts(User user, int seatOrdinal, AvailabilitySnapshot.Draft current) {
         // Rule: One user can book only 1 seat per day
-        Set<String> usersForDate = bookedUsersPerDate.get(date);
-        if (usersForDate != null && usersForDate.contains(user.getUserId())) {
-            throw new BookingException("User already has a booking for " + date);
+        if (current.hasBookingFor(user.getUserId())) {
+            return RejectionReason.USER_ALREADY_BOOKED;
         }
         
         // Rule: Prevent double booking of same seat for same date
-        Set<String> seatsForDate = bookedSeatsPerDate.get(date);
-        if (seatsForDate != null && seatsForDate.contains(seat.getSeatId())) {
-            throw new BookingException("Seat " + seat.getSeatId() + " is already booked for " + date);
-        }
-        
-        // Rule: Batch rotation validation
-        Batch allowedBatch = getAllowedBatchForDate(date);
-        if (user.getBatch() != allowedBatch) {
-            throw new BookingException(String.format("Only %s can book for %s", 
-                                     allowedBatch.getDisplayName(), date));
+        if (current.isSeatBooked(seatOrdinal)) {
+            return RejectionReason.SEAT_TAKEN;
         }
-        
-        // Seat-specific rules
-        if (seat.getType() == SeatType.FIXED) {
-            validateFixedSeatRules(date, today);
-        } else {
-            validateFloaterSeatRules(date, today, now);
+        return null;
+    }
+    
+    /**
+     * Runs a batch of bookings and cancellations under a single acquisition of the write lock.
+     * Each date the batch changes is copied once and published once, when the batch ends,
+     * so readers see the whole batch at once. Reads made inside the batch, such as
+     * getAvailableSeats, do not see its changes yet; bookings and cancellations do.
+     * Used by BookingPipeline and the command mode.
+     */
+    public void applyExclusively(Runnable batch) {
+        synchronized (writeLock) {
+            if (batchDrafts != null) {
+                batch.run();
+                return;
+            }
+            batchDrafts = new HashMap<>();
+            try {
+                batch.run();
+            } finally {
+                for (AvailabilitySnapshot.Draft draft : batchDrafts.values()) {
+                    snapshotsByDate.put(draft.getDate(), draft.publish());
+                }
+                batchDrafts = null;
+            }
         }
     }
     
     /**
-     * Validates rules specific to FIXED seats.
+     * Returns the writer's view of a date: the draft of the running batch, or a new
+     * draft of the current snapshot. Must be called while holding the write lock.
      */
-    private void validateFixedSeatRules(LocalDate date, LocalDate today) throws BookingException {
-        // Rule: Can book up to 14 days in advance
-        if (ChronoUnit.DAYS.between(today, date) > 14) {
-            throw new BookingException("Fixed seats can only be booked up to 14 days in advance");
+    private AvailabilitySnapshot.Draft draftFor(LocalDate date) {
+        if (batchDrafts == null) {
+            return getAvailabilitySnapshot(date).edit();
         }
+        return batchDrafts.computeIfAbsent(date, day -> getAvailabilitySnapshot(day).edit());
     }
     
     /**
-     * Validates rules specific to FLOATER seats.
+     * Returns the dates that have a snapshot or a draft in the running batch.
+     * Must be called while holding the write lock.
      */
-    private void validateFloaterSeatRules(LocalDate date, LocalDate today, LocalTime now) 
-            throws BookingException {
-        // Rule: Can only book after 3 PM
-        if (date.equals(today) && now.isBefore(FLOATER_BOOKING_TIME)) {
-            throw new BookingException("Floater seats can only be booked after 3:00 PM");
+    private Set<LocalDate> knownDates() {
+        Set<LocalDate> dates = new HashSet<>(snapshotsByDate.keySet());
+        if (batchDrafts != null) {
+            dates.addAll(batchDrafts.keySet());
         }
-        
-        // Rule: Can only book for tomorrow
-        LocalDate tomorrow = today.plusDays(1);
-        if (!date.equals(tomorrow)) {
-            throw new BookingException("Floater seats can only be booked for tomorrow");
+        return dates;
+    }
+    
+    /**
+     * Publishes a changed draft, unless it belongs to a batch, which publishes its drafts when it ends.
+     */
+    private void publish(AvailabilitySnapshot.Draft draft) {
+        if (batchDrafts == null) {
+            snapshotsByDate.put(draft.getDate(), draft.publish());
         }
     }
     
+    Clock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Returns the booking policy this service enforces.
+     */
+    public BookingPolicy getPolicy() {
+        return policy;
+    }
+    
     /**
      * Cancels a booking by booking ID.
      */
     public boolean cancelBooking(String bookingId) {
-        Booking booking = bookingsById.remove(bookingId);
+        return cancelBooking(bookingId, false);
+    }
+    
+    /**
+     * Cancels a booking like cancelBooking, remembering the outcome under a key chosen by the
+     * client, so a retried cancellation reports true again although the booking is gone.
+     * A key used for a different request is refused like in bookSeatIdempotent, with a
+     * BookingException whose reason is IDEMPOTENCY_KEY_REUSED.
+     */
+    public boolean cancelBookingIdempotent(String idempotencyKey, String bookingId) throws BookingException {
+        Objects.requireNonNull(idempotencyKey, "Idempotency key cannot be null");
+        IdempotencyCache keys = idempotencyKeys();
+        IdempotencyCache.Entry first = keys.get(idempotencyKey, clock.millis());
+        if (first == null) {
+            synchronized (writeLock) {
+                first = keys.get(idempotencyKey, clock.millis());
+                if (first == null) {
+                    boolean cancelled = cancelBooking(bookingId);
+                    keys.putCancellation(idempotencyKey, bookingId, cancelled, clock.millis());
+                    return cancelled;
+                }
+            }
+        }
+        if (!first.isCancellation(bookingId)) {
+            throw new BookingException(RejectionReason.IDEMPOTENCY_KEY_REUSED, 
+                                       "Idempotency key was already used for a different request");
+        }
+        return first.cancelled;
+    }
+    
+    private boolean cancelBooking(String bookingId, boolean noShow) {
+        long timer = metrics.startTimer();
+        boolean cancelled = cancelBookingUnmetered(bookingId, noShow);
+        metrics.recordCancel(cancelled, timer);
+        return cancelled;
+    }
+    
+    private boolean cancelBookingUnmetered(String bookingId, boolean noShow) {
+        synchronized (writeLock) {
+            Booking booking = bookingsById.remove(bookingId);
+            if (booking == null) {
+                return false;
+            }
+            checkedInBookings.remove(bookingId);
+            
+            // Publish the date without the booking in one step
+            AvailabilitySnapshot.Draft current = draftFor(booking.getDate());
+            current.remove(booking, booking.getSeat().getOrdinal());
+            publish(current);
+            
+            for (BookingListener listener : listeners) {
+                if (noShow) {
+                    listener.onReclaimed(booking);
+                } else {
+                    listener.onCancelled(booking);
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Moves a booking to another seat on its date, keeping its ID, booking time and check-in.
+     * The old seat is released and the new one taken in one published snapshot, so neither
+     * seat ever looks free in between. Returns the moved booking.
+     */
+    public Booking move(String bookingId, String newSeatId) throws BookingException {
+        Integer seatOrdinal = seatOrdinals.get(newSeatId);
+        if (seatOrdinal == null) {
+            throw new BookingException(RejectionReason.SEAT_NOT_FOUND, "Seat not found: " + newSeatId);
+        }
+        Seat seat = allSeats.get(seatOrdinal);
+        
+        // A concurrent move cannot change the user or date, so the policy check stays valid
+        Booking booking = findBooking(bookingId);
+        checkPolicy(booking.getUser(), seat, booking.getDate());
+        
+        synchronized (writeLock) {
+            booking = findBooking(bookingId);
+            int fromOrdinal = booking.getSeat().getOrdinal();
+            if (fromOrdinal == seatOrdinal) {
+                return booking;
+            }
+            AvailabilitySnapshot.Draft current = draftFor(booking.getDate());
+            if (current.isSeatBooked(seatOrdinal)) {
+                throw new BookingException(RejectionReason.SEAT_TAKEN,
+                                           "Seat " + newSeatId + " is already booked for " + booking.getDate());
+            }
+            
+            Booking moved = new Booking(bookingId, booking.getUser(), seat, booking.getDate(), 
+                                        booking.getBookingTime());
+            storeMoves(current, List.of(booking), List.of(moved), new int[] {fromOrdinal}, new int[] {seatOrdinal});
+            return moved;
+        }
+    }
+    
+    /**
+     * Swaps the seats of two bookings on the same date in one published snapshot,
+     * so neither seat ever looks free and neither user is ever without a seat.
+     * Each holder must be allowed to book the other's seat.
+     */
+    public void swap(String bookingIdA, String bookingIdB) throws BookingException {
+        while (true) {
+            Booking a = findBooking(bookingIdA);
+            Booking b = findBooking(bookingIdB);
+            if (!a.getDate().equals(b.getDate())) {
+                throw new BookingException(RejectionReason.DATE_MISMATCH,
+                                           "Cannot swap bookings for " + a.getDate() + " and " + b.getDate());
+            }
+            if (a.getSeat().equals(b.getSeat())) {
+                return;
+            }
+            checkPolicy(a.getUser(), b.getSeat(), a.getDate());
+            checkPolicy(b.getUser(), a.getSeat(), a.getDate());
+            
+            synchronized (writeLock) {
+                // Retry if either booking moved or was cancelled after it was validated
+                if (bookingsById.get(bookingIdA) != a || bookingsById.get(bookingIdB) != b) {
+                    continue;
+                }
+                int ordinalA = a.getSeat().getOrdinal();
+                int ordinalB = b.getSeat().getOrdinal();
+                Booking swappedA = new Booking(bookingIdA, a.getUser(), b.getSeat(), a.getDate(), a.getBookingTime());
+                Booking swappedB = new Booking(bookingIdB, b.getUser(), a.getSeat(), b.getDate(), b.getBookingTime());
+                storeMoves(draftFor(a.getDate()), List.of(a, b), List.of(swappedA, swappedB),
+                           new int[] {ordinalA, ordinalB}, new int[] {ordinalB, ordinalA});
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Re-applies moves made elsewhere, such as on a replication leader, in one published
+     * snapshot like swap: bookingIds.get(i) moves to seatIds.get(i). The bookings must share
+     * a date. Only conflicts are checked; the booking policy is assumed to have been applied.
+     */
+    void restoreMoves(List<String> bookingIds, List<String> seatIds) throws BookingException {
+        synchronized (writeLock) {
+            int count = bookingIds.size();
+            List<Booking> before = new ArrayList<>(count);
+            List<Booking> after = new ArrayList<>(count);
+            int[] fromOrdinals = new int[count];
+            int[] toOrdinals = new int[count];
+            for (int i = 0; i < count; i++) {
+                Booking booking = findBooking(bookingIds.get(i));
+                Integer seatOrdinal = seatOrdinals.get(seatIds.get(i));
+                if (seatOrdinal == null) {
+                    throw new BookingException(RejectionReason.SEAT_NOT_FOUND, "Seat not found: " + seatIds.get(i));
+                }
+                if (i > 0 && !booking.getDate().equals(before.get(0).getDate())) {
+                    throw new BookingException(RejectionReason.DATE_MISMATCH, "Cannot move bookings for "
+                                               + before.get(0).getDate() + " and " + booking.getDate() + " together");
+                }
+                before.add(booking);
+                after.add(new Booking(booking.getBookingId(), booking.getUser(), allSeats.get(seatOrdinal),
+                                      booking.getDate(), booking.getBookingTime()));
+                fromOrdinals[i] = booking.getSeat().getOrdinal();
+                toOrdinals[i] = seatOrdinal;
+            }
+            if (count == 0) {
+                return;
+            }
+            
+            // Each seat taken must be free, or be left by one of the moved bookings, and taken only once
+            AvailabilitySnapshot.Draft current = draftFor(before.get(0).getDate());
+            for (int i = 0; i < count; i++) {
+                boolean taken = current.isSeatBooked(toOrdinals[i]);
+                for (int j = 0; j < count; j++) {
+                    if (fromOrdinals[j] == toOrdinals[i]) {
+                        taken = false;
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    if (toOrdinals[j] == toOrdinals[i]) {
+                        taken = true;
+                    }
+                }
+                if (taken) {
+                    throw new BookingException(RejectionReason.SEAT_TAKEN, "Seat " + seatIds.get(i)
+                                               + " is already booked for " + before.get(0).getDate());
+                }
+            }
+            storeMoves(current, before, after, fromOrdinals, toOrdinals);
+        }
+    }
+    
+    private Booking findBooking(String bookingId) throws BookingException {
+        Booking booking = bookingsById.get(bookingId);
         if (booking == null) {
-            return false;
+            throw new BookingException(RejectionReason.BOOKING_NOT_FOUND, "Booking not found: " + bookingId);
+        }
+        return booking;
+    }
+    
+    private void checkPolicy(User user, Seat seat, LocalDate date) throws BookingException {
+        LocalDateTime now = LocalDateTime.now(clock);
+        RejectionReason rejection = policy.check(
+                new BookingRequest(user, seat, date, now.toLocalDate(), now.toLocalTime()));
+        if (rejection != null) {
+            throw new BookingException(rejection, 
+                                       describeRejection(rejection, user.getUserId(), seat.getSeatId(), date));
         }
+    }
+    
+    /**
+     * Replaces moved bookings and publishes the new state of their date in one step.
+     * Must be called while holding the write lock.
+     */
+    private void storeMoves(AvailabilitySnapshot.Draft current, List<Booking> before, List<Booking> after,
+                            int[] fromOrdinals, int[] toOrdinals) {
+        for (Booking booking : after) {
+            bookingsById.put(booking.getBookingId(), booking);
+        }
+        current.move(before, after, fromOrdinals, toOrdinals);
+        publish(current);
         
-        // Remove from date-based storage
-        List<Booking> bookingsForDate = bookingsByDate.get(booking.getDate());
-        if (bookingsForDate != null) {
-            bookingsForDate.remove(booking);
-            if (bookingsForDate.isEmpty()) {
-                bookingsByDate.remove(booking.getDate());
+        for (BookingListener listener : listeners) {
+            listener.onMoved(before, after);
+        }
+    }
+    
+    /**
+     * Returns the holidays and closures this office observes.
+     */
+    public HolidayCalendar getHolidayCalendar() {
+        return holidayCalendar;
+    }
+    
+    /**
+     * Replaces the office's holiday calendar and cancels every booking on a day it closes.
+     * Returns the cancelled bookings.
+     */
+    public List<Booking> setHolidayCalendar(HolidayCalendar calendar) {
+        Objects.requireNonNull(calendar, "Calendar cannot be null");
+        synchronized (writeLock) {
+            holidayCalendar = calendar;
+            List<Booking> cancelled = new ArrayList<>();
+            for (LocalDate date : knownDates()) {
+                if (calendar.isClosed(date)) {
+                    cancelled.addAll(cancelAllOn(date));
+                }
             }
+            return cancelled;
+        }
+    }
+    
+    /**
+     * Closes the office on a date, cancelling all bookings for it.
+     * Returns the cancelled bookings.
+     */
+    public List<Booking> addClosure(LocalDate date, String name) {
+        synchronized (writeLock) {
+            holidayCalendar = holidayCalendar.withClosure(date, name);
+            return cancelAllOn(date);
+        }
+    }
+    
+    /**
+     * Cancels every booking on a date in one pass, publishing a single empty snapshot
+     * instead of one per booking. Must be called while holding the write lock.
+     */
+    private List<Booking> cancelAllOn(LocalDate date) {
+        AvailabilitySnapshot.Draft current = draftFor(date);
+        if (current.getBookings().isEmpty()) {
+            return List.of();
+        }
+        
+        List<Booking> cancelled = List.copyOf(current.getBookings());
+        for (Booking booking : cancelled) {
+            bookingsById.remove(booking.getBookingId());
+            checkedInBookings.remove(booking.getBookingId());
         }
+        current.clear();
+        publish(current);
         
-        // Remove from efficient lookup structures
-        Set<String> seatsForDate = bookedSeatsPerDate.get(booking.getDate());
-        if (seatsForDate != null) {
-            seatsForDate.remove(booking.getSeat().getSeatId());
-            if (seatsForDate.isEmpty()) {
-                bookedSeatsPerDate.remove(booking.getDate());
+        for (Booking booking : cancelled) {
+            for (BookingListener listener : listeners) {
+                listener.onCancelled(booking);
+            }
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Moves bookings for dates before the cutoff into an off-heap store, oldest date first,
+     * and drops their dates' snapshots. Archived dates read back as empty here; their
+     * bookings are read from the store. Bookings the store cannot encode stay on the heap,
+     * and their dates keep a snapshot holding just those bookings.
+     * Listeners see each archived booking through onArchived. Returns the number archived.
+     */
+    public int archiveBookingsBefore(LocalDate cutoff, OffHeapBookingStore store) {
+        long cutoffDay = cutoff.toEpochDay();
+        synchronized (writeLock) {
+            List<Booking> archived = bookingsById.values().stream()
+                    .filter(booking -> booking.getEpochDay() < cutoffDay && store.accepts(booking))
+                    .sorted(Comparator.comparingLong(Booking::getEpochDay).thenComparing(Booking::getBookingTime))
+                    .collect(Collectors.toList());
+            
+            Map<LocalDate, AvailabilitySnapshot.Draft> drafts = new HashMap<>();
+            for (Booking booking : archived) {
+                store.append(booking);
+                bookingsById.remove(booking.getBookingId());
+                checkedInBookings.remove(booking.getBookingId());
+                drafts.computeIfAbsent(booking.getDate(), this::draftFor)
+                      .remove(booking, booking.getSeat().getOrdinal());
+            }
+            drafts.values().forEach(this::publish);
+            for (Booking booking : archived) {
+                for (BookingListener listener : listeners) {
+                    listener.onArchived(booking);
+                }
+            }
+            
+            for (LocalDate date : knownDates()) {
+                if (date.isBefore(cutoff) && draftFor(date).getBookings().isEmpty()) {
+                    snapshotsByDate.remove(date);
+                    if (batchDrafts != null) {
+                        batchDrafts.remove(date);
+                    }
+                }
             }
+            return archived.size();
         }
+    }
+    
+    /**
+     * Checks a user in for their booking. Check-in is only possible on the booking date,
+     * before the booking has been reclaimed as a no-show.
+     */
+    public void checkIn(String bookingId) throws BookingException {
+        synchronized (writeLock) {
+            Booking booking = bookingsById.get(bookingId);
+            if (booking == null) {
+                throw new BookingException(RejectionReason.BOOKING_NOT_FOUND,
+                                           "Booking not found: " + bookingId);
+            }
+            if (!booking.getDate().equals(LocalDate.now(clock))) {
+                throw new BookingException(RejectionReason.CHECK_IN_WRONG_DAY,
+                                           "Check-in is only possible on " + booking.getDate());
+            }
+            if (checkedInBookings.add(bookingId)) {
+                for (BookingListener listener : listeners) {
+                    listener.onCheckedIn(booking);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks if the holder of a booking has checked in.
+     */
+    public boolean isCheckedIn(String bookingId) {
+        return checkedInBookings.contains(bookingId);
+    }
+    
+    /**
+     * Cancels every booking whose check-in grace period has expired without a check-in,
+     * returning the seats to the pool. Only bookings whose deadline has passed are visited,
+     * so a sweep costs O(k log n) for k expired entries rather than a scan over all bookings.
+     * Returns the IDs of the reclaimed bookings.
+     */
+    public List<String> reclaimNoShows() {
+        LocalDateTime cutoff = LocalDateTime.now(clock).minus(checkInGracePeriod);
+        List<String> reclaimed = new ArrayList<>();
         
-        Set<String> usersForDate = bookedUsersPerDate.get(booking.getDate());
-        if (usersForDate != null) {
-            usersForDate.remove(booking.getUser().getUserId());
-            if (usersForDate.isEmpty()) {
-                bookedUsersPerDate.remove(booking.getDate());
+        synchronized (writeLock) {
+            while (!pendingCheckIns.isEmpty() && !pendingCheckIns.peek().opensAt().isAfter(cutoff)) {
+                String bookingId = pendingCheckIns.poll().bookingId();
+                // Cancelled bookings are dropped lazily; cancelBooking returns false for them
+                if (!checkedInBookings.contains(bookingId) && cancelBooking(bookingId, true)) {
+                    reclaimed.add(bookingId);
+                }
             }
         }
         
-        return true;
+        return reclaimed;
+    }
+    
+    /**
+     * Returns how long after check-in opens an unchecked booking is kept.
+     */
+    public Duration getCheckInGracePeriod() {
+        return checkInGracePeriod;
+    }
+    
+    /**
+     * Sets how long after check-in opens an unchecked booking is kept.
+     */
+    public void setCheckInGracePeriod(Duration gracePeriod) {
+        Objects.requireNonNull(gracePeriod, "Grace period cannot be null");
+        if (gracePeriod.isNegative()) {
+            throw new IllegalArgumentException("Grace period cannot be negative");
+        }
+        this.checkInGracePeriod = gracePeriod;
+    }
+    
+    /**
+     * Sets how many idempotency keys are remembered and for how long after their first use.
+     * Keys already remembered are forgotten.
+     */
+    public void setIdempotencyRetention(int maxKeys, Duration retention) {
+        Objects.requireNonNull(retention, "Retention cannot be null");
+        if (maxKeys < 1 || retention.isNegative() || retention.isZero()) {
+            throw new IllegalArgumentException("Need at least one key and a positive retention");
+        }
+        synchronized (writeLock) {
+            this.idempotencyMaxKeys = maxKeys;
+            this.idempotencyRetention = retention;
+            this.idempotencyKeys = null;
+        }
+    }
+    
+    /**
+     * Returns the number of idempotency keys currently remembered.
+     */
+    public int getIdempotencyKeyCount() {
+        IdempotencyCache keys = idempotencyKeys;
+        return keys == null ? 0 : keys.size();
+    }
+    
+    private IdempotencyCache idempotencyKeys() {
+        IdempotencyCache keys = idempotencyKeys;
+        if (keys == null) {
+            synchronized (writeLock) {
+                keys = idempotencyKeys;
+                if (keys == null) {
+                    keys = new IdempotencyCache(idempotencyMaxKeys, idempotencyRetention);
+                    idempotencyKeys = keys;
+                }
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Registers a listener for all future bookings and cancellations and returns the
+     * bookings that exist at the moment of registration. Registration is atomic with
+     * respect to writes, so the listener sees every booking exactly once: either in the
+     * returned list or as an event.
+     * 
+     * Listeners are called in commit order while the write lock is held, so they must
+     * be fast and must not call back into this service's write methods or throw.
+     */
+    public List<Booking> subscribe(BookingListener listener) {
+        Objects.requireNonNull(listener, "Listener cannot be null");
+        synchronized (writeLock) {
+            listeners.add(listener);
+            return new ArrayList<>(bookingsById.values());
+        }
+    }
+    
+    /**
+     * Removes a listener registered with subscribe.
+     */
+    public void unsubscribe(BookingListener listener) {
+        listeners.remove(listener);
     }
     
     /**
@@ -249,64 +1059,214 @@ public class BookingService {
     public List<Booking> getUserBookings(String userId) {
         return bookingsById.values().stream()
                 .filter(booking -> booking.getUser().getUserId().equals(userId))
-                .sorted(Comparator.comparing(Booking::getDate))
+                .sorted(Comparator.comparingLong(Booking::getEpochDay))
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Returns an immutable snapshot of availability and bookings for a date.
+     * Snapshots are replaced on the next booking or cancellation for that date,
+     * so repeated reads of the same date return the same instance. Never blocks.
+     * 
+     * Reading never stores anything for a date, so clients asking about arbitrary dates
+     * cannot grow the service. Dates without bookings share a small cache of empty snapshots,
+     * which keeps repeated reads of the same date on one instance unless many dates alternate.
+     */
+    public AvailabilitySnapshot getAvailabilitySnapshot(LocalDate date) {
+        AvailabilitySnapshot snapshot = snapshotsByDate.get(date);
+        if (snapshot == null) {
+            int slot = (int) (date.toEpochDay() & (EMPTY_SNAPSHOTS - 1));
+            snapshot = emptySnapshots[slot];
+            if (snapshot == null || !snapshot.getDate().equals(date)) {
+                snapshot = AvailabilitySnapshot.empty(date, allSeats);
+                emptySnapshots[slot] = snapshot;
+            }
+        }
+        return snapshot;
+    }
+    
     /**
      * Returns available seats for a specific date.
+     * The returned list is immutable.
      */
     public List<Seat> getAvailableSeats(LocalDate date) {
-        Set<String> bookedSeats = bookedSeatsPerDate.getOrDefault(date, Collections.emptySet());
-        return allSeats.stream()
-                .filter(seat -> !bookedSeats.contains(seat.getSeatId()))
-                .collect(Collectors.toList());
+        long timer = metrics.startTimer();
+        List<Seat> seats = getAvailabilitySnapshot(date).getAvailableSeats();
+        metrics.recordAvailability(timer);
+        return seats;
+    }
+    
+    /**
+     * Returns the free seats matching a filter for every date from one date to another, inclusive.
+     * Dates are filled in parallel on the common fork/join pool when the range is large;
+     * each date is read from its own snapshot, so every row is consistent on its own.
+     */
+    public AvailabilityMatrix getAvailability(LocalDate from, LocalDate to, Predicate<Seat> filter) {
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days < 1 || days > 366) {
+            throw new IllegalArgumentException("Date range must cover 1 to 366 days");
+        }
+        int dayCount = (int) days;
+        int wordsPerDay = AvailabilityMatrix.wordsPerDay(allSeats.size());
+        
+        // The filter is applied once, as a mask, rather than per date
+        long[] mask = new long[wordsPerDay];
+        for (int i = 0; i < allSeats.size(); i++) {
+            if (filter.test(allSeats.get(i))) {
+                mask[i >>> 6] |= 1L << i;
+            }
+        }
+        
+        long[] free = new long[dayCount * wordsPerDay];
+        HolidayCalendar calendar = holidayCalendar;
+        IntStream dayIndexes = IntStream.range(0, dayCount);
+        if ((long) dayCount * wordsPerDay >= PARALLEL_AVAILABILITY_WORDS) {
+            dayIndexes = dayIndexes.parallel();
+        }
+        dayIndexes.forEach(day -> {
+            LocalDate date = from.plusDays(day);
+            if (!policy.allowsDate(date) || calendar.isClosed(date)) {
+                return;
+            }
+            AvailabilitySnapshot snapshot = snapshotsByDate.get(date);
+            if (snapshot == null) {
+                System.arraycopy(mask, 0, free, day * wordsPerDay, wordsPerDay);
+            } else {
+                snapshot.copyFreeSeats(mask, free, day * wordsPerDay);
+            }
+        });
+        
+        return new AvailabilityMatrix(from, dayCount, allSeats, free);
+    }
+    
+    /**
+     * Returns all free seats for every date from one date to another, inclusive.
+     */
+    public AvailabilityMatrix getAvailability(LocalDate from, LocalDate to) {
+        return getAvailability(from, to, seat -> true);
+    }
+    
+    /**
+     * Returns the first free seat of a type whose ordinal is at least fromOrdinal,
+     * or null if there is none. Weekends and closed days have no free seats.
+     */
+    public Seat nextFree(SeatType type, int fromOrdinal, LocalDate date) {
+        if (!isOpen(date)) {
+            return null;
+        }
+        int ordinal = getAvailabilitySnapshot(date).nextFreeSeat(seatLayout.seatsOfType(type), fromOrdinal);
+        return ordinal < 0 ? null : allSeats.get(ordinal);
+    }
+    
+    /**
+     * Returns up to n free seats of a type in seat order, scanning only
+     * until n are found.
+     */
+    public List<Seat> firstNFree(SeatType type, int n, LocalDate date) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Seat count cannot be negative");
+        }
+        List<Seat> result = new ArrayList<>(Math.min(n, 64));
+        if (!isOpen(date)) {
+            return result;
+        }
+        AvailabilitySnapshot snapshot = getAvailabilitySnapshot(date);
+        long[] mask = seatLayout.seatsOfType(type);
+        int ordinal = snapshot.nextFreeSeat(mask, 0);
+        while (ordinal >= 0 && result.size() < n) {
+            result.add(allSeats.get(ordinal));
+            ordinal = snapshot.nextFreeSeat(mask, ordinal + 1);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the free seat closest to a row and column, counting rows plus columns apart,
+     * or null if there is none. Ties go to the lower row, then the lower column.
+     */
+    public Seat nearestFree(int row, int column, LocalDate date) {
+        if (!isOpen(date)) {
+            return null;
+        }
+        int ordinal = seatLayout.nearestFree(row, column, getAvailabilitySnapshot(date));
+        return ordinal < 0 ? null : allSeats.get(ordinal);
+    }
+    
+    private boolean isOpen(LocalDate date) {
+        return policy.allowsDate(date) && !holidayCalendar.isClosed(date);
     }
     
     /**
      * Returns booked seats for a specific date.
+     * The returned list is immutable.
      */
     public List<Booking> getBookingsForDate(LocalDate date) {
-        return bookingsByDate.getOrDefault(date, Collections.emptyList());
+        return getAvailabilitySnapshot(date).getBookings();
+    }
+    
+    /**
+     * Returns the bookings of a date like getBookingsForDate, without creating a snapshot
+     * for a date that has none, so scanning a long range of dates costs no memory.
+     */
+    List<Booking> peekBookings(LocalDate date) {
+        AvailabilitySnapshot snapshot = snapshotsByDate.get(date);
+        return snapshot == null ? List.of() : snapshot.getBookings();
     }
     
     /**
-     * Returns all seats in the system.
+     * Returns the operational metrics of this service.
+     */
+    public BookingMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Returns all seats in the system, in seat matrix order.
+     * The returned list is immutable.
      */
     public List<Seat> getAllSeats() {
-        return new ArrayList<>(allSeats);
+        return allSeats;
     }
     
     /**
      * Returns all users in the system.
+     * The returned map is immutable.
      */
     public Map<String, User> getAllUsers() {
-        return new HashMap<>(users);
+        return users;
+    }
+    
+    /**
+     * Checks if a user has a booking on a specific date.
+     */
+    boolean hasBookingFor(String userId, LocalDate date) {
+        AvailabilitySnapshot snapshot = snapshotsByDate.get(date);
+        return snapshot != null && snapshot.hasBookingFor(userId);
     }
     
     /**
      * Checks if a seat is booked for a specific date.
      */
     public boolean isSeatBooked(String seatId, LocalDate date) {
-        Set<String> bookedSeats = bookedSeatsPerDate.get(date);
-        return bookedSeats != null && bookedSeats.contains(seatId);
+        Integer seatOrdinal = seatOrdinals.get(seatId);
+        AvailabilitySnapshot snapshot = snapshotsByDate.get(date);
+        return seatOrdinal != null && snapshot != null && snapshot.isSeatBooked(seatOrdinal);
     }
     
     // Utility methods
     
-    private boolean isWeekend(LocalDate date) {
-        DayOfWeek dayOfWeek = date.getDayOfWeek();
-        return dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
-    }
-    
-    private Seat findSeatById(String seatId) {
-        return allSeats.stream()
-                .filter(seat -> seat.getSeatId().equals(seatId))
-                .findFirst()
-                .orElse(null);
+    private String generateBookingId() {
+        // Millisecond timestamps collide for back-to-back bookings, so keep IDs strictly increasing
+        long next = Math.max(clock.millis(), lastBookingId + 1);
+        next += Math.floorMod(idOffset - next, idStride);
+        lastBookingId = next;
+        return "BK" + lastBookingId;
     }
     
-    private String generateBookingId() {
-        return "BK" + System.currentTimeMillis();
+    /**
+     * Queue entry for a booking awaiting check-in. Ordered by opensAt; the deadline is
+     * opensAt plus the grace period, which is uniform, so the order is the same.
+     */
+    private record PendingCheckIn(LocalDateTime opensAt, String bookingId) {
     }
 }
\ No newline at end of file
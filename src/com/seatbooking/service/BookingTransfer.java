@@ -0,0 +1,825 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk export and import of bookings as CSV or NDJSON, for migrations and reports.
+ * 
+ * One record per line, with the fields bookingId, userId, seatId, date (yyyy-MM-dd) and
+ * bookedAt (yyyy-MM-ddTHH:mm[:ss[.fffffffff]]); CSV files start with a header line and
+ * quote fields as RFC 4180 does, NDJSON lines are flat objects with those keys.
+ * 
+ * Both directions stream through one reused buffer over an NIO channel, so memory use
+ * does not depend on the size of the file. Export reads each date's snapshot without
+ * locking. Import validates every record, then restores valid ones in batches of
+ * BATCH_SIZE under one acquisition of the write lock, so each changed date is published
+ * once per batch. Records that conflict with existing bookings, or each other, are
+ * rejected and reported with their line numbers.
+ */
+public class BookingTransfer {
+    
+    public static final int BATCH_SIZE = 8192;
+    public static final int PROGRESS_INTERVAL = 1 << 16;
+    public static final int MAX_REPORTED_ERRORS = 100;
+    
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 1 << 20;
+    private static final String CSV_HEADER = "bookingId,userId,seatId,date,bookedAt";
+    private static final String[] FIELDS = {"bookingId", "userId", "seatId", "date", "bookedAt"};
+    private static final byte[][] JSON_KEYS = {
+        "{\"bookingId\":".getBytes(StandardCharsets.US_ASCII),
+        ",\"userId\":".getBytes(StandardCharsets.US_ASCII),
+        ",\"seatId\":".getBytes(StandardCharsets.US_ASCII),
+        ",\"date\":".getBytes(StandardCharsets.US_ASCII),
+        ",\"bookedAt\":".getBytes(StandardCharsets.US_ASCII)
+    };
+    
+    /**
+     * File formats, chosen from the file extension by forFile.
+     */
+    public enum Format {
+        CSV,
+        NDJSON;
+        
+        /**
+         * Returns the format for a file name ending in .csv, or .ndjson, .jsonl or .json.
+         */
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Unknown booking file format: " + file);
+        }
+    }
+    
+    /**
+     * Receives the progress of a transfer every PROGRESS_INTERVAL records and once at the end.
+     */
+    @FunctionalInterface
+    public interface Progress {
+        void update(long records, long bytes);
+    }
+    
+    /**
+     * Outcome of an import. errors holds the first MAX_REPORTED_ERRORS problems,
+     * each as "line N: message".
+     */
+    public record ImportResult(long records, long imported, long rejected, List<String> errors) {
+    }
+    
+    private final BookingService service;
+    private final Progress progress;
+    
+    public BookingTransfer(BookingService service) {
+        this(service, (records, bytes) -> { });
+    }
+    
+    public BookingTransfer(BookingService service, Progress progress) {
+        this.service = service;
+        this.progress = progress;
+    }
+    
+    /**
+     * Exports the bookings from one date to another, both included, to a file in the format
+     * its name implies. Returns the number of bookings written.
+     */
+    public long exportBookings(LocalDate from, LocalDate to, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            return exportBookings(from, to, Format.forFile(file), channel);
+        }
+    }
+    
+    /**
+     * Exports the bookings from one date to another, both included, date by date.
+     * Returns the number of bookings written.
+     */
+    public long exportBookings(LocalDate from, LocalDate to, Format format, WritableByteChannel channel)
+            throws IOException {
+        Encoder out = new Encoder(channel);
+        if (format == Format.CSV) {
+            out.putAscii(CSV_HEADER);
+            out.put((byte) '\n');
+        }
+        long records = 0;
+        byte[] dateBytes = new byte[10];
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            List<Booking> bookings = service.peekBookings(date);
+            if (bookings.isEmpty()) {
+                continue;
+            }
+            putDate(dateBytes, 0, date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+            for (Booking booking : bookings) {
+                if (format == Format.CSV) {
+                    out.putCsv(booking.getBookingId());
+                    out.put((byte) ',');
+                    out.putCsv(booking.getUser().getUserId());
+                    out.put((byte) ',');
+                    out.putCsv(booking.getSeat().getSeatId());
+                    out.put((byte) ',');
+                    out.put(dateBytes);
+                    out.put((byte) ',');
+                    out.putDateTime(booking.getBookingTime());
+                } else {
+                    out.put(JSON_KEYS[0]);
+                    out.putJson(booking.getBookingId());
+                    out.put(JSON_KEYS[1]);
+                    out.putJson(booking.getUser().getUserId());
+                    out.put(JSON_KEYS[2]);
+                    out.putJson(booking.getSeat().getSeatId());
+                    out.put(JSON_KEYS[3]);
+                    out.put((byte) '"');
+                    out.put(dateBytes);
+                    out.put((byte) '"');
+                    out.put(JSON_KEYS[4]);
+                    out.put((byte) '"');
+                    out.putDateTime(booking.getBookingTime());
+                    out.put((byte) '"');
+                    out.put((byte) '}');
+                }
+                out.put((byte) '\n');
+                if (++records % PROGRESS_INTERVAL == 0) {
+                    progress.update(records, out.written + out.buffer.position());
+                }
+            }
+        }
+        out.drain();
+        progress.update(records, out.written);
+        return records;
+    }
+    
+    /**
+     * Imports bookings from a file in the format its name implies.
+     */
+    public ImportResult importBookings(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importBookings(Format.forFile(file), channel);
+        }
+    }
+    
+    /**
+     * Imports bookings, restoring them like BookingService#restoreBooking, and reports
+     * how many were imported and why the others were not.
+     */
+    public ImportResult importBookings(Format format, ReadableByteChannel channel) throws IOException {
+        return new Importer(format).run(channel);
+    }
+    
+    /**
+     * Writes yyyy-MM-dd into bytes at offset.
+     */
+    private static void putDate(byte[] bytes, int offset, int year, int month, int day) {
+        bytes[offset] = (byte) ('0' + year / 1000 % 10);
+        bytes[offset + 1] = (byte) ('0' + year / 100 % 10);
+        bytes[offset + 2] = (byte) ('0' + year / 10 % 10);
+        bytes[offset + 3] = (byte) ('0' + year % 10);
+        bytes[offset + 4] = '-';
+        bytes[offset + 5] = (byte) ('0' + month / 10);
+        bytes[offset + 6] = (byte) ('0' + month % 10);
+        bytes[offset + 7] = '-';
+        bytes[offset + 8] = (byte) ('0' + day / 10);
+        bytes[offset + 9] = (byte) ('0' + day % 10);
+    }
+    
+    /**
+     * Buffered writer of records as bytes, draining to the channel whenever the buffer fills.
+     */
+    private static final class Encoder {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final byte[] scratch;
+        private long written;
+        
+        Encoder(WritableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            this.scratch = new byte[32];
+        }
+        
+        void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put(b);
+        }
+        
+        void put(byte[] bytes) throws IOException {
+            put(bytes, bytes.length);
+        }
+        
+        void put(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int chunk = Math.min(length - offset, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+        
+        void putAscii(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                put((byte) value.charAt(i));
+            }
+        }
+        
+        void putCsv(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                putText(value);
+                return;
+            }
+            put((byte) '"');
+            putText(value.replace("\"", "\"\""));
+            put((byte) '"');
+        }
+        
+        void putJson(String value) throws IOException {
+            put((byte) '"');
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    putText(value.substring(start, i));
+                    putAscii(c == '"' || c == '\\' ? "\\" + c : String.format("\\u%04x", (int) c));
+                    start = i + 1;
+                }
+            }
+            putText(start == 0 ? value : value.substring(start));
+            put((byte) '"');
+        }
+        
+        void putText(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) >= 0x80) {
+                    put(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            putAscii(value);
+        }
+        
+        /**
+         * Writes yyyy-MM-ddTHH:mm:ss, with nanoseconds only when there are any.
+         */
+        void putDateTime(LocalDateTime time) throws IOException {
+            putDate(scratch, 0, time.getYear(), time.getMonthValue(), time.getDayOfMonth());
+            scratch[10] = 'T';
+            putTwoDigits(11, time.getHour());
+            scratch[13] = ':';
+            putTwoDigits(14, time.getMinute());
+            scratch[16] = ':';
+            putTwoDigits(17, time.getSecond());
+            int length = 19;
+            int nano = time.getNano();
+            if (nano != 0) {
+                scratch[length++] = '.';
+                for (int divisor = 100_000_000; divisor > 0; divisor /= 10) {
+                    scratch[length++] = (byte) ('0' + nano / divisor % 10);
+                }
+            }
+            put(scratch, length);
+        }
+        
+        private void putTwoDigits(int offset, int value) {
+            scratch[offset] = (byte) ('0' + value / 10);
+            scratch[offset + 1] = (byte) ('0' + value % 10);
+        }
+        
+        void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    /**
+     * One import run: splits the input into lines, parses each into a preallocated record,
+     * and restores full batches of records under the write lock.
+     */
+    private final class Importer {
+        private final Format format;
+        private final KnownIds knownIds;
+        private final Slot[] batch;
+        private final Runnable applyBatch;
+        private int batchSize;
+        
+        private byte[] bytes;
+        // Field ranges of the line being parsed, and the decoded value when a field has escapes
+        private final int[] fieldStarts;
+        private final int[] fieldEnds;
+        private final String[] decoded;
+        private final StringBuilder unescaped;
+        
+        private final List<String> errors;
+        private long lineNumber;
+        private long records;
+        private long imported;
+        private long rejected;
+        private long bytesRead;
+        
+        Importer(Format format) {
+            this.format = format;
+            List<String> ids = new ArrayList<>(service.getAllUsers().keySet());
+            for (Seat seat : service.getAllSeats()) {
+                ids.add(seat.getSeatId());
+            }
+            this.knownIds = new KnownIds(ids);
+            this.batch = new Slot[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch[i] = new Slot();
+            }
+            this.applyBatch = this::applyBatch;
+            this.bytes = new byte[BUFFER_BYTES];
+            this.fieldStarts = new int[FIELDS.length];
+            this.fieldEnds = new int[FIELDS.length];
+            this.decoded = new String[FIELDS.length];
+            this.unescaped = new StringBuilder();
+            this.errors = new ArrayList<>();
+        }
+        
+        ImportResult run(ReadableByteChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int start = 0;
+            int scan = 0;
+            boolean endOfInput = false;
+            while (true) {
+                int end = buffer.position();
+                int newline = scan;
+                while (newline < end && bytes[newline] != '\n') {
+                    newline++;
+                }
+                if (newline < end) {
+                    parseLine(start, newline);
+                    start = newline + 1;
+                    scan = start;
+                    continue;
+                }
+                if (endOfInput) {
+                    if (start < end) {
+                        parseLine(start, end);
+                    }
+                    break;
+                }
+                
+                // Keep the partial line and read more after it
+                if (start > 0) {
+                    System.arraycopy(bytes, start, bytes, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                if (end == bytes.length) {
+                    if (bytes.length >= MAX_LINE_BYTES) {
+                        throw new IOException("Line " + (lineNumber + 1) + " is longer than " 
+                                              + MAX_LINE_BYTES + " bytes");
+                    }
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    buffer = ByteBuffer.wrap(bytes);
+                }
+                buffer.position(end);
+                scan = end;
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += read;
+                }
+            }
+            endBatch();
+            progress.update(records, bytesRead);
+            return new ImportResult(records, imported, rejected, List.copyOf(errors));
+        }
+        
+        private void parseLine(int from, int to) {
+            lineNumber++;
+            if (to > from && bytes[to - 1] == '\r') {
+                to--;
+            }
+            if (to == from || (format == Format.CSV && lineNumber == 1 && startsWithHeader(from, to))) {
+                return;
+            }
+            records++;
+            // Invalid records wait in the batch too, so problems are reported in line order
+            Slot slot = batch[batchSize];
+            String problem = format == Format.CSV ? splitCsv(from, to) : splitJson(from, to);
+            slot.line = lineNumber;
+            slot.problem = problem != null ? problem : fillSlot(slot);
+            if (++batchSize == BATCH_SIZE) {
+                endBatch();
+            }
+            if (records % PROGRESS_INTERVAL == 0) {
+                progress.update(records, bytesRead);
+            }
+        }
+        
+        private boolean startsWithHeader(int from, int to) {
+            int length = "bookingId".length();
+            return to - from >= length 
+                   && new String(bytes, from, length, StandardCharsets.US_ASCII).equals("bookingId");
+        }
+        
+        /**
+         * Finds the five comma-separated fields, unquoting quoted ones.
+         * Returns what is wrong with the line, or null.
+         */
+        private String splitCsv(int from, int to) {
+            int field = 0;
+            int i = from;
+            while (true) {
+                if (field == FIELDS.length) {
+                    return "Expected " + FIELDS.length + " fields";
+                }
+                decoded[field] = null;
+                if (i < to && bytes[i] == '"') {
+                    // Quoted: runs to the next lone quote, with "" standing for one quote
+                    int start = ++i;
+                    boolean escaped = false;
+                    while (i < to && (bytes[i] != '"' || (i + 1 < to && bytes[i + 1] == '"'))) {
+                        if (bytes[i] == '"') {
+                            escaped = true;
+                            i++;
+                        }
+                        i++;
+                    }
+                    if (i == to) {
+                        return "Unterminated quote in " + FIELDS[field];
+                    }
+                    fieldStarts[field] = start;
+                    fieldEnds[field] = i;
+                    if (escaped) {
+                        decoded[field] = new String(bytes, start, i - start, StandardCharsets.UTF_8)
+                                .replace("\"\"", "\"");
+                    }
+                    i++;
+                } else {
+                    fieldStarts[field] = i;
+                    while (i < to && bytes[i] != ',') {
+                        i++;
+                    }
+                    fieldEnds[field] = i;
+                }
+                field++;
+                if (i == to) {
+                    break;
+                }
+                if (bytes[i] != ',') {
+                    return "Expected a comma after " + FIELDS[field - 1];
+                }
+                i++;
+            }
+            return field == FIELDS.length ? null : "Expected " + FIELDS.length + " fields";
+        }
+        
+        /**
+         * Finds the five fields of a flat JSON object whose values are all strings.
+         * Returns what is wrong with the line, or null.
+         */
+        private String splitJson(int from, int to) {
+            Arrays.fill(fieldStarts, -1);
+            int i = skipSpaces(from, to);
+            if (i == to || bytes[i] != '{') {
+                return "Expected a JSON object";
+            }
+            i = skipSpaces(i + 1, to);
+            while (i < to && bytes[i] != '}') {
+                int keyStart = i + 1;
+                int keyEnd = endOfString(i, to);
+                if (keyEnd < 0) {
+                    return "Expected a quoted key";
+                }
+                i = skipSpaces(keyEnd + 1, to);
+                if (i == to || bytes[i] != ':') {
+                    return "Expected ':' after a key";
+                }
+                i = skipSpaces(i + 1, to);
+                int valueEnd = endOfString(i, to);
+                if (valueEnd < 0) {
+                    return "Expected a string value";
+                }
+                int field = fieldIndex(keyStart, keyEnd);
+                if (field >= 0) {
+                    fieldStarts[field] = i + 1;
+                    fieldEnds[field] = valueEnd;
+                    decoded[field] = unescapeJson(i + 1, valueEnd);
+                }
+                i = skipSpaces(valueEnd + 1, to);
+                if (i < to && bytes[i] == ',') {
+                    i = skipSpaces(i + 1, to);
+                } else if (i == to || bytes[i] != '}') {
+                    return "Expected ',' or '}'";
+                }
+            }
+            if (i == to || skipSpaces(i + 1, to) != to) {
+                return "Expected a single JSON object";
+            }
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (fieldStarts[field] < 0) {
+                    return "Missing " + FIELDS[field];
+                }
+            }
+            return null;
+        }
+        
+        private int skipSpaces(int i, int to) {
+            while (i < to && (bytes[i] == ' ' || bytes[i] == '\t')) {
+                i++;
+            }
+            return i;
+        }
+        
+        /**
+         * Returns the position of the closing quote of the string starting at i, or -1.
+         */
+        private int endOfString(int i, int to) {
+            if (i == to || bytes[i] != '"') {
+                return -1;
+            }
+            for (i++; i < to; i++) {
+                if (bytes[i] == '\\') {
+                    i++;
+                } else if (bytes[i] == '"') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        private int fieldIndex(int from, int to) {
+            for (int field = 0; field < FIELDS.length; field++) {
+                String name = FIELDS[field];
+                if (to - from == name.length()) {
+                    int i = 0;
+                    while (i < name.length() && bytes[from + i] == name.charAt(i)) {
+                        i++;
+                    }
+                    if (i == name.length()) {
+                        return field;
+                    }
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Decodes a JSON string body with escapes, or returns null when it has none.
+         */
+        private String unescapeJson(int from, int to) {
+            int i = from;
+            while (i < to && bytes[i] != '\\') {
+                i++;
+            }
+            if (i == to) {
+                return null;
+            }
+            unescaped.setLength(0);
+            unescaped.append(new String(bytes, from, i - from, StandardCharsets.UTF_8));
+            while (i < to) {
+                if (bytes[i] != '\\') {
+                    int start = i;
+                    while (i < to && bytes[i] != '\\') {
+                        i++;
+                    }
+                    unescaped.append(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                    continue;
+                }
+                byte escape = i + 1 < to ? bytes[i + 1] : 0;
+                switch (escape) {
+                    case 'n' -> unescaped.append('\n');
+                    case 't' -> unescaped.append('\t');
+                    case 'r' -> unescaped.append('\r');
+                    case 'b' -> unescaped.append('\b');
+                    case 'f' -> unescaped.append('\f');
+                    case 'u' -> {
+                        if (i + 6 > to) {
+                            return "";
+                        }
+                        try {
+                            unescaped.append((char) Integer.parseInt(
+                                    new String(bytes, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException e) {
+                            return "";
+                        }
+                        i += 4;
+                    }
+                    default -> unescaped.append((char) escape);
+                }
+                i += 2;
+            }
+            return unescaped.toString();
+        }
+        
+        /**
+         * Turns the fields of the parsed line into a slot's record. Returns what is wrong with them, or null.
+         */
+        private String fillSlot(Slot slot) {
+            slot.bookingId = text(0);
+            slot.userId = id(1);
+            slot.seatId = id(2);
+            if (slot.bookingId.isEmpty() || slot.userId.isEmpty() || slot.seatId.isEmpty()) {
+                return "Empty ID";
+            }
+            try {
+                slot.date = parseDate(3);
+                slot.bookingTime = parseDateTime(4);
+            } catch (DateTimeException e) {
+                return e.getMessage();
+            }
+            return null;
+        }
+        
+        private String text(int field) {
+            return decoded[field] != null
+                   ? decoded[field]
+                   : new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field],
+                                StandardCharsets.UTF_8);
+        }
+        
+        /**
+         * Returns the service's own string for a known user or seat ID, without allocating.
+         */
+        private String id(int field) {
+            String id = decoded[field] == null ? knownIds.find(bytes, fieldStarts[field], fieldEnds[field]) : null;
+            return id != null ? id : text(field);
+        }
+        
+        private LocalDate parseDate(int field) {
+            int start = fieldStarts[field];
+            if (fieldEnds[field] - start != 10 || decoded[field] != null
+                    || bytes[start + 4] != '-' || bytes[start + 7] != '-') {
+                throw new DateTimeException("Invalid " + FIELDS[field] + ", expected yyyy-MM-dd");
+            }
+            return LocalDate.of(digits(start, 4, field), digits(start + 5, 2, field), digits(start + 8, 2, field));
+        }
+        
+        private LocalDateTime parseDateTime(int field) {
+            int start = fieldStarts[field];
+            int length = fieldEnds[field] - start;
+            if (length < 16 || decoded[field] != null || bytes[start + 4] != '-' || bytes[start + 7] != '-'
+                    || bytes[start + 10] != 'T' || bytes[start + 13] != ':'
+                    || (length > 16 && (length < 19 || bytes[start + 16] != ':'))
+                    || (length > 19 && (length == 20 || length > 29 || bytes[start + 19] != '.'))) {
+                throw new DateTimeException("Invalid " + FIELDS[field] + ", expected yyyy-MM-ddTHH:mm:ss");
+            }
+            int second = length > 16 ? digits(start + 17, 2, field) : 0;
+            int nano = 0;
+            if (length > 19) {
+                int fraction = length - 20;
+                nano = digits(start + 20, fraction, field);
+                for (int i = fraction; i < 9; i++) {
+                    nano *= 10;
+                }
+            }
+            return LocalDateTime.of(digits(start, 4, field), digits(start + 5, 2, field), digits(start + 8, 2, field),
+                                    digits(start + 11, 2, field), digits(start + 14, 2, field), second, nano);
+        }
+        
+        private int digits(int start, int count, int field) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new DateTimeException("Invalid " + FIELDS[field]);
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+        
+        private void endBatch() {
+            if (batchSize == 0) {
+                return;
+            }
+            service.applyExclusively(applyBatch);
+            for (int i = 0; i < batchSize; i++) {
+                Slot slot = batch[i];
+                if (slot.problem != null) {
+                    reject(slot.line, slot.problem);
+                } else if (slot.rejection != null) {
+                    reject(slot.line, slot.rejection.name());
+                } else {
+                    imported++;
+                }
+                slot.clear();
+            }
+            batchSize = 0;
+        }
+        
+        private void applyBatch() {
+            for (int i = 0; i < batchSize; i++) {
+                Slot slot = batch[i];
+                if (slot.problem != null) {
+                    continue;
+                }
+                slot.rejection = service.tryRestoreBooking(slot.bookingId, slot.userId, slot.seatId,
+                                                             slot.date, slot.bookingTime);
+            }
+        }
+        
+        private void reject(long line, String problem) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + line + ": " + problem);
+            }
+        }
+    }
+    
+    /**
+     * Open-addressing table of the service's user and seat IDs, looked up by their bytes.
+     * Only ASCII IDs are found; others are decoded as usual.
+     */
+    private static final class KnownIds {
+        private final String[] slots;
+        private final int mask;
+        
+        KnownIds(List<String> ids) {
+            int capacity = Integer.highestOneBit(Math.max(ids.size(), 1) * 2) << 1;
+            this.slots = new String[capacity];
+            this.mask = capacity - 1;
+            for (String id : ids) {
+                int slot = spread(id.hashCode()) & mask;
+                while (slots[slot] != null && !slots[slot].equals(id)) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id;
+            }
+        }
+        
+        String find(byte[] bytes, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            for (int slot = spread(hash) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+                String id = slots[slot];
+                if (id.length() == to - from && matches(id, bytes, from)) {
+                    return id;
+                }
+            }
+            return null;
+        }
+        
+        private static boolean matches(String id, byte[] bytes, int from) {
+            for (int i = 0; i < id.length(); i++) {
+                if (id.charAt(i) != bytes[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+    
+    /**
+     * A parsed record waiting in the batch, or what is wrong with its line; reused once applied.
+     */
+    private static final class Slot {
+        long line;
+        String bookingId;
+        String userId;
+        String seatId;
+        LocalDate date;
+        LocalDateTime bookingTime;
+        String problem;
+        RejectionReason rejection;
+        
+        void clear() {
+            bookingId = null;
+            userId = null;
+            seatId = null;
+            date = null;
+            bookingTime = null;
+            problem = null;
+            rejection = null;
+        }
+    }
+}
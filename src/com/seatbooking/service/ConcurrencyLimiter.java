@@ -0,0 +1,106 @@
+package com.seatbooking.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit on the number of calls in flight, driven by their latency.
+ * 
+ * The limit grows by one while calls are as fast as the recent best and the limit is
+ * actually being used, and shrinks by a tenth when the smoothed latency rises past twice
+ * that best, which is what queueing on the write lock looks like. Calls over the limit are
+ * refused at once rather than queued. Latency bookkeeping is skipped for a sample when
+ * another thread is already updating it, so releasing never waits.
+ */
+final class ConcurrencyLimiter {
+    
+    private static final double TOLERANCE = 2.0;
+    private static final int SMOOTHING = 8;
+    private static final int BASELINE_WINDOW = 256;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight;
+    private volatile int limit;
+    
+    // Guarded by updating; written by one releasing thread at a time
+    private final AtomicBoolean updating;
+    private double smoothedNanos;
+    private long baselineNanos;
+    private long windowMinNanos;
+    private int windowSamples;
+    private int samplesSinceDecrease;
+    
+    ConcurrencyLimiter(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.inFlight = new AtomicInteger();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, 2 * Runtime.getRuntime().availableProcessors()));
+        this.updating = new AtomicBoolean();
+        this.baselineNanos = Long.MAX_VALUE;
+        this.windowMinNanos = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Admits a call if fewer than the limit are in flight; an admitted call must be released.
+     */
+    boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Ends an admitted call that took the given time, and adapts the limit.
+     */
+    void release(long latencyNanos) {
+        int callsInFlight = inFlight.getAndDecrement();
+        if (!updating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (baselineNanos == Long.MAX_VALUE) {
+                baselineNanos = latencyNanos;
+                smoothedNanos = latencyNanos;
+            }
+            smoothedNanos += (latencyNanos - smoothedNanos) / SMOOTHING;
+            
+            // The baseline follows the fastest call of each window, and may only creep upwards
+            windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+            if (++windowSamples == BASELINE_WINDOW) {
+                baselineNanos = windowMinNanos < baselineNanos
+                        ? windowMinNanos
+                        : baselineNanos + (windowMinNanos - baselineNanos) / SMOOTHING;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+            
+            int current = limit;
+            samplesSinceDecrease++;
+            if (smoothedNanos > TOLERANCE * baselineNanos) {
+                // Decrease at most once per limit's worth of calls, so one slow burst is not punished twice
+                if (samplesSinceDecrease >= current && current > minLimit) {
+                    limit = Math.max(minLimit, current - Math.max(1, current / 10));
+                    samplesSinceDecrease = 0;
+                }
+            } else if (callsInFlight * 2 >= current && current < maxLimit) {
+                limit = current + 1;
+            }
+        } finally {
+            updating.set(false);
+        }
+    }
+    
+    int getLimit() {
+        return limit;
+    }
+    
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,70 @@
+package com.seatbooking.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends notifications to a file as NDJSON, one flat object per line with the keys
+ * type, time, bookingId, userId, seatId and date. Stands in for a real delivery channel,
+ * and lets other tools pick the notifications up from the file.
+ */
+public class FileNotificationSink implements NotificationSink {
+    
+    private final Writer writer;
+    private final StringBuilder line;
+    
+    /**
+     * Opens the file for appending, creating it if missing.
+     */
+    public FileNotificationSink(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                                              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.line = new StringBuilder(256);
+    }
+    
+    /**
+     * Writes the batch and flushes it to the file, so a delivered batch is never only buffered.
+     */
+    @Override
+    public void deliver(List<Notification> batch) throws IOException {
+        for (Notification notification : batch) {
+            line.setLength(0);
+            line.append("{\"type\":\"").append(notification.type().name())
+                .append("\",\"time\":\"").append(notification.time())
+                .append("\",\"bookingId\":");
+            appendString(notification.bookingId());
+            line.append(",\"userId\":");
+            appendString(notification.userId());
+            line.append(",\"seatId\":");
+            appendString(notification.seatId());
+            line.append(",\"date\":\"").append(notification.date()).append("\"}\n");
+            writer.append(line);
+        }
+        writer.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+    
+    private void appendString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
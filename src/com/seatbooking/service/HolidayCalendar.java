@@ -0,0 +1,208 @@
+package com.seatbooking.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Public holidays and office closures for one office.
+ * 
+ * Closed days are kept in a bitset indexed by epoch day, so isClosed is a single
+ * bit test. Calendars are immutable: adding a closure returns a new calendar,
+ * which BookingService publishes as a whole, like its per-date snapshots.
+ * 
+ * Calendars load from CSV or iCalendar (.ics) files. CSV lines are
+ * {@code date,name[,office]}; rows without an office (or with {@code *}) apply to every office.
+ * In .ics files each all-day VEVENT closes the days from DTSTART up to, but not including, DTEND.
+ * An event with an {@code X-OFFICE} property (a comma-separated list of offices, or {@code *})
+ * applies only to the offices it names; events without one, as in exported holiday feeds,
+ * apply to every office.
+ */
+public final class HolidayCalendar {
+    
+    private static final HolidayCalendar EMPTY = new HolidayCalendar(new BitSet(), Collections.emptyMap());
+    private static final DateTimeFormatter ICS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    
+    private final BitSet closedDays; // one bit per epoch day
+    private final Map<LocalDate, String> names;
+    
+    private HolidayCalendar(BitSet closedDays, Map<LocalDate, String> names) {
+        this.closedDays = closedDays;
+        this.names = names;
+    }
+    
+    /**
+     * Returns a calendar without any closures.
+     */
+    public static HolidayCalendar empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * Loads the closures of an office from a CSV or .ics file.
+     */
+    public static HolidayCalendar load(Path file, String office) throws IOException {
+        Map<LocalDate, String> closures = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".ics")) {
+                readIcs(reader, office, closures);
+            } else {
+                readCsv(reader, office, closures);
+            }
+        }
+        return EMPTY.withClosures(closures);
+    }
+    
+    /**
+     * Returns a calendar with the given day closed as well.
+     */
+    public HolidayCalendar withClosure(LocalDate date, String name) {
+        return withClosures(Map.of(date, name));
+    }
+    
+    /**
+     * Returns a calendar with all the given days closed as well.
+     */
+    public HolidayCalendar withClosures(Map<LocalDate, String> closures) {
+        BitSet days = (BitSet) closedDays.clone();
+        Map<LocalDate, String> allNames = new HashMap<>(names);
+        closures.forEach((date, name) -> {
+            days.set(bitOf(date));
+            allNames.put(date, name);
+        });
+        return new HolidayCalendar(days, Collections.unmodifiableMap(allNames));
+    }
+    
+    /**
+     * Checks if the office is closed on a date.
+     */
+    public boolean isClosed(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        return epochDay >= 0 && epochDay <= Integer.MAX_VALUE && closedDays.get((int) epochDay);
+    }
+    
+    /**
+     * Returns the name of the holiday or closure on a date, or null if the office is open.
+     */
+    public String getName(LocalDate date) {
+        return names.get(date);
+    }
+    
+    /**
+     * Returns all closed days in date order.
+     */
+    public SortedSet<LocalDate> getClosedDays() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(names.keySet()));
+    }
+    
+    private static int bitOf(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        if (epochDay < 0 || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Closure date out of range: " + date);
+        }
+        return (int) epochDay;
+    }
+    
+    private static void readCsv(BufferedReader reader, String office, Map<LocalDate, String> closures) 
+            throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.startsWith("date,"))) {
+                continue;
+            }
+            
+            String[] fields = line.split(",", -1);
+            if (fields.length < 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected date,name[,office]");
+            }
+            String rowOffice = fields.length > 2 ? fields[2].strip() : "";
+            if (!appliesTo(rowOffice, office)) {
+                continue;
+            }
+            try {
+                closures.put(LocalDate.parse(fields[0].strip()), fields[1].strip());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": invalid date " + fields[0], e);
+            }
+        }
+    }
+    
+    private static void readIcs(BufferedReader reader, String office, Map<LocalDate, String> closures) 
+            throws IOException {
+        LocalDate start = null;
+        LocalDate end = null;
+        String summary = null;
+        boolean forOffice = true;
+        for (String line : unfold(reader)) {
+            if (line.equals("BEGIN:VEVENT")) {
+                start = null;
+                end = null;
+                summary = null;
+                forOffice = true;
+            } else if (line.startsWith("X-OFFICE:") || line.startsWith("X-OFFICE;")) {
+                forOffice = false;
+                for (String eventOffice : line.substring(line.indexOf(':') + 1).split(",")) {
+                    forOffice |= appliesTo(eventOffice.strip(), office);
+                }
+            } else if (line.startsWith("DTSTART")) {
+                start = icsDate(line);
+            } else if (line.startsWith("DTEND")) {
+                end = icsDate(line);
+            } else if (line.startsWith("SUMMARY")) {
+                summary = line.substring(line.indexOf(':') + 1);
+            } else if (line.equals("END:VEVENT") && start != null && forOffice) {
+                // DTEND is exclusive; a missing DTEND means a single day
+                LocalDate last = end != null && end.isAfter(start) ? end.minusDays(1) : start;
+                for (LocalDate day = start; !day.isAfter(last); day = day.plusDays(1)) {
+                    closures.put(day, summary != null ? summary : "Closed");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks if a closure declared for an office (empty or * for every office) applies to the given one.
+     */
+    private static boolean appliesTo(String declaredOffice, String office) {
+        return declaredOffice.isEmpty() || declaredOffice.equals("*") || declaredOffice.equalsIgnoreCase(office);
+    }
+    
+    /**
+     * Joins folded .ics lines (continuations start with a space or tab).
+     */
+    private static List<String> unfold(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!lines.isEmpty() && (line.startsWith(" ") || line.startsWith("\t"))) {
+                lines.set(lines.size() - 1, lines.get(lines.size() - 1) + line.substring(1));
+            } else {
+                lines.add(line.strip());
+            }
+        }
+        return lines;
+    }
+    
+    private static LocalDate icsDate(String line) {
+        String value = line.substring(line.indexOf(':') + 1);
+        try {
+            // DATE values are yyyyMMdd; DATE-TIME values add a time we ignore
+            return LocalDate.parse(value.substring(0, Math.min(8, value.length())), ICS_DATE);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid calendar date: " + line, e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "HolidayCalendar{closedDays=" + names.size() + "}";
+    }
+}
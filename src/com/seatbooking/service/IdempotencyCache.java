@@ -0,0 +1,306 @@
+package com.seatbooking.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Remembers the outcome of keyed requests for a fixed time, so a retried request can be
+ * answered with its first outcome.
+ * 
+ * Keys are spread over segments with their own locks. Each segment is a segmented LRU:
+ * a new key enters the probation list, and a key that is asked for again moves to the
+ * protected list, which takes most of the room. Once a segment is full its oldest key on
+ * probation is forgotten first, so a burst of one-off keys cannot push out keys that
+ * clients are actually retrying.
+ * 
+ * A segment keeps its entries in fixed slots, linked into the lists by slot number and
+ * found through an open-addressing table of slot numbers, so a key costs one immutable
+ * entry and about 30 bytes of arrays. Moving a key between lists writes no references,
+ * which keeps a large cache cheap for the garbage collector as well.
+ * 
+ * Entries expire a fixed time after they were made, however often they are read.
+ * Expired entries are dropped when read, or when they reach the end of a list.
+ */
+final class IdempotencyCache {
+    
+    private static final int MAX_SEGMENTS = 16;
+    // Below this many keys per segment, fewer segments are used
+    private static final int MIN_SEGMENT_KEYS = 8;
+    private static final int NONE = -1;
+    
+    private final Segment[] segments;
+    private final long ttlMillis;
+    
+    /**
+     * Creates a cache of at most maxKeys keys, each remembered for ttl.
+     */
+    IdempotencyCache(int maxKeys, Duration ttl) {
+        if (maxKeys < 1 || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Need at least one key and a positive retention");
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxKeys / MIN_SEGMENT_KEYS)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxKeys / count + (i < maxKeys % count ? 1 : 0));
+        }
+        this.ttlMillis = ttl.toMillis();
+    }
+    
+    /**
+     * Returns the live entry for a key, or null if the key is unknown or has expired.
+     */
+    Entry get(String key, long nowMillis) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash, nowMillis);
+    }
+    
+    /**
+     * Remembers the outcome of a booking request.
+     */
+    void putBooking(String key, String userId, String seatId, LocalDate date, BookingResult result,
+                    long nowMillis) {
+        put(new Entry(key, userId, seatId, date.toEpochDay(), result, false, nowMillis + ttlMillis), nowMillis);
+    }
+    
+    /**
+     * Remembers the outcome of a cancellation.
+     */
+    void putCancellation(String key, String bookingId, boolean cancelled, long nowMillis) {
+        put(new Entry(key, null, bookingId, 0, null, cancelled, nowMillis + ttlMillis), nowMillis);
+    }
+    
+    /**
+     * Returns the number of keys held, including expired ones not yet dropped.
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    private void put(Entry entry, long nowMillis) {
+        int hash = hash(entry.key);
+        segmentFor(hash).put(entry, hash, nowMillis);
+    }
+    
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+    
+    private Segment segmentFor(int hash) {
+        return segments[hash & (segments.length - 1)];
+    }
+    
+    /**
+     * The remembered outcome of one keyed request, along with the request itself,
+     * so a key reused for a different request can be told apart from a retry.
+     */
+    static final class Entry {
+        final String key;
+        // Null for a cancellation
+        final String userId;
+        // The seat ID of a booking, or the booking ID of a cancellation
+        final String target;
+        final long epochDay;
+        // Null for a cancellation
+        final BookingResult result;
+        final boolean cancelled;
+        final long expiresAt;
+        
+        Entry(String key, String userId, String target, long epochDay, BookingResult result, boolean cancelled,
+              long expiresAt) {
+            this.key = key;
+            this.userId = userId;
+            this.target = target;
+            this.epochDay = epochDay;
+            this.result = result;
+            this.cancelled = cancelled;
+            this.expiresAt = expiresAt;
+        }
+        
+        boolean isBooking(String userId, String seatId, LocalDate date) {
+            return result != null && this.userId.equals(userId) && target.equals(seatId)
+                   && epochDay == date.toEpochDay();
+        }
+        
+        boolean isCancellation(String bookingId) {
+            return result == null && target.equals(bookingId);
+        }
+    }
+    
+    private static final class Segment {
+        private final Entry[] entries;
+        private final int[] hashes;
+        // Circular lists by slot, most recently used first; the last two slots are the list heads
+        private final int[] previous;
+        private final int[] next;
+        private final boolean[] protectedSlot;
+        private final int probation;
+        private final int protectedList;
+        // Slot plus one by hash, with linear probing; 0 is empty
+        private final int[] table;
+        private final int tableMask;
+        // Keeps the top log2(table.length) bits of the mixed hash
+        private final int tableShift;
+        private final int capacity;
+        private final int protectedCapacity;
+        private int size;
+        private int protectedSize;
+        // Slots never used start here; freed slots are chained through next
+        private int unusedSlot;
+        private int freeSlot = NONE;
+        
+        Segment(int capacity) {
+            this.entries = new Entry[capacity];
+            this.hashes = new int[capacity];
+            this.previous = new int[capacity + 2];
+            this.next = new int[capacity + 2];
+            this.protectedSlot = new boolean[capacity];
+            this.probation = capacity;
+            this.protectedList = capacity + 1;
+            for (int head = capacity; head < capacity + 2; head++) {
+                previous[head] = head;
+                next[head] = head;
+            }
+            this.table = new int[Integer.highestOneBit(capacity) << 2];
+            this.tableMask = table.length - 1;
+            this.tableShift = Integer.numberOfLeadingZeros(tableMask);
+            this.capacity = capacity;
+            // Four fifths protected, but always room for a new key on probation
+            this.protectedCapacity = Math.min(capacity * 4 / 5, capacity - 1);
+        }
+        
+        synchronized Entry get(String key, int hash, long nowMillis) {
+            int index = find(key, hash);
+            if (index == NONE) {
+                return null;
+            }
+            int slot = table[index] - 1;
+            Entry entry = entries[slot];
+            if (entry.expiresAt <= nowMillis) {
+                remove(slot);
+                return null;
+            }
+            unlink(slot);
+            if (protectedSlot[slot]) {
+                linkFirst(protectedList, slot);
+            } else if (protectedCapacity > 0) {
+                protectedSlot[slot] = true;
+                protectedSize++;
+                linkFirst(protectedList, slot);
+                if (protectedSize > protectedCapacity) {
+                    // The least recently used protected key gets another chance on probation
+                    int demoted = previous[protectedList];
+                    unlink(demoted);
+                    protectedSlot[demoted] = false;
+                    protectedSize--;
+                    linkFirst(probation, demoted);
+                }
+            } else {
+                linkFirst(probation, slot);
+            }
+            return entry;
+        }
+        
+        synchronized void put(Entry entry, int hash, long nowMillis) {
+            int index = find(entry.key, hash);
+            if (index != NONE) {
+                remove(table[index] - 1);
+            }
+            dropExpired(probation, nowMillis);
+            dropExpired(protectedList, nowMillis);
+            if (size == capacity) {
+                // The protected list is never full, so probation has a key to give up
+                remove(previous[probation]);
+            }
+            
+            int slot = freeSlot;
+            if (slot != NONE) {
+                freeSlot = next[slot];
+            } else {
+                slot = unusedSlot++;
+            }
+            entries[slot] = entry;
+            hashes[slot] = hash;
+            protectedSlot[slot] = false;
+            linkFirst(probation, slot);
+            index = home(hash);
+            while (table[index] != 0) {
+                index = (index + 1) & tableMask;
+            }
+            table[index] = slot + 1;
+            size++;
+        }
+        
+        synchronized int size() {
+            return size;
+        }
+        
+        /**
+         * Returns the table index holding a key, or NONE.
+         */
+        private int find(String key, int hash) {
+            int index = home(hash);
+            while (table[index] != 0) {
+                int slot = table[index] - 1;
+                if (hashes[slot] == hash && entries[slot].key.equals(key)) {
+                    return index;
+                }
+                index = (index + 1) & tableMask;
+            }
+            return NONE;
+        }
+        
+        private int home(int hash) {
+            // The low bits chose the segment, so the table uses as many high bits as it has slots
+            return hash * 0x9E3779B9 >>> tableShift;
+        }
+        
+        private void dropExpired(int list, long nowMillis) {
+            while (previous[list] != list && entries[previous[list]].expiresAt <= nowMillis) {
+                remove(previous[list]);
+            }
+        }
+        
+        private void remove(int slot) {
+            int index = home(hashes[slot]);
+            while (table[index] != slot + 1) {
+                index = (index + 1) & tableMask;
+            }
+            // Shift later keys of the probe run back, so lookups never stop early at the gap
+            int gap = index;
+            for (int i = (gap + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+                int home = home(hashes[table[i] - 1]);
+                if (((i - home) & tableMask) >= ((i - gap) & tableMask)) {
+                    table[gap] = table[i];
+                    gap = i;
+                }
+            }
+            table[gap] = 0;
+            
+            unlink(slot);
+            if (protectedSlot[slot]) {
+                protectedSize--;
+            }
+            entries[slot] = null;
+            next[slot] = freeSlot;
+            freeSlot = slot;
+            size--;
+        }
+        
+        private void linkFirst(int list, int slot) {
+            previous[slot] = list;
+            next[slot] = next[list];
+            previous[next[list]] = slot;
+            next[list] = slot;
+        }
+        
+        private void unlink(int slot) {
+            next[previous[slot]] = next[slot];
+            previous[next[slot]] = previous[slot];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Stores bookings in one table of an embedded SQL database through JDBC, for example an
+ * H2 or SQLite file opened with {@code jdbc:h2:./bookings} or {@code jdbc:sqlite:bookings.db},
+ * with the driver on the class path:
+ * <pre>
+ *   bookings(booking_id VARCHAR(32) PRIMARY KEY, user_id VARCHAR(32), seat_id VARCHAR(32),
+ *            booking_date DATE, booked_at TIMESTAMP)
+ * </pre>
+ * The table is created if missing. Each write is one transaction of prepared-statement
+ * batches, sent every BATCH_ROWS rows, so a batch of changes costs a few round trips
+ * however many rows it holds. Only standard SQL and JDBC 4.2 date types are used.
+ */
+public class JdbcBookingRepository implements BookingRepository {
+    
+    private static final int BATCH_ROWS = 1000;
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS bookings ("
+            + "booking_id VARCHAR(32) PRIMARY KEY, user_id VARCHAR(32) NOT NULL, seat_id VARCHAR(32) NOT NULL, "
+            + "booking_date DATE NOT NULL, booked_at TIMESTAMP NOT NULL)";
+    
+    private final Connection connection;
+    private final PreparedStatement insert;
+    private final PreparedStatement update;
+    private final PreparedStatement delete;
+    
+    /**
+     * Opens the database at a JDBC URL.
+     */
+    public JdbcBookingRepository(String url) throws IOException {
+        this(connect(url));
+    }
+    
+    /**
+     * Uses an open connection, which the repository then owns and closes.
+     */
+    public JdbcBookingRepository(Connection connection) throws IOException {
+        this.connection = connection;
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            connection.commit();
+            this.insert = connection.prepareStatement("INSERT INTO bookings "
+                    + "(booking_id, user_id, seat_id, booking_date, booked_at) VALUES (?, ?, ?, ?, ?)");
+            this.update = connection.prepareStatement("UPDATE bookings SET seat_id = ? WHERE booking_id = ?");
+            this.delete = connection.prepareStatement("DELETE FROM bookings WHERE booking_id = ?");
+        } catch (SQLException e) {
+            closeQuietly();
+            throw new IOException("Could not open booking table: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized void loadAll(StoredBookingHandler handler) throws IOException {
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(BATCH_ROWS);
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT booking_id, user_id, seat_id, booking_date, booked_at FROM bookings")) {
+                while (rows.next()) {
+                    handler.accept(rows.getString(1), rows.getString(2), rows.getString(3),
+                                   rows.getObject(4, LocalDate.class), rows.getObject(5, LocalDateTime.class));
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IOException("Could not load bookings: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized void write(Collection<String> deleted, Collection<Booking> updated,
+                                   Collection<Booking> inserted) throws IOException {
+        try {
+            int rows = 0;
+            for (String bookingId : deleted) {
+                delete.setString(1, bookingId);
+                delete.addBatch();
+                if (++rows % BATCH_ROWS == 0) {
+                    delete.executeBatch();
+                }
+            }
+            delete.executeBatch();
+            
+            rows = 0;
+            for (Booking booking : updated) {
+                update.setString(1, booking.getSeat().getSeatId());
+                update.setString(2, booking.getBookingId());
+                update.addBatch();
+                if (++rows % BATCH_ROWS == 0) {
+                    update.executeBatch();
+                }
+            }
+            update.executeBatch();
+            
+            rows = 0;
+            for (Booking booking : inserted) {
+                insert.setString(1, booking.getBookingId());
+                insert.setString(2, booking.getUser().getUserId());
+                insert.setString(3, booking.getSeat().getSeatId());
+                insert.setObject(4, booking.getDate());
+                insert.setObject(5, booking.getBookingTime());
+                insert.addBatch();
+                if (++rows % BATCH_ROWS == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                delete.clearBatch();
+                update.clearBatch();
+                insert.clearBatch();
+                connection.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            if (isPermanent(e)) {
+                throw new BatchRejectedException("Bookings rejected by the database: " + e.getMessage(), e);
+            }
+            throw new IOException("Could not write bookings: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Could not close booking database: " + e.getMessage(), e);
+        }
+    }
+    
+    private static Connection connect(String url) throws IOException {
+        try {
+            return DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            throw new IOException("Could not connect to " + url + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Tells constraint violations and bad data, which fail again on every retry, from
+     * lost connections and timeouts. Batch updates wrap the statement's own error.
+     */
+    private static boolean isPermanent(SQLException failure) {
+        for (Throwable e = failure; e != null; e = e.getCause()) {
+            if (e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException) {
+                return true;
+            }
+            if (e instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+                if (sql.getNextException() != null && isPermanent(sql.getNextException())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private void closeQuietly() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Already failing; the original error is reported instead
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.seatbooking.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram in the style of HdrHistogram.
+ * 
+ * Values below 64 ns are counted exactly. Larger values are bucketed by their highest
+ * set bit plus the next SUB_BUCKET_BITS bits, so every bucket is within about 3% of
+ * the values it holds, from nanoseconds up to Long.MAX_VALUE. Recording is a single
+ * atomic array increment with no allocation.
+ */
+public final class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    
+    /**
+     * Records one value in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        counts.getAndIncrement(bucketOf(Math.max(0, nanos)));
+    }
+    
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+    
+    /**
+     * Returns the highest value equivalent to the given percentile (0-100),
+     * or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(BUCKET_COUNT - 1);
+    }
+    
+    /**
+     * Returns the highest value equivalent to the largest recorded value.
+     */
+    public long getMax() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestValueIn(i);
+            }
+        }
+        return 0;
+    }
+    
+    static int bucketOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+    
+    static long highestValueIn(int bucket) {
+        int shift = Math.max(0, (bucket >>> SUB_BUCKET_BITS) - 1);
+        long mantissa = bucket - ((long) shift << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
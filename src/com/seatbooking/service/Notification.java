@@ -0,0 +1,21 @@
+package com.seatbooking.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A message for the holder of a booking, about a change to it: when the change was
+ * made, and the booking as it stood after the change.
+ */
+public record Notification(Type type, Instant time, String bookingId, String userId, String seatId, LocalDate date) {
+    
+    /**
+     * Kinds of notices.
+     */
+    public enum Type {
+        CONFIRMED,
+        MOVED,
+        CANCELLED,
+        RELEASED_NO_SHOW
+    }
+}
@@ -0,0 +1,340 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Tells users about changes to their bookings through a NotificationSink, without
+ * slowing the changes down.
+ * 
+ * The outbox listens to a BookingService, so the intent to notify is recorded under the
+ * service's write lock, in the same step as the change itself: a change is never made
+ * without its notice, nor noticed without being made. Recording only updates a map of
+ * undelivered intents by booking ID, so a later change to the same booking replaces the
+ * earlier intent: a booking that is moved is confirmed at its last seat, and one that is
+ * cancelled before its confirmation went out is not mentioned at all.
+ * 
+ * Intents are held for a short time before delivery, so such changes have the chance to
+ * cancel out, then one dispatcher thread hands them to the sink in batches. A failed batch
+ * is retried, with growing pauses, until it succeeds. Bookings never wait for the sink:
+ * while it is slow or down, intents simply collect in the map, at most one per booking.
+ * 
+ * Restored bookings, such as imported ones or those replicated from a leader, are not
+ * confirmed, and changes to bookings of past days are not notified. Attach the outbox to the
+ * service users act on, not to a replica, whose replicated moves and cancellations look like
+ * local ones. The outbox lives in memory, like the bookings themselves.
+ */
+public class NotificationOutbox implements BookingListener, Closeable {
+    
+    public static final Duration DEFAULT_HOLD = Duration.ofSeconds(5);
+    
+    private static final int MAX_BATCH = 1024;
+    private static final long MIN_RETRY_MILLIS = 10;
+    private static final long MAX_RETRY_MILLIS = 1000;
+    private static final long POLL_MILLIS = 100;
+    
+    private final BookingService service;
+    private final NotificationSink sink;
+    private final Clock clock;
+    private final long holdMillis;
+    private final Thread dispatcher;
+    
+    // Guarded by this: undelivered intents by booking ID, in the order they were first recorded,
+    // which is also the order they fall due
+    private final LinkedHashMap<String, Intent> pending;
+    private long nextSequence;
+    // Intents up to this sequence number are due at once, as asked for by flush
+    private long flushThrough;
+    // Lowest sequence number of the batch being delivered, or Long.MAX_VALUE
+    private long deliveringFrom;
+    private long recordedCount;
+    private long deliveredCount;
+    private long batchCount;
+    private long failureCount;
+    private long lostCount;
+    private String failure;
+    
+    private volatile boolean running;
+    
+    /**
+     * Starts notifying the service's changes from now on, each held for DEFAULT_HOLD.
+     */
+    public NotificationOutbox(BookingService service, NotificationSink sink) {
+        this(service, sink, DEFAULT_HOLD);
+    }
+    
+    /**
+     * Starts notifying the service's changes from now on, holding each for the given time
+     * before delivery in case a later change cancels it out.
+     */
+    public NotificationOutbox(BookingService service, NotificationSink sink, Duration hold) {
+        if (hold.isNegative()) {
+            throw new IllegalArgumentException("Hold time cannot be negative");
+        }
+        this.service = service;
+        this.sink = sink;
+        this.clock = service.getClock();
+        this.holdMillis = hold.toMillis();
+        this.pending = new LinkedHashMap<>();
+        this.flushThrough = -1;
+        this.deliveringFrom = Long.MAX_VALUE;
+        
+        this.running = true;
+        this.dispatcher = new Thread(this::dispatch, "notification-outbox");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        service.subscribe(this);
+    }
+    
+    @Override
+    public void onBooked(Booking booking) {
+        record(Notification.Type.CONFIRMED, booking);
+    }
+    
+    @Override
+    public void onRestored(Booking booking) {
+        // Made elsewhere, such as by an import; its holder is told where it was made
+    }
+    
+    @Override
+    public void onCancelled(Booking booking) {
+        record(Notification.Type.CANCELLED, booking);
+    }
+    
+    @Override
+    public void onReclaimed(Booking booking) {
+        record(Notification.Type.RELEASED_NO_SHOW, booking);
+    }
+    
+    @Override
+    public void onMoved(List<Booking> before, List<Booking> after) {
+        for (Booking booking : after) {
+            record(Notification.Type.MOVED, booking);
+        }
+    }
+    
+    @Override
+    public void onArchived(Booking booking) {
+        // Nothing changes for the holder
+    }
+    
+    /**
+     * Returns the number of intents waiting to be delivered.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Returns the number of changes recorded, whether notified or cancelled out.
+     */
+    public synchronized long getRecordedCount() {
+        return recordedCount;
+    }
+    
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+    
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+    
+    /**
+     * Returns the last delivery error, or null once deliveries succeed again.
+     */
+    public synchronized String getFailure() {
+        return failure;
+    }
+    
+    /**
+     * Delivers every intent recorded so far without waiting out its hold time, and waits
+     * until the sink has them. Throws if a delivery fails meanwhile; the dispatcher keeps
+     * retrying regardless.
+     */
+    public synchronized void flush() throws IOException, InterruptedException {
+        long target = nextSequence - 1;
+        flushThrough = Math.max(flushThrough, target);
+        notifyAll();
+        long failuresBefore = failureCount;
+        while (firstPendingSequence() <= target || deliveringFrom <= target) {
+            if (failureCount != failuresBefore) {
+                throw new IOException("Notification delivery failed: " + failure);
+            }
+            wait();
+        }
+    }
+    
+    /**
+     * Stops listening, delivers the remaining intents at once and closes the sink.
+     */
+    @Override
+    public void close() throws IOException {
+        // Under the write lock, so no intent is still being recorded once the dispatcher is told to stop
+        service.applyExclusively(() -> service.unsubscribe(this));
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sink.close();
+        }
+        synchronized (this) {
+            if (!pending.isEmpty() || lostCount > 0) {
+                throw new IOException((pending.size() + lostCount) + " notifications were not delivered: " + failure);
+            }
+        }
+    }
+    
+    private void record(Notification.Type type, Booking booking) {
+        long now = clock.millis();
+        if (booking.getDate().isBefore(LocalDate.now(clock))) {
+            return;
+        }
+        synchronized (this) {
+            recordedCount++;
+            Intent earlier = pending.get(booking.getBookingId());
+            if (earlier == null) {
+                pending.put(booking.getBookingId(), new Intent(nextSequence++, type, booking, now));
+                if (pending.size() == 1) {
+                    notifyAll();
+                }
+            } else if (earlier.type == Notification.Type.CONFIRMED && type != Notification.Type.MOVED) {
+                // Gone before the user heard of it: nothing to tell
+                pending.remove(booking.getBookingId());
+            } else {
+                // A confirmation stays a confirmation, of the booking as it is now; it keeps its
+                // place and deadline in the queue, but tells the time of the latest change
+                if (earlier.type != Notification.Type.CONFIRMED) {
+                    earlier.type = type;
+                }
+                earlier.booking = booking;
+                earlier.changedAt = now;
+            }
+        }
+    }
+    
+    private void dispatch() {
+        List<Notification> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            synchronized (this) {
+                while (batch.isEmpty()) {
+                    long wait = takeDue(batch);
+                    if (!batch.isEmpty()) {
+                        break;
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            deliverWithRetry(batch);
+            batch.clear();
+        }
+    }
+    
+    /**
+     * Moves the due intents, up to a batch, from the map into the batch and returns how
+     * long to wait before looking again. Everything is due once the outbox is closing.
+     */
+    private long takeDue(List<Notification> batch) {
+        long now = clock.millis();
+        Iterator<Intent> intents = pending.values().iterator();
+        while (intents.hasNext() && batch.size() < MAX_BATCH) {
+            Intent intent = intents.next();
+            long dueAt = intent.recordedAt + holdMillis;
+            if (dueAt > now && intent.sequence > flushThrough && running) {
+                // Later intents fall due later still; the clock may be moved, so look again soon
+                return Math.min(dueAt - now, POLL_MILLIS);
+            }
+            if (batch.isEmpty()) {
+                deliveringFrom = intent.sequence;
+            }
+            Booking booking = intent.booking;
+            batch.add(new Notification(intent.type, Instant.ofEpochMilli(intent.changedAt), booking.getBookingId(),
+                                       booking.getUser().getUserId(), booking.getSeat().getSeatId(),
+                                       booking.getDate()));
+            intents.remove();
+        }
+        return POLL_MILLIS;
+    }
+    
+    private long firstPendingSequence() {
+        return pending.isEmpty() ? Long.MAX_VALUE : pending.values().iterator().next().sequence;
+    }
+    
+    private void deliverWithRetry(List<Notification> batch) {
+        long pause = MIN_RETRY_MILLIS;
+        while (true) {
+            try {
+                sink.deliver(batch);
+                synchronized (this) {
+                    deliveredCount += batch.size();
+                    batchCount++;
+                    deliveringFrom = Long.MAX_VALUE;
+                    failure = null;
+                    notifyAll();
+                }
+                return;
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    failureCount++;
+                    failure = e.toString();
+                    notifyAll();
+                }
+                if (!running) {
+                    // Closing: give up rather than retry forever; close reports what was lost
+                    synchronized (this) {
+                        lostCount += batch.size();
+                        deliveringFrom = Long.MAX_VALUE;
+                    }
+                    return;
+                }
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                pause = Math.min(pause * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+    
+    /**
+     * An undelivered notice; changed in place when its booking changes again. It falls due
+     * a hold time after it was first recorded, and is sent with the time of the last change.
+     */
+    private static final class Intent {
+        final long sequence;
+        final long recordedAt;
+        Notification.Type type;
+        Booking booking;
+        long changedAt;
+        
+        Intent(long sequence, Notification.Type type, Booking booking, long recordedAt) {
+            this.sequence = sequence;
+            this.type = type;
+            this.booking = booking;
+            this.recordedAt = recordedAt;
+            this.changedAt = recordedAt;
+        }
+    }
+}
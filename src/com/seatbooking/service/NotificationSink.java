@@ -0,0 +1,20 @@
+package com.seatbooking.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where a NotificationOutbox delivers notifications, such as a mail gateway or a chat bot.
+ * 
+ * Implementations are only called by one thread at a time.
+ */
+public interface NotificationSink extends Closeable {
+    
+    /**
+     * Delivers a batch of notifications, in the order their changes were made.
+     * If an exception is thrown, the whole batch is delivered again later, so a sink that
+     * got part of it out may send some notifications twice.
+     */
+    void deliver(List<Notification> batch) throws IOException;
+}
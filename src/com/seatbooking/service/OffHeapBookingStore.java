@@ -0,0 +1,341 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import com.seatbooking.model.Seat;
+import com.seatbooking.model.User;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Append-only store for large booking histories, kept outside the Java heap.
+ * 
+ * Bookings are 32-byte records in direct ByteBuffer chunks:
+ * <pre>
+ *   0  long   booking number (the digits of "BK...")
+ *   8  long   booking time (nanoseconds since 1970-01-01T00:00, local time)
+ *  16  int    booking date (epoch day)
+ *  20  short  seat ordinal
+ *  22  short  user ordinal (users sorted by ID)
+ *  24  8 bytes padding
+ * </pre>
+ * Lookups by booking ID go through an open-addressing hash table, also off-heap,
+ * whose slots hold record indexes. Records are read through a reusable BookingView,
+ * so scanning tens of millions of bookings allocates nothing per booking.
+ * 
+ * Appends are serialized; reads may run concurrently with them.
+ */
+public class OffHeapBookingStore {
+    
+    static final int RECORD_SIZE = 32;
+    private static final int DEFAULT_CHUNK_RECORDS = 1 << 20; // 32 MB chunks
+    private static final int INITIAL_INDEX_SLOTS = 1 << 10;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    
+    private final List<Seat> seats;
+    private final Map<String, Integer> seatOrdinals;
+    private final List<User> users;
+    private final Map<String, Integer> userOrdinals;
+    private final int chunkRecords;
+    
+    // Chunks are published before size, so readers below size always find their chunk
+    private volatile ByteBuffer[] chunks;
+    private volatile int size;
+    
+    // Guarded by this: slots hold record index + 1, 0 marks an empty slot
+    private ByteBuffer index;
+    private int indexSlots;
+    
+    /**
+     * Creates a store for bookings of the given seats and users.
+     */
+    public OffHeapBookingStore(List<Seat> seats, Collection<User> users) {
+        this(seats, users, DEFAULT_CHUNK_RECORDS);
+    }
+    
+    /**
+     * Creates a store that allocates memory in chunks of the given number of records.
+     */
+    public OffHeapBookingStore(List<Seat> seats, Collection<User> users, int chunkRecords) {
+        if (chunkRecords < 1 || (long) chunkRecords * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkRecords);
+        }
+        this.seats = List.copyOf(seats);
+        this.seatOrdinals = new HashMap<>();
+        for (int i = 0; i < this.seats.size(); i++) {
+            seatOrdinals.put(this.seats.get(i).getSeatId(), i);
+        }
+        this.users = users.stream().sorted(Comparator.comparing(User::getUserId)).toList();
+        this.userOrdinals = new HashMap<>();
+        for (int i = 0; i < this.users.size(); i++) {
+            userOrdinals.put(this.users.get(i).getUserId(), i);
+        }
+        if (this.seats.size() > 0xFFFF || this.users.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Records hold at most 65535 seats and users");
+        }
+        
+        this.chunkRecords = chunkRecords;
+        this.chunks = new ByteBuffer[0];
+        this.indexSlots = INITIAL_INDEX_SLOTS;
+        this.index = ByteBuffer.allocateDirect(indexSlots * Integer.BYTES);
+    }
+    
+    /**
+     * Checks whether a booking can be stored: its ID must be "BK" followed by a number,
+     * and its seat and user must belong to this store.
+     */
+    public boolean accepts(Booking booking) {
+        return bookingNumber(booking.getBookingId()) >= 0
+               && seatOrdinal(booking.getSeat()) >= 0
+               && userOrdinal(booking.getUser()) >= 0;
+    }
+    
+    /**
+     * Appends a booking and returns its record index.
+     */
+    public synchronized int append(Booking booking) {
+        if (!accepts(booking)) {
+            throw new IllegalArgumentException("Cannot store booking " + booking.getBookingId());
+        }
+        long number = bookingNumber(booking.getBookingId());
+        if (find(number) >= 0) {
+            throw new IllegalArgumentException("Booking already stored: " + booking.getBookingId());
+        }
+        
+        int record = size;
+        if (record == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Booking store is full");
+        }
+        ByteBuffer[] current = chunks;
+        int chunk = record / chunkRecords;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = ByteBuffer.allocateDirect(chunkRecords * RECORD_SIZE);
+            chunks = current;
+        }
+        
+        LocalDateTime bookingTime = booking.getBookingTime();
+        int offset = (record % chunkRecords) * RECORD_SIZE;
+        current[chunk].putLong(offset, number)
+                      .putLong(offset + 8, bookingTime.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND 
+                                           + bookingTime.getNano())
+                      .putInt(offset + 16, Math.toIntExact(booking.getEpochDay()))
+                      .putShort(offset + 20, (short) seatOrdinal(booking.getSeat()))
+                      .putShort(offset + 22, (short) userOrdinal(booking.getUser()));
+        
+        if ((long) (record + 1) * 4 > (long) indexSlots * 3) {
+            growIndex();
+        }
+        insertIndex(number, record);
+        size = record + 1;
+        return record;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the record index of a booking, or -1 if it is not stored.
+     */
+    public synchronized int find(String bookingId) {
+        long number = bookingNumber(bookingId);
+        return number < 0 ? -1 : find(number);
+    }
+    
+    /**
+     * Returns a view positioned on no record; move it with moveTo.
+     * Views are cheap but not thread-safe; use one per thread.
+     */
+    public BookingView newView() {
+        return new BookingView();
+    }
+    
+    /**
+     * Visits every stored booking through a single reused view, oldest record first.
+     * The view is only valid during the callback.
+     */
+    public void forEach(Consumer<BookingView> action) {
+        BookingView view = new BookingView();
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            action.accept(view.moveTo(i));
+        }
+    }
+    
+    /**
+     * Returns the number of stored bookings for a date, scanning the date column only.
+     */
+    public int countOnDate(LocalDate date) {
+        int epochDay = Math.toIntExact(date.toEpochDay());
+        ByteBuffer[] current = chunks;
+        int count = 0;
+        int total = size;
+        for (int i = 0; i < total; i++) {
+            if (current[i / chunkRecords].getInt((i % chunkRecords) * RECORD_SIZE + 16) == epochDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the off-heap bytes held by records and the ID index.
+     */
+    public synchronized long getOffHeapBytes() {
+        return (long) chunks.length * chunkRecords * RECORD_SIZE + (long) indexSlots * Integer.BYTES;
+    }
+    
+    private int find(long number) {
+        int mask = indexSlots - 1;
+        for (int slot = hash(number) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.getInt(slot * Integer.BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            int record = entry - 1;
+            if (recordNumber(record) == number) {
+                return record;
+            }
+        }
+    }
+    
+    private void insertIndex(long number, int record) {
+        int mask = indexSlots - 1;
+        int slot = hash(number) & mask;
+        while (index.getInt(slot * Integer.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt(slot * Integer.BYTES, record + 1);
+    }
+    
+    private void growIndex() {
+        if (indexSlots >= 1 << 29) {
+            throw new IllegalStateException("Booking index is full");
+        }
+        indexSlots <<= 1;
+        index = ByteBuffer.allocateDirect(indexSlots * Integer.BYTES);
+        for (int record = 0; record < size; record++) {
+            insertIndex(recordNumber(record), record);
+        }
+    }
+    
+    private long recordNumber(int record) {
+        return chunks[record / chunkRecords].getLong((record % chunkRecords) * RECORD_SIZE);
+    }
+    
+    private static int hash(long number) {
+        long mixed = number * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+    
+    /**
+     * Returns a seat's ordinal in this store, or -1 if it has no such seat. The seat's own
+     * ordinal is used when it points back at the seat, which saves a lookup by ID.
+     */
+    private int seatOrdinal(Seat seat) {
+        int ordinal = seat.getOrdinal();
+        if (ordinal >= 0 && ordinal < seats.size() && seats.get(ordinal).equals(seat)) {
+            return ordinal;
+        }
+        return seatOrdinals.getOrDefault(seat.getSeatId(), -1);
+    }
+    
+    /**
+     * Returns a user's ordinal in this store, or -1 if it has no such user; see seatOrdinal.
+     */
+    private int userOrdinal(User user) {
+        int ordinal = user.getOrdinal();
+        if (ordinal >= 0 && ordinal < users.size() && users.get(ordinal).equals(user)) {
+            return ordinal;
+        }
+        return userOrdinals.getOrDefault(user.getUserId(), -1);
+    }
+    
+    private static long bookingNumber(String bookingId) {
+        if (bookingId.startsWith("BK")) {
+            try {
+                return Long.parseLong(bookingId.substring(2));
+            } catch (NumberFormatException e) {
+                // Not a generated ID
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Flyweight view of one stored booking. Accessors read the record directly;
+     * seats and users are shared objects, so only getBookingId, getDate,
+     * getBookingTime and toBooking allocate.
+     */
+    public final class BookingView {
+        private ByteBuffer chunk;
+        private int offset;
+        private int record = -1;
+        
+        private BookingView() {
+        }
+        
+        /**
+         * Positions the view on a record and returns it.
+         */
+        public BookingView moveTo(int record) {
+            if (record < 0 || record >= size) {
+                throw new IndexOutOfBoundsException("No booking record " + record);
+            }
+            this.chunk = chunks[record / chunkRecords];
+            this.offset = (record % chunkRecords) * RECORD_SIZE;
+            this.record = record;
+            return this;
+        }
+        
+        public int getRecord() {
+            return record;
+        }
+        
+        public long getBookingNumber() {
+            return chunk.getLong(offset);
+        }
+        
+        public String getBookingId() {
+            return "BK" + getBookingNumber();
+        }
+        
+        public long getEpochDay() {
+            return chunk.getInt(offset + 16);
+        }
+        
+        public LocalDate getDate() {
+            return LocalDate.ofEpochDay(getEpochDay());
+        }
+        
+        public LocalDateTime getBookingTime() {
+            long nanos = chunk.getLong(offset + 8);
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+                                               (int) Math.floorMod(nanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+        }
+        
+        public Seat getSeat() {
+            return seats.get(Short.toUnsignedInt(chunk.getShort(offset + 20)));
+        }
+        
+        public User getUser() {
+            return users.get(Short.toUnsignedInt(chunk.getShort(offset + 22)));
+        }
+        
+        /**
+         * Copies the record into an ordinary Booking.
+         */
+        public Booking toBooking() {
+            return new Booking(getBookingId(), getUser(), getSeat(), getDate(), getBookingTime());
+        }
+        
+        @Override
+        public String toString() {
+            return record < 0 ? "BookingView{unpositioned}" : "BookingView{" + getBookingId() + "}";
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.seatbooking.service;
+
+/**
+ * Why a booking operation was rejected.
+ * Carried by BookingException so callers and metrics can tell rejections apart
+ * without parsing messages.
+ */
+public enum RejectionReason {
+    USER_NOT_FOUND,
+    SEAT_NOT_FOUND,
+    BOOKING_NOT_FOUND,
+    DUPLICATE_BOOKING,
+    WEEKEND,
+    OFFICE_CLOSED,
+    PAST_DATE,
+    USER_ALREADY_BOOKED,
+    SEAT_TAKEN,
+    DATE_MISMATCH,
+    WRONG_BATCH,
+    BEYOND_ADVANCE_LIMIT,
+    FLOATER_BEFORE_RELEASE,
+    FLOATER_NOT_TOMORROW,
+    CHECK_IN_WRONG_DAY,
+    RATE_LIMITED,
+    OVERLOADED,
+    IDEMPOTENCY_KEY_REUSED
+}
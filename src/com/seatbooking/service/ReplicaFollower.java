@@ -0,0 +1,158 @@
+package com.seatbooking.service;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Read replica fed by a ReplicationLeader.
+ * 
+ * The follower applies the leader's snapshot and event stream, in order, to its own
+ * BookingService, which then serves availability queries with bounded staleness.
+ * The replica service must start empty and must not receive writes from anywhere else.
+ */
+public class ReplicaFollower implements Closeable {
+    
+    private final BookingService replica;
+    private final Socket socket;
+    private final Object progress = new Object();
+    
+    private volatile long appliedSequence = -1; // -1 until the snapshot is applied
+    private volatile long leaderSequence;
+    private volatile long lastDelayMillis;
+    private volatile String failure;
+    
+    /**
+     * Connects to a leader on the loopback interface and starts applying its log to the replica.
+     */
+    public ReplicaFollower(BookingService replica, int leaderPort) throws IOException {
+        this.replica = replica;
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), leaderPort);
+        
+        Thread receiver = new Thread(this::receive, "replica-follower-" + socket.getLocalPort());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+    
+    /**
+     * Returns the replica service for reads.
+     */
+    public BookingService getService() {
+        return replica;
+    }
+    
+    /**
+     * Returns the sequence number of the last applied event, or -1 before catch-up.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+    
+    /**
+     * Returns the latest sequence number the leader has reported.
+     */
+    public long getLeaderSequence() {
+        return leaderSequence;
+    }
+    
+    /**
+     * Returns how many events this replica is behind the leader, as last reported.
+     */
+    public long getLagEvents() {
+        return appliedSequence < 0 ? leaderSequence : Math.max(0, leaderSequence - appliedSequence);
+    }
+    
+    /**
+     * Returns the time between the leader committing the last applied event and this
+     * replica applying it.
+     */
+    public long getLagMillis() {
+        return lastDelayMillis;
+    }
+    
+    /**
+     * Returns why replication stopped, or null while it is running.
+     */
+    public String getFailure() {
+        return failure;
+    }
+    
+    /**
+     * Waits until the replica has applied the given sequence number.
+     * Returns false on timeout or if replication has stopped.
+     */
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress) {
+            while (appliedSequence < sequence && failure == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progress.wait(remaining);
+            }
+            return appliedSequence >= sequence;
+        }
+    }
+    
+    private void receive() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+            while (true) {
+                byte type = in.readByte();
+                long sequence = in.readLong();
+                long leaderTimeMillis = in.readLong();
+                
+                switch (type) {
+                    case ReplicationCodec.SNAPSHOT -> {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            ReplicationCodec.readAndRestoreBooking(in, replica);
+                        }
+                    }
+                    case ReplicationCodec.BOOKED -> ReplicationCodec.readAndRestoreBooking(in, replica);
+                    case ReplicationCodec.CANCELLED -> replica.cancelBooking(in.readUTF());
+                    case ReplicationCodec.MOVED -> ReplicationCodec.readAndRestoreMoves(in, replica);
+                    case ReplicationCodec.HEARTBEAT -> {
+                        leaderSequence = Math.max(leaderSequence, sequence);
+                        continue;
+                    }
+                    default -> throw new IOException("Unknown frame type: " + type);
+                }
+                
+                lastDelayMillis = Math.max(0, System.currentTimeMillis() - leaderTimeMillis);
+                leaderSequence = Math.max(leaderSequence, sequence);
+                synchronized (progress) {
+                    appliedSequence = sequence;
+                    progress.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            stop("Connection to leader lost: " + e.getMessage());
+        } catch (BookingException e) {
+            stop("Replica diverged from leader: " + e.getMessage());
+        }
+    }
+    
+    private void stop(String reason) {
+        synchronized (progress) {
+            if (failure == null) {
+                failure = reason;
+            }
+            progress.notifyAll();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+    
+    @Override
+    public void close() {
+        stop("Closed");
+    }
+}
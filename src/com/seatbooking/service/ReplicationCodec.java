@@ -0,0 +1,85 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format shared by ReplicationLeader and ReplicaFollower.
+ * 
+ * Every frame starts with a type byte, the leader's sequence number and the leader's
+ * wall-clock time in milliseconds. The body depends on the type:
+ * SNAPSHOT carries a count followed by that many bookings, BOOKED carries one booking,
+ * CANCELLED carries a booking ID, MOVED carries a count followed by that many booking IDs
+ * each with its new seat ID, and HEARTBEAT has no body. The moves of one MOVED frame, such
+ * as the two halves of a swap, are applied together.
+ */
+final class ReplicationCodec {
+    
+    static final byte SNAPSHOT = 'S';
+    static final byte BOOKED = 'B';
+    static final byte CANCELLED = 'C';
+    static final byte MOVED = 'M';
+    static final byte HEARTBEAT = 'H';
+    
+    private ReplicationCodec() {
+    }
+    
+    static void writeHeader(DataOutputStream out, byte type, long sequence, long leaderTimeMillis) 
+            throws IOException {
+        out.writeByte(type);
+        out.writeLong(sequence);
+        out.writeLong(leaderTimeMillis);
+    }
+    
+    static void writeBooking(DataOutputStream out, Booking booking) throws IOException {
+        out.writeUTF(booking.getBookingId());
+        out.writeUTF(booking.getUser().getUserId());
+        out.writeUTF(booking.getSeat().getSeatId());
+        out.writeLong(booking.getEpochDay());
+        out.writeLong(booking.getBookingTime().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(booking.getBookingTime().getNano());
+    }
+    
+    /**
+     * Reads a booking written by writeBooking and restores it into the service.
+     */
+    static void readAndRestoreBooking(DataInputStream in, BookingService service) 
+            throws IOException, BookingException {
+        String bookingId = in.readUTF();
+        String userId = in.readUTF();
+        String seatId = in.readUTF();
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+        LocalDateTime bookingTime = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        service.restoreBooking(bookingId, userId, seatId, date, bookingTime);
+    }
+    
+    static void writeMoves(DataOutputStream out, List<Booking> moved) throws IOException {
+        out.writeInt(moved.size());
+        for (Booking booking : moved) {
+            out.writeUTF(booking.getBookingId());
+            out.writeUTF(booking.getSeat().getSeatId());
+        }
+    }
+    
+    /**
+     * Reads moves written by writeMoves and applies them to the service in one step.
+     */
+    static void readAndRestoreMoves(DataInputStream in, BookingService service)
+            throws IOException, BookingException {
+        int count = in.readInt();
+        List<String> bookingIds = new ArrayList<>(count);
+        List<String> seatIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bookingIds.add(in.readUTF());
+            seatIds.add(in.readUTF());
+        }
+        service.restoreMoves(bookingIds, seatIds);
+    }
+}
@@ -0,0 +1,246 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Booking;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the booking, move and cancellation log of a BookingService to read replicas
+ * over a local socket.
+ * 
+ * A newly connected follower first receives a snapshot of all current bookings,
+ * tagged with the sequence number it reflects, and then every later event in
+ * commit order. Events are handed to per-follower queues under the service's
+ * write lock, and written to the socket by one sender thread per follower, so a
+ * slow follower never delays bookings. A follower that falls so far behind that its
+ * queue fills up is disconnected rather than buffered without limit; it resyncs by
+ * connecting again with a fresh replica. Idle connections get periodic heartbeats
+ * carrying the current sequence, which followers use to report lag.
+ */
+public class ReplicationLeader implements BookingListener, Closeable {
+    
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 65_536;
+    
+    private static final long HEARTBEAT_MILLIS = 100;
+    
+    private final BookingService service;
+    private final ServerSocket serverSocket;
+    private final int maxQueuedEvents;
+    
+    // Guarded by this: mirror of live bookings, the event sequence and connected followers
+    private final Map<String, Booking> liveBookings;
+    private final List<FollowerSession> sessions;
+    private long sequence;
+    
+    private volatile boolean running;
+    
+    /**
+     * Starts a leader for the service, listening on the loopback interface.
+     * Use port 0 to pick a free port.
+     */
+    public ReplicationLeader(BookingService service, int port) throws IOException {
+        this(service, port, DEFAULT_MAX_QUEUED_EVENTS);
+    }
+    
+    /**
+     * Starts a leader that disconnects a follower once maxQueuedEvents events are waiting
+     * to be sent to it.
+     */
+    public ReplicationLeader(BookingService service, int port, int maxQueuedEvents) throws IOException {
+        if (maxQueuedEvents < 1) {
+            throw new IllegalArgumentException("Need room for at least one queued event");
+        }
+        this.service = service;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.liveBookings = new HashMap<>();
+        this.sessions = new ArrayList<>();
+        this.running = true;
+        
+        for (Booking booking : service.subscribe(this)) {
+            liveBookings.put(booking.getBookingId(), booking);
+        }
+        
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Returns the sequence number of the latest committed event.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+    
+    public synchronized int getFollowerCount() {
+        return sessions.size();
+    }
+    
+    @Override
+    public synchronized void onBooked(Booking booking) {
+        sequence++;
+        liveBookings.put(booking.getBookingId(), booking);
+        publish(new Event(ReplicationCodec.BOOKED, sequence, System.currentTimeMillis(), List.of(booking)));
+    }
+    
+    @Override
+    public synchronized void onCancelled(Booking booking) {
+        sequence++;
+        liveBookings.remove(booking.getBookingId());
+        publish(new Event(ReplicationCodec.CANCELLED, sequence, System.currentTimeMillis(), List.of(booking)));
+    }
+    
+    @Override
+    public synchronized void onMoved(List<Booking> before, List<Booking> after) {
+        // One event, so followers never show a seat of a swap as free or held twice
+        sequence++;
+        for (Booking booking : after) {
+            liveBookings.put(booking.getBookingId(), booking);
+        }
+        publish(new Event(ReplicationCodec.MOVED, sequence, System.currentTimeMillis(), after));
+    }
+    
+    private void publish(Event event) {
+        Iterator<FollowerSession> open = sessions.iterator();
+        while (open.hasNext()) {
+            FollowerSession session = open.next();
+            if (!session.queue.offer(event)) {
+                // Too far behind to catch up from the stream; it must start over from a snapshot
+                open.remove();
+                session.disconnect();
+            }
+        }
+    }
+    
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                
+                FollowerSession session;
+                synchronized (this) {
+                    // Snapshot and registration happen together, so no event is missed or repeated
+                    session = new FollowerSession(socket, new ArrayList<>(liveBookings.values()), sequence);
+                    sessions.add(session);
+                }
+                
+                Thread sender = new Thread(session, "replication-sender-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private synchronized void removeSession(FollowerSession session) {
+        sessions.remove(session);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        running = false;
+        service.unsubscribe(this);
+        serverSocket.close();
+        
+        List<FollowerSession> open;
+        synchronized (this) {
+            open = new ArrayList<>(sessions);
+            sessions.clear();
+        }
+        for (FollowerSession session : open) {
+            session.socket.close();
+        }
+    }
+    
+    /**
+     * One event of the replication log: the booking booked or cancelled, or the bookings moved.
+     */
+    private record Event(byte type, long sequence, long leaderTimeMillis, List<Booking> bookings) {
+    }
+    
+    /**
+     * Sends the snapshot and then the event stream to one follower.
+     */
+    private class FollowerSession implements Runnable {
+        private final Socket socket;
+        private final List<Booking> snapshot;
+        private final long snapshotSequence;
+        private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>(maxQueuedEvents);
+        
+        FollowerSession(Socket socket, List<Booking> snapshot, long snapshotSequence) {
+            this.socket = socket;
+            this.snapshot = snapshot;
+            this.snapshotSequence = snapshotSequence;
+        }
+        
+        @Override
+        public void run() {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+                ReplicationCodec.writeHeader(out, ReplicationCodec.SNAPSHOT, snapshotSequence, 
+                                             System.currentTimeMillis());
+                out.writeInt(snapshot.size());
+                for (Booking booking : snapshot) {
+                    ReplicationCodec.writeBooking(out, booking);
+                }
+                out.flush();
+                
+                while (running) {
+                    Event event = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        ReplicationCodec.writeHeader(out, ReplicationCodec.HEARTBEAT, getSequence(), 
+                                                     System.currentTimeMillis());
+                    } else {
+                        // Write everything that is queued, then flush once
+                        do {
+                            writeEvent(out, event);
+                        } while ((event = queue.poll()) != null);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Follower went away; it can reconnect and catch up from a fresh snapshot
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                removeSession(this);
+                disconnect();
+            }
+        }
+        
+        void disconnect() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closing
+            }
+        }
+        
+        private void writeEvent(DataOutputStream out, Event event) throws IOException {
+            ReplicationCodec.writeHeader(out, event.type(), event.sequence(), event.leaderTimeMillis());
+            switch (event.type()) {
+                case ReplicationCodec.BOOKED -> ReplicationCodec.writeBooking(out, event.bookings().get(0));
+                case ReplicationCodec.MOVED -> ReplicationCodec.writeMoves(out, event.bookings());
+                default -> out.writeUTF(event.bookings().get(0).getBookingId());
+            }
+        }
+    }
+}
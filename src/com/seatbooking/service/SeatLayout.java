@@ -0,0 +1,97 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.Seat;
+import com.seatbooking.model.SeatType;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search indexes over a fixed list of seats, built once per service:
+ * a bitset of seat ordinals per seat type and a row/column grid of ordinals.
+ */
+final class SeatLayout {
+    private static final long[] NO_SEATS = new long[0];
+    
+    private final Map<SeatType, long[]> seatsByType;
+    private final int minRow;
+    private final int minColumn;
+    private final int rows;
+    private final int columns;
+    private final int[] grid; // seat ordinal by position, -1 where there is no seat
+    
+    SeatLayout(List<Seat> seats) {
+        this.seatsByType = new EnumMap<>(SeatType.class);
+        int words = (seats.size() + 63) >>> 6;
+        for (int i = 0; i < seats.size(); i++) {
+            long[] mask = seatsByType.computeIfAbsent(seats.get(i).getType(), type -> new long[words]);
+            mask[i >>> 6] |= 1L << i;
+        }
+        
+        int lowRow = Integer.MAX_VALUE, highRow = Integer.MIN_VALUE;
+        int lowColumn = Integer.MAX_VALUE, highColumn = Integer.MIN_VALUE;
+        for (Seat seat : seats) {
+            lowRow = Math.min(lowRow, seat.getRow());
+            highRow = Math.max(highRow, seat.getRow());
+            lowColumn = Math.min(lowColumn, seat.getColumn());
+            highColumn = Math.max(highColumn, seat.getColumn());
+        }
+        this.minRow = seats.isEmpty() ? 0 : lowRow;
+        this.minColumn = seats.isEmpty() ? 0 : lowColumn;
+        this.rows = seats.isEmpty() ? 0 : highRow - lowRow + 1;
+        this.columns = seats.isEmpty() ? 0 : highColumn - lowColumn + 1;
+        this.grid = new int[Math.multiplyExact(rows, columns)];
+        Arrays.fill(grid, -1);
+        for (int i = seats.size() - 1; i >= 0; i--) {
+            // Iterating backwards keeps the first seat listed at a shared position
+            grid[(seats.get(i).getRow() - minRow) * columns + seats.get(i).getColumn() - minColumn] = i;
+        }
+    }
+    
+    /**
+     * Returns the ordinals of the seats of a type as a bitset. Must not be modified.
+     */
+    long[] seatsOfType(SeatType type) {
+        return seatsByType.getOrDefault(type, NO_SEATS);
+    }
+    
+    /**
+     * Returns the ordinal of the seat closest to a position that the snapshot has free,
+     * or -1 if there is none. Distance is rows plus columns apart; ties go to the
+     * lower row, then the lower column. Only the positions up to the nearest free
+     * seat are visited, in rings of growing distance.
+     */
+    int nearestFree(int row, int column, AvailabilitySnapshot snapshot) {
+        if (grid.length == 0) {
+            return -1;
+        }
+        int r = row - minRow;
+        int c = column - minColumn;
+        int maxDistance = Math.max(Math.abs(r), Math.abs(r - rows + 1)) 
+                        + Math.max(Math.abs(c), Math.abs(c - columns + 1));
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            int fromRow = Math.max(r - distance, 0);
+            int toRow = Math.min(r + distance, rows - 1);
+            for (int seatRow = fromRow; seatRow <= toRow; seatRow++) {
+                int offset = distance - Math.abs(seatRow - r);
+                int ordinal = freeAt(seatRow, c - offset, snapshot);
+                if (ordinal < 0 && offset > 0) {
+                    ordinal = freeAt(seatRow, c + offset, snapshot);
+                }
+                if (ordinal >= 0) {
+                    return ordinal;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private int freeAt(int row, int column, AvailabilitySnapshot snapshot) {
+        if (column < 0 || column >= columns) {
+            return -1;
+        }
+        int ordinal = grid[row * columns + column];
+        return ordinal >= 0 && !snapshot.isSeatBooked(ordinal) ? ordinal : -1;
+    }
+}
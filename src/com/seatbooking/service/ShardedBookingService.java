@@ -0,0 +1,243 @@
+package com.seatbooking.service;
+
+import com.seatbooking.model.*;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Partitions booking state across several BookingService shards by floor
+ * (contiguous bands of seat rows) and routes each operation to the owning shard.
+ * 
+ * Seat-addressed operations go straight to the shard that owns the seat.
+ * Booking IDs encode their shard (ID number modulo shard count), so cancellations
+ * and check-ins are routed without a lookup table. User-level queries are answered
+ * by scatter-gather over all shards.
+ * 
+ * The one-booking-per-user-per-day rule spans shards: bookings for the same user are
+ * serialized on a striped lock, and the other shards are checked before the owning
+ * shard books. Cancellations only ever free seats, so they need no coordination.
+ */
+public class ShardedBookingService {
+    
+    private static final int USER_LOCK_STRIPES = 64;
+    
+    private final List<BookingService> shards;
+    private final Map<String, BookingService> shardBySeat;
+    private final List<Seat> allSeats;
+    private final Map<String, User> users;
+    private final Object[] userLocks;
+    
+    public ShardedBookingService(int shardCount) {
+        this(shardCount, Clock.systemDefaultZone());
+    }
+    
+    public ShardedBookingService(int shardCount, Clock clock) {
+        this(shardCount, clock, BookingService.initializeSeats(), BookingService.initializeUsers().values());
+    }
+    
+    /**
+     * Creates a sharded service over the given seats, splitting the rows into
+     * shardCount floors of (nearly) equal size.
+     */
+    public ShardedBookingService(int shardCount, Clock clock, List<Seat> seats, Collection<User> users) {
+        this(shardCount, clock, seats, users, BookingPolicy.defaultPolicy());
+    }
+    
+    /**
+     * Creates a sharded service whose shards all enforce the given booking policy.
+     */
+    public ShardedBookingService(int shardCount, Clock clock, List<Seat> seats, Collection<User> users,
+                                 BookingPolicy policy) {
+        SortedSet<Integer> rows = new TreeSet<>();
+        seats.forEach(seat -> rows.add(seat.getRow()));
+        if (shardCount < 1 || shardCount > rows.size()) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + rows.size());
+        }
+        
+        // Assign each row to a floor; floors take contiguous row bands
+        Map<Integer, Integer> floorByRow = new HashMap<>();
+        int rowIndex = 0;
+        for (int row : rows) {
+            floorByRow.put(row, rowIndex++ * shardCount / rows.size());
+        }
+        
+        List<List<Seat>> seatsByFloor = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            seatsByFloor.add(new ArrayList<>());
+        }
+        seats.forEach(seat -> seatsByFloor.get(floorByRow.get(seat.getRow())).add(seat));
+        
+        List<BookingService> shardList = new ArrayList<>();
+        Map<String, BookingService> seatIndex = new HashMap<>();
+        for (int i = 0; i < shardCount; i++) {
+            BookingService shard = new BookingService(clock, seatsByFloor.get(i), users, policy, shardCount, i);
+            shardList.add(shard);
+            seatsByFloor.get(i).forEach(seat -> seatIndex.put(seat.getSeatId(), shard));
+        }
+        
+        this.shards = List.copyOf(shardList);
+        this.shardBySeat = Map.copyOf(seatIndex);
+        this.allSeats = List.copyOf(seats);
+        this.users = shards.get(0).getAllUsers();
+        this.userLocks = new Object[USER_LOCK_STRIPES];
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new Object();
+        }
+    }
+    
+    /**
+     * Books a seat on the shard that owns it, enforcing one booking per user per day
+     * across all shards.
+     */
+    public String bookSeat(String userId, String seatId, LocalDate date) throws BookingException {
+        BookingResult result = tryBookSeat(userId, seatId, date);
+        if (!result.isBooked()) {
+            throw new BookingException(result.getRejection(), 
+                                       shards.get(0).describeRejection(result.getRejection(), userId, seatId, date));
+        }
+        return result.getBookingId();
+    }
+    
+    /**
+     * Result-based variant of bookSeat; see BookingService#tryBookSeat.
+     */
+    public BookingResult tryBookSeat(String userId, String seatId, LocalDate date) {
+        BookingService owner = shardBySeat.get(seatId);
+        if (owner == null) {
+            return BookingResult.rejected(RejectionReason.SEAT_NOT_FOUND);
+        }
+        
+        synchronized (userLocks[Math.floorMod(userId.hashCode(), userLocks.length)]) {
+            for (BookingService shard : shards) {
+                if (shard != owner && shard.hasBookingFor(userId, date)) {
+                    return BookingResult.rejected(RejectionReason.USER_ALREADY_BOOKED);
+                }
+            }
+            return owner.tryBookSeat(userId, seatId, date);
+        }
+    }
+    
+    /**
+     * Cancels a booking on the shard encoded in its ID.
+     */
+    public boolean cancelBooking(String bookingId) {
+        BookingService shard = shardForBooking(bookingId);
+        return shard != null && shard.cancelBooking(bookingId);
+    }
+    
+    /**
+     * Checks a user in on the shard encoded in the booking ID.
+     */
+    public void checkIn(String bookingId) throws BookingException {
+        BookingService shard = shardForBooking(bookingId);
+        if (shard == null) {
+            throw new BookingException(RejectionReason.BOOKING_NOT_FOUND,
+                                       "Booking not found: " + bookingId);
+        }
+        shard.checkIn(bookingId);
+    }
+    
+    /**
+     * Reclaims no-shows on every shard.
+     */
+    public List<String> reclaimNoShows() {
+        List<String> reclaimed = new ArrayList<>();
+        for (BookingService shard : shards) {
+            reclaimed.addAll(shard.reclaimNoShows());
+        }
+        return reclaimed;
+    }
+    
+    /**
+     * Installs the office's holiday calendar on every shard, cancelling bookings on closed days.
+     */
+    public List<Booking> setHolidayCalendar(HolidayCalendar calendar) {
+        List<Booking> cancelled = new ArrayList<>();
+        for (BookingService shard : shards) {
+            cancelled.addAll(shard.setHolidayCalendar(calendar));
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Closes the office on a date on every shard, cancelling its bookings.
+     */
+    public List<Booking> addClosure(LocalDate date, String name) {
+        List<Booking> cancelled = new ArrayList<>();
+        for (BookingService shard : shards) {
+            cancelled.addAll(shard.addClosure(date, name));
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Returns all bookings for a user, gathered from every shard and sorted by date.
+     */
+    public List<Booking> getUserBookings(String userId) {
+        List<Booking> bookings = new ArrayList<>();
+        for (BookingService shard : shards) {
+            bookings.addAll(shard.getUserBookings(userId));
+        }
+        bookings.sort(Comparator.comparingLong(Booking::getEpochDay));
+        return bookings;
+    }
+    
+    /**
+     * Returns available seats for a date across all shards, in floor order.
+     */
+    public List<Seat> getAvailableSeats(LocalDate date) {
+        List<Seat> available = new ArrayList<>();
+        for (BookingService shard : shards) {
+            available.addAll(shard.getAvailableSeats(date));
+        }
+        return available;
+    }
+    
+    /**
+     * Returns bookings for a date across all shards, in floor order.
+     */
+    public List<Booking> getBookingsForDate(LocalDate date) {
+        List<Booking> bookings = new ArrayList<>();
+        for (BookingService shard : shards) {
+            bookings.addAll(shard.getBookingsForDate(date));
+        }
+        return bookings;
+    }
+    
+    /**
+     * Checks if a seat is booked, asking only the shard that owns it.
+     */
+    public boolean isSeatBooked(String seatId, LocalDate date) {
+        BookingService shard = shardBySeat.get(seatId);
+        return shard != null && shard.isSeatBooked(seatId, date);
+    }
+    
+    public Batch getAllowedBatchForDate(LocalDate date) {
+        return shards.get(0).getAllowedBatchForDate(date);
+    }
+    
+    public List<Seat> getAllSeats() {
+        return allSeats;
+    }
+    
+    public Map<String, User> getAllUsers() {
+        return users;
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    private BookingService shardForBooking(String bookingId) {
+        if (bookingId == null || !bookingId.startsWith("BK")) {
+            return null;
+        }
+        try {
+            long number = Long.parseLong(bookingId.substring(2));
+            return shards.get((int) Math.floorMod(number, (long) shards.size()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
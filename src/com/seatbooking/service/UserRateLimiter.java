@@ -0,0 +1,96 @@
+package com.seatbooking.service;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free token buckets, one per known user, refilled continuously at a fixed rate.
+ * 
+ * A bucket is a single long: the time it was last refilled, in milliseconds since the
+ * limiter started, and its tokens in thousandths. Users sit in an open-addressing table
+ * built once, so 50k users take about 1.5 MB and no lookup allocates. Nothing needs to
+ * expire: a bucket left idle for longer than its refill time is full again, the same
+ * as a bucket never used.
+ */
+final class UserRateLimiter {
+    
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000;
+    
+    private final String[] userIds;
+    private final AtomicLongArray buckets;
+    private final int mask;
+    // Thousandths of a token per millisecond is the same number as tokens per second
+    private final double refillPerMilli;
+    private final long capacity;
+    private final long originMillis;
+    
+    /**
+     * Creates full buckets of burst tokens for the users, each refilling at tokensPerSecond.
+     */
+    UserRateLimiter(Collection<String> users, double tokensPerSecond, int burst, long nowMillis) {
+        if (tokensPerSecond <= 0 || burst < 1 || burst * MILLI_TOKENS > TOKEN_MASK) {
+            throw new IllegalArgumentException("Need a positive rate and a burst from 1 to "
+                                               + TOKEN_MASK / MILLI_TOKENS);
+        }
+        int slots = Integer.highestOneBit(Math.max(users.size(), 1) * 2) << 1;
+        this.userIds = new String[slots];
+        this.buckets = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+        for (String userId : users) {
+            int slot = slotOf(userId);
+            userIds[slot] = userId;
+        }
+        this.refillPerMilli = tokensPerSecond;
+        this.capacity = burst * MILLI_TOKENS;
+        // One before now, so a bucket in use never has state 0, which means full and unused
+        this.originMillis = nowMillis - 1;
+    }
+    
+    /**
+     * Takes a token from the user's bucket if it has one. Users the limiter does not know
+     * are let through; the service rejects them anyway.
+     */
+    boolean tryAcquire(String userId, long nowMillis) {
+        int slot = slotOf(userId);
+        if (userIds[slot] == null) {
+            return true;
+        }
+        long now = Math.max(nowMillis - originMillis, 1);
+        while (true) {
+            long state = buckets.get(slot);
+            long last = state >>> TOKEN_BITS;
+            long tokens = state == 0 ? capacity : state & TOKEN_MASK;
+            if (now > last) {
+                long refill = (long) ((now - last) * refillPerMilli);
+                if (tokens + refill >= capacity) {
+                    tokens = capacity;
+                    last = now;
+                } else if (refill > 0) {
+                    // Only move the clock by the time that was turned into tokens, so slow rates still refill
+                    tokens += refill;
+                    last += (long) (refill / refillPerMilli);
+                }
+            }
+            if (tokens < MILLI_TOKENS) {
+                return false;
+            }
+            if (buckets.compareAndSet(slot, state, (last << TOKEN_BITS) | (tokens - MILLI_TOKENS))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Returns the slot of a user, or the empty slot where it would go.
+     */
+    private int slotOf(String userId) {
+        int hash = userId.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (userIds[slot] != null && !userIds[slot].equals(userId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
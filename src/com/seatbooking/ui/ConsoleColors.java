@@ -1,5 +1,7 @@
 package com.seatbooking.ui;
 
+import java.io.PrintStream;
+
 /**
  * ANSI color codes and console utilities for terminal UI.
  */
@@ -46,42 +48,69 @@ public class ConsoleColors {
      * Clears the console screen.
      */
     public static void clearScreen() {
-        System.out.print("\033[2J\033[H");
+        clearScreen(System.out);
+    }
+    
+    /**
+     * Clears the screen of the terminal behind a stream.
+     */
+    public static void clearScreen(PrintStream out) {
+        out.print("\033[2J\033[H");
     }
     
     /**
      * Prints a colored message.
      */
     public static void printColored(String message, String color) {
-        System.out.print(color + message + RESET);
+        printColored(System.out, message, color);
+    }
+    
+    public static void printColored(PrintStream out, String message, String color) {
+        out.print(color + message + RESET);
     }
     
     /**
      * Prints a colored message with newline.
      */
     public static void printlnColored(String message, String color) {
-        System.out.println(color + message + RESET);
+        printlnColored(System.out, message, color);
+    }
+    
+    public static void printlnColored(PrintStream out, String message, String color) {
+        out.println(color + message + RESET);
     }
     
     /**
      * Prints an error message in red.
      */
     public static void printError(String message) {
-        printlnColored(CROSS_MARK + " ERROR: " + message, BOLD_RED);
+        printError(System.out, message);
+    }
+    
+    public static void printError(PrintStream out, String message) {
+        printlnColored(out, CROSS_MARK + " ERROR: " + message, BOLD_RED);
     }
     
     /**
      * Prints a success message in green.
      */
     public static void printSuccess(String message) {
-        printlnColored(CHECK_MARK + " SUCCESS: " + message, BOLD_GREEN);
+        printSuccess(System.out, message);
+    }
+    
+    public static void printSuccess(PrintStream out, String message) {
+        printlnColored(out, CHECK_MARK + " SUCCESS: " + message, BOLD_GREEN);
     }
     
     /**
      * Prints an info message in cyan.
      */
     public static void printInfo(String message) {
-        printlnColored(ARROW_RIGHT + " " + message, CYAN);
+        printInfo(System.out, message);
+    }
+    
+    public static void printInfo(PrintStream out, String message) {
+        printlnColored(out, ARROW_RIGHT + " " + message, CYAN);
     }
     
     /**
@@ -0,0 +1,166 @@
+package com.seatbooking.ui;
+
+import com.seatbooking.service.BookingService;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the terminal UI to remote users over plain TCP on the loopback interface,
+ * for example with {@code telnet localhost PORT} or {@code nc localhost PORT}.
+ * 
+ * Every connection is an independent TerminalUI session on its own thread, and all sessions
+ * share one BookingService. A session buffers its output and sends it when it waits for
+ * input, so a slow client only ever holds up its own thread, never the service or other users.
+ */
+public class TerminalServer implements Closeable {
+    
+    public static final int DEFAULT_MAX_SESSIONS = 512;
+    
+    private static final int OUTPUT_BUFFER_BYTES = 16 * 1024;
+    
+    private final BookingService bookingService;
+    private final ServerSocket serverSocket;
+    private final int maxSessions;
+    private final Set<Socket> sessions;
+    private final Thread acceptor;
+    
+    private volatile boolean running;
+    
+    public TerminalServer(BookingService bookingService, int port) throws IOException {
+        this(bookingService, port, DEFAULT_MAX_SESSIONS);
+    }
+    
+    /**
+     * Starts a server listening on the loopback interface; use port 0 to pick a free port.
+     * Connections beyond maxSessions are told to try again later and closed.
+     */
+    public TerminalServer(BookingService bookingService, int port, int maxSessions) throws IOException {
+        this.bookingService = bookingService;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.maxSessions = maxSessions;
+        this.sessions = ConcurrentHashMap.newKeySet();
+        this.running = true;
+        
+        this.acceptor = new Thread(this::acceptSessions, "terminal-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Returns the number of users currently connected.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Blocks until the server is closed.
+     */
+    public void awaitClose() throws InterruptedException {
+        acceptor.join();
+    }
+    
+    /**
+     * Stops accepting users and disconnects those still connected.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket socket : new ArrayList<>(sessions)) {
+            socket.close();
+        }
+    }
+    
+    private void acceptSessions() {
+        long sessionNumber = 0;
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                if (sessions.size() >= maxSessions) {
+                    socket.getOutputStream().write("Too many users connected, try again later\r\n"
+                                                   .getBytes(StandardCharsets.UTF_8));
+                    socket.close();
+                    continue;
+                }
+                sessions.add(socket);
+                
+                Thread session = new Thread(() -> runSession(socket), "terminal-session-" + ++sessionNumber);
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Terminal accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void runSession(Socket socket) {
+        try (socket; PrintStream out = new PrintStream(
+                new BufferedOutputStream(new CrlfOutputStream(socket.getOutputStream()), OUTPUT_BUFFER_BYTES),
+                false, StandardCharsets.UTF_8)) {
+            new TerminalUI(bookingService, socket.getInputStream(), out).start();
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // Only this user's session ends; the service and other sessions are unaffected
+        } finally {
+            sessions.remove(socket);
+        }
+    }
+    
+    /**
+     * Sends line breaks as CR LF, which network terminals expect.
+     */
+    private static final class CrlfOutputStream extends FilterOutputStream {
+        private int last;
+        
+        CrlfOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n' && last != '\r') {
+                out.write('\r');
+            }
+            out.write(b);
+            last = b;
+        }
+        
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            // Copy runs without line breaks in one call
+            int start = offset;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                if (bytes[i] == '\n' && (i > offset ? bytes[i - 1] : last) != '\r') {
+                    out.write(bytes, start, i - start);
+                    out.write('\r');
+                    start = i;
+                }
+            }
+            out.write(bytes, start, end - start);
+            if (length > 0) {
+                last = bytes[end - 1];
+            }
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.seatbooking.ui;
 
 import com.seatbooking.model.*;
+import com.seatbooking.service.AvailabilitySnapshot;
 import com.seatbooking.service.BookingException;
 import com.seatbooking.service.BookingService;
 
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 import static com.seatbooking.ui.ConsoleColors.*;
@@ -16,6 +21,10 @@ import static com.seatbooking.ui.ConsoleColors.*;
 /**
  * Terminal-based user interface for the seat booking system.
  * Provides a clean, interactive console experience with ANSI colors and ASCII art.
+ * 
+ * Each instance is one session with its own input and output, so several sessions
+ * can share a BookingService, for example behind a TerminalServer. Output is flushed
+ * whenever the session waits for input.
  */
 public class TerminalUI {
     
@@ -24,20 +33,30 @@ public class TerminalUI {
     
     private final BookingService bookingService;
     private final Scanner scanner;
+    private final PrintStream out;
     
     public TerminalUI(BookingService bookingService) {
+        this(bookingService, System.in, System.out);
+    }
+    
+    /**
+     * Creates a session reading UTF-8 text from in and writing to out.
+     */
+    public TerminalUI(BookingService bookingService, InputStream in, PrintStream out) {
         this.bookingService = bookingService;
-        this.scanner = new Scanner(System.in);
+        this.scanner = new Scanner(in, StandardCharsets.UTF_8);
+        this.out = out;
     }
     
     /**
-     * Starts the main UI loop.
+     * Starts the main UI loop; returns when the user exits or the input ends.
      */
     public void start() {
         printWelcomeMessage();
         
         while (true) {
             try {
+                reclaimNoShows();
                 printMainMenu();
                 int choice = getMenuChoice();
                 
@@ -46,17 +65,21 @@ public class TerminalUI {
                     case 2 -> bookSeat();
                     case 3 -> cancelBooking();
                     case 4 -> viewMyBookings();
-                    case 5 -> {
+                    case 5 -> checkIn();
+                    case 6 -> {
                         printGoodbyeMessage();
                         return;
                     }
                     default -> printError("Invalid choice. Please try again.");
                 }
                 
-                if (choice != 5) {
+                if (choice != 6) {
                     pressEnterToContinue();
                 }
                 
+            } catch (NoSuchElementException e) {
+                // Input closed, e.g. a remote user disconnected
+                return;
             } catch (Exception e) {
                 printError("An unexpected error occurred: " + e.getMessage());
                 pressEnterToContinue();
@@ -73,7 +96,7 @@ public class TerminalUI {
         printlnColored(centerText("🎯 SEAT BOOKING SYSTEM 🎯", BOX_WIDTH - 4), BOLD_CYAN);
         printlnColored(centerText("Welcome to the Interactive Seat Reservation System", BOX_WIDTH - 4), WHITE);
         printBox();
-        System.out.println();
+        out.println();
         
         printInfo("System Info:");
         printlnColored("  • Total Seats: 50 (40 Fixed + 10 Floater)", WHITE);
@@ -81,7 +104,8 @@ public class TerminalUI {
         printlnColored("  • Dynamic weekly rotation (Mon-Wed vs Thu-Fri)", WHITE);
         printlnColored("  • Fixed: Book up to 14 days ahead, any time", WHITE);
         printlnColored("  • Floater: Book only after 3 PM for tomorrow", WHITE);
-        System.out.println();
+        printlnColored("  • Check in on the day or the seat is released", WHITE);
+        out.println();
     }
     
     /**
@@ -92,15 +116,16 @@ public class TerminalUI {
         printlnColored(centerText("📋 MAIN MENU", BOX_WIDTH - 4), BOLD_YELLOW);
         printBox();
         
-        System.out.println();
+        out.println();
         printlnColored("  1. " + CALENDAR + "  View Available Seats (by date)", WHITE);
         printlnColored("  2. " + SEAT_ICON + "  Book Seat", WHITE);
         printlnColored("  3. " + CROSS_MARK + "  Cancel Booking", WHITE);
         printlnColored("  4. " + USER_ICON + "  View My Bookings", WHITE);
-        printlnColored("  5. " + "🚪" + "  Exit", WHITE);
-        System.out.println();
+        printlnColored("  5. " + CHECK_MARK + "  Check In", WHITE);
+        printlnColored("  6. " + "🚪" + "  Exit", WHITE);
+        out.println();
         
-        printColored("Enter your choice (1-5): ", BOLD_WHITE);
+        printColored("Enter your choice (1-6): ", BOLD_WHITE);
     }
     
     /**
@@ -108,8 +133,8 @@ public class TerminalUI {
      */
     private int getMenuChoice() {
         try {
-            int choice = Integer.parseInt(scanner.nextLine().trim());
-            if (choice < 1 || choice > 5) {
+            int choice = Integer.parseInt(readLine().trim());
+            if (choice < 1 || choice > 6) {
                 return -1; // Invalid choice
             }
             return choice;
@@ -131,16 +156,17 @@ public class TerminalUI {
         try {
             Batch allowedBatch = bookingService.getAllowedBatchForDate(date);
             printInfo("Allowed batch for " + date + ": " + allowedBatch.getDisplayName());
-            System.out.println();
+            out.println();
             
             displaySeatMatrix(date);
             
-            List<Seat> availableSeats = bookingService.getAvailableSeats(date);
-            List<Booking> bookings = bookingService.getBookingsForDate(date);
+            AvailabilitySnapshot snapshot = bookingService.getAvailabilitySnapshot(date);
+            List<Seat> availableSeats = snapshot.getAvailableSeats();
+            List<Booking> bookings = snapshot.getBookings();
             
-            System.out.println();
+            out.println();
             printlnColored("📊 SUMMARY FOR " + date.format(DATE_FORMATTER).toUpperCase(), BOLD_CYAN);
-            System.out.println(createLine('-', BOX_WIDTH));
+            out.println(createLine('-', BOX_WIDTH));
             
             printlnColored(String.format("Available Seats: %d/%d", 
                          availableSeats.size(), 50), GREEN);
@@ -148,10 +174,10 @@ public class TerminalUI {
                          bookings.size(), 50), YELLOW);
             
             if (!bookings.isEmpty()) {
-                System.out.println();
+                out.println();
                 printlnColored("🗂️  BOOKINGS:", BOLD_WHITE);
                 for (Booking booking : bookings) {
-                    System.out.printf("   %-8s | %-15s | %s%n", 
+                    out.printf("   %-8s | %-15s | %s%n", 
                                     booking.getSeat().getSeatId(),
                                     booking.getUser().getName(),
                                     booking.getUser().getSquad());
@@ -168,27 +194,27 @@ public class TerminalUI {
      */
     private void displaySeatMatrix(LocalDate date) {
         printlnColored("🎭 SEAT LAYOUT (F=Fixed, L=Floater, X=Booked)", BOLD_WHITE);
-        System.out.println();
+        out.println();
         
         // Column headers
-        System.out.print("     ");
+        out.print("     ");
         for (int col = 1; col <= 10; col++) {
-            System.out.printf("%3d", col);
+            out.printf("%3d", col);
         }
-        System.out.println();
+        out.println();
         
         // Top border
-        System.out.print("   ┌─");
+        out.print("   ┌─");
         for (int col = 1; col <= 10; col++) {
-            System.out.print("───");
+            out.print("───");
         }
-        System.out.println("┐");
+        out.println("┐");
         
         List<Seat> allSeats = bookingService.getAllSeats();
         int seatIndex = 0;
         
         for (int row = 1; row <= 5; row++) {
-            System.out.printf("%2d │ ", row);
+            out.printf("%2d │ ", row);
             
             for (int col = 1; col <= 10; col++) {
                 Seat seat = allSeats.get(seatIndex++);
@@ -208,24 +234,24 @@ public class TerminalUI {
                 
                 printColored(String.format(" %c ", displayChar), color);
             }
-            System.out.println(" │");
+            out.println(" │");
         }
         
         // Bottom border
-        System.out.print("   └─");
+        out.print("   └─");
         for (int col = 1; col <= 10; col++) {
-            System.out.print("───");
+            out.print("───");
         }
-        System.out.println("┘");
+        out.println("┘");
         
         // Legend
-        System.out.println();
+        out.println();
         printColored(" F ", BG_GREEN + BOLD_WHITE);
-        System.out.print(" = Fixed   ");
+        out.print(" = Fixed   ");
         printColored(" L ", BG_BLUE + BOLD_WHITE);
-        System.out.print(" = Floater   ");
+        out.print(" = Floater   ");
         printColored(" X ", BG_RED + BOLD_WHITE);
-        System.out.println(" = Booked");
+        out.println(" = Booked");
     }
     
     /**
@@ -295,6 +321,37 @@ public class TerminalUI {
         }
     }
     
+    /**
+     * Handles checking in for a booking.
+     */
+    private void checkIn() {
+        clearScreen();
+        printSectionHeader("✅ CHECK IN");
+        
+        String bookingId = promptForInput("Enter Booking ID: ");
+        if (bookingId == null || bookingId.trim().isEmpty()) {
+            printError("Booking ID is required.");
+            return;
+        }
+        
+        try {
+            bookingService.checkIn(bookingId.trim());
+            printSuccess("Checked in successfully!");
+        } catch (BookingException e) {
+            printError(e.getMessage());
+        }
+    }
+    
+    /**
+     * Releases seats held by bookings that were not checked in within the grace period.
+     */
+    private void reclaimNoShows() {
+        List<String> reclaimed = bookingService.reclaimNoShows();
+        if (!reclaimed.isEmpty()) {
+            printInfo("Released " + reclaimed.size() + " seat(s) from unchecked bookings: " + reclaimed);
+        }
+    }
+    
     /**
      * Handles viewing user's bookings.
      */
@@ -314,14 +371,14 @@ public class TerminalUI {
             printInfo("No bookings found for user: " + userId.toUpperCase());
         } else {
             printlnColored("📋 Bookings for " + userId.toUpperCase() + ":", BOLD_WHITE);
-            System.out.println(createLine('-', BOX_WIDTH));
+            out.println(createLine('-', BOX_WIDTH));
             
-            System.out.printf("%-15s | %-8s | %-12s | %-20s%n", 
+            out.printf("%-15s | %-8s | %-12s | %-20s%n", 
                             "Booking ID", "Seat", "Date", "Booking Time");
-            System.out.println(createLine('-', BOX_WIDTH));
+            out.println(createLine('-', BOX_WIDTH));
             
             for (Booking booking : userBookings) {
-                System.out.printf("%-15s | %-8s | %-12s | %-20s%n",
+                out.printf("%-15s | %-8s | %-12s | %-20s%n",
                                 booking.getBookingId(),
                                 booking.getSeat().getSeatId(),
                                 booking.getDate().format(DATE_FORMATTER),
@@ -336,7 +393,7 @@ public class TerminalUI {
      */
     private LocalDate promptForDate(String prompt) {
         printColored(prompt, BOLD_WHITE);
-        String input = scanner.nextLine().trim();
+        String input = readLine().trim();
         
         if (input.isEmpty()) {
             printError("Date is required.");
@@ -356,7 +413,7 @@ public class TerminalUI {
      */
     private String promptForInput(String prompt) {
         printColored(prompt, BOLD_WHITE);
-        return scanner.nextLine();
+        return readLine();
     }
     
     /**
@@ -366,7 +423,7 @@ public class TerminalUI {
         printBox();
         printlnColored(centerText(title, BOX_WIDTH - 4), BOLD_CYAN);
         printBox();
-        System.out.println();
+        out.println();
     }
     
     /**
@@ -391,9 +448,41 @@ public class TerminalUI {
      * Waits for user to press Enter.
      */
     private void pressEnterToContinue() {
-        System.out.println();
+        out.println();
         printColored("Press Enter to continue...", BOLD_BLACK);
-        scanner.nextLine();
+        readLine();
         clearScreen();
     }
+    
+    /**
+     * Reads a line of input, first sending any output the user has not seen yet.
+     */
+    private String readLine() {
+        out.flush();
+        return scanner.nextLine();
+    }
+    
+    private void clearScreen() {
+        ConsoleColors.clearScreen(out);
+    }
+    
+    private void printColored(String message, String color) {
+        ConsoleColors.printColored(out, message, color);
+    }
+    
+    private void printlnColored(String message, String color) {
+        ConsoleColors.printlnColored(out, message, color);
+    }
+    
+    private void printError(String message) {
+        ConsoleColors.printError(out, message);
+    }
+    
+    private void printSuccess(String message) {
+        ConsoleColors.printSuccess(out, message);
+    }
+    
+    private void printInfo(String message) {
+        ConsoleColors.printInfo(out, message);
+    }
 }
\ No newline at end of file